@@ -2,11 +2,13 @@ package de.hsbo.geo.simsamples.applications;
 
 import de.hsbo.geo.simsamples.cellularautomata.CellularAutomaton;
 import de.hsbo.geo.simsamples.cellularautomata.RectangularAutomaton;
+import de.hsbo.geo.simsamples.cellularautomata.instances.BitPackedLifeAutomaton;
 import de.hsbo.geo.simsamples.cellularautomata.instances.GameOfLife;
 
 /**
  * "Game of Life" example. The automaton's transition function is implemented 
- * by the class {@link GameOfLife}.
+ * by the class {@link GameOfLife}. For big grids, the bit-packed {@link 
+ * BitPackedLifeAutomaton} provides identical results much faster.
  * 
  * @author Benno Schmidt
  */
@@ -17,6 +19,7 @@ public class GameOfLifeExample
 		// Create automaton consisting of 10x50 cells:
 		CellularAutomaton a = 
 			new RectangularAutomaton(10, 50, new GameOfLife());
+		// Alternatively: CellularAutomaton a = new BitPackedLifeAutomaton(10, 50);
 		a.initializeRandomly();
 		
 		// Execute 200 time steps and provide console output:
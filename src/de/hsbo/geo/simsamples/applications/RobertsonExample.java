@@ -0,0 +1,33 @@
+package de.hsbo.geo.simsamples.applications;
+
+import de.hsbo.geo.simsamples.diffequations.DEModel;
+import de.hsbo.geo.simsamples.diffequations.DESimulation;
+import de.hsbo.geo.simsamples.diffequations.IntegrationMethod;
+import de.hsbo.geo.simsamples.diffequations.instances.RobertsonModel;
+
+/**
+ * Simulation of Robertson's stiff chemical reaction system. The underlying 
+ * model is specified in {@link RobertsonModel}. Using the implicit BDF2 
+ * method, a time step width of 1 sec can be used, whereas the explicit 
+ * Euler method would require time step widths below 1e-3 sec.
+ * 
+ * @author Benno Schmidt
+ */
+public class RobertsonExample 
+{
+	public static void main(String[] args) throws Exception 
+	{
+		DEModel m = new RobertsonModel();
+		DESimulation a = new DESimulation(m);
+		a.setIntegrationMethod(IntegrationMethod.BDF2);
+		a.setTolerances(1.e-8, 1.e-12);
+		
+		// Simulation interval and time step width:
+		a.setStartTime(0.);
+		a.setEndTime(40.);
+		a.setDeltaT(1.);
+		
+		a.enableConsoleDump();
+		a.execute();
+	}
+}
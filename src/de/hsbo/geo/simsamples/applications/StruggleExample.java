@@ -8,19 +8,22 @@ import de.hsbo.geo.simsamples.cellularautomata.instances.StruggleGame;
 /**
  * Sample application which runs the {@link StruggleGame}. Since the initial
  * populations are distributed randomly, it is interesting to observe that the 
- * simulation result will vary for each run!  
+ * simulation result will vary for each run! The cells are updated 
+ * asynchronously in random order, i.e. each time step consists of as many 
+ * single-cell updates as there are cells.
  * 
  * @author Benno Schmidt
  */
 public class StruggleExample 
 {
 	static private CellularAutomaton a; 
-	static private final int numberOfSteps = 2000; 
+	static private final int numberOfSteps = 100; 
 	
 	
 	static public void main(String[] args) throws Exception 
 	{
 		a = new RectangularAutomaton(8, 8, new StruggleGame());
+		a.setUpdateMode(CellularAutomaton.RANDOM_SEQUENTIAL);
 		a.initializeRandomly();
 
 		// Print initial situation:
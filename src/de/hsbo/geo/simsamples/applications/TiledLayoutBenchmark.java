@@ -0,0 +1,102 @@
+package de.hsbo.geo.simsamples.applications;
+
+import de.hsbo.geo.simsamples.cellularautomata.PrimitiveRectangularSpace;
+import de.hsbo.geo.simsamples.cellularautomata.RectangularAutomaton;
+import de.hsbo.geo.simsamples.cellularautomata.RectangularSpace;
+import de.hsbo.geo.simsamples.cellularautomata.TiledRectangularSpace;
+import de.hsbo.geo.simsamples.cellularautomata.TransitionFunction;
+import de.hsbo.geo.simsamples.cellularautomata.instances.CellularWave;
+import de.hsbo.geo.simsamples.cellularautomata.instances.Diffusion;
+import de.hsbo.geo.simsamples.cellularautomata.instances.SimpleErosion;
+import de.hsbo.geo.simsamples.common.RetentionPolicy;
+
+/**
+ * Benchmark comparing the storage layouts for rectangular cellular spaces:
+ * cell objects holding time series ({@link RectangularSpace}), flat
+ * primitive arrays ({@link PrimitiveRectangularSpace}) and square tiles
+ * with halo cells ({@link TiledRectangularSpace}). The models {@link
+ * CellularWave}, {@link Diffusion} and {@link SimpleErosion} will be 
+ * executed for each layout, single-threaded as well as multi-threaded. 
+ * Note that {@link SimpleErosion} is executed by a flux accumulator, which 
+ * streams the cell states of layouts other than the flat one row by row. 
+ * For each run, the execution time and a checksum of the final cell states 
+ * will be printed.
+ *
+ * @author Benno Schmidt
+ */
+public class TiledLayoutBenchmark
+{
+	static private final int nx = 1024, ny = 1024, numberOfSteps = 50;
+
+	static private final String[] layouts =
+		new String[] {"Cell[][]", "flat", "tiled"};
+
+
+	public static void main(String[] args) throws Exception
+	{
+		for (int threads = 1; threads <= 4; threads *= 4) {
+			for (String layout : layouts) {
+				run(layout, new CellularWave(), threads);
+			}
+		}
+		for (int threads = 1; threads <= 4; threads *= 4) {
+			for (String layout : layouts) {
+				run(layout, new Diffusion(), threads);
+			}
+		}
+		for (int threads = 1; threads <= 4; threads *= 4) {
+			for (String layout : layouts) {
+				run(layout, new SimpleErosion(), threads);
+			}
+		}
+	}
+
+	static private RectangularSpace createSpace(String layout)
+	{
+		if (layout.equals("flat"))
+			return new PrimitiveRectangularSpace(nx, ny);
+		if (layout.equals("tiled"))
+			return new TiledRectangularSpace(nx, ny);
+		return new RectangularSpace(nx, ny);
+	}
+
+	static private void run(String layout, TransitionFunction delta,
+		int threads) throws Exception
+	{
+		RectangularSpace sp = createSpace(layout);
+		RectangularAutomaton a = new RectangularAutomaton(sp, delta);
+		a.setRetentionPolicy(RetentionPolicy.LAST(2));
+		a.initializeWith(0.);
+
+		if (delta instanceof CellularWave || delta instanceof Diffusion) {
+			sp.getCell(nx / 2, ny / 2).setInitialValue(10.);
+		} else {
+			// Some hills and valleys:
+			for (int i = 0; i < nx; i++) {
+				for (int j = 0; j < ny; j++) {
+					sp.getCell(i, j).setInitialValue(
+						100. * Math.sin(i * 0.05) * Math.cos(j * 0.03));
+				}
+			}
+		}
+		if (threads > 1) {
+			a.enableParallelExecution(threads);
+		}
+
+		long t0 = System.currentTimeMillis();
+		a.execute(numberOfSteps);
+		long t1 = System.currentTimeMillis();
+		a.disableParallelExecution();
+
+		double checksum = 0.;
+		for (int i = 0; i < nx; i++) {
+			for (int j = 0; j < ny; j++) {
+				Object z = sp.getCell(i, j).getValue(numberOfSteps + 1);
+				checksum += (Double) z;
+			}
+		}
+		System.out.println(
+			delta.getClass().getSimpleName() + "\t" + layout + "\t" +
+			threads + " thread(s)\t" + (t1 - t0) + " msecs\t" + checksum);
+	}
+}
@@ -0,0 +1,64 @@
+package de.hsbo.geo.simsamples.applications;
+
+import de.hsbo.geo.simsamples.cellularautomata.DiscreteStateGrid;
+import de.hsbo.geo.simsamples.cellularautomata.PrimitiveRectangularSpace;
+import de.hsbo.geo.simsamples.cellularautomata.RectangularAutomaton;
+import de.hsbo.geo.simsamples.cellularautomata.instances.TotalisticRule;
+
+/**
+ * Example showing how to run a batch of Life-like and Generations rules 
+ * without implementing a transition function for each rule. The rules are 
+ * given as rule strings, see {@link TotalisticRule}. For each rule, the 
+ * number of living cells (state 1) after the simulation run will be printed.
+ * 
+ * @author Benno Schmidt
+ */
+public class TotalisticRulesExample 
+{
+	static private final int nx = 100, ny = 100, numberOfSteps = 100;
+	
+	
+	public static void main(String[] args) throws Exception 
+	{
+		// Some well-known rules:
+		String[] rules = new String[] {
+			"B3/S23", // Game of Life
+			"B36/S23", // HighLife
+			"B3678/S34678", // Day & Night
+			"B1357/S1357", // Replicator
+			"B2/S", // Seeds
+			"B2/S/C3", // Brian's Brain
+			"B3/S23/C8" // Game of Life with dying cells
+		};
+		for (String rule : rules) {
+			run(rule);
+		}
+		
+		// Sweep over all rules B3/S... with survival counts 0..4: 
+		for (int mask = 0; mask < 32; mask++) {
+			StringBuffer s = new StringBuffer("B3/S");
+			for (int n = 0; n < 5; n++) {
+				if ((mask & (1 << n)) != 0) s.append(n);
+			}
+			run(s.toString());
+		}
+	}
+
+	static private void run(String rule) throws Exception 
+	{
+		RectangularAutomaton a = new RectangularAutomaton(
+			new PrimitiveRectangularSpace(nx, ny), 
+			TotalisticRule.parse(rule));
+		a.initializeRandomly(0, 1);
+		a.execute(numberOfSteps);
+		
+		// Count living cells:
+		DiscreteStateGrid g = (DiscreteStateGrid) a.getStateGrid();
+		byte[] states = g.readBuffer(numberOfSteps + 1);
+		int living = 0;
+		for (int k = 0; k < states.length; k++) {
+			if (states[k] == 1) living++;
+		}
+		System.out.println(rule + "\t" + living);
+	}
+}
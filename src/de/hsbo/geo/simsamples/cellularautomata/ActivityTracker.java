@@ -0,0 +1,149 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+import java.util.Arrays;
+
+/**
+ * Bookkeeping for the sparse execution of rectangular automata, see {@link
+ * RectangularAutomaton#enableSparseExecution()}. The tracker holds a bitmap
+ * marking the cells that changed their states during the previous time
+ * step. Before each time step, the set of <i>active</i> cells will be
+ * derived from this bitmap: A cell is active, if its own state or the state
+ * of one of its neighbors changed. All other cells will keep their states.
+ * Note that the neighborhood is assumed to be symmetric, i.e. if cell
+ * <tt>a</tt> is a neighbor of <tt>b</tt>, <tt>b</tt> is also a neighbor of
+ * <tt>a</tt>.
+ * <p>
+ * Inside the bitmaps, each grid row starts with a new <tt>long</tt> value.
+ * Thus, the rows can be updated by different threads.
+ *
+ * @author Benno Schmidt
+ */
+public class ActivityTracker
+{
+	private int nx, ny, wordsPerRow;
+	private NeighborhoodTable table;
+	private long[] changed, active;
+	private boolean[] activeRows;
+	private boolean all = true;
+
+
+	/**
+	 * Constructor. Initially, all cells will be regarded as active.
+	 *
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 * @param table Neighborhood the transition function depends on
+	 */
+	public ActivityTracker(int nx, int ny, NeighborhoodTable table)
+	{
+		this.nx = nx;
+		this.ny = ny;
+		this.table = table;
+		this.wordsPerRow = (ny + 63) >>> 6;
+		this.changed = new long[nx * this.wordsPerRow];
+		this.active = new long[nx * this.wordsPerRow];
+		this.activeRows = new boolean[nx];
+	}
+
+	/**
+	 * marks all cells as active for the next time step. This method has to
+	 * be called whenever cell states have been modified from outside the
+	 * transition function.
+	 */
+	public void markAll() {
+		this.all = true;
+	}
+
+	/**
+	 * determines the active cells for the next time step. Afterwards, the
+	 * bitmap of changed cells will be cleared, so that it can receive the
+	 * changes of the next time step.
+	 */
+	public void prepare()
+	{
+		if (this.all) {
+			int r = this.ny & 63;
+			long last = r == 0 ? -1L : (1L << r) - 1L;
+			for (int k = 0; k < this.active.length; k++) {
+				this.active[k] = 
+					(k % this.wordsPerRow == this.wordsPerRow - 1) ? last : -1L;
+			}
+			Arrays.fill(this.activeRows, true);
+			this.all = false;
+		}
+		else {
+			Arrays.fill(this.active, 0L);
+			Arrays.fill(this.activeRows, false);
+			int[] neighs = new int[this.table.size()];
+			for (int k = 0; k < this.changed.length; k++) {
+				long w = this.changed[k];
+				while (w != 0L) {
+					int b = Long.numberOfTrailingZeros(w);
+					w &= w - 1L;
+					int
+						i = k / this.wordsPerRow,
+						j = ((k % this.wordsPerRow) << 6) + b;
+					this.activate(i, j);
+					int n = this.table.neighbors(i, j, neighs);
+					for (int l = 0; l < n; l++) {
+						this.activate(neighs[l] / this.ny, neighs[l] % this.ny);
+					}
+				}
+			}
+		}
+		Arrays.fill(this.changed, 0L);
+	}
+
+	private void activate(int i, int j) {
+		this.active[i * this.wordsPerRow + (j >>> 6)] |= 1L << j;
+		this.activeRows[i] = true;
+	}
+
+	/**
+	 * checks if the cell in row <tt>i</tt> and column <tt>j</tt> has to be
+	 * processed during the current time step.
+	 *
+	 * @param i Row index
+	 * @param j Column index
+	 * @return <i>true</i> for active cells
+	 */
+	public boolean isActive(int i, int j) {
+		return (this.active[i * this.wordsPerRow + (j >>> 6)] & (1L << j))
+			!= 0L;
+	}
+
+	/**
+	 * checks if the row <tt>i</tt> contains active cells.
+	 *
+	 * @param i Row index
+	 * @return <i>true</i> if there are active cells
+	 */
+	public boolean isRowActive(int i) {
+		return this.activeRows[i];
+	}
+
+	/**
+	 * marks the cell in row <tt>i</tt> and column <tt>j</tt> as changed
+	 * during the current time step.
+	 *
+	 * @param i Row index
+	 * @param j Column index
+	 */
+	public void setChanged(int i, int j) {
+		this.changed[i * this.wordsPerRow + (j >>> 6)] |= 1L << j;
+	}
+
+	/**
+	 * gets the number of active cells of the current time step.
+	 *
+	 * @return Number of cells
+	 */
+	public int numberOfActiveCells()
+	{
+		int n = 0;
+		for (int k = 0; k < this.active.length; k++) {
+			n += Long.bitCount(this.active[k]);
+		}
+		return n;
+	}
+}
@@ -0,0 +1,378 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * State sink that generates an animated X3DOM scene consisting of quads
+ * while a {@link RectangularAutomaton} is running. In contrast to {@link
+ * ElevationModelToolBox#writeAnimatedX3DomQuadScene(RectangularSpace,
+ * String)}, the cells' time series need not be kept in memory: The cell
+ * values of each keyframe are appended to a temporary file, which will be
+ * transposed block-wise into per-cell animation paths when the HTML file is
+ * assembled in a single streaming pass.
+ * <p>
+ * To keep the scene size manageable, keyframes and cells can be decimated:
+ * Only every <tt>timeDecimation</tt>-th time step will be recorded, and
+ * only every <tt>cellDecimation</tt>-th row and column of the grid will be
+ * shown (by quads of the corresponding size); the values of the other
+ * cells will not be read at all. The vertical exaggeration is derived from
+ * the value range of the cells shown in the first keyframe. For discrete
+ * state sets, the state codes (see {@link Snapshot#getCode(int, int)}) will
+ * be used as cell values.
+ * <p>
+ * The HTML file will be written whenever the sink is flushed, i.e. at the
+ * end of each simulation run. Calling <tt>close()</tt> deletes the
+ * temporary file. Example:
+ * <pre>
+ * AnimatedX3DomSceneWriter x3d = new AnimatedX3DomSceneWriter("erosion.html");
+ * x3d.setTimeDecimation(10);
+ * x3d.setCellDecimation(20);
+ * a.addSink(x3d);
+ * a.execute(1000);
+ * x3d.close();
+ * </pre>
+ *
+ * @author Benno Schmidt
+ */
+public class AnimatedX3DomSceneWriter implements StateSink, Flushable, Closeable
+{
+	static private final int BLOCK_SIZE = 1 << 22; // values
+
+	private String filename;
+	private int timeDecimation = 1, cellDecimation = 1;
+
+	private int nx = -1, ny = -1;
+	private int[] rows, cols; // indices of the cells shown
+	private Map<Object, Integer> codes = null; // for discrete state sets
+	private int numberOfFrames = 0;
+	private int numberOfFramesWritten = 0; // by the last flush() call
+	private double dz = 0.; // value range of the first keyframe
+	private File tmp = null;
+	private RandomAccessFile frames = null;
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param filename Name (incl. path) of the HTML file to be generated
+	 */
+	public AnimatedX3DomSceneWriter(String filename) {
+		this.filename = filename;
+	}
+
+	/**
+	 * sets the number of time steps between two keyframes. This method has
+	 * to be called before the first keyframe has been recorded.
+	 *
+	 * @param timeDecimation Keyframe interval (default: 1)
+	 */
+	public void setTimeDecimation(int timeDecimation) {
+		this.timeDecimation = Math.max(timeDecimation, 1);
+	}
+
+	/**
+	 * sets the row and column interval of the cells shown. This method has
+	 * to be called before the first keyframe has been recorded.
+	 *
+	 * @param cellDecimation Cell interval (default: 1)
+	 */
+	public void setCellDecimation(int cellDecimation) {
+		this.cellDecimation = Math.max(cellDecimation, 1);
+	}
+
+	/**
+	 * gets the number of keyframes recorded so far.
+	 *
+	 * @return Number of keyframes
+	 */
+	public int numberOfFrames() {
+		return this.numberOfFrames;
+	}
+
+	public void write(CellularSpace sp, int ti) throws Exception
+	{
+		if (ti % this.timeDecimation != 0)
+			return;
+		if (!(sp instanceof RectangularSpace)) {
+			throw new Exception(
+				"X3DOM scenes are supported for rectangular spaces only!");
+		}
+		RectangularSpace rs = (RectangularSpace) sp;
+		boolean first = this.frames == null;
+		if (first) {
+			this.open(rs);
+		}
+		else if (rs.numberOfRows() != this.nx ||
+			rs.numberOfColumns() != this.ny)
+		{
+			throw new Exception("Cellular space size has changed!");
+		}
+
+		// Read the cells shown only:
+		StateGrid g = rs instanceof PrimitiveRectangularSpace ?
+			((PrimitiveRectangularSpace) rs).getStateGrid() : null;
+		BitSet noData = rs.getNoDataMask();
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		int m = this.rows.length * this.cols.length;
+		ByteBuffer b = ByteBuffer.allocate(4 * m);
+		FloatBuffer f = b.asFloatBuffer();
+		for (int i : this.rows) {
+			for (int j : this.cols) {
+				double z = this.value(rs, g, ti, i, j);
+				f.put((float) z);
+				if (first && (noData == null || !noData.get(i * this.ny + j))) {
+					if (z < min) min = z;
+					if (z > max) max = z;
+				}
+			}
+		}
+		if (first && min <= max) {
+			this.dz = max - min;
+		}
+		long pos = 4L * m * this.numberOfFrames;
+		while (b.hasRemaining()) {
+			this.frames.getChannel().write(b, pos + b.position());
+		}
+		this.numberOfFrames++;
+	}
+
+	/**
+	 * gets the state of a single cell as number. For discrete cell states,
+	 * the state code will be returned.
+	 */
+	private double value(
+		RectangularSpace sp, StateGrid g, int ti, int i, int j)
+		throws Exception
+	{
+		if (g instanceof DoubleStateAccess)
+			return ((DoubleStateAccess) g).getDouble(ti, i, j);
+		if (g instanceof DiscreteStateGrid) {
+			// Codes refer to the sorted state set, too:
+			return ((DiscreteStateGrid) g).readBuffer(ti)[g.index(i, j)] & 0xff;
+		}
+		Object z = g != null ?
+			g.getValue(ti, g.index(i, j)) : sp.getCell(i, j).getValue(ti);
+		if (this.codes != null) {
+			Integer code = this.codes.get(z);
+			if (code == null) {
+				throw new Exception(
+					"State \"" + z + "\" is not element of the state set!");
+			}
+			return code;
+		}
+		if (!(z instanceof Number)) {
+			throw new Exception("Non-numeric cell value \"" + z + "\"!");
+		}
+		return ((Number) z).doubleValue();
+	}
+
+	private void open(RectangularSpace sp) throws Exception
+	{
+		this.nx = sp.numberOfRows();
+		this.ny = sp.numberOfColumns();
+		this.rows = this.select(this.nx);
+		this.cols = this.select(this.ny);
+
+		if (sp.getStateSet() instanceof DiscreteStateSet) {
+			Object[] states =
+				((DiscreteStateSet) sp.getStateSet()).getAsSet().toArray();
+			this.codes = new HashMap<Object, Integer>();
+			for (int k = 0; k < states.length; k++) {
+				this.codes.put(states[k], k);
+			}
+		}
+
+		File dir = new File(this.filename).getAbsoluteFile().getParentFile();
+		this.tmp = File.createTempFile("x3d", ".frames", dir);
+		this.tmp.deleteOnExit();
+		this.frames = new RandomAccessFile(this.tmp, "rw");
+	}
+
+	private int[] select(int n)
+	{
+		int[] idx = new int[(n + this.cellDecimation - 1) / this.cellDecimation];
+		for (int k = 0; k < idx.length; k++) {
+			idx[k] = k * this.cellDecimation;
+		}
+		return idx;
+	}
+
+	/**
+	 * writes the X3DOM scene holding all keyframes recorded so far. If no
+	 * keyframes have been recorded since the last call, nothing happens.
+	 *
+	 * @throws IOException
+	 */
+	public void flush() throws IOException
+	{
+		if (this.frames == null ||
+			this.numberOfFrames == this.numberOfFramesWritten)
+		{
+			return;
+		}
+
+		// Vertical exaggeration, see ElevationModelToolBox:
+		double zf = this.dz > 0. ?
+			0.1 * Math.max(this.nx, this.ny) / this.dz : 1.;
+		double
+			px = this.ny / 2.,
+			py = this.nx / 2.,
+			pz = this.dz / 2.;
+		int nf = this.numberOfFrames, m = this.rows.length * this.cols.length;
+		int ncols = this.cols.length;
+
+		BufferedWriter w = new BufferedWriter(new FileWriter(this.filename));
+		try {
+			w.write("<html>\n");
+			w.write("<head>\n");
+			w.write("  <title>3D scene: Cellular elevation grid</title>\n");
+			w.write("  <script type='text/javascript' " +
+				"src='http://www.x3dom.org/download/dev/x3dom-full.js'>" +
+				"</script>\n");
+			w.write("</head>\n");
+			w.write("<body>\n");
+			w.write("  <h1>Cellular elevation grid</h1>\n");
+			w.write("  This file has been generated automatically.\n");
+			w.write("  <x3d width='600px' height='500px'" +
+				" profile='Interactive' version='3.3'" +
+				" noNamespaceSchemaLocation=" +
+				"'http://www.web3d.org/specifications/x3d-3.3.xsd'>\n");
+			w.write("    <Scene>\n");
+			w.write("      <Viewpoint description='Top view'" +
+				" orientation='1 0 0 -1.57'" +
+				" position='" + px + " " + (zf * 25. * pz) + " " + py + "'" +
+				" centerOfRotation='" + px + " " + (zf * pz) + " " + py +
+				"'></Viewpoint>\n");
+			w.write("      <TimeSensor DEF='time' cycleInterval='" +
+				(nf * this.timeDecimation) + "' loop='true'/>\n");
+
+			StringBuffer keys = new StringBuffer();
+			for (int t = 0; t < nf; t++) {
+				keys.append((double) t / (double) nf);
+				keys.append(' ');
+			}
+
+			// Transpose the keyframes block-wise into per-cell paths:
+			int bs = Math.max(1, Math.min(m, BLOCK_SIZE / Math.max(nf, 1)));
+			float[] z = new float[bs * nf];
+			ByteBuffer b = ByteBuffer.allocate(4 * bs);
+			FileChannel ch = this.frames.getChannel();
+			StringBuffer s = new StringBuffer();
+			for (int c0 = 0; c0 < m; c0 += bs) {
+				int n = Math.min(bs, m - c0);
+				for (int t = 0; t < nf; t++) {
+					b.clear();
+					b.limit(4 * n);
+					long pos = 4L * ((long) t * m + c0);
+					while (b.hasRemaining()) {
+						if (ch.read(b, pos + b.position()) < 0)
+							throw new IOException("Unexpected end of file!");
+					}
+					b.flip();
+					b.asFloatBuffer().get(z, t * n, n);
+				}
+				for (int c = 0; c < n; c++) {
+					int
+						a = (c0 + c) / ncols,
+						k = (c0 + c) % ncols,
+						i = this.rows[a],
+						j = this.cols[k];
+					s.setLength(0);
+					this.appendCell(s, i, j, (a + k) % 2 == 0,
+						zf, z, c, n, nf, keys);
+					w.write(s.toString());
+				}
+			}
+
+			w.write("    </Scene>\n");
+			w.write("  </x3d>\n");
+			w.write("</body>\n");
+			w.write("</html>\n");
+		}
+		finally {
+			w.close();
+		}
+		this.numberOfFramesWritten = nf;
+	}
+
+	private void appendCell(StringBuffer s, int i, int j, boolean even,
+		double zf, float[] z, int c, int n, int nf, StringBuffer keys)
+	{
+		String
+			idTransf = "transf_" + i + "_" + j,
+			idInterp = "move_" + i + "_" + j;
+
+		s.append("      <Transform DEF='").append(idTransf).append("'");
+		s.append(" translation='").append(i).append(' ');
+		s.append(zf * z[c]).append(' ').append(j).append("'>\n");
+		s.append("        <Shape>\n");
+		s.append("          <Appearance><Material diffuseColor='");
+		s.append(even ? "1 1 0" : "0 1 0").append("'/></Appearance>\n");
+		s.append("          <Box size='").append(this.cellDecimation);
+		s.append(" 1 ").append(this.cellDecimation).append("'/>\n");
+		s.append("        </Shape>\n");
+		s.append("      </Transform>\n");
+
+		s.append("      <PositionInterpolator DEF='").append(idInterp);
+		s.append("' key='").append(keys).append("' keyValue='");
+		for (int t = 0; t < nf; t++) {
+			s.append(i).append(' ');
+			s.append((float) (zf * z[t * n + c])).append(' ');
+			s.append(j).append(' ');
+		}
+		s.append("'/>\n");
+		s.append("      <Route fromNode='time' fromField='fraction_changed'");
+		s.append(" toNode='").append(idInterp);
+		s.append("' toField='set_fraction'></Route>\n");
+		s.append("      <Route fromNode='").append(idInterp);
+		s.append("' fromField='value_changed' toNode='").append(idTransf);
+		s.append("' toField='translation'></Route>\n");
+	}
+
+	/**
+	 * writes the X3DOM scene and deletes the temporary file. Afterwards,
+	 * the sink must not be used anymore.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException
+	{
+		try {
+			this.flush();
+		}
+		finally {
+			if (this.frames != null) {
+				this.frames.close();
+				this.frames = null;
+				this.tmp.delete();
+			}
+		}
+	}
+
+	public String toString()
+	{
+		StringBuffer s = new StringBuffer();
+
+		s.append("(");
+		s.append(this.getClass().getSimpleName());
+		s.append(": ");
+		s.append(this.filename);
+		s.append(", ");
+		s.append(this.numberOfFrames);
+		s.append(" keyframes)");
+
+		return s.toString();
+	}
+}
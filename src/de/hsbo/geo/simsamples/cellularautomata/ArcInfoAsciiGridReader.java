@@ -0,0 +1,465 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * High-throughput reader for elevation grids given in ArcInfo ASCII grid
+ * format. The file's data section will be memory-mapped and split into
+ * chunks that are processed in parallel: In a first pass, the numbers of
+ * values inside the chunks are counted; in a second pass, the values are
+ * parsed by a hand-written number parser and written directly into the
+ * rows of the target {@link ElevationModelToolBox.DEM} or into the
+ * memory-mapped files of a {@link MappedRectangularSpace}. Values equal to
+ * the file's NODATA value will be set to 0 and marked inside the NODATA
+ * mask. Unparsable values will be set to 0.
+ *
+ * @author Benno Schmidt
+ */
+public class ArcInfoAsciiGridReader
+{
+	static private final long CHUNK_SIZE = 1L << 26; // bytes
+
+	static private final double[] POW10 = new double[] {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	private int numberOfThreads;
+
+
+	/**
+	 * Constructor. As many threads as processors are available will be
+	 * used.
+	 */
+	public ArcInfoAsciiGridReader() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param numberOfThreads Number of threads used for parsing
+	 */
+	public ArcInfoAsciiGridReader(int numberOfThreads) {
+		this.numberOfThreads = Math.max(numberOfThreads, 1);
+	}
+
+	/**
+	 * reads an ArcInfo ASCII grid file into the given elevation model. The
+	 * elevation model's size, georeference and NODATA mask will be set.
+	 *
+	 * @param filename Name (incl. path) of file in ArcInfo ASCII grid format
+	 * @param dem Elevation model
+	 * @throws Exception
+	 */
+	public void read(String filename, final ElevationModelToolBox.DEM dem)
+		throws Exception
+	{
+		RandomAccessFile f = new RandomAccessFile(filename, "r");
+		try {
+			FileChannel ch = f.getChannel();
+			Header h = this.readHeader(ch);
+			dem.setSize(h.nx, h.ny);
+			h.setGeoreference(dem);
+			dem.setNoDataMask(null);
+
+			final double[][] rows = new double[h.nx][];
+			for (int i = 0; i < h.nx; i++) {
+				rows[i] = dem.getRow(i);
+			}
+			this.readValues(ch, h, new Target() {
+				void set(int i, int j, double z) {
+					rows[i][j] = z;
+				}
+				void setNoData(int i, int j) {
+					dem.setNoData(i, j);
+				}
+			});
+		}
+		finally {
+			f.close();
+		}
+	}
+
+	/**
+	 * reads an ArcInfo ASCII grid file into a {@link MappedRectangularSpace}.
+	 * The values will be streamed into the memory-mapped files
+	 * <tt>&lt;basename&gt;.0</tt> and <tt>&lt;basename&gt;.1</tt>, i.e. the
+	 * elevation model will not be held in memory. The cellular space takes
+	 * over the file's georeference and NODATA mask.
+	 *
+	 * @param filename Name (incl. path) of file in ArcInfo ASCII grid format
+	 * @param basename Name (incl. path) of the state files without extension
+	 * @param dem Elevation model that receives the georeference only
+	 * @return Cellular space holding the values for the time step 0
+	 * @throws Exception
+	 */
+	public MappedRectangularSpace read(
+		String filename, String basename, ElevationModelToolBox.DEM dem)
+		throws Exception
+	{
+		RandomAccessFile f = new RandomAccessFile(filename, "r");
+		try {
+			FileChannel ch = f.getChannel();
+			Header h = this.readHeader(ch);
+			h.setGeoreference(dem);
+			MappedRectangularSpace sp =
+				new MappedRectangularSpace(h.nx, h.ny, basename);
+			sp.setGeoreference(dem);
+
+			final MappedStateGrid g = sp.getMappedStateGrid();
+			final BitSet mask = new BitSet();
+			final int ny = h.ny;
+			this.readValues(ch, h, new Target() {
+				void set(int i, int j, double z) throws Exception {
+					g.setDouble(0, i, j, z);
+				}
+				void setNoData(int i, int j) {
+					mask.set(i * ny + j);
+				}
+			});
+			sp.setNoDataMask(mask.isEmpty() ? null : mask);
+			return sp;
+		}
+		finally {
+			f.close();
+		}
+	}
+
+	/**
+	 * Receiver of the parsed values. Row indices are counted from South to
+	 * North. Different threads will set different cells concurrently; NODATA
+	 * cells will be marked by the calling thread.
+	 */
+	static abstract private class Target
+	{
+		abstract void set(int i, int j, double z) throws Exception;
+
+		abstract void setNoData(int i, int j) throws Exception;
+	}
+
+	/**
+	 * Header values of an ArcInfo ASCII grid file.
+	 */
+	static private class Header
+	{
+		int nx = -1, ny = -1;
+		double x = 0., y = 0., cellSize = -1., noDataValue = Double.NaN;
+		boolean center = false;
+		long dataStart = 0; // file position of the data section
+
+		void setGeoreference(ElevationModelToolBox.DEM dem)
+		{
+			dem.setCellSize(this.cellSize);
+			if (this.center)
+				dem.setOrigin(this.x, this.y);
+			else
+				dem.setOrigin(
+					this.x + this.cellSize/2., this.y + this.cellSize/2.);
+			dem.setNoDataValue(this.noDataValue);
+		}
+	}
+
+	/**
+	 * parses the data section of the file and passes the values to the
+	 * given target. Values equal to the NODATA value will be set to 0 and
+	 * marked as NODATA cells; missing values will be set to 0.
+	 */
+	private void readValues(FileChannel ch, Header h, final Target target)
+		throws Exception
+	{
+		final int nx = h.nx, ny = h.ny;
+		long dataStart = h.dataStart;
+		ExecutorService ex = null;
+		try {
+			// Determine chunk boundaries; a chunk always starts with a
+			// whitespace character, so that no number is split:
+			long len = ch.size();
+			int n = (int) Math.max(
+				4L * this.numberOfThreads, (len - dataStart) / CHUNK_SIZE + 1);
+			final long[] start = new long[n + 1];
+			start[0] = dataStart;
+			for (int k = 1; k < n; k++) {
+				long pos = dataStart + (len - dataStart) * k / n;
+				start[k] = Math.max(this.nextWhitespace(ch, pos), start[k - 1]);
+			}
+			start[n] = len;
+
+			ex = Executors.newFixedThreadPool(
+				this.numberOfThreads, Concurrency.daemonThreads());
+
+			// 1st pass: Count values inside the chunks:
+			List<Callable<Long>> counters = new ArrayList<Callable<Long>>();
+			for (int k = 0; k < n; k++) {
+				final MappedByteBuffer buf = this.map(ch, start[k], start[k + 1]);
+				counters.add(new Callable<Long>() {
+					public Long call() throws Exception {
+						return countTokens(buf);
+					}
+				});
+			}
+			List<Long> counts = this.invokeAll(ex, counters);
+
+			// 2nd pass: Parse values:
+			final double noDataValue = h.noDataValue;
+			List<Callable<BitSet>> parsers = new ArrayList<Callable<BitSet>>();
+			long first = 0;
+			for (int k = 0; k < n; k++) {
+				final MappedByteBuffer buf = this.map(ch, start[k], start[k + 1]);
+				final long k0 = first;
+				parsers.add(new Callable<BitSet>() {
+					public BitSet call() throws Exception {
+						return parse(buf, k0, nx, ny, target, noDataValue);
+					}
+				});
+				first += counts.get(k);
+			}
+			List<BitSet> masks = this.invokeAll(ex, parsers);
+
+			// Missing values:
+			for (long k = first; k < (long) nx * ny; k++) {
+				target.set(nx - 1 - (int) (k / ny), (int) (k % ny), 0.);
+			}
+
+			// Merge NODATA masks:
+			first = 0;
+			for (int k = 0; k < n; k++) {
+				BitSet m = masks.get(k);
+				for (int b = m.nextSetBit(0); b >= 0; b = m.nextSetBit(b + 1)) {
+					long idx = first + b;
+					int r = (int) (idx / ny), j = (int) (idx % ny);
+					target.setNoData(nx - 1 - r, j);
+				}
+				first += counts.get(k);
+			}
+		}
+		finally {
+			if (ex != null) {
+				ex.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * reads the header lines. Header keywords are case-insensitive; the
+	 * keywords <tt>xllcenter</tt> and <tt>yllcenter</tt> may be used instead
+	 * of <tt>xllcorner</tt> and <tt>yllcorner</tt>, and the
+	 * <tt>NODATA_value</tt> is optional.
+	 */
+	private Header readHeader(FileChannel ch) throws Exception
+	{
+		ByteBuffer b = ByteBuffer.allocate((int) Math.min(ch.size(), 4096));
+		ch.read(b, 0);
+		b.flip();
+
+		Header h = new Header();
+		int pos = 0;
+		while (pos < b.limit())
+		{
+			// Header lines start with a keyword:
+			int p = pos;
+			while (p < b.limit() && b.get(p) <= ' ') p++;
+			if (p >= b.limit() || !Character.isLetter((char) b.get(p)))
+				break;
+			int eol = p;
+			while (eol < b.limit() && b.get(eol) != '\n') eol++;
+			if (eol >= b.limit()) {
+				throw new Exception("Invalid header line in input file.");
+			}
+			byte[] line = new byte[eol - p];
+			for (int k = 0; k < line.length; k++) line[k] = b.get(p + k);
+			String[] tok = new String(line, "US-ASCII").trim().split("\\s+");
+			if (tok.length < 2) {
+				throw new Exception(
+					"Header-value \"" + tok[0] + "\" is missing in input file.");
+			}
+			String key = tok[0].toLowerCase();
+			double val = Double.parseDouble(tok[1]);
+			if (key.equals("ncols")) h.ny = (int) val;
+			else if (key.equals("nrows")) h.nx = (int) val;
+			else if (key.equals("xllcorner")) h.x = val;
+			else if (key.equals("yllcorner")) h.y = val;
+			else if (key.equals("xllcenter")) { h.x = val; h.center = true; }
+			else if (key.equals("yllcenter")) { h.y = val; h.center = true; }
+			else if (key.equals("cellsize")) h.cellSize = val;
+			else if (key.equals("nodata_value")) h.noDataValue = val;
+			pos = eol + 1;
+		}
+		if (h.nx < 0 || h.ny < 0 || h.cellSize < 0.) {
+			throw new Exception(
+				"Header-values \"ncols\", \"nrows\" and \"cellsize\" are " +
+				"required in input file.");
+		}
+		h.dataStart = pos;
+		return h;
+	}
+
+	private long nextWhitespace(FileChannel ch, long pos) throws Exception
+	{
+		ByteBuffer b = ByteBuffer.allocate(256);
+		while (pos < ch.size()) {
+			b.clear();
+			int n = ch.read(b, pos);
+			for (int k = 0; k < n; k++) {
+				if (b.get(k) <= ' ')
+					return pos + k;
+			}
+			pos += n;
+		}
+		return pos;
+	}
+
+	private MappedByteBuffer map(FileChannel ch, long from, long to)
+		throws Exception
+	{
+		return ch.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+	}
+
+	private <T> List<T> invokeAll(ExecutorService ex, List<Callable<T>> tasks)
+		throws Exception
+	{
+		List<T> res = new ArrayList<T>();
+		for (Future<T> f : ex.invokeAll(tasks)) {
+			res.add(Concurrency.get(f));
+		}
+		return res;
+	}
+
+	static private long countTokens(ByteBuffer buf)
+	{
+		long n = 0;
+		boolean inToken = false;
+		for (int p = 0, len = buf.limit(); p < len; p++) {
+			boolean ws = buf.get(p) <= ' ';
+			if (!ws && !inToken)
+				n++;
+			inToken = !ws;
+		}
+		return n;
+	}
+
+	/**
+	 * parses the values inside a chunk. The first value has the index
+	 * <tt>k0</tt> in file order. Returns the NODATA mask for the chunk's
+	 * values (relative to <tt>k0</tt>).
+	 */
+	static private BitSet parse(ByteBuffer buf, long k0, int nx, int ny,
+		Target target, double noDataValue) throws Exception
+	{
+		BitSet noData = new BitSet();
+		long k = k0;
+		int p = 0, len = buf.limit();
+		while (true)
+		{
+			while (p < len && buf.get(p) <= ' ') p++;
+			if (p >= len)
+				break;
+
+			// Parse number: [sign] digits [. digits] [e [sign] digits]
+			int s = p;
+			boolean neg = false;
+			byte c = buf.get(p);
+			if (c == '-' || c == '+') {
+				neg = (c == '-');
+				p++;
+			}
+			long m = 0;
+			int digits = 0, exp = 0, numDigits = 0;
+			boolean ok = true;
+			while (p < len && (c = buf.get(p)) >= '0' && c <= '9') {
+				if (m != 0 || c != '0') {
+					if (digits < 18) {
+						m = 10 * m + (c - '0');
+					} else {
+						exp++;
+					}
+					digits++;
+				}
+				numDigits++;
+				p++;
+			}
+			if (p < len && buf.get(p) == '.') {
+				p++;
+				while (p < len && (c = buf.get(p)) >= '0' && c <= '9') {
+					if (m != 0 || c != '0') {
+						if (digits < 18) {
+							m = 10 * m + (c - '0');
+							exp--;
+						}
+						digits++;
+					} else {
+						exp--;
+					}
+					numDigits++;
+					p++;
+				}
+			}
+			if (p < len && ((c = buf.get(p)) == 'e' || c == 'E')) {
+				p++;
+				boolean eNeg = false;
+				if (p < len && ((c = buf.get(p)) == '-' || c == '+')) {
+					eNeg = (c == '-');
+					p++;
+				}
+				int e = 0, eDigits = 0;
+				while (p < len && (c = buf.get(p)) >= '0' && c <= '9') {
+					if (e < 10000) e = 10 * e + (c - '0');
+					eDigits++;
+					p++;
+				}
+				ok = eDigits > 0;
+				exp += eNeg ? -e : e;
+			}
+			if (numDigits == 0 || (p < len && buf.get(p) > ' ')) {
+				ok = false;
+			}
+			while (p < len && buf.get(p) > ' ') p++; // end of token
+
+			double z;
+			if (ok && digits <= 15 && exp >= -22 && exp <= 22) {
+				// Exact, since m and 10^|exp| are representable:
+				z = exp < 0 ? m / POW10[-exp] : m * POW10[exp];
+				if (neg) z = -z;
+			} else {
+				z = parseSlowly(buf, s, p);
+			}
+
+			// Store value (rows are given from North to South):
+			long r = k / ny;
+			if (r < nx) {
+				if (z == noDataValue) {
+					noData.set((int) (k - k0));
+					z = 0.;
+				}
+				target.set(nx - 1 - (int) r, (int) (k % ny), z);
+			}
+			k++;
+		}
+		return noData;
+	}
+
+	static private double parseSlowly(ByteBuffer buf, int from, int to)
+		throws Exception
+	{
+		byte[] b = new byte[to - from];
+		for (int k = 0; k < b.length; k++) {
+			b[k] = buf.get(from + k);
+		}
+		try {
+			return Double.parseDouble(new String(b, "US-ASCII"));
+		}
+		catch (NumberFormatException nfe) {
+			return 0.;
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * State sink that writes the cell states of a {@link RectangularSpace}
+ * asynchronously. Every <tt>interval</tt> time steps, the simulation thread
+ * copies the cell states into a {@link Snapshot} and hands it over to a
+ * background thread, which encodes it by the given {@link SnapshotWriter}.
+ * Thus, stepping and output overlap. At most <tt>queueCapacity</tt>
+ * snapshots will be pending; if the writer falls behind, the simulation
+ * thread waits until a snapshot has been written, so that memory
+ * consumption remains bounded.
+ * <p>
+ * Errors that occur inside the background thread will be thrown by the
+ * next call of <tt>write()</tt> or <tt>flush()</tt>. {@link
+ * RectangularAutomaton}s flush their sinks at the end of each simulation
+ * run. Example:
+ * <pre>
+ * a.addSink(new AsyncStateSink(
+ *     new SnapshotFileWriter("out/erosion", SnapshotFileWriter.PNG), 10));
+ * a.execute(1000);
+ * </pre>
+ *
+ * @author Benno Schmidt
+ */
+public class AsyncStateSink implements StateSink, Flushable, Closeable
+{
+	private SnapshotWriter writer;
+	private int interval, queueCapacity;
+	private Semaphore free;
+	private ExecutorService executor;
+	private volatile Exception error = null;
+
+
+	/**
+	 * Constructor. At most two snapshots will be pending.
+	 *
+	 * @param writer Snapshot writer
+	 * @param interval Number of time steps between two snapshots
+	 */
+	public AsyncStateSink(SnapshotWriter writer, int interval) {
+		this(writer, interval, 2);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param writer Snapshot writer
+	 * @param interval Number of time steps between two snapshots
+	 * @param queueCapacity Maximum number of pending snapshots
+	 */
+	public AsyncStateSink(
+		SnapshotWriter writer, int interval, int queueCapacity)
+	{
+		this.writer = writer;
+		this.interval = Math.max(interval, 1);
+		this.queueCapacity = Math.max(queueCapacity, 1);
+		this.free = new Semaphore(this.queueCapacity);
+		this.executor = Executors.newSingleThreadExecutor(
+			Concurrency.daemonThreads());
+	}
+
+	/**
+	 * gets the snapshot writer.
+	 *
+	 * @return Snapshot writer
+	 */
+	public SnapshotWriter getWriter() {
+		return this.writer;
+	}
+
+	public void write(CellularSpace sp, int ti) throws Exception
+	{
+		if (ti % this.interval != 0)
+			return;
+		this.checkError();
+		if (!(sp instanceof RectangularSpace)) {
+			throw new Exception(
+				"Snapshots are supported for rectangular spaces only!");
+		}
+
+		// Acquire the permit before capturing, so that at most 
+		// queueCapacity snapshots are held in memory:
+		this.free.acquire(); // blocks, if too many snapshots are pending
+		boolean submitted = false;
+		try {
+			final Snapshot s = Snapshot.capture((RectangularSpace) sp, ti);
+			this.executor.execute(new Runnable() {
+				public void run() {
+					try {
+						if (error == null) {
+							writer.write(s);
+						}
+					}
+					catch (Exception e) {
+						error = e;
+					}
+					finally {
+						free.release();
+					}
+				}
+			});
+			submitted = true;
+		}
+		finally {
+			if (!submitted) {
+				this.free.release(); // capture or submission failed
+			}
+		}
+	}
+
+	/**
+	 * waits until all pending snapshots have been written.
+	 *
+	 * @throws IOException if writing a snapshot failed
+	 */
+	public void flush() throws IOException
+	{
+		try {
+			this.free.acquire(this.queueCapacity);
+			this.free.release(this.queueCapacity);
+			this.checkError();
+		}
+		catch (IOException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * waits until all pending snapshots have been written and stops the
+	 * background thread. Afterwards, the sink must not be used anymore.
+	 *
+	 * @throws IOException if writing a snapshot failed
+	 */
+	public void close() throws IOException
+	{
+		try {
+			this.flush();
+		}
+		finally {
+			this.executor.shutdown();
+		}
+	}
+
+	private void checkError() throws Exception
+	{
+		Exception e = this.error;
+		if (e != null) {
+			this.error = null;
+			throw e;
+		}
+	}
+
+	public String toString()
+	{
+		StringBuffer s = new StringBuffer();
+
+		s.append("(");
+		s.append(this.getClass().getSimpleName());
+		s.append(": ");
+		s.append(this.writer);
+		s.append(", every ");
+		s.append(this.interval);
+		s.append(" steps)");
+
+		return s.toString();
+	}
+}
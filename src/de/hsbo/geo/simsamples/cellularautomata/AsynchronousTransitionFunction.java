@@ -0,0 +1,37 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+import de.hsbo.geo.simsamples.common.FastRandom;
+
+/**
+ * Interface for {@link TransitionFunction}s that are able to update single
+ * cells of the primitive state storage of a {@link 
+ * PrimitiveRectangularSpace} in place. If a transition function implements
+ * this interface, {@link RectangularAutomaton}s operating in an 
+ * asynchronous update mode (see {@link 
+ * CellularAutomaton#setUpdateMode(int)}) will call {@link 
+ * AsynchronousTransitionFunction#update(StateGrid, int, int, int, 
+ * FastRandom)} instead of the cell-based method {@link 
+ * TransitionFunction#update(Cell, int, FastRandom)}.
+ *
+ * @author Benno Schmidt
+ */
+public interface AsynchronousTransitionFunction
+{
+	/**
+	 * updates the state of the cell in row <tt>i</tt> and column <tt>j</tt>
+	 * in place, i.e. the states for time step <tt>ti</tt> will be read and 
+	 * the cell's new state will be written for the same time step. Only the
+	 * given cell's state must be modified, and only the states of the cells 
+	 * inside the neighborhood given by {@link 
+	 * TransitionFunction#getUpdateNeighborhood()} should be read.
+	 *
+	 * @param grid State grid
+	 * @param ti Time stamp index
+	 * @param i Row index
+	 * @param j Column index
+	 * @param rand Random number generator to be used for stochastic rules
+	 * @throws Exception
+	 */
+	public void update(StateGrid grid, int ti, int i, int j, FastRandom rand)
+		throws Exception;
+}
@@ -0,0 +1,157 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+import java.util.Arrays;
+
+/**
+ * Primitive state storage for automata operating on a {@link
+ * DiscreteStateSet} consisting of exactly two states. Each cell state is
+ * held as a single bit, i.e. 64 cells will be packed into a <tt>long</tt>
+ * value. Each grid row starts with a new <tt>long</tt> value; inside the
+ * row, the cell in column <tt>j</tt> is given by bit <tt>j % 64</tt> of
+ * the row's <tt>(j / 64)</tt>-th word. A bit value of 0 represents the
+ * first state of the (sorted) state set, 1 the second one. Note that
+ * unused bits at the end of a row will always be 0.
+ *
+ * @author Benno Schmidt
+ */
+public class BinaryStateGrid extends StateGrid
+{
+	private long[][] buf;
+	private int wordsPerRow;
+	private Object[] states;
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 * @param states Set of cell states
+	 */
+	public BinaryStateGrid(int nx, int ny, DiscreteStateSet states) {
+		super(nx, ny);
+		this.states = states.getAsSet().toArray();
+		if (this.states.length != 2) {
+			throw new IllegalArgumentException(
+				"Binary state grids require exactly 2 states!");
+		}
+		this.wordsPerRow = (ny + 63) >>> 6;
+		this.buf = new long[2][nx * this.wordsPerRow];
+	}
+
+	/**
+	 * gets the number of <tt>long</tt> values used for each grid row.
+	 *
+	 * @return Number of words
+	 */
+	public int wordsPerRow() {
+		return this.wordsPerRow;
+	}
+
+	/**
+	 * gets the bit mask for the last word of each row, i.e. the bits that
+	 * correspond to existing grid columns.
+	 *
+	 * @return Bit mask
+	 */
+	public long lastWordMask() {
+		int r = this.ny & 63;
+		return r == 0 ? -1L : (1L << r) - 1L;
+	}
+
+	/**
+	 * gets the code (0 or 1) that represents the given state object.
+	 *
+	 * @param state State object
+	 * @return Code
+	 * @throws Exception if <tt>state</tt> is not element of the state set
+	 */
+	public int code(Object state) throws Exception {
+		for (int k = 0; k < 2; k++) {
+			if (this.states[k].equals(state)) {
+				return k;
+			}
+		}
+		throw new Exception(
+			"Tried to assign state \"" + state + "\" which is not element " +
+			"of the state set!");
+	}
+
+	/**
+	 * provides direct access to the bit-packed cell states for the time
+	 * step <tt>ti</tt>.
+	 *
+	 * @param ti Time stamp index
+	 * @return Array holding the cell states
+	 * @throws Exception
+	 */
+	public long[] readBuffer(int ti) throws Exception {
+		return this.buf[this.slotForReading(ti)];
+	}
+
+	/**
+	 * provides direct access to the array that will receive the bit-packed
+	 * cell states for the time step <tt>ti</tt>.
+	 *
+	 * @param ti Time stamp index
+	 * @return Array holding the cell states
+	 * @throws Exception
+	 */
+	public long[] writeBuffer(int ti) throws Exception {
+		return this.buf[this.slotForWriting(ti)];
+	}
+
+	private int word(int idx) {
+		return (idx / this.ny) * this.wordsPerRow + ((idx % this.ny) >>> 6);
+	}
+
+	@Override
+	public Object getValue(int ti, int idx) throws Exception {
+		long w = this.buf[this.slotForReading(ti)][this.word(idx)];
+		return this.states[(int) (w >>> (idx % this.ny)) & 1];
+	}
+
+	@Override
+	public void setValue(int ti, int idx, Object val) throws Exception {
+		int code = this.code(val);
+		long[] b = this.buf[this.slotForWriting(ti)];
+		long mask = 1L << (idx % this.ny);
+		if (code == 1)
+			b[this.word(idx)] |= mask;
+		else
+			b[this.word(idx)] &= ~mask;
+	}
+
+	@Override
+	public void fill(int ti, Object val) throws Exception {
+		long[] b = this.writeBuffer(ti);
+		if (this.code(val) == 0) {
+			Arrays.fill(b, 0L);
+			return;
+		}
+		long last = this.lastWordMask();
+		for (int k = 0; k < b.length; k++) {
+			b[k] = (k % this.wordsPerRow == this.wordsPerRow - 1) ? last : -1L;
+		}
+	}
+
+	@Override
+	public void copy(int ti) throws Exception {
+		long[] src = this.readBuffer(ti);
+		System.arraycopy(src, 0, this.writeBuffer(ti + 1), 0, src.length);
+	}
+
+	@Override
+	public void copyRows(int ti, int iMin, int iMax) throws Exception {
+		int w = this.wordsPerRow;
+		System.arraycopy(this.readBuffer(ti), iMin * w, 
+			this.writeBuffer(ti + 1), iMin * w, (iMax - iMin) * w);
+	}
+
+	@Override
+	public boolean hasChanged(int ti, int idx) throws Exception {
+		int k = this.word(idx);
+		long diff = this.readBuffer(ti)[k] ^ this.readBuffer(ti + 1)[k];
+		return ((diff >>> (idx % this.ny)) & 1) != 0;
+	}
+}
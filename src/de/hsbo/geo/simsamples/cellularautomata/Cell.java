@@ -2,6 +2,7 @@ package de.hsbo.geo.simsamples.cellularautomata;
 
 import java.util.List;
 
+import de.hsbo.geo.simsamples.common.RetentionPolicy;
 import de.hsbo.geo.simsamples.common.TimeSeries;
 
 /**
@@ -13,7 +14,7 @@ import de.hsbo.geo.simsamples.common.TimeSeries;
  */
 abstract public class Cell 
 {
-	protected TimeSeries timeSeries = new TimeSeries();
+	protected TimeSeries timeSeries; // will be set by implementing class
 	protected CellularSpace sp = null; // will be set by implementing class
 	protected CellLocation loc; // !
 
@@ -76,6 +77,22 @@ abstract public class Cell
 		this.timeSeries.setValue(ti, val);
 	}
 	
+	/**
+	 * assigns a retention policy to the cell's series of state values. Note 
+	 * that this method has no effect for cells that do not hold a time 
+	 * series, e.g. {@link GridCell}s.
+	 * 
+	 * @see TimeSeries#setRetentionPolicy
+	 * 
+	 * @param policy Retention policy
+	 * @throws Exception
+	 */
+	public void setRetentionPolicy(RetentionPolicy policy) throws Exception {
+		if (this.timeSeries != null) {
+			this.timeSeries.setRetentionPolicy(policy);
+		}
+	}
+
 	/**
 	 * gets information about this cell's location inside the given cellular 
 	 * space.
@@ -2,6 +2,8 @@ package de.hsbo.geo.simsamples.cellularautomata;
 
 import java.util.List;
 
+import de.hsbo.geo.simsamples.common.TimeSeries;
+
 /**
  * Cell definitions implementation.
  * 
@@ -20,14 +22,13 @@ public class CellImpl extends Cell
 	public CellImpl(CellularSpace sp, CellLocation loc) {
 		this.sp = sp;
 		this.loc = loc;
+		this.timeSeries = new TimeSeries();
 	}
 
 	/**
 	 * gets a {@link Cell}s neighbor cells with respect to the given 
-	 * neighborhood definition. 
-	 * TODO The current implementation is limited to neighborhoods consisting 
-	 * of 4 or 8 neighbor cells. Moreover, cyclic neighborhoods have not been 
-	 * implemented yet. However, if needed this all would be easy to implement.
+	 * neighborhood definition. The supported neighborhood definitions are 
+	 * listed in the description of the class {@link NeighborhoodIndex}.
 	 * 
 	 * @param neighDef Neighborhood definition
 	 * @return List of cell objects
@@ -1,9 +1,13 @@
 package de.hsbo.geo.simsamples.cellularautomata;
 
+import java.io.Flushable;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
+import de.hsbo.geo.simsamples.common.FastRandom;
 import de.hsbo.geo.simsamples.common.RandomValueGenerator;
+import de.hsbo.geo.simsamples.common.RetentionPolicy;
 import de.hsbo.geo.simsamples.common.Simulator;
 
 /**
@@ -14,11 +18,43 @@ import de.hsbo.geo.simsamples.common.Simulator;
  * states, and <tt>delta</tt> a transition function. Note that inside this 
  * framework <tt>N</tt> and <tt>Q</tt> will be defined inside concrete 
  * <tt>delta</tt>-implementations, i.e. {@link TransitionFunction}-objects.
+ * <p>
+ * By default, all cells are updated synchronously, i.e. the states for time
+ * step <tt>ti + 1</tt> are derived from the states for <tt>ti</tt>. 
+ * Alternatively, the cells can be updated asynchronously, i.e. one after 
+ * the other in place, see {@link CellularAutomaton#setUpdateMode(int)}. 
+ * Then a time step consists of a sweep of as many single-cell updates as 
+ * there are cells. 
  * 
  * @author Benno Schmidt
  */
 abstract public class CellularAutomaton extends Simulator
 {
+	/** 
+	 * Synchronous updating, i.e. all cells change their states 
+	 * simultaneously (default) 
+	 */
+	static public final int SYNCHRONOUS = 0;
+	/** 
+	 * Random sequential updating, i.e. for each time step, cells will be 
+	 * chosen randomly (with replacement) and updated in place 
+	 */
+	static public final int RANDOM_SEQUENTIAL = 1;
+	/** 
+	 * Asynchronous updating by random permutations, i.e. for each time 
+	 * step, every cell will be updated in place exactly once in random 
+	 * order 
+	 */
+	static public final int RANDOM_PERMUTATION = 2;
+	/** 
+	 * Colour-partitioned updating, i.e. for each time step, the colour 
+	 * classes of a {@link ColorPartition} will be processed in random order; 
+	 * the cells of a colour class do not depend on each other and will be 
+	 * updated in place concurrently, if parallel execution is enabled 
+	 * (supported by {@link RectangularAutomaton}s only)
+	 */
+	static public final int COLORED = 3;
+
 	protected CellularSpace cells; 
 	protected StateSet stateSet;
 	protected boolean initialized = false;
@@ -26,6 +62,10 @@ abstract public class CellularAutomaton extends Simulator
 	protected TransitionFunction delta;
 	protected int ti = 0;
 	
+	protected RetentionPolicy retention = RetentionPolicy.ALL();
+	protected List<StateSink> sinks = new ArrayList<StateSink>();
+	protected int updateMode = SYNCHRONOUS;
+	
 	
 	/**
 	 * gets the cellular space as part of the automaton definition.
@@ -71,6 +111,120 @@ abstract public class CellularAutomaton extends Simulator
 		}
 	}
 
+	/**
+	 * gets the retention policy for the cells' state values.
+	 * 
+	 * @return Retention policy
+	 */
+	public RetentionPolicy getRetentionPolicy() {
+		return this.retention;
+	}
+
+	/**
+	 * assigns a retention policy to all cells of the automaton. By default, 
+	 * the state values for all time steps will be kept in memory. For long 
+	 * simulation runs, a bounded policy, e.g. {@link RetentionPolicy#LAST(
+	 * int)} or {@link RetentionPolicy#EVERY(int)}, should be used instead.
+	 * Note that transition functions usually require the state values for 
+	 * two time steps, <tt>ti</tt> and <tt>ti + 1</tt>. For {@link 
+	 * PrimitiveRectangularSpace}s, the policy has no effect.
+	 * 
+	 * @param policy Retention policy
+	 * @throws Exception
+	 */
+	public void setRetentionPolicy(RetentionPolicy policy) throws Exception 
+	{
+		this.retention = policy;
+		if (this.cells == null || 
+			this.cells instanceof PrimitiveRectangularSpace) 
+		{
+			return;
+		}
+		for (Cell c : this.cells.getCells()) {
+			c.setRetentionPolicy(policy);
+		}
+	}
+
+	/**
+	 * gets the update mode.
+	 * 
+	 * @return Update mode, e.g. {@link CellularAutomaton#SYNCHRONOUS}
+	 */
+	public int getUpdateMode() {
+		return this.updateMode;
+	}
+
+	/**
+	 * sets the update mode. For the asynchronous modes {@link 
+	 * CellularAutomaton#RANDOM_SEQUENTIAL}, {@link 
+	 * CellularAutomaton#RANDOM_PERMUTATION} and {@link 
+	 * CellularAutomaton#COLORED}, the transition function has to support 
+	 * in-place updates, see {@link TransitionFunction#update(Cell, int, 
+	 * FastRandom)}. The random numbers used for a time step will be drawn 
+	 * from a {@link FastRandom} generator seeded by {@link 
+	 * RandomValueGenerator#nextSeed()}, thus simulation runs are 
+	 * reproducible for seeded runs and can be checkpointed.
+	 * 
+	 * @param mode Update mode (default: {@link CellularAutomaton#SYNCHRONOUS})
+	 * @throws Exception if the mode is not supported
+	 */
+	public void setUpdateMode(int mode) throws Exception 
+	{
+		if (mode < SYNCHRONOUS || mode > COLORED) {
+			throw new Exception("Unsupported update mode " + mode + "!");
+		}
+		this.updateMode = mode;
+	}
+
+	/**
+	 * registers a sink that will receive the cell states for each time step 
+	 * during simulation runs. In combination with a bounded retention policy
+	 * (see {@link CellularAutomaton#setRetentionPolicy(RetentionPolicy)}), 
+	 * results can be streamed out while memory consumption remains constant.
+	 * 
+	 * @param sink State sink
+	 */
+	public void addSink(StateSink sink) {
+		this.sinks.add(sink);
+	}
+
+	/**
+	 * removes a registered state sink.
+	 * 
+	 * @param sink State sink
+	 */
+	public void removeSink(StateSink sink) {
+		this.sinks.remove(sink);
+	}
+
+	/**
+	 * passes the cell states for the time step <tt>ti</tt> to all registered
+	 * sinks.
+	 * 
+	 * @param ti Time stamp index
+	 * @throws Exception
+	 */
+	protected void notifySinks(int ti) throws Exception {
+		for (StateSink sink : this.sinks) {
+			sink.write(this.cells, ti);
+		}
+	}
+
+	/**
+	 * waits until all registered sinks that write asynchronously (i.e. 
+	 * implement the interface <tt>java.io.Flushable</tt>) have processed 
+	 * the cell states passed to them.
+	 * 
+	 * @throws Exception
+	 */
+	protected void flushSinks() throws Exception {
+		for (StateSink sink : this.sinks) {
+			if (sink instanceof Flushable) {
+				((Flushable) sink).flush();
+			}
+		}
+	}
+
 	protected void initialize() throws Exception 
 	{
 		this.initializeRandomly();
@@ -161,6 +315,11 @@ abstract public class CellularAutomaton extends Simulator
 	 */
 	public void step() throws Exception 
 	{
+		if (this.updateMode != SYNCHRONOUS) {
+			this.stepAsynchronous();
+			return;
+		}
+
 		this.delta.beforeStep(this.ti); 
 		// Step for automaton, could be implemented as empty function!
 
@@ -173,6 +332,48 @@ abstract public class CellularAutomaton extends Simulator
 		this.delta.step(this.ti); 
 		// Step for automaton, could be implemented as empty function!
 	}
+
+	/**
+	 * executes the assigned transition function for a single time step in 
+	 * one of the asynchronous update modes. First, the cell states for 
+	 * <tt>ti</tt> will be copied to <tt>ti + 1</tt>; then the cells will be
+	 * updated in place for <tt>ti + 1</tt>.
+	 * 
+	 * @throws Exception
+	 */
+	protected void stepAsynchronous() throws Exception 
+	{
+		if (this.updateMode == COLORED) {
+			throw new Exception("Colour-partitioned updating is supported " +
+				"by rectangular automata only!");
+		}
+
+		this.delta.beforeStep(this.ti); 
+
+		List<Cell> cs = this.cells.getCells();
+		for (Cell c : cs) {	
+			c.setValue(this.ti + 1, c.getValue(this.ti));
+		}
+
+		FastRandom rand = new FastRandom(RandomValueGenerator.nextSeed());
+		int n = cs.size();
+		if (this.updateMode == RANDOM_SEQUENTIAL) {
+			for (int k = 0; k < n; k++) {
+				this.delta.update(cs.get(rand.nextInt(n)), this.ti + 1, rand);
+			}
+		} else {
+			int[] perm = new int[n];
+			for (int k = 0; k < n; k++) {
+				perm[k] = k;
+			}
+			rand.shuffle(perm);
+			for (int k = 0; k < n; k++) {
+				this.delta.update(cs.get(perm[k]), this.ti + 1, rand);
+			}
+		}
+
+		this.delta.step(this.ti); 
+	}
 	
 	public String toString() 
 	{
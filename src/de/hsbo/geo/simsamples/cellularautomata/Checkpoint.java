@@ -0,0 +1,481 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import de.hsbo.geo.simsamples.common.RandomValueGenerator;
+
+/**
+ * Checkpoint of a {@link RectangularAutomaton} simulation run. A checkpoint
+ * holds the cell states of a single time step <tt>ti</tt>, the state of the
+ * pseudo random number generator (see {@link RandomValueGenerator}) and the
+ * parameters of the transition function (see {@link
+ * TransitionFunction#writeParameters(java.io.DataOutput)}). Thus, an
+ * interrupted simulation run can be resumed from the checkpoint, see {@link
+ * RectangularAutomaton#resume(String, int)}. Note that older cell states
+ * will not be restored.
+ * <p>
+ * Checkpoint files consist of an uncompressed header followed by the
+ * Deflate-compressed cell states. Continuous cell states are stored as
+ * <tt>double</tt>s, discrete cell states as <tt>byte</tt> codes referring
+ * to the (sorted) state set. <i>Delta checkpoints</i> hold only the states
+ * of the cells that changed since the previous checkpoint, which will be
+ * referenced by its file name. Files will be written to a temporary file
+ * first and renamed afterwards, so that a crash while writing does not
+ * destroy existing checkpoints.
+ *
+ * @see CheckpointWriter
+ *
+ * @author Benno Schmidt
+ */
+public class Checkpoint
+{
+	static private final byte[] MAGIC = new byte[] {
+		'S', 'I', 'M', 'C', 'K', 'P', 'T', '1'
+	};
+	static private final int BLOCK_SIZE = 4096; // values
+
+	private int nx, ny, ti, encoding;
+	private Object[] states = null;
+	private double[] doubles = null; // FLOAT64 encoding
+	private byte[] codes = null; // UINT8 encoding
+	private byte[] rngState = null;
+	private byte[] parameters = null;
+
+
+	private Checkpoint() {
+	}
+
+	/**
+	 * gets the time stamp index of the checkpoint.
+	 *
+	 * @return Time stamp index
+	 */
+	public int getTimeStamp() {
+		return this.ti;
+	}
+
+	/**
+	 * returns the number of rows of the cellular grid.
+	 */
+	public int numberOfRows() {
+		return this.nx;
+	}
+
+	/**
+	 * returns the number of columns of the cellular grid.
+	 */
+	public int numberOfColumns() {
+		return this.ny;
+	}
+
+	/**
+	 * copies the current cell states, the state of the pseudo random number
+	 * generator and the transition function's parameters of an automaton.
+	 *
+	 * @param a Automaton
+	 * @return Checkpoint
+	 * @throws Exception
+	 */
+	static public Checkpoint capture(RectangularAutomaton a) throws Exception
+	{
+		RectangularSpace sp = (RectangularSpace) a.getCellularSpace();
+		Checkpoint cp = new Checkpoint();
+		cp.nx = sp.numberOfRows();
+		cp.ny = sp.numberOfColumns();
+		cp.ti = a.ti;
+		Snapshot s = Snapshot.capture(sp, cp.ti);
+		cp.encoding = s.getEncoding();
+		cp.states = s.getStates();
+		cp.doubles = s.doubles();
+		cp.codes = s.codes();
+
+		cp.rngState = RandomValueGenerator.getState();
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(b);
+		a.getDelta().writeParameters(out);
+		out.close();
+		cp.parameters = b.toByteArray();
+		return cp;
+	}
+
+	/**
+	 * restores the checkpoint's cell states for the time step
+	 * <tt>getTimeStamp()</tt>, the state of the pseudo random number
+	 * generator and the transition function's parameters. Afterwards, the
+	 * automaton's current time step will be <tt>getTimeStamp()</tt>.
+	 *
+	 * @param a Automaton
+	 * @throws Exception if the automaton does not match the checkpoint
+	 */
+	public void restore(RectangularAutomaton a) throws Exception
+	{
+		RectangularSpace sp = (RectangularSpace) a.getCellularSpace();
+		if (sp.numberOfRows() != this.nx || sp.numberOfColumns() != this.ny) {
+			throw new Exception("Cellular space size " +
+				sp.numberOfRows() + "x" + sp.numberOfColumns() +
+				" does not match checkpoint size " +
+				this.nx + "x" + this.ny + "!");
+		}
+		boolean discrete = a.getStateSet() instanceof DiscreteStateSet;
+		if (discrete != (this.encoding == RasterFile.UINT8)) {
+			throw new Exception(
+				"The automaton's state set does not match the checkpoint!");
+		}
+		StateGrid g = a.getStateGrid();
+		int ti = this.ti;
+
+		if (discrete) {
+			if (g instanceof DiscreteStateGrid && this.hasSameCodes(
+				(DiscreteStateGrid) g))
+			{
+				System.arraycopy(this.codes, 0, 
+					((DiscreteStateGrid) g).writeBuffer(ti), 0, 
+					this.codes.length);
+			}
+			else {
+				for (int i = 0; i < this.nx; i++) {
+					for (int j = 0; j < this.ny; j++) {
+						Object s = this.states[this.codes[i * this.ny + j] & 0xff];
+						if (g != null)
+							g.setValue(ti, g.index(i, j), s);
+						else
+							sp.getCell(i, j).setValue(ti, s);
+					}
+				}
+			}
+		}
+		else {
+			if (g instanceof ContinuousStateGrid) {
+				System.arraycopy(this.doubles, 0,
+					((ContinuousStateGrid) g).writeBuffer(ti), 0,
+					this.doubles.length);
+			}
+			else {
+				double[] row = new double[this.ny];
+				for (int i = 0; i < this.nx; i++) {
+					System.arraycopy(this.doubles, i * this.ny, row, 0, this.ny);
+					if (g instanceof MappedStateGrid) {
+						((MappedStateGrid) g).writeRow(ti, i, row);
+						continue;
+					}
+					for (int j = 0; j < this.ny; j++) {
+						if (g instanceof DoubleStateAccess)
+							((DoubleStateAccess) g).setDouble(ti, i, j, row[j]);
+						else if (g != null)
+							g.setValue(ti, g.index(i, j), row[j]);
+						else
+							sp.getCell(i, j).setValue(ti, row[j]);
+					}
+				}
+			}
+		}
+
+		if (this.rngState != null && this.rngState.length > 0) {
+			RandomValueGenerator.setState(this.rngState);
+		}
+		a.getDelta().readParameters(new DataInputStream(
+			new ByteArrayInputStream(this.parameters)));
+		a.ti = ti;
+		a.initialized = true;
+		a.markAllActive();
+	}
+
+	private boolean hasSameCodes(DiscreteStateGrid g) throws Exception 
+	{
+		if (g.numberOfStates() != this.states.length) 
+			return false;
+		for (int k = 0; k < this.states.length; k++) {
+			if (g.code(this.states[k]) != (byte) k) 
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * writes the checkpoint to a file. If a previous checkpoint is given,
+	 * a delta checkpoint holding only the changed cell states will be
+	 * written.
+	 *
+	 * @param filename Name (incl. path) of the checkpoint file
+	 * @param previous Previous checkpoint or <i>null</i>
+	 * @param previousFilename Name of the previous checkpoint's file; the
+	 * file has to reside inside the same directory
+	 * @throws Exception
+	 */
+	public void write(
+		String filename, Checkpoint previous, String previousFilename)
+		throws Exception
+	{
+		if (previous != null && (previous.nx != this.nx ||
+			previous.ny != this.ny || previous.encoding != this.encoding))
+		{
+			throw new Exception("Incompatible previous checkpoint!");
+		}
+		File f = new File(filename), tmp = new File(filename + ".tmp");
+		DataOutputStream out = new DataOutputStream(
+			new BufferedOutputStream(new FileOutputStream(tmp)));
+		Deflater def = null;
+		boolean done = false;
+		try {
+			out.write(MAGIC);
+			out.writeInt(this.nx);
+			out.writeInt(this.ny);
+			out.writeInt(this.ti);
+			out.writeByte(this.encoding);
+			out.writeInt(this.states == null ? 0 : this.states.length);
+			if (this.states != null) {
+				for (Object s : this.states) {
+					out.writeChar(RasterFile.stateType(s));
+					out.writeUTF(s.toString());
+				}
+			}
+			out.writeUTF(previous == null ?
+				"" : new File(previousFilename).getName());
+			out.writeInt(this.rngState.length);
+			out.write(this.rngState);
+			out.writeInt(this.parameters.length);
+			out.write(this.parameters);
+
+			def = new Deflater(Deflater.BEST_SPEED);
+			DataOutputStream z = new DataOutputStream(
+				new DeflaterOutputStream(out, def, 1 << 16));
+			if (previous == null) {
+				this.writeValues(z, null);
+			}
+			else {
+				// Bitmap of changed cells, followed by their values:
+				int n = this.nx * this.ny;
+				long[] changed = new long[(n + 63) >>> 6];
+				int count = 0;
+				for (int k = 0; k < n; k++) {
+					if (this.differs(previous, k)) {
+						changed[k >>> 6] |= 1L << k;
+						count++;
+					}
+				}
+				z.writeInt(count);
+				for (long w : changed) {
+					z.writeLong(w);
+				}
+				this.writeValues(z, changed);
+			}
+			z.close();
+			out = null;
+
+			if (f.exists() && !f.delete() || !tmp.renameTo(f)) {
+				throw new Exception(
+					"Could not write checkpoint file \"" + filename + "\"!");
+			}
+			done = true;
+		}
+		finally {
+			if (def != null) {
+				def.end();
+			}
+			try {
+				if (out != null) {
+					out.close();
+				}
+			}
+			finally {
+				if (!done) {
+					tmp.delete();
+				}
+			}
+		}
+	}
+
+	private boolean differs(Checkpoint previous, int k) {
+		if (this.encoding == RasterFile.UINT8)
+			return this.codes[k] != previous.codes[k];
+		return Double.doubleToRawLongBits(this.doubles[k]) !=
+			Double.doubleToRawLongBits(previous.doubles[k]);
+	}
+
+	/**
+	 * writes all cell values or the values of the cells marked inside the
+	 * given bitmap.
+	 */
+	private void writeValues(DataOutputStream z, long[] changed)
+		throws Exception
+	{
+		if (this.encoding == RasterFile.UINT8) {
+			if (changed == null) {
+				z.write(this.codes);
+				return;
+			}
+			for (int w = 0; w < changed.length; w++) {
+				for (long b = changed[w]; b != 0L; b &= b - 1L) {
+					z.writeByte(this.codes[
+						(w << 6) + Long.numberOfTrailingZeros(b)]);
+				}
+			}
+			return;
+		}
+		ByteBuffer buf = ByteBuffer.allocate(8 * BLOCK_SIZE);
+		int m = 0;
+		for (int w = 0, n = this.doubles.length; ; ) {
+			int k;
+			if (changed == null) {
+				if (m >= n) break;
+				k = m++;
+			} else {
+				while (w < changed.length && changed[w] == 0L) w++;
+				if (w >= changed.length) break;
+				k = (w << 6) + Long.numberOfTrailingZeros(changed[w]);
+				changed[w] &= changed[w] - 1L;
+			}
+			buf.putDouble(this.doubles[k]);
+			if (!buf.hasRemaining()) {
+				z.write(buf.array(), 0, buf.position());
+				buf.clear();
+			}
+		}
+		z.write(buf.array(), 0, buf.position());
+	}
+
+	/**
+	 * reads a checkpoint file. For delta checkpoints, the referenced
+	 * previous checkpoints will be read, too.
+	 *
+	 * @param filename Name (incl. path) of the checkpoint file
+	 * @return Checkpoint
+	 * @throws Exception if the file is no valid checkpoint file
+	 */
+	static public Checkpoint read(String filename) throws Exception
+	{
+		DataInputStream in = new DataInputStream(
+			new BufferedInputStream(new FileInputStream(filename)));
+		try {
+			byte[] magic = new byte[MAGIC.length];
+			in.readFully(magic);
+			for (int k = 0; k < MAGIC.length; k++) {
+				if (magic[k] != MAGIC[k]) {
+					throw new Exception(
+						"File \"" + filename + "\" is no checkpoint file!");
+				}
+			}
+			Checkpoint cp = new Checkpoint();
+			cp.nx = in.readInt();
+			cp.ny = in.readInt();
+			cp.ti = in.readInt();
+			cp.encoding = in.readByte();
+			int ns = in.readInt();
+			if (cp.encoding == RasterFile.UINT8) {
+				cp.states = new Object[ns];
+				for (int k = 0; k < ns; k++) {
+					char type = in.readChar();
+					cp.states[k] = RasterFile.decodeState(type, in.readUTF());
+				}
+			}
+			String previous = in.readUTF();
+			cp.rngState = new byte[in.readInt()];
+			in.readFully(cp.rngState);
+			cp.parameters = new byte[in.readInt()];
+			in.readFully(cp.parameters);
+
+			DataInputStream z = new DataInputStream(
+				new BufferedInputStream(new InflaterInputStream(in), 1 << 16));
+			int n = cp.nx * cp.ny;
+			if (previous.length() == 0) {
+				if (cp.encoding == RasterFile.UINT8) {
+					cp.codes = new byte[n];
+					z.readFully(cp.codes);
+				} else {
+					cp.doubles = new double[n];
+					readDoubles(z, cp.doubles, null, n);
+				}
+			}
+			else {
+				File base = new File(new File(filename).getParentFile(), previous);
+				Checkpoint prev = read(base.getPath());
+				if (prev.nx != cp.nx || prev.ny != cp.ny ||
+					prev.encoding != cp.encoding)
+				{
+					throw new Exception("Incompatible previous checkpoint \"" +
+						base.getPath() + "\"!");
+				}
+				cp.codes = prev.codes;
+				cp.doubles = prev.doubles;
+				int count = z.readInt();
+				long[] changed = new long[(n + 63) >>> 6];
+				for (int w = 0; w < changed.length; w++) {
+					changed[w] = z.readLong();
+				}
+				if (cp.encoding == RasterFile.UINT8) {
+					byte[] vals = new byte[count];
+					z.readFully(vals);
+					int m = 0;
+					for (int w = 0; w < changed.length; w++) {
+						for (long b = changed[w]; b != 0L; b &= b - 1L) {
+							cp.codes[(w << 6) + Long.numberOfTrailingZeros(b)] =
+								vals[m++];
+						}
+					}
+				} else {
+					readDoubles(z, cp.doubles, changed, count);
+				}
+			}
+			return cp;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * reads <tt>count</tt> values, either for all cells or for the cells 
+	 * marked inside the given bitmap.
+	 */
+	static private void readDoubles(DataInputStream z, double[] vals,
+		long[] changed, int count) throws Exception
+	{
+		byte[] buf = new byte[8 * BLOCK_SIZE];
+		ByteBuffer b = ByteBuffer.wrap(buf);
+		b.limit(0);
+		for (int w = 0, m = 0; m < count; m++) {
+			int k = m;
+			if (changed != null) {
+				while (changed[w] == 0L) w++;
+				k = (w << 6) + Long.numberOfTrailingZeros(changed[w]);
+				changed[w] &= changed[w] - 1L;
+			}
+			if (!b.hasRemaining()) {
+				int len = 8 * Math.min(BLOCK_SIZE, count - m);
+				z.readFully(buf, 0, len);
+				b.clear();
+				b.limit(len);
+			}
+			vals[k] = b.getDouble();
+		}
+	}
+
+	public String toString()
+	{
+		StringBuffer s = new StringBuffer();
+
+		s.append("(");
+		s.append(this.getClass().getSimpleName());
+		s.append(": ti = ");
+		s.append(this.ti);
+		s.append(", ");
+		s.append(this.nx);
+		s.append("x");
+		s.append(this.ny);
+		s.append(")");
+
+		return s.toString();
+	}
+}
@@ -0,0 +1,168 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writer for periodic {@link Checkpoint}s of {@link RectangularAutomaton}
+ * simulation runs. The cell states will be copied by the simulation thread;
+ * compression and file output take place asynchronously in a background
+ * thread, so that stepping does not stall. At most one checkpoint will be
+ * pending; if the next checkpoint is due before the previous one has been
+ * written, the simulation thread waits.
+ * <p>
+ * The checkpoint for the time step <tt>ti</tt> will be written to the file
+ * <tt>&lt;basename&gt;.&lt;ti&gt;.ckpt</tt>. Optionally, delta checkpoints
+ * can be written, which hold only the cells that changed since the
+ * previous checkpoint; then, every <tt>fullInterval</tt>-th checkpoint will
+ * be a full checkpoint.
+ *
+ * @see RectangularAutomaton#enableCheckpoints(String, int, int)
+ *
+ * @author Benno Schmidt
+ */
+public class CheckpointWriter
+{
+	private String basename;
+	private int interval, fullInterval;
+	private int count = 0;
+	private ExecutorService executor;
+	private Future<Object> pending = null;
+	private Checkpoint previous = null; // used by the writer thread only
+	private String previousFile = null;
+	private String latestFile = null;
+
+
+	/**
+	 * Constructor. Only full checkpoints will be written.
+	 *
+	 * @param basename File name (incl. path) without extension
+	 * @param interval Number of time steps between two checkpoints
+	 */
+	public CheckpointWriter(String basename, int interval) {
+		this(basename, interval, 1);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param basename File name (incl. path) without extension
+	 * @param interval Number of time steps between two checkpoints
+	 * @param fullInterval Every <tt>fullInterval</tt>-th checkpoint will be
+	 * a full checkpoint, all others will be delta checkpoints
+	 */
+	public CheckpointWriter(String basename, int interval, int fullInterval)
+	{
+		this.basename = basename;
+		this.interval = Math.max(interval, 1);
+		this.fullInterval = Math.max(fullInterval, 1);
+		this.executor = Executors.newSingleThreadExecutor(
+			Concurrency.daemonThreads());
+	}
+
+	/**
+	 * gets the name of the checkpoint file for the time step <tt>ti</tt>.
+	 *
+	 * @param ti Time stamp index
+	 * @return File name (incl. path)
+	 */
+	public String getFilename(int ti) {
+		return this.basename + "." + ti + ".ckpt";
+	}
+
+	/**
+	 * gets the name of the file holding the latest checkpoint that has been
+	 * written completely.
+	 *
+	 * @return File name (incl. path) or <i>null</i>
+	 */
+	public synchronized String getLatestFile() {
+		return this.latestFile;
+	}
+
+	/**
+	 * checks if a checkpoint is due for the time step <tt>ti</tt>.
+	 *
+	 * @param ti Time stamp index
+	 * @return <i>true</i> if a checkpoint should be written
+	 */
+	public boolean isDue(int ti) {
+		return ti > 0 && ti % this.interval == 0;
+	}
+
+	/**
+	 * writes a checkpoint for the automaton's current time step. After the
+	 * pending checkpoint has been written, the cell states will be copied
+	 * immediately; the file will be written in the background.
+	 *
+	 * @param a Automaton
+	 * @throws Exception if writing the previous checkpoint failed
+	 */
+	public void write(RectangularAutomaton a) throws Exception
+	{
+		// Wait first, so that at most one copy of the cell states is held:
+		this.flush();
+		final Checkpoint cp = Checkpoint.capture(a);
+		final boolean full = this.count % this.fullInterval == 0;
+		this.count++;
+		this.pending = this.executor.submit(new Callable<Object>() {
+			public Object call() throws Exception {
+				String f = getFilename(cp.getTimeStamp());
+				cp.write(f, full ? null : previous, previousFile);
+				previous = cp;
+				previousFile = f;
+				synchronized (CheckpointWriter.this) {
+					latestFile = f;
+				}
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * waits until the pending checkpoint has been written.
+	 *
+	 * @throws Exception if writing the checkpoint failed
+	 */
+	public void flush() throws Exception
+	{
+		if (this.pending == null)
+			return;
+		Future<Object> f = this.pending;
+		this.pending = null;
+		Concurrency.get(f);
+	}
+
+	/**
+	 * waits until the pending checkpoint has been written and stops the
+	 * background thread. Afterwards, the writer must not be used anymore.
+	 *
+	 * @throws Exception if writing the checkpoint failed
+	 */
+	public void close() throws Exception
+	{
+		try {
+			this.flush();
+		}
+		finally {
+			this.executor.shutdown();
+		}
+	}
+
+	public String toString()
+	{
+		StringBuffer s = new StringBuffer();
+
+		s.append("(");
+		s.append(this.getClass().getSimpleName());
+		s.append(": ");
+		s.append(this.basename);
+		s.append(", every ");
+		s.append(this.interval);
+		s.append(" steps)");
+
+		return s.toString();
+	}
+}
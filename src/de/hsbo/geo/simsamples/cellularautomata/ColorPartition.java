@@ -0,0 +1,183 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+import java.util.Arrays;
+
+/**
+ * Partition of the cells of a rectangular grid into colour classes, such 
+ * that no cell is part of the neighborhood of another cell of the same 
+ * colour. Thus, the cells of a colour class can be updated in place 
+ * concurrently, see {@link CellularAutomaton#COLORED}. For the Von Neumann 
+ * neighborhood, the partition is the well-known checkerboard pattern.
+ * <p>
+ * The colour of the cell (<tt>i</tt>, <tt>j</tt>) is given by <tt>(i + s * 
+ * j) mod m</tt>. The smallest number of colours <tt>m</tt> (and a matching
+ * factor <tt>s</tt>) will be determined for the given neighborhood table; 
+ * e.g., the Moore neighborhood requires 4 colours, the hexagonal 
+ * neighborhood 3 colours. For cyclic neighborhoods, the partition must 
+ * be consistent across the grid edges, which may require more colours 
+ * depending on the grid size. If no such partition exists, the cells will
+ * be coloured greedily in row-major order instead.
+ *
+ * @author Benno Schmidt
+ */
+public class ColorPartition
+{
+	private int nx, ny;
+	private int m = 0, s = 0;
+	private byte[] colorOf = null; // only set for greedy colouring
+	private int[][] columns; // i * m + colour -> column indices
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 * @param table Neighborhood table
+	 * @throws Exception if the neighborhood is too large
+	 */
+	public ColorPartition(int nx, int ny, NeighborhoodTable table)
+		throws Exception
+	{
+		this.nx = nx;
+		this.ny = ny;
+
+		int[] di = table.getRowOffsets(), dj = table.getColumnOffsets();
+		int d = table.haloWidth();
+		int mMax = (2 * d + 1) * (2 * d + 1);
+		for (int m = 2; m <= mMax && this.m == 0; m++) {
+			if (table.isCyclic() && nx % m != 0)
+				continue;
+			for (int s = 0; s < m; s++) {
+				if (table.isCyclic() && (s * ny) % m != 0)
+					continue;
+				if (this.isValid(di, dj, m, s)) {
+					this.m = m;
+					this.s = s;
+					break;
+				}
+			}
+		}
+		if (this.m == 0) {
+			this.colorGreedily(table);
+		}
+
+		// Column indices per row and colour (shared by rows that are 
+		// congruent modulo m for regular partitions):
+		this.columns = new int[nx * this.m][];
+		for (int i = 0; i < nx; i++) {
+			if (this.colorOf == null && i >= this.m) {
+				for (int c = 0; c < this.m; c++) {
+					this.columns[i * this.m + c] = 
+						this.columns[(i % this.m) * this.m + c];
+				}
+				continue;
+			}
+			int[] count = new int[this.m];
+			for (int j = 0; j < ny; j++) {
+				count[this.color(i, j)]++;
+			}
+			for (int c = 0; c < this.m; c++) {
+				this.columns[i * this.m + c] = new int[count[c]];
+				count[c] = 0;
+			}
+			for (int j = 0; j < ny; j++) {
+				int c = this.color(i, j);
+				this.columns[i * this.m + c][count[c]++] = j;
+			}
+		}
+	}
+
+	/**
+	 * assigns the smallest colour not used by any neighbor cell coloured 
+	 * before to each cell.
+	 */
+	private void colorGreedily(NeighborhoodTable table) throws Exception
+	{
+		if (table.size() >= 127) {
+			throw new Exception("Could not partition " + this.nx + "x" + 
+				this.ny + " grid for neighborhood table " + table + "!");
+		}
+		this.colorOf = new byte[this.nx * this.ny];
+		Arrays.fill(this.colorOf, (byte) -1);
+		int[] neighs = new int[table.size()];
+		boolean[] used = new boolean[table.size() + 1];
+		for (int i = 0; i < this.nx; i++) {
+			for (int j = 0; j < this.ny; j++) {
+				Arrays.fill(used, false);
+				int n = table.neighbors(i, j, neighs);
+				for (int k = 0; k < n; k++) {
+					int c = this.colorOf[neighs[k]];
+					if (c >= 0)
+						used[c] = true;
+				}
+				int c = 0;
+				while (used[c]) {
+					c++;
+				}
+				this.colorOf[i * this.ny + j] = (byte) c;
+				this.m = Math.max(this.m, c + 1);
+			}
+		}
+	}
+
+	private boolean isValid(int[] di, int[] dj, int m, int s) 
+	{
+		for (int k = 0; k < di.length; k++) {
+			if (((di[k] + s * dj[k]) % m + m) % m == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * gets the number of colour classes.
+	 *
+	 * @return Number of colours
+	 */
+	public int numberOfColors() {
+		return this.m;
+	}
+
+	/**
+	 * gets the colour of the cell in row <tt>i</tt> and column <tt>j</tt>.
+	 *
+	 * @param i Row index
+	 * @param j Column index
+	 * @return Colour (0 .. <tt>numberOfColors() - 1</tt>)
+	 */
+	public int color(int i, int j) {
+		if (this.colorOf != null)
+			return this.colorOf[i * this.ny + j];
+		return (i + this.s * j) % this.m;
+	}
+
+	/**
+	 * provides the column indices of the cells of the given colour inside 
+	 * row <tt>i</tt>. The returned array must not be modified.
+	 *
+	 * @param i Row index
+	 * @param color Colour
+	 * @return Array of column indices in ascending order
+	 */
+	public int[] columns(int i, int color) {
+		return this.columns[i * this.m + color];
+	}
+
+	public String toString()
+	{
+		StringBuffer s = new StringBuffer();
+
+		s.append("(");
+		s.append(this.getClass().getSimpleName());
+		s.append(": ");
+		s.append(this.nx);
+		s.append("x");
+		s.append(this.ny);
+		s.append(", ");
+		s.append(this.m);
+		s.append(" colours)");
+
+		return s.toString();
+	}
+}
@@ -0,0 +1,56 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Helper methods for the classes of this package that use background
+ * threads.
+ *
+ * @author Benno Schmidt
+ */
+final class Concurrency
+{
+	static private final ThreadFactory DAEMON_THREADS = new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r);
+			t.setDaemon(true);
+			return t;
+		}
+	};
+
+
+	private Concurrency() {
+	}
+
+	/**
+	 * gets a thread factory creating daemon threads, which do not prevent
+	 * the JVM from exiting.
+	 *
+	 * @return Thread factory
+	 */
+	static ThreadFactory daemonThreads() {
+		return DAEMON_THREADS;
+	}
+
+	/**
+	 * waits for the result of a task. If the task failed, the exception
+	 * that has been thrown by the task will be re-thrown.
+	 *
+	 * @param f Task result
+	 * @return Result
+	 * @throws Exception
+	 */
+	static <T> T get(Future<T> f) throws Exception
+	{
+		try {
+			return f.get();
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+import java.util.Arrays;
+
+/**
+ * Primitive state storage for automata operating on a {@link
+ * ContinuousStateSet}. The cell states are held as <tt>double</tt> values.
+ *
+ * @author Benno Schmidt
+ */
+public class ContinuousStateGrid extends StateGrid 
+	implements DoubleStateAccess
+{
+	private double[][] buf;
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 */
+	public ContinuousStateGrid(int nx, int ny) {
+		super(nx, ny);
+		this.buf = new double[2][nx * ny];
+	}
+
+	/**
+	 * provides direct access to the cell states for the time step
+	 * <tt>ti</tt>.
+	 *
+	 * @param ti Time stamp index
+	 * @return Array holding the cell states
+	 * @throws Exception
+	 */
+	public double[] readBuffer(int ti) throws Exception {
+		return this.buf[this.slotForReading(ti)];
+	}
+
+	/**
+	 * provides direct access to the array that will receive the cell states
+	 * for the time step <tt>ti</tt>.
+	 *
+	 * @param ti Time stamp index
+	 * @return Array holding the cell states
+	 * @throws Exception
+	 */
+	public double[] writeBuffer(int ti) throws Exception {
+		return this.buf[this.slotForWriting(ti)];
+	}
+
+	/**
+	 * gets the state of the cell in row <tt>i</tt> and column <tt>j</tt>.
+	 *
+	 * @param ti Time stamp index
+	 * @param i Row index
+	 * @param j Column index
+	 * @return Cell value
+	 * @throws Exception
+	 */
+	public double getDouble(int ti, int i, int j) throws Exception {
+		return this.buf[this.slotForReading(ti)][this.index(i, j)];
+	}
+
+	/**
+	 * sets the state of the cell in row <tt>i</tt> and column <tt>j</tt>.
+	 *
+	 * @param ti Time stamp index
+	 * @param i Row index
+	 * @param j Column index
+	 * @param z Cell value
+	 * @throws Exception
+	 */
+	public void setDouble(int ti, int i, int j, double z) throws Exception {
+		this.buf[this.slotForWriting(ti)][this.index(i, j)] = z;
+	}
+
+	@Override
+	public Object getValue(int ti, int idx) throws Exception {
+		return this.buf[this.slotForReading(ti)][idx];
+	}
+
+	@Override
+	public void setValue(int ti, int idx, Object val) throws Exception {
+		this.buf[this.slotForWriting(ti)][idx] = this.toDouble(val);
+	}
+
+	@Override
+	public void fill(int ti, Object val) throws Exception {
+		Arrays.fill(this.writeBuffer(ti), this.toDouble(val));
+	}
+
+	@Override
+	public void copy(int ti) throws Exception {
+		double[] src = this.readBuffer(ti);
+		System.arraycopy(src, 0, this.writeBuffer(ti + 1), 0, src.length);
+	}
+
+	@Override
+	public void copyRows(int ti, int iMin, int iMax) throws Exception {
+		System.arraycopy(this.readBuffer(ti), iMin * this.ny, 
+			this.writeBuffer(ti + 1), iMin * this.ny, (iMax - iMin) * this.ny);
+	}
+
+	@Override
+	public boolean hasChanged(int ti, int idx) throws Exception {
+		return this.readBuffer(ti)[idx] != this.readBuffer(ti + 1)[idx];
+	}
+
+	private double toDouble(Object val) throws Exception {
+		if (!(val instanceof Number)) {
+			throw new Exception(
+				"Tried to assign non-numeric value \"" + val + "\"!");
+		}
+		return ((Number) val).doubleValue();
+	}
+}
@@ -0,0 +1,131 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+import java.util.Arrays;
+
+/**
+ * Primitive state storage for automata operating on a {@link
+ * DiscreteStateSet}. Each cell state is encoded by a <tt>byte</tt> value
+ * giving the position of the state object inside the (sorted) state set.
+ * Thus, at most 256 different states are supported.
+ *
+ * @author Benno Schmidt
+ */
+public class DiscreteStateGrid extends StateGrid
+{
+	private byte[][] buf;
+	private Object[] states;
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 * @param states Set of cell states
+	 */
+	public DiscreteStateGrid(int nx, int ny, DiscreteStateSet states) {
+		super(nx, ny);
+		this.states = states.getAsSet().toArray();
+		if (this.states.length > 256) {
+			throw new IllegalArgumentException(
+				"State sets consisting of more than 256 states " +
+				"are not supported!");
+		}
+		this.buf = new byte[2][nx * ny];
+	}
+
+	/**
+	 * gets the number of cell states.
+	 *
+	 * @return Number of states
+	 */
+	public int numberOfStates() {
+		return this.states.length;
+	}
+
+	/**
+	 * gets the code that represents the given state object inside the grid.
+	 *
+	 * @param state State object
+	 * @return Code
+	 * @throws Exception if <tt>state</tt> is not element of the state set
+	 */
+	public byte code(Object state) throws Exception {
+		for (int k = 0; k < this.states.length; k++) {
+			if (this.states[k].equals(state)) {
+				return (byte) k;
+			}
+		}
+		throw new Exception(
+			"Tried to assign state \"" + state + "\" which is not element " +
+			"of the state set!");
+	}
+
+	/**
+	 * gets the state object represented by the given code.
+	 *
+	 * @param code Code
+	 * @return State object
+	 */
+	public Object state(byte code) {
+		return this.states[code & 0xff];
+	}
+
+	/**
+	 * provides direct access to the coded cell states for the time step
+	 * <tt>ti</tt>.
+	 *
+	 * @param ti Time stamp index
+	 * @return Array holding the cell states
+	 * @throws Exception
+	 */
+	public byte[] readBuffer(int ti) throws Exception {
+		return this.buf[this.slotForReading(ti)];
+	}
+
+	/**
+	 * provides direct access to the array that will receive the coded cell
+	 * states for the time step <tt>ti</tt>.
+	 *
+	 * @param ti Time stamp index
+	 * @return Array holding the cell states
+	 * @throws Exception
+	 */
+	public byte[] writeBuffer(int ti) throws Exception {
+		return this.buf[this.slotForWriting(ti)];
+	}
+
+	@Override
+	public Object getValue(int ti, int idx) throws Exception {
+		return this.state(this.buf[this.slotForReading(ti)][idx]);
+	}
+
+	@Override
+	public void setValue(int ti, int idx, Object val) throws Exception {
+		byte code = this.code(val);
+		this.buf[this.slotForWriting(ti)][idx] = code;
+	}
+
+	@Override
+	public void fill(int ti, Object val) throws Exception {
+		byte code = this.code(val);
+		Arrays.fill(this.writeBuffer(ti), code);
+	}
+
+	@Override
+	public void copy(int ti) throws Exception {
+		byte[] src = this.readBuffer(ti);
+		System.arraycopy(src, 0, this.writeBuffer(ti + 1), 0, src.length);
+	}
+
+	@Override
+	public void copyRows(int ti, int iMin, int iMax) throws Exception {
+		System.arraycopy(this.readBuffer(ti), iMin * this.ny, 
+			this.writeBuffer(ti + 1), iMin * this.ny, (iMax - iMin) * this.ny);
+	}
+
+	@Override
+	public boolean hasChanged(int ti, int idx) throws Exception {
+		return this.readBuffer(ti)[idx] != this.readBuffer(ti + 1)[idx];
+	}
+}
@@ -0,0 +1,34 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+/**
+ * Interface for state grids holding continuous cell states as <tt>double</tt>
+ * values. It allows transition functions to read and write the cell states
+ * without boxing, independent from the grid's storage layout (e.g. flat 
+ * arrays, tiles or memory-mapped files).
+ *
+ * @author Benno Schmidt
+ */
+public interface DoubleStateAccess
+{
+	/**
+	 * gets the state of the cell in row <tt>i</tt> and column <tt>j</tt>.
+	 *
+	 * @param ti Time stamp index
+	 * @param i Row index
+	 * @param j Column index
+	 * @return Cell value
+	 * @throws Exception
+	 */
+	public double getDouble(int ti, int i, int j) throws Exception;
+
+	/**
+	 * sets the state of the cell in row <tt>i</tt> and column <tt>j</tt>.
+	 *
+	 * @param ti Time stamp index
+	 * @param i Row index
+	 * @param j Column index
+	 * @param z Cell value
+	 * @throws Exception
+	 */
+	public void setDouble(int ti, int i, int j, double z) throws Exception;
+}
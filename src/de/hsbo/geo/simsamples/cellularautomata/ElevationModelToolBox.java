@@ -1,11 +1,9 @@
 package de.hsbo.geo.simsamples.cellularautomata;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.StringTokenizer;
+import java.util.BitSet;
 
 /**
  * Elevation model processing tools (for experimental purposes).
@@ -17,11 +15,13 @@ public class ElevationModelToolBox
 	/**
 	 * Automaton factory method. The values from an elevation grid file will be
 	 * read and copied to the an automaton's rectangular space. 
-	 * TODO: 1. For the cellular space no georeferencing mechanism has been 
-	 * implemented yet. 2. For the ArcInfo ASCII grid, NODATA values will not
-	 * be handled.
+	 * NODATA cells will be set to 0 and marked inside the cellular space's
+	 * NODATA mask, see {@link RectangularSpace#isNoData(int, int)}.
+	 * TODO: For the cellular space no georeferencing mechanism has been 
+	 * implemented yet.
 	 *  
 	 * @param filename Name (incl. path) of file in ArcInfo ASCII grid format
+	 * or {@link RasterFile} format
 	 * @param delta Transition function
 	 * @return Automaton (with continuous state set)
 	 * @throws Exception
@@ -30,7 +30,7 @@ public class ElevationModelToolBox
 		String filename, TransitionFunction delta) 
 		throws Exception 
 	{
-		ElevationModelToolBox.DEM dem = this.readArcInfoAsciiGrid(filename);
+		ElevationModelToolBox.DEM dem = this.readElevationModel(filename);
 		RectangularAutomaton a = new RectangularAutomaton(
 			dem.numberOfRows(), dem.numberOfColumns(), delta);
 		this.copyElevations(dem, (RectangularSpace) a.getCellularSpace());
@@ -39,91 +39,232 @@ public class ElevationModelToolBox
 		return a;
 	}
 
+	/**
+	 * Automaton factory method. The values from an elevation grid file will be
+	 * read and copied to the an automaton's {@link PrimitiveRectangularSpace}.
+	 * Compared to {@link ElevationModelToolBox#createAutomaton(String, 
+	 * TransitionFunction)}, the memory consumption will be much lower, but 
+	 * only the elevations for the two latest time steps will be available.
+	 *  
+	 * @param filename Name (incl. path) of file in ArcInfo ASCII grid format
+	 * or {@link RasterFile} format
+	 * @param delta Transition function
+	 * @return Automaton (with continuous state set)
+	 * @throws Exception
+	 */
+	public RectangularAutomaton createPrimitiveAutomaton(
+		String filename, TransitionFunction delta) 
+		throws Exception 
+	{
+		ElevationModelToolBox.DEM dem = this.readElevationModel(filename);
+		PrimitiveRectangularSpace sp = new PrimitiveRectangularSpace(
+			dem.numberOfRows(), dem.numberOfColumns());
+		RectangularAutomaton a = new RectangularAutomaton(sp, delta);
+		this.copyElevations(dem, sp);
+		a.initialized = true;
+		
+		return a;
+	}
+
+	/**
+	 * Automaton factory method. The values from an elevation grid file will be
+	 * streamed into a {@link MappedRectangularSpace}, i.e. into memory-mapped
+	 * files, without holding the elevation model in memory. Thus, elevation
+	 * models larger than the available heap memory can be processed. The 
+	 * files <tt>&lt;basename&gt;.0</tt> and <tt>&lt;basename&gt;.1</tt> will
+	 * receive the cell states. The cellular space takes over the elevation 
+	 * model's georeference and NODATA mask.
+	 *  
+	 * @param filename Name (incl. path) of file in ArcInfo ASCII grid format
+	 * or {@link RasterFile} format
+	 * @param basename Name (incl. path) of the state files without extension
+	 * @param delta Transition function
+	 * @return Automaton (with continuous state set)
+	 * @throws Exception
+	 */
+	public RectangularAutomaton createMappedAutomaton(
+		String filename, String basename, TransitionFunction delta) 
+		throws Exception 
+	{
+		if (RasterFile.isRasterFile(filename)) {
+			RasterFile r = new RasterFile(filename);
+			MappedRectangularSpace sp = new MappedRectangularSpace(
+				r.numberOfRows(), r.numberOfColumns(), basename);
+			ElevationModelToolBox.DEM dem = new ElevationModelToolBox.DEM();
+			dem.setCellSize(r.getCellSize());
+			dem.setOrigin(r.getOriginX(), r.getOriginY());
+			sp.setGeoreference(dem);
+			RectangularAutomaton a = new RectangularAutomaton(sp, delta);
+			r.copyTo(sp);
+			r.close();
+			a.initialized = true;
+			return a;
+		}
+
+		ElevationModelToolBox.DEM dem = new ElevationModelToolBox.DEM();
+		MappedRectangularSpace sp = 
+			new ArcInfoAsciiGridReader().read(filename, basename, dem);
+		RectangularAutomaton a = new RectangularAutomaton(sp, delta);
+		a.initialized = true;
+		
+		return a;
+	}
+
 	/**
 	 * Automaton factory method. The values from an elevation grid file will be
 	 * read and copied to the a rectangular cell space. 
 	 *  
 	 * @param filename Name (incl. path) of file in ArcInfo ASCII grid format
+	 * or {@link RasterFile} format
 	 * @return Rectangular cell space
 	 * @throws Exception
 	 */
 	public RectangularSpace createCellSpace(String filename) 
 		throws Exception 
 	{
-		ElevationModelToolBox.DEM dem = this.readArcInfoAsciiGrid(filename);
+		ElevationModelToolBox.DEM dem = this.readElevationModel(filename);
 		RectangularSpace sp = new RectangularSpace(dem.nx, dem.ny);
 		this.copyElevations(dem, sp);
 		return sp;
 	}
 
     /**
-     * reads an elevation model from an ArcInfo ASCII grid file. 
+     * reads an elevation model from an ArcInfo ASCII grid file. The file 
+     * will be parsed in parallel by an {@link ArcInfoAsciiGridReader}. Cells
+     * holding the file's NODATA value will be set to 0 and marked inside the
+     * elevation model's NODATA mask.
      * 
 	 * @param filename Name (incl. path) of file in ArcInfo ASCII grid format
      * @throws Exception 
      */
     public ElevationModelToolBox.DEM readArcInfoAsciiGrid(String filename) throws Exception
     {
-        BufferedReader dat = new BufferedReader(new FileReader(filename));
-
-        // Read header:
-        int ny = (int) parseValue("ncols", dat.readLine());
-        int nx = (int) parseValue("nrows", dat.readLine());
-        double xllcorner = parseValue("xllcorner", dat.readLine());
-        double yllcorner = parseValue("yllcorner", dat.readLine());
-        double cellSize = parseValue("cellsize", dat.readLine());
-        double NODATA_value = parseValue("NODATA_value", dat.readLine());
-
-        // Construct elevation grid:
         DEM dem = new ElevationModelToolBox.DEM();
-        dem.setSize(nx, ny);
-        dem.setOrigin(xllcorner, yllcorner); 
-        dem.setCellSize(cellSize); 
-        dem.setOrigin(xllcorner + cellSize/2., yllcorner + cellSize/2.);
-        
-        // Read elevation values and populate target grid:
-        double z = 0.0;
-        String line = null;
-
-        for (int i = nx - 1; i >= 0; i--)
-        {
-            line = dat.readLine();
-
-            if (line != null) {
-                StringTokenizer st = new StringTokenizer(line);
-                for (int j = 0; j < ny; j++) {
-                    try {
-                        z = Double.parseDouble(st.nextToken());
-                    }
-                    catch (NumberFormatException nfe) {
-                        z = 0.;
-                    }
-                    if (z != NODATA_value)
-                        dem.setElevation(i, j, z);
-                }
+        new ArcInfoAsciiGridReader().read(filename, dem);
+        return dem;
+    }
+
+    /**
+     * writes an elevation model to an ArcInfo ASCII grid file. NODATA cells
+     * will receive the elevation model's NODATA value (or -9999, if no 
+     * NODATA value has been specified).
+     * 
+     * @param dem Elevation model
+	 * @param filename Output file name 
+     * @throws Exception 
+     */
+    public void writeArcInfoAsciiGrid(
+        ElevationModelToolBox.DEM dem, String filename) throws Exception
+    {
+        double noDataValue = Double.isNaN(dem.getNoDataValue()) ? 
+            -9999. : dem.getNoDataValue();
+        BufferedWriter out = new BufferedWriter(new FileWriter(filename));
+        out.write("ncols " + dem.ny + "\n");
+        out.write("nrows " + dem.nx + "\n");
+        double cellSize = dem.getCellSize();
+        out.write("xllcorner " + (dem.getOriginX() - cellSize/2.) + "\n");
+        out.write("yllcorner " + (dem.getOriginY() - cellSize/2.) + "\n");
+        out.write("cellsize " + cellSize + "\n");
+        out.write("NODATA_value " + noDataValue + "\n");
+        StringBuffer line = new StringBuffer();
+        for (int i = dem.nx - 1; i >= 0; i--) {
+            line.setLength(0);
+            for (int j = 0; j < dem.ny; j++) {
+                if (j > 0) 
+                    line.append(' ');
+                line.append(
+                    dem.isNoData(i, j) ? noDataValue : dem.elev[i][j]);
             }
+            line.append('\n');
+            out.write(line.toString());
         }
-        
-        dat.close();
-        return dem;
+        out.close();
     }
-    
-    static private double parseValue(String check, String line) 
-    	throws Exception
+
+    /**
+     * reads an elevation model from a {@link RasterFile}. The raster 
+     * encoding has to be {@link RasterFile#FLOAT64}.
+     * 
+     * @param filename Name (incl. path) of raster file
+     * @return Elevation model
+     * @throws Exception 
+     */
+    public ElevationModelToolBox.DEM readRasterFile(String filename) 
+        throws Exception
     {
-        StringTokenizer st = new StringTokenizer(line);
-        String[] tokens = {"", ""};
-        int i = 0;
-        while (st.hasMoreTokens()) {
-            tokens[i] = st.nextToken();
-            if (tokens[i].length() > 0) i++;
-            if (i > 1) break;
+        RasterFile r = new RasterFile(filename);
+        try {
+            DEM dem = new ElevationModelToolBox.DEM();
+            dem.setSize(r.numberOfRows(), r.numberOfColumns());
+            dem.setCellSize(r.getCellSize());
+            dem.setOrigin(r.getOriginX(), r.getOriginY());
+            dem.setNoDataValue(r.getNoDataValue());
+            dem.setNoDataMask(r.getNoDataMask());
+            for (int i = 0; i < dem.nx; i++) {
+                r.readRow(i, dem.getRow(i));
+            }
+            return dem;
+        }
+        finally {
+            r.close();
         }
-        if (i == 2 && tokens[0].toLowerCase().equals(check.toLowerCase()))
-            return Double.parseDouble(tokens[1]);
-        else
-            throw new Exception(
-            	"Header-value \"" + check + "\" is missing in input file.");
+    }
+
+    /**
+     * writes an elevation model to a {@link RasterFile}.
+     * 
+     * @param dem Elevation model
+	 * @param filename Output file name 
+     * @param tileSize Size of compressed tiles or 0 for an uncompressed file
+     * @throws Exception 
+     */
+    public void writeRasterFile(
+        ElevationModelToolBox.DEM dem, String filename, int tileSize) 
+        throws Exception
+    {
+        RasterFile.write(dem, filename, tileSize);
+    }
+
+    /**
+     * converts an ArcInfo ASCII grid file into a {@link RasterFile}.
+     * 
+	 * @param ascFilename Name (incl. path) of ArcInfo ASCII grid file
+     * @param rasterFilename Name (incl. path) of raster file 
+     * @param tileSize Size of compressed tiles or 0 for an uncompressed file
+     * @throws Exception 
+     */
+    public void convertArcInfoAsciiGridToRasterFile(
+        String ascFilename, String rasterFilename, int tileSize) 
+        throws Exception
+    {
+        this.writeRasterFile(
+            this.readArcInfoAsciiGrid(ascFilename), rasterFilename, tileSize);
+    }
+
+    /**
+     * converts a {@link RasterFile} into an ArcInfo ASCII grid file.
+     * 
+     * @param rasterFilename Name (incl. path) of raster file 
+	 * @param ascFilename Name (incl. path) of ArcInfo ASCII grid file
+     * @throws Exception 
+     */
+    public void convertRasterFileToArcInfoAsciiGrid(
+        String rasterFilename, String ascFilename) throws Exception
+    {
+        this.writeArcInfoAsciiGrid(
+            this.readRasterFile(rasterFilename), ascFilename);
+    }
+
+    /**
+     * reads an elevation model either from a {@link RasterFile} or from an
+     * ArcInfo ASCII grid file.
+     */
+    private ElevationModelToolBox.DEM readElevationModel(String filename)
+        throws Exception
+    {
+        if (RasterFile.isRasterFile(filename))
+            return this.readRasterFile(filename);
+        return this.readArcInfoAsciiGrid(filename);
     }
 
     /**
@@ -161,7 +302,9 @@ public class ElevationModelToolBox
 		
 		double dZ = maxZ - minZ; 
 		String[] symb = new String[]{" ", ".", ":", ";", "#"};
+		StringBuffer line = new StringBuffer();
 		for (int i = 0; i < sp.numberOfRows(); i++) {
+			line.setLength(0);
 			for (int j = 0; j < sp.numberOfColumns(); j++) {
 				double z = (Double) sp.getCell(i, j).getValue(ti);
 				
@@ -170,9 +313,9 @@ public class ElevationModelToolBox
 					// occurs for z = maxZ
 					k = symb.length - 1; 
 				}
-				System.out.print(symb[k]);
+				line.append(symb[k]);
 			}
-			System.out.println();
+			System.out.println(line); // one call per row
 		}
 	}
 
@@ -201,7 +344,10 @@ public class ElevationModelToolBox
     /**
      * writes a cellular elevation space to a X3DOM scene consisting of 
      * animated quads. Important note: For cellular spaces of big size your
-     * system might not be able to display the scene!
+     * system might not be able to display the scene! Since the cells' full
+     * time series are required, consider using an {@link 
+     * AnimatedX3DomSceneWriter} for big cellular spaces, which records the
+     * keyframes while the simulation is running.
      *
      * @param dem Cellular elevation space
 	 * @param filename Output file name 
@@ -267,12 +413,15 @@ public class ElevationModelToolBox
 	        	" zSpacing='1'" +
 	        	" height='");
 	
-	        // Elevation-values:
+	        // Elevation-values (one write call per grid row):
+	        StringBuffer row = new StringBuffer();
 	        for (int i = dem.numberOfRows() - 1; i >= 0; i--) {
+	            row.setLength(0);
 	            for (int j = 0; j < dem.numberOfColumns(); j++) {
 	            	double z = (Double) dem.getCell(i, j).getValue(ti);
-	                w("" + (zf * z) + " ");
+	                row.append(zf * z).append(' ');
 	            }
+	            w(row.toString());
 	        }
 	        w("'>");
 	        w("        </ElevationGrid>");
@@ -313,11 +462,15 @@ public class ElevationModelToolBox
 	            	String idTransf = "transf_" + i + "_" + j; 
 	            	w("		 <PositionInterpolator DEF='" + idInterp + "' " + 
 	            		"key='");
+					// Note: Values discarded due to the cells' retention 
+					// policy will be skipped.
 					for (int t = 0; t < c.timeSeries.size(); t++) {
+						if (!c.timeSeries.isAvailable(t)) continue;
 						w(((double) t / (double) c.timeSeries.size()) + " ");
 					}
 					w("' keyValue='");
 					for (int t = 0; t < c.timeSeries.size(); t++) {
+						if (!c.timeSeries.isAvailable(t)) continue;
 						double z = (Double) c.getValue(t);
 						w("" + i + " " + (zf * z) + " " + j + " ");
 					}
@@ -382,6 +535,8 @@ public class ElevationModelToolBox
 	    private double cellSize; // grid cell size
 	    private double originX; // x-coordinate of lower left grid corner
 	    private double originY; // y-coordinate of lower left grid corner
+	    private double noDataValue = Double.NaN; // NODATA value of source file
+	    private BitSet noData = null; // NODATA mask (index i * ny + j)
 	    
 		private Double zMin, zMax;
 		private boolean updateZMinMaxNecessary = true;
@@ -433,6 +588,64 @@ public class ElevationModelToolBox
 	    	return elev[i][j];
 	    }
 
+	    /**
+	     * provides direct access to the elevation values of a grid row. 
+	     * 
+	     * @param i Row index
+	     * @return Array holding the elevation values
+	     */
+	    public double[] getRow(int i) {
+	    	updateZMinMaxNecessary = true;
+	    	return elev[i];
+	    }
+
+	    /**
+	     * marks a grid cell as NODATA cell. Note that the elevation value 
+	     * should be set to 0 for such cells.
+	     * 
+	     * @param i Row index of grid cell
+	     * @param j Column index of grid cell
+	     */
+	    public void setNoData(int i, int j) {
+	    	if (noData == null) {
+	    		noData = new BitSet();
+	    	}
+	    	noData.set(i * ny + j);
+	    }
+
+	    /**
+	     * checks if a grid cell is a NODATA cell.
+	     * 
+	     * @param i Row index of grid cell
+	     * @param j Column index of grid cell
+	     * @return <i>true</i> for NODATA cells
+	     */
+	    public boolean isNoData(int i, int j) {
+	    	return noData != null && noData.get(i * ny + j);
+	    }
+
+	    /**
+	     * gets the NODATA mask. The bit <tt>i * numberOfColumns() + j</tt>
+	     * marks the cell in row <tt>i</tt> and column <tt>j</tt>.
+	     * 
+	     * @return NODATA mask or <i>null</i>, if all cells hold valid data
+	     */
+	    public BitSet getNoDataMask() {
+	    	return noData;
+	    }
+
+	    public void setNoDataMask(BitSet mask) {
+	    	noData = mask;
+	    }
+
+	    public void setNoDataValue(double z) {
+	    	noDataValue = z;
+	    }
+
+	    public double getNoDataValue() {
+	    	return noDataValue;
+	    }
+
 	    public void setCellSize(double pCellSize) {
 	    	cellSize = pCellSize;
 	    }
@@ -455,33 +668,33 @@ public class ElevationModelToolBox
 	    }
 	   
 	    public double getMinZ() {
-	    	if (!updateZMinMaxNecessary) return zMin;
-	    	
-	    	zMin = elev[0][0];
-	    	for (int i = 0; i < nx; i++) {
-				for (int j = 0; j < ny; j++) {
-					if (elev[i][j] < zMin)
-						zMin = elev[i][j];
-				}
-	    	}
-
-	    	updateZMinMaxNecessary = false;
+	    	if (updateZMinMaxNecessary) updateZMinMax();
 	    	return zMin;
 	    }
 
 		public double getMaxZ() {
-	    	if (!updateZMinMaxNecessary) return zMax;
+	    	if (updateZMinMaxNecessary) updateZMinMax();
+			return zMax;
+		}
 
-	    	zMax = elev[0][0];
+		/**
+		 * determines the minimal and maximal elevation. NODATA cells will be
+		 * ignored.
+		 */
+		private void updateZMinMax() {
+			double min = Double.NaN, max = Double.NaN;
 			for (int i = 0; i < nx; i++) {
 				for (int j = 0; j < ny; j++) {
-					if (elev[i][j] > zMax)
-						zMax = elev[i][j];
+					if (isNoData(i, j))
+						continue;
+					double z = elev[i][j];
+					if (z < min || Double.isNaN(min)) min = z;
+					if (z > max || Double.isNaN(max)) max = z;
 				}
 			}
-
+			zMin = min;
+			zMax = max;
 			updateZMinMaxNecessary = false;
-			return zMax;
 		}
 	}
 	
@@ -489,6 +702,17 @@ public class ElevationModelToolBox
 		ElevationModelToolBox.DEM dem, RectangularSpace cellGrid) 
 		throws Exception 
 	{
+		cellGrid.setNoDataMask(dem.getNoDataMask());
+		if (cellGrid instanceof PrimitiveRectangularSpace) {
+			StateGrid g = ((PrimitiveRectangularSpace) cellGrid).getStateGrid();
+			if (g instanceof ContinuousStateGrid) {
+				double[] z = ((ContinuousStateGrid) g).writeBuffer(0);
+				for (int i = 0; i < dem.nx; i++) {
+					System.arraycopy(dem.elev[i], 0, z, g.index(i, 0), dem.ny);
+				}
+				return;
+			}
+		}
 		for (int i = 0; i < dem.nx; i++) {
 			for (int j = 0; j < dem.ny; j++) {
 				double val = dem.getElevation(i, j);
@@ -0,0 +1,349 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+/**
+ * Executes {@link FluxTransitionFunction}s on rectangular grids. For each
+ * time step, the accumulator processes two passes: First, every cell emits
+ * its outgoing fluxes into a buffer; then, for every cell the new value
+ * will be computed as <tt>z(t + 1) = z(t) + (sum of incoming fluxes - sum
+ * of outgoing fluxes)</tt>. The fluxes will be summed up in a fixed order,
+ * so that the result does not depend on the number of threads.
+ * <p>
+ * The buffer is not kept for the whole grid: Processing a stripe of rows,
+ * only the fluxes of the <tt>2 r + 1</tt> rows around the current row will
+ * be held in a ring buffer, where <tt>r</tt> denotes the range of the flux
+ * neighborhood. The fluxes of the <tt>r</tt> rows above and below a stripe
+ * will be computed by both adjacent stripes. Thus, stripes can be
+ * processed by different threads without any synchronization. Likewise, 
+ * the cell values will be read row by row, so that only <tt>2 r + 1</tt>
+ * rows are held in memory; this allows to process grids that do not fit 
+ * into the heap, e.g. {@link MappedStateGrid}s.
+ *
+ * @see RectangularAutomaton
+ *
+ * @author Benno Schmidt
+ */
+public class FluxAccumulator
+{
+	private int nx, ny;
+	private NeighborhoodTable table;
+	private FluxTransitionFunction f;
+	private int n, d; // number of neighbors, range
+	private int[] di, dj, opp;
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 * @param table Neighborhood table for the flux neighborhood
+	 * @param f Transition function
+	 */
+	public FluxAccumulator(
+		int nx, int ny, NeighborhoodTable table, FluxTransitionFunction f)
+	{
+		this.nx = nx;
+		this.ny = ny;
+		this.table = table;
+		this.f = f;
+		this.n = table.size();
+		this.d = table.haloWidth();
+		this.di = table.getRowOffsets();
+		this.dj = table.getColumnOffsets();
+		this.opp = new int[this.n];
+		for (int k = 0; k < this.n; k++) {
+			this.opp[k] = table.opposite(k);
+		}
+	}
+
+	/**
+	 * gets the transition function.
+	 *
+	 * @return Transition function
+	 */
+	public FluxTransitionFunction getTransitionFunction() {
+		return this.f;
+	}
+
+	/**
+	 * performs the transition for all cells inside the rows <tt>iMin</tt>
+	 * (inclusive) to <tt>iMax</tt> (exclusive). Both arrays hold the cell
+	 * values of the whole grid in row-major order. The method may be called
+	 * for disjoint stripes of rows concurrently.
+	 *
+	 * @param src Cell values for time step <tt>ti</tt>
+	 * @param dst Array receiving the cell values for time step <tt>ti + 1</tt>
+	 * @param iMin First row index
+	 * @param iMax Last row index + 1
+	 * @throws Exception
+	 */
+	public void step(final double[] src, final double[] dst, int iMin, int iMax)
+		throws Exception
+	{
+		this.step(new RowAccess() {
+			public void read(int i, double[] buf, int off) {
+				System.arraycopy(src, i * ny, buf, off, ny);
+			}
+			public void write(int i, double[] buf) {
+				System.arraycopy(buf, 0, dst, i * ny, ny);
+			}
+		}, iMin, iMax);
+	}
+
+	/**
+	 * performs the transition for all cells inside the rows <tt>iMin</tt>
+	 * (inclusive) to <tt>iMax</tt> (exclusive) of a state grid of arbitrary
+	 * storage layout, e.g. a tiled or memory-mapped grid. The cell values 
+	 * will be read and written row by row; only the <tt>2 r + 1</tt> rows
+	 * around the current row will be held in memory. The method may be 
+	 * called for disjoint stripes of rows concurrently.
+	 *
+	 * @param g State grid
+	 * @param ti Time stamp index
+	 * @param iMin First row index
+	 * @param iMax Last row index + 1
+	 * @throws Exception
+	 */
+	public void step(final DoubleStateAccess g, final int ti, 
+		int iMin, int iMax) throws Exception
+	{
+		if (g instanceof MappedStateGrid) {
+			// Bulk row access:
+			final MappedStateGrid mg = (MappedStateGrid) g;
+			final double[] tmp = new double[ny];
+			this.step(new RowAccess() {
+				public void read(int i, double[] buf, int off) throws Exception {
+					mg.readRow(ti, i, tmp);
+					System.arraycopy(tmp, 0, buf, off, ny);
+				}
+				public void write(int i, double[] buf) throws Exception {
+					mg.writeRow(ti + 1, i, buf);
+				}
+			}, iMin, iMax);
+			return;
+		}
+		this.step(new RowAccess() {
+			public void read(int i, double[] buf, int off) throws Exception {
+				for (int j = 0; j < ny; j++) {
+					buf[off + j] = g.getDouble(ti, i, j);
+				}
+			}
+			public void write(int i, double[] buf) throws Exception {
+				for (int j = 0; j < ny; j++) {
+					g.setDouble(ti + 1, i, j, buf[j]);
+				}
+			}
+		}, iMin, iMax);
+	}
+
+	/**
+	 * Row-wise access to the cell values for the time steps <tt>ti</tt> 
+	 * (read) and <tt>ti + 1</tt> (write).
+	 */
+	private interface RowAccess {
+		public void read(int i, double[] buf, int off) throws Exception;
+		public void write(int i, double[] buf) throws Exception;
+	}
+
+	private void step(RowAccess rows, int iMin, int iMax) throws Exception
+	{
+		if (iMin >= iMax)
+			return;
+
+		int w = 2 * d + 1;
+		double[] win = new double[w * ny]; // cell values, 2 r + 1 rows
+		double[] ring = new double[w * ny * n]; // fluxes, 2 r + 1 rows
+		double[] out = new double[ny];
+		double[] zN = new double[n], fl = new double[n];
+		int[] idx = new int[n], bases = new int[n];
+
+		int next = iMin - 2 * d; // next row to be read
+		for (int r = iMin - d; r < iMax + d; r++) {
+			for (; next <= r + d; next++) {
+				this.readRow(rows, next, win);
+			}
+			this.emitRow(win, r, ring, idx, bases, zN, fl);
+			int i = r - d;
+			if (i >= iMin) {
+				this.gatherRow(win, out, i, ring, bases);
+				rows.write(i, out);
+			}
+		}
+	}
+
+	/**
+	 * gets the ring buffer slot for the row <tt>r</tt>, which may be
+	 * located outside the grid.
+	 */
+	private int slot(int r) {
+		int w = 2 * d + 1;
+		return ((r % w) + w) % w;
+	}
+
+	/**
+	 * gets the grid row for the row <tt>r</tt>, which may be located inside
+	 * the grid's halo, or -1, if there is no such row.
+	 */
+	private int gridRow(int r) 
+	{
+		if (r >= 0 && r < nx)
+			return r;
+		if (!table.isCyclic())
+			return -1; // no cells there
+		return ((r % nx) + nx) % nx;
+	}
+
+	/**
+	 * reads the cell values of row <tt>r</tt> into the window.
+	 */
+	private void readRow(RowAccess rows, int r, double[] win) 
+		throws Exception
+	{
+		int i = this.gridRow(r);
+		if (i >= 0) {
+			rows.read(i, win, this.slot(r) * ny);
+		}
+	}
+
+	/**
+	 * computes the outgoing fluxes of the cells in row <tt>r</tt> (located
+	 * inside the grid's halo, if the neighborhood is cyclic) and writes them
+	 * into the ring buffer. The window must hold the rows <tt>r - d</tt> to 
+	 * <tt>r + d</tt>.
+	 */
+	private void emitRow(double[] win, int r, double[] ring, 
+		int[] idx, int[] bases, double[] zN, double[] fl)
+	{
+		int i = this.gridRow(r);
+		if (i < 0)
+			return;
+
+		for (int k = 0; k < n; k++) {
+			bases[k] = this.slot(r + di[k]) * ny + dj[k];
+		}
+		int base = this.slot(r) * ny * n, wb = this.slot(r) * ny;
+		for (int j = 0; j < ny; j++) {
+			int b = base + j * n;
+			if (table.isInner(i, j)) {
+				for (int k = 0; k < n; k++) {
+					zN[k] = win[bases[k] + j];
+				}
+				f.emit(win[wb + j], zN, fl);
+				System.arraycopy(fl, 0, ring, b, n);
+				continue;
+			}
+			for (int k = 0; k < n; k++) {
+				idx[k] = table.neighbor(i, j, k);
+				zN[k] = idx[k] < 0 ? Double.NaN : 
+					win[this.slot(r + di[k]) * ny + idx[k] % ny];
+			}
+			f.emit(win[wb + j], zN, fl);
+			for (int k = 0; k < n; k++) {
+				ring[b + k] = idx[k] < 0 ? 0. : fl[k];
+			}
+		}
+	}
+
+	/**
+	 * computes the new values of the cells in row <tt>i</tt> from the
+	 * fluxes held in the ring buffer.
+	 */
+	private void gatherRow(
+		double[] win, double[] out, int i, double[] ring, int[] ringOffsets)
+	{
+		// The k-th neighbor emits towards the cell in direction opp[k]:
+		for (int k = 0; k < n; k++) {
+			ringOffsets[k] = 
+				(this.slot(i + di[k]) * ny + dj[k]) * n + opp[k];
+		}
+
+		int base = this.slot(i) * ny * n, wb = this.slot(i) * ny;
+		for (int j = 0; j < ny; j++) {
+			int b = base + j * n;
+			double net = 0.;
+			if (table.isInner(i, j)) {
+				for (int k = 0; k < n; k++) {
+					net += ring[ringOffsets[k] + j * n] - ring[b + k];
+				}
+				out[j] = win[wb + j] + net;
+				continue;
+			}
+			for (int k = 0; k < n; k++) {
+				int idx = table.neighbor(i, j, k);
+				if (idx < 0)
+					continue;
+				int bN = (this.slot(i + di[k]) * ny + idx % ny) * n;
+				net += ring[bN + opp[k]] - ring[b + k];
+			}
+			out[j] = win[wb + j] + net;
+		}
+	}
+
+	/**
+	 * performs the transition for a single cell of a rectangular cellular
+	 * space holding {@link Cell} objects. Here, the fluxes of the cell's
+	 * neighbors will be computed on the fly; thus, this method should be
+	 * used only if no state grid is available.
+	 *
+	 * @param sp Rectangular cellular space
+	 * @param i Row index
+	 * @param j Column index
+	 * @param ti Time stamp index
+	 * @return Cell value for time step <tt>ti + 1</tt>
+	 * @throws Exception
+	 */
+	public double transition(RectangularSpace sp, int i, int j, int ti)
+		throws Exception
+	{
+		double[] 
+			zN = new double[n], fl = new double[n], 
+			zNN = new double[n], flN = new double[n];
+
+		double z = this.emitCell(sp, i * ny + j, ti, zN, fl);
+		double net = 0.;
+		for (int k = 0; k < n; k++) {
+			int idx = table.neighbor(i, j, k);
+			if (idx < 0)
+				continue;
+			this.emitCell(sp, idx, ti, zNN, flN);
+			net += flN[opp[k]] - fl[k];
+		}
+		return z + net;
+	}
+
+	private double emitCell(
+		RectangularSpace sp, int l, int ti, double[] zN, double[] fl)
+		throws Exception
+	{
+		int i = l / ny, j = l % ny;
+		for (int k = 0; k < n; k++) {
+			int idx = table.neighbor(i, j, k);
+			zN[k] = idx < 0 ? Double.NaN : value(sp, idx, ti);
+		}
+		double z = value(sp, l, ti);
+		f.emit(z, zN, fl);
+		return z;
+	}
+
+	static private double value(RectangularSpace sp, int l, int ti)
+		throws Exception
+	{
+		int ny = sp.numberOfColumns();
+		return ((Number) sp.cell(l / ny, l % ny).getValue(ti)).doubleValue();
+	}
+
+	public String toString()
+	{
+		StringBuffer s = new StringBuffer();
+
+		s.append("(");
+		s.append(this.getClass().getSimpleName());
+		s.append(": ");
+		s.append(this.n);
+		s.append(" neighbors, ");
+		s.append(this.f);
+		s.append(")");
+
+		return s.toString();
+	}
+}
@@ -0,0 +1,41 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+/**
+ * Interface for {@link TransitionFunction}s that move mass between
+ * neighbor cells, e.g. erosion or flow-routing models. Instead of writing
+ * to the neighbor cells, a transition function implementing this interface
+ * only specifies the amounts of mass a cell passes to each of its
+ * neighbors, see {@link FluxTransitionFunction#emit(double, double[],
+ * double[])}. {@link RectangularAutomaton}s then compute the new cell
+ * states by a {@link FluxAccumulator}, i.e. for each cell the outgoing
+ * fluxes will be subtracted and the incoming fluxes will be added. Thus,
+ * the sum of all cell values remains constant, and the result neither
+ * depends on the order in which the cells are processed nor on the number
+ * of threads.
+ *
+ * @author Benno Schmidt
+ */
+public interface FluxTransitionFunction
+{
+	/**
+	 * gets the neighborhood mass may be exchanged with.
+	 *
+	 * @return Neighborhood definition
+	 */
+	public NeighborhoodIndex getFluxNeighborhood();
+
+	/**
+	 * computes the outgoing fluxes of a cell for the transition from time
+	 * step <tt>ti</tt> to <tt>ti + 1</tt>. The neighbors are ordered as
+	 * given by the {@link NeighborhoodTable} for the flux neighborhood; for
+	 * neighbors located outside the grid, <tt>Double.NaN</tt> will be
+	 * passed, and the corresponding fluxes will be ignored. The method must
+	 * not depend on anything but its arguments, since it may be called
+	 * more than once for the same cell and time step.
+	 *
+	 * @param z Cell value for time step <tt>ti</tt>
+	 * @param zN Neighbor values for time step <tt>ti</tt>
+	 * @param flux Array receiving the amounts of mass passed to the neighbors
+	 */
+	public void emit(double z, double[] zN, double[] flux);
+}
@@ -0,0 +1,52 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+import java.util.List;
+
+/**
+ * Cell view onto a {@link PrimitiveRectangularSpace}. Grid cells do not hold
+ * state values on their own; all value queries and assignments will be
+ * delegated to the space's {@link StateGrid}. Grid cells are created on
+ * demand, thus transition functions that operate on {@link Cell} objects can
+ * be applied to primitive spaces without any modification.
+ *
+ * @author Benno Schmidt
+ */
+public class GridCell extends Cell
+{
+	private StateGrid grid;
+	private int idx;
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param sp Primitive cellular space
+	 * @param i Row index
+	 * @param j Column index
+	 */
+	public GridCell(PrimitiveRectangularSpace sp, int i, int j) {
+		this.sp = sp;
+		this.loc = sp.location(i, j);
+		this.grid = sp.getStateGrid();
+		this.idx = this.grid.index(i, j);
+	}
+
+	@Override
+	public List<Cell> getNeighbors(NeighborhoodIndex neighDef)
+		throws Exception
+	{
+		RectangularCellLocation rLoc = (RectangularCellLocation) this.loc;
+		return ((RectangularSpace) this.sp).getNeighborCells(
+			rLoc.i, rLoc.j, neighDef);
+	}
+
+	@Override
+	public Object getValue(int ti) throws Exception {
+		return this.grid.getValue(ti, this.idx);
+	}
+
+	@Override
+	public void setValue(int ti, Object val) throws Exception {
+		this.grid.setValue(ti, this.idx, val);
+	}
+}
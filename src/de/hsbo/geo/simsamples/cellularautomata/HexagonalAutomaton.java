@@ -0,0 +1,71 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+/**
+ * Implementation of a universal Cellular Automaton operating on {@link 
+ * HexagonalSpace}s. Since the cell states of hexagonal spaces are held in
+ * the same storage layout as those of {@link PrimitiveRectangularSpace}s, 
+ * all features of the {@link RectangularAutomaton} are available, i.e. 
+ * double-buffered stepping, parallel execution by row stripes, sparse 
+ * execution, checkpoints and state sinks. Transition functions have to 
+ * refer to hexagonal neighborhoods, e.g. {@link 
+ * NeighborhoodIndex#HEXAGONAL()}.
+ * 
+ * @author Benno Schmidt
+ */
+public class HexagonalAutomaton extends RectangularAutomaton 
+{
+	/**
+	 * Constructor
+	 * 
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 * @param states Set of cell state objects
+	 * @param delta Transition function
+	 * 
+	 * @see CellularAutomaton
+	 */
+	public HexagonalAutomaton(
+		int nx, 
+		int ny, 
+		StateSet states, 
+		TransitionFunction delta) 
+	{
+		this(nx, ny, delta);
+		this.setStateSet(states);  
+	}
+
+	/**
+	 * Constructor. Note that the set of cell states will be got from the
+	 * given transition function <tt>delta</tt>.
+	 * 
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 * @param delta Transition function
+	 * 
+	 * @see CellularAutomaton
+	 */
+	public HexagonalAutomaton(
+		int nx, 
+		int ny, 
+		TransitionFunction delta) 
+	{
+		this(new HexagonalSpace(nx, ny), delta);
+	}
+
+	/**
+	 * Constructor. The automaton will operate on the given hexagonal space.
+	 * Note that the set of cell states will be got from the given transition
+	 * function <tt>delta</tt>.
+	 * 
+	 * @param sp Hexagonal cellular space
+	 * @param delta Transition function
+	 * 
+	 * @see CellularAutomaton
+	 */
+	public HexagonalAutomaton(
+		HexagonalSpace sp, 
+		TransitionFunction delta) 
+	{
+		super(sp, delta);
+	}
+}
@@ -0,0 +1,65 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+/**
+ * Cell location inside a {@link HexagonalSpace}. The location is given by 
+ * axial coordinates <tt>(q, r)</tt>, which are stored as column index 
+ * <tt>j = q</tt> and row index <tt>i = r</tt>. Thus, hexagonal cells can be
+ * processed by all methods referring to {@link RectangularCellLocation}s.
+ * 
+ * @author Benno Schmidt
+ */
+public class HexagonalCellLocation extends RectangularCellLocation 
+{
+	/**
+	 * Constructor
+	 * 
+	 * @param i Row index, i.e. axial coordinate <tt>r</tt>
+	 * @param j Column index, i.e. axial coordinate <tt>q</tt>
+	 */
+	public HexagonalCellLocation(int i, int j) {
+		super(i, j);
+	}
+
+	/**
+	 * gets the axial coordinate <tt>q</tt>.
+	 * 
+	 * @return Column index
+	 */
+	public int getQ() {
+		return this.j;
+	}
+
+	/**
+	 * gets the axial coordinate <tt>r</tt>.
+	 * 
+	 * @return Row index
+	 */
+	public int getR() {
+		return this.i;
+	}
+
+	/**
+	 * gets the number of steps between this cell and the given cell.
+	 * 
+	 * @param loc Cell location
+	 * @return Hexagonal distance
+	 */
+	public int distance(HexagonalCellLocation loc) {
+		return HexagonalSpace.distance(this.i, this.j, loc.i, loc.j);
+	}
+
+	public String toString() 
+	{	
+		StringBuffer s = new StringBuffer();
+		
+		s.append("(");
+		s.append(this.getClass().getSimpleName());
+		s.append(": q=");
+		s.append(j);
+		s.append(", r=");
+		s.append(i);
+		s.append(")");
+	
+		return s.toString();
+	}
+}
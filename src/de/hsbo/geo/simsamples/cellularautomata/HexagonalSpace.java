@@ -0,0 +1,158 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+/**
+ * Cellular space consisting of hexagonal cells. The cells are given by 
+ * axial coordinates <tt>(q, r)</tt> with <tt>q = 0 .. ny - 1</tt> and 
+ * <tt>r = 0 .. nx - 1</tt>, i.e. the space covers a parallelogram of 
+ * pointy-topped hexagons, where each row is shifted by half a cell against
+ * the previous row. The cell states are held in a {@link StateGrid} using 
+ * the row index <tt>i = r</tt> and the column index <tt>j = q</tt>, so that
+ * the storage layout, the double-buffered stepping and the parallel 
+ * execution by a {@link HexagonalAutomaton} are the same as for {@link 
+ * PrimitiveRectangularSpace}s.
+ * <p>
+ * In axial coordinates, the 6 neighbors of the cell <tt>(i, j)</tt> have 
+ * the constant row and column offsets (-1, 0), (1, 0), (0, -1), (0, 1), 
+ * (-1, 1), (1, -1), i.e. constant array index offsets. Thus, {@link 
+ * NeighborhoodTable}s are used for neighborhood queries as for rectangular
+ * spaces. Supported are hexagonal neighborhoods of range <tt>r</tt>, see 
+ * {@link NeighborhoodIndex#HEXAGONAL(int, boolean)}; for cyclic 
+ * neighborhoods, the parallelogram will be regarded as torus. Other 
+ * neighborhood definitions will be rejected.
+ * <p>
+ * Note that transition functions implementing the interface {@link 
+ * PrimitiveTransitionFunction} can be applied to hexagonal spaces without
+ * any modification as long as they query their neighbors by the method 
+ * {@link TransitionFunction#getNeighborhoodTable(StateGrid, 
+ * NeighborhoodIndex)}. E.g., a {@link 
+ * de.hsbo.geo.simsamples.cellularautomata.instances.TotalisticRule} 
+ * referring to the hexagonal neighborhood gives a fire spread model with 
+ * isotropic spread.
+ *
+ * @author Benno Schmidt
+ */
+public class HexagonalSpace extends PrimitiveRectangularSpace
+{
+	static private final double SQRT3_2 = Math.sqrt(3.) / 2.;
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 */
+	public HexagonalSpace(int nx, int ny) {
+		super(nx, ny);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 * @param packBinaryStates <i>true</i> to use a {@link BinaryStateGrid}
+	 * for state sets consisting of two states
+	 */
+	public HexagonalSpace(int nx, int ny, boolean packBinaryStates) {
+		super(nx, ny, packBinaryStates);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 * @param states Set of cell states
+	 */
+	public HexagonalSpace(int nx, int ny, StateSet states) {
+		this(nx, ny);
+		this.setStateSet(states);
+	}
+
+	/**
+	 * gets the number of steps between two hexagonal cells given in axial
+	 * coordinates.
+	 *
+	 * @param i1 Row index of the first cell
+	 * @param j1 Column index of the first cell
+	 * @param i2 Row index of the second cell
+	 * @param j2 Column index of the second cell
+	 * @return Hexagonal distance
+	 */
+	public static int distance(int i1, int j1, int i2, int j2)
+	{
+		int di = i2 - i1, dj = j2 - j1;
+		return (Math.abs(di) + Math.abs(dj) + Math.abs(di + dj)) / 2;
+	}
+
+	/**
+	 * gets the center point of the cell <tt>(i, j)</tt>. The distance 
+	 * between the centers of two neighbor cells is 1; the center of the 
+	 * cell (0, 0) is the origin.
+	 *
+	 * @param i Row index
+	 * @param j Column index
+	 * @return Array holding the x and y coordinate
+	 */
+	public double[] getCenter(int i, int j) {
+		return new double[] {j + 0.5 * i, SQRT3_2 * i};
+	}
+
+	@Override
+	protected CellLocation location(int i, int j) {
+		return new HexagonalCellLocation(i, j);
+	}
+
+	@Override
+	protected NeighborhoodTable createNeighborhoodTable(
+		NeighborhoodIndex neighDef) throws Exception
+	{
+		return new NeighborhoodTable(
+			this.numberOfRows(), this.numberOfColumns(), neighDef, true);
+	}
+
+	/**
+	 * gets a {@link Cell}s neighbor cells in the given direction. The 
+	 * directions are numbered as for {@link RectangularSpace}s; note that 
+	 * the directions SE (3) and NW (7) do not refer to neighbor cells in 
+	 * hexagonal spaces.
+	 * 
+	 * @param i Row index
+	 * @param j Column index
+	 * @param direction Direction (0..7)
+	 * @return Cell object (<i>null</i> at space edge or for the directions
+	 * 3 and 7)
+	 */
+	@Override
+	public Cell getNeighborCell(int i, int j, short direction)
+	{
+		if (direction == 3 || direction == 7)
+			return null;
+		return super.getNeighborCell(i, j, direction);
+	}
+
+	@Override
+	public void dump(int ti) throws Exception 
+	{
+		if (!(this.getStateSet() instanceof DiscreteStateSet)) {
+			super.dump(ti);
+			return;
+		}
+
+		// Shift each row by half a cell to show the hexagonal layout:
+		StringBuffer line = new StringBuffer();
+		for (int i = 0; i < this.numberOfRows(); i++) {
+			line.setLength(0);
+			for (int k = 0; k < i; k++) {
+				line.append(' ');
+			}
+			for (int j = 0; j < this.numberOfColumns(); j++) {
+				if (j > 0)
+					line.append(' ');
+				line.append(this.cell(i, j).getValue(ti));
+			}
+			System.out.println(line); // one call per row
+		}
+	}
+}
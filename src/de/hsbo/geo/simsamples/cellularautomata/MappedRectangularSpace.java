@@ -0,0 +1,106 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+/**
+ * Rectangular cellular space holding continuous cell states in memory-mapped
+ * files, see {@link MappedStateGrid}. This allows to simulate grids that are
+ * larger than the available heap memory, e.g. continental-scale elevation 
+ * models. Arbitrary transition functions can operate on the space through 
+ * {@link GridCell} views; transition functions implementing the interface 
+ * {@link PrimitiveTransitionFunction} can access the cell values without
+ * boxing using the interface {@link DoubleStateAccess}. Optionally, the 
+ * georeference of an elevation model can be assigned.
+ *
+ * @see ElevationModelToolBox#createMappedAutomaton(String, String, 
+ * TransitionFunction)
+ *
+ * @author Benno Schmidt
+ */
+public class MappedRectangularSpace extends PrimitiveRectangularSpace
+{
+	private MappedStateGrid mappedGrid;
+	private double originX = 0., originY = 0., cellSize = 1.;
+
+
+	/**
+	 * Constructor. The files <tt>&lt;basename&gt;.0</tt> and 
+	 * <tt>&lt;basename&gt;.1</tt> will be created, if they do not exist.
+	 *
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 * @param basename File name (incl. path) without extension
+	 * @throws Exception if the files can not be mapped
+	 */
+	public MappedRectangularSpace(int nx, int ny, String basename) 
+		throws Exception 
+	{
+		super(nx, ny);
+		this.mappedGrid = new MappedStateGrid(nx, ny, basename);
+	}
+
+	@Override
+	protected StateGrid createStateGrid(StateSet states)
+	{
+		if (states instanceof DiscreteStateSet) {
+			throw new IllegalArgumentException(
+				"Memory-mapped spaces require a continuous state set!");
+		}
+		return this.mappedGrid;
+	}
+
+	/**
+	 * gets the memory-mapped state grid, which is available before a state
+	 * set has been assigned, too.
+	 */
+	MappedStateGrid getMappedStateGrid() {
+		return this.mappedGrid;
+	}
+
+	/**
+	 * takes over the georeference (origin and cell size) of an elevation 
+	 * model. 
+	 *
+	 * @param dem Elevation model
+	 */
+	public void setGeoreference(ElevationModelToolBox.DEM dem) {
+		this.originX = dem.getOriginX();
+		this.originY = dem.getOriginY();
+		this.cellSize = dem.getCellSize();
+	}
+
+	/**
+	 * gets the x-coordinate of the center of the grid's lower left cell.
+	 *
+	 * @return x-coordinate
+	 */
+	public double getOriginX() {
+		return this.originX;
+	}
+
+	/**
+	 * gets the y-coordinate of the center of the grid's lower left cell.
+	 *
+	 * @return y-coordinate
+	 */
+	public double getOriginY() {
+		return this.originY;
+	}
+
+	/**
+	 * gets the grid cell size.
+	 *
+	 * @return Cell size
+	 */
+	public double getCellSize() {
+		return this.cellSize;
+	}
+
+	/**
+	 * writes modified cell states to the files and closes them. Afterwards,
+	 * the cellular space must not be used anymore.
+	 *
+	 * @throws Exception
+	 */
+	public void close() throws Exception {
+		this.mappedGrid.close();
+	}
+}
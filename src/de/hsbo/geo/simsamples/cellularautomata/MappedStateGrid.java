@@ -0,0 +1,239 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Primitive state storage for automata operating on a {@link
+ * ContinuousStateSet} that keeps the cell states in memory-mapped files
+ * instead of the Java heap. Thus, grids larger than the available memory
+ * can be processed; the operating system pages the required parts of the
+ * files in and out. Each of the two time-slot buffers is held in a file of
+ * its own (<tt>&lt;basename&gt;.0</tt> and <tt>&lt;basename&gt;.1</tt>),
+ * containing the cell values as little-endian <tt>double</tt>s in row-major
+ * order. Since a single mapping is limited to 2 GB, the files are mapped in
+ * segments consisting of complete grid rows.
+ * <p>
+ * Note that the files will not be deleted by the state grid. Different
+ * threads may access different cells concurrently.
+ *
+ * @see MappedRectangularSpace
+ *
+ * @author Benno Schmidt
+ */
+public class MappedStateGrid extends StateGrid
+	implements DoubleStateAccess
+{
+	static private final long MAX_SEGMENT_SIZE = 1L << 30; // bytes
+
+	private String basename;
+	private int rowsPerSegment;
+	private RandomAccessFile[] files = new RandomAccessFile[2];
+	private MappedByteBuffer[][] maps = new MappedByteBuffer[2][];
+	private DoubleBuffer[][] seg = new DoubleBuffer[2][];
+
+
+	/**
+	 * Constructor. The files will be created, if they do not exist.
+	 *
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 * @param basename File name (incl. path) without extension
+	 * @throws Exception if the files can not be mapped
+	 */
+	public MappedStateGrid(int nx, int ny, String basename) throws Exception
+	{
+		super(nx, ny);
+		if ((long) nx * ny > Integer.MAX_VALUE) {
+			throw new Exception(
+				"Grid size " + nx + "x" + ny + " exceeds the index range!");
+		}
+		this.basename = basename;
+		this.rowsPerSegment = (int) Math.max(1L,
+			Math.min(nx, MAX_SEGMENT_SIZE / (8L * Math.max(ny, 1))));
+		int n = (nx + this.rowsPerSegment - 1) / this.rowsPerSegment;
+
+		for (int s = 0; s < 2; s++) {
+			this.files[s] = new RandomAccessFile(this.getFile(s), "rw");
+			this.files[s].setLength(8L * nx * ny);
+			FileChannel ch = this.files[s].getChannel();
+			this.maps[s] = new MappedByteBuffer[n];
+			this.seg[s] = new DoubleBuffer[n];
+			for (int k = 0; k < n; k++) {
+				int rows = Math.min(
+					this.rowsPerSegment, nx - k * this.rowsPerSegment);
+				this.maps[s][k] = ch.map(FileChannel.MapMode.READ_WRITE,
+					8L * k * this.rowsPerSegment * ny, 8L * rows * ny);
+				this.maps[s][k].order(ByteOrder.LITTLE_ENDIAN);
+				this.seg[s][k] = this.maps[s][k].asDoubleBuffer();
+			}
+		}
+	}
+
+	/**
+	 * gets the file that holds the time-slot buffer <tt>s</tt>.
+	 *
+	 * @param s Buffer number (0 or 1)
+	 * @return File
+	 */
+	public File getFile(int s) {
+		return new File(this.basename + "." + s);
+	}
+
+	/**
+	 * gets the number of grid rows held by each mapped file segment.
+	 *
+	 * @return Number of rows
+	 */
+	public int rowsPerSegment() {
+		return this.rowsPerSegment;
+	}
+
+	public double getDouble(int ti, int i, int j) throws Exception {
+		return this.seg[this.slotForReading(ti)][i / this.rowsPerSegment]
+			.get((i % this.rowsPerSegment) * this.ny + j);
+	}
+
+	public void setDouble(int ti, int i, int j, double z) throws Exception {
+		this.seg[this.slotForWriting(ti)][i / this.rowsPerSegment]
+			.put((i % this.rowsPerSegment) * this.ny + j, z);
+	}
+
+	/**
+	 * copies the states of a grid row for the time step <tt>ti</tt> into the
+	 * given array.
+	 *
+	 * @param ti Time stamp index
+	 * @param i Row index
+	 * @param row Array receiving <tt>numberOfColumns()</tt> values
+	 * @throws Exception
+	 */
+	public void readRow(int ti, int i, double[] row) throws Exception {
+		this.row(this.slotForReading(ti), i).get(row, 0, this.ny);
+	}
+
+	/**
+	 * sets the states of a grid row for the time step <tt>ti</tt>.
+	 *
+	 * @param ti Time stamp index
+	 * @param i Row index
+	 * @param row Array holding <tt>numberOfColumns()</tt> values
+	 * @throws Exception
+	 */
+	public void writeRow(int ti, int i, double[] row) throws Exception {
+		this.row(this.slotForWriting(ti), i).put(row, 0, this.ny);
+	}
+
+	/**
+	 * gets a view onto a grid row. Since the view has a position of its own,
+	 * concurrent bulk operations are possible.
+	 */
+	private DoubleBuffer row(int s, int i) {
+		DoubleBuffer b = this.seg[s][i / this.rowsPerSegment].duplicate();
+		b.position((i % this.rowsPerSegment) * this.ny);
+		return b;
+	}
+
+	@Override
+	public Object getValue(int ti, int idx) throws Exception {
+		return this.getDouble(ti, idx / this.ny, idx % this.ny);
+	}
+
+	@Override
+	public void setValue(int ti, int idx, Object val) throws Exception {
+		if (!(val instanceof Number)) {
+			throw new Exception(
+				"Tried to assign non-numeric value \"" + val + "\"!");
+		}
+		this.setDouble(
+			ti, idx / this.ny, idx % this.ny, ((Number) val).doubleValue());
+	}
+
+	@Override
+	public void fill(int ti, Object val) throws Exception
+	{
+		if (!(val instanceof Number)) {
+			throw new Exception(
+				"Tried to assign non-numeric value \"" + val + "\"!");
+		}
+		double[] row = new double[this.ny];
+		Arrays.fill(row, ((Number) val).doubleValue());
+		for (int i = 0; i < this.nx; i++) {
+			this.writeRow(ti, i, row);
+		}
+	}
+
+	@Override
+	public void copy(int ti) throws Exception {
+		this.copyRows(ti, 0, this.nx);
+	}
+
+	@Override
+	public void copyRows(int ti, int iMin, int iMax) throws Exception
+	{
+		int src = this.slotForReading(ti), dst = this.slotForWriting(ti + 1);
+		for (int i = iMin; i < iMax; ) {
+			int
+				k = i / this.rowsPerSegment,
+				i1 = Math.min(iMax, (k + 1) * this.rowsPerSegment);
+			DoubleBuffer a = this.row(src, i), b = this.row(dst, i);
+			a.limit(a.position() + (i1 - i) * this.ny);
+			b.put(a);
+			i = i1;
+		}
+	}
+
+	@Override
+	public boolean hasChanged(int ti, int idx) throws Exception {
+		int i = idx / this.ny, j = idx % this.ny;
+		return this.getDouble(ti, i, j) != this.getDouble(ti + 1, i, j);
+	}
+
+	/**
+	 * writes modified file contents to the storage device.
+	 */
+	public void flush()
+	{
+		for (int s = 0; s < 2; s++) {
+			for (MappedByteBuffer m : this.maps[s]) {
+				m.force();
+			}
+		}
+	}
+
+	/**
+	 * flushes and closes the files. Afterwards, the state grid must not be
+	 * used anymore.
+	 *
+	 * @throws Exception
+	 */
+	public void close() throws Exception
+	{
+		this.flush();
+		for (int s = 0; s < 2; s++) {
+			this.files[s].close();
+		}
+	}
+
+	public String toString()
+	{
+		StringBuffer s = new StringBuffer();
+
+		s.append("(");
+		s.append(this.getClass().getSimpleName());
+		s.append(": ");
+		s.append(this.nx);
+		s.append("x");
+		s.append(this.ny);
+		s.append(", ");
+		s.append(this.basename);
+		s.append(")");
+
+		return s.toString();
+	}
+}
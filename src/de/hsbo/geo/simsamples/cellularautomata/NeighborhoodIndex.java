@@ -1,8 +1,23 @@
 package de.hsbo.geo.simsamples.cellularautomata;
 
 /**
- * Neighborhood index definition.
- * TODO: Implementation might be extended in the future.
+ * Neighborhood index definition. For rectangular cellular spaces, the 
+ * following neighborhoods of range <tt>r</tt> (given by the distance 
+ * parameter) are supported; they are identified by their number of 
+ * neighbor cells:
+ * <ul>
+ * <li>Moore neighborhood: all cells within a square of <tt>2 r + 1</tt> 
+ * cells, i.e. <tt>(2 r + 1)^2 - 1</tt> neighbors,</li>
+ * <li>Von Neumann neighborhood: all cells whose row and column offsets sum
+ * up to at most <tt>r</tt>, i.e. <tt>2 r (r + 1)</tt> neighbors,</li>
+ * <li>extended Von Neumann neighborhood: the cells up to a distance of 
+ * <tt>r</tt> in horizontal and vertical direction, i.e. <tt>4 r</tt> 
+ * neighbors.</li>
+ * </ul>
+ * For {@link HexagonalSpace}s, hexagonal neighborhoods consisting of all 
+ * cells within <tt>r</tt> steps, i.e. <tt>3 r (r + 1)</tt> neighbors, are
+ * supported. For cyclic neighborhoods, the grid will be regarded as torus,
+ * i.e. the neighborhoods of edge cells will be wrapped around. 
  * 
  * @author Benno Schmidt
  */
@@ -17,7 +32,7 @@ public class NeighborhoodIndex
 	 * Constructor
 	 * 
 	 * @param numberNeighbors Number of neighbors, e.g. 4 or 8 
-	 * @param distance Neighborhood extent, e.g. 1
+	 * @param distance Neighborhood range, e.g. 1
 	 * @param cyclic <i>true</i> for cyclic cell indices, else <i>false</i>
 	 */
 	public NeighborhoodIndex(
@@ -38,6 +53,18 @@ public class NeighborhoodIndex
 		return new NeighborhoodIndex(8, 1, false);
 	}
 
+	/**
+	 * defines a Moore neighborhood of range <tt>r</tt>, i.e. <tt>(2 r + 
+	 * 1)^2 - 1</tt> neighbor cells (for rectangular cell spaces).
+	 * 
+	 * @param r Range
+	 * @param cyclic <i>true</i> for cyclic cell indices, else <i>false</i>
+	 * @return Neighborhood index object
+	 */
+	public static NeighborhoodIndex MOORE(int r, boolean cyclic) {
+		return new NeighborhoodIndex((2 * r + 1) * (2 * r + 1) - 1, r, cyclic);
+	}
+
 	/**
 	 * @see NeighborhoodIndex#MOORE()
 	 */
@@ -55,6 +82,19 @@ public class NeighborhoodIndex
 		return new NeighborhoodIndex(4, 1, false);
 	}
 
+	/**
+	 * defines a Von Neumann neighborhood of range <tt>r</tt>, i.e. all cells 
+	 * whose row and column offsets sum up to at most <tt>r</tt> (for 
+	 * rectangular cell spaces).
+	 * 
+	 * @param r Range
+	 * @param cyclic <i>true</i> for cyclic cell indices, else <i>false</i>
+	 * @return Neighborhood index object
+	 */
+	public static NeighborhoodIndex VON_NEUMANN(int r, boolean cyclic) {
+		return new NeighborhoodIndex(2 * r * (r + 1), r, cyclic);
+	}
+
 	/**
 	 * @see NeighborhoodIndex#VON_NEUMANN()
 	 */
@@ -70,13 +110,32 @@ public class NeighborhoodIndex
 	 * @return Neighborhood index object
 	 */
 	public static NeighborhoodIndex VON_NEUMANN_EXTENDED() {
-		return new NeighborhoodIndex(4, 2, false);
+		return new NeighborhoodIndex(8, 2, false);
 	}
 
+	/**
+	 * defines a hexagonal neighborhood, i.e. 6 neighbor cells (for 
+	 * hexagonal cell spaces).
+	 * 
+	 * @return Neighborhood index object
+	 */
 	public static NeighborhoodIndex HEXAGONAL() {
 		return new NeighborhoodIndex(6, 1, false);
 	}
 
+	/**
+	 * defines a hexagonal neighborhood of range <tt>r</tt>, i.e. all cells 
+	 * within <tt>r</tt> steps, which are <tt>3 r (r + 1)</tt> neighbor cells
+	 * (for hexagonal cell spaces).
+	 * 
+	 * @param r Range
+	 * @param cyclic <i>true</i> for cyclic cell indices, else <i>false</i>
+	 * @return Neighborhood index object
+	 */
+	public static NeighborhoodIndex HEXAGONAL(int r, boolean cyclic) {
+		return new NeighborhoodIndex(3 * r * (r + 1), r, cyclic);
+	}
+
 	public short getNumberNeighbors() {
 		return numberNeighbors;
 	}
@@ -101,6 +160,24 @@ public class NeighborhoodIndex
 		this.cyclic = cyclic;
 	}
 		
+	@Override
+	public boolean equals(Object obj) 
+	{
+		if (!(obj instanceof NeighborhoodIndex)) 
+			return false;
+		NeighborhoodIndex n = (NeighborhoodIndex) obj;
+		return 
+			this.numberNeighbors == n.numberNeighbors && 
+			this.distance == n.distance && 
+			this.cyclic == n.cyclic;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * this.numberNeighbors + this.distance) + 
+			(this.cyclic ? 1 : 0);
+	}
+
 	public String toString() 
 	{
 		StringBuffer s = new StringBuffer();
@@ -0,0 +1,443 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Precomputed neighborhood definition for rectangular grids consisting of
+ * <tt>nx</tt> rows and <tt>ny</tt> columns. For each neighbor, the row and
+ * column offsets as well as the offset of the flat array index
+ * <tt>i * ny + j</tt> will be held. The method {@link
+ * NeighborhoodTable#neighbors(int, int, int[])} allows to query the array
+ * indices of a cell's neighbors without allocating any objects.
+ * <p>
+ * Supported are Moore and Von Neumann neighborhoods of arbitrary range
+ * <tt>r</tt> as well as extended Von Neumann neighborhoods, see {@link
+ * NeighborhoodIndex}. The neighbors are ordered by their distance; the
+ * neighbors with distance 1 are given in the order N, S, W, E, NW, NE, SW,
+ * SE. For {@link HexagonalSpace}s, hexagonal neighborhoods of range 
+ * <tt>r</tt> are supported instead; here the row and column offsets refer 
+ * to axial coordinates, and the neighbors with distance 1 are given in the
+ * order N, S, W, E, NE, SW.
+ * <p>
+ * Boundaries are handled by a halo of <tt>r</tt> ghost rows and columns
+ * around the grid: For inner cells, no range checks are necessary; for edge
+ * cells, the ghost cells are mapped to the corresponding grid cells by
+ * lookup tables, i.e. wrapped around for cyclic (toroidal) neighborhoods or
+ * skipped otherwise. For stencil computations, the halo can also be
+ * materialized, see {@link NeighborhoodTable#pad(double[], double[],
+ * double)}; then the padded offsets allow to access all neighbors without
+ * any range checks.
+ *
+ * @see RectangularSpace#getNeighborhoodTable(NeighborhoodIndex)
+ *
+ * @author Benno Schmidt
+ */
+public class NeighborhoodTable
+{
+	static private final int 
+		MOORE = 0, VON_NEUMANN = 1, CROSS = 2, HEXAGONAL = 3; // shapes
+
+	private int nx, ny;
+	private boolean cyclic;
+	private int[] di, dj; // row and column offsets
+	private int[] offsets; // array index offsets
+	private int[] paddedOffsets; // array index offsets inside padded grid
+	private int d = 1; // max. offset, i.e. halo width
+	private int[] rowMap; // i + d -> i' * ny or -1 for i = -d .. nx + d - 1
+	private int[] colMap; // j + d -> j' or -1 for j = -d .. ny + d - 1
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 * @param neighDef Neighborhood definition
+	 * @throws Exception if the neighborhood definition is not supported
+	 */
+	public NeighborhoodTable(int nx, int ny, NeighborhoodIndex neighDef)
+		throws Exception
+	{
+		this(nx, ny, neighDef, false);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 * @param neighDef Neighborhood definition
+	 * @param hexagonal <i>true</i> for grids of hexagonal cells given in 
+	 * axial coordinates, see {@link HexagonalSpace}
+	 * @throws Exception if the neighborhood definition is not supported
+	 */
+	public NeighborhoodTable(
+		int nx, int ny, NeighborhoodIndex neighDef, boolean hexagonal)
+		throws Exception
+	{
+		this.nx = nx;
+		this.ny = ny;
+		this.cyclic = neighDef.getCyclic();
+		this.d = Math.max(neighDef.getDistance(), 1);
+
+		int n = neighDef.getNumberNeighbors(), r = this.d;
+		List<int[]> cells;
+		if (hexagonal) {
+			if (n != 3 * r * (r + 1)) {
+				throw new Exception("Unsupported neighborhood definition " +
+					neighDef + " for hexagonal grids!");
+			}
+			cells = this.ring(HEXAGONAL);
+		}
+		else if (n == (2 * r + 1) * (2 * r + 1) - 1) {
+			cells = this.ring(MOORE);
+		}
+		else if (n == 2 * r * (r + 1)) {
+			cells = this.ring(VON_NEUMANN);
+		}
+		else if (n == 4 * r) {
+			cells = this.ring(CROSS);
+		}
+		else {
+			throw new Exception("Unsupported neighborhood definition " +
+				neighDef + " for rectangular grids!");
+		}
+
+		this.di = new int[cells.size()];
+		this.dj = new int[cells.size()];
+		this.offsets = new int[cells.size()];
+		this.paddedOffsets = new int[cells.size()];
+		int pny = ny + 2 * r;
+		for (int k = 0; k < this.di.length; k++) {
+			this.di[k] = cells.get(k)[0];
+			this.dj[k] = cells.get(k)[1];
+			this.offsets[k] = this.di[k] * ny + this.dj[k];
+			this.paddedOffsets[k] = this.di[k] * pny + this.dj[k];
+		}
+
+		this.rowMap = new int[nx + 2 * r];
+		for (int k = 0; k < this.rowMap.length; k++) {
+			int i = this.wrap(k - r, nx);
+			this.rowMap[k] = i < 0 ? -1 : i * ny;
+		}
+		this.colMap = new int[ny + 2 * r];
+		for (int k = 0; k < this.colMap.length; k++) {
+			this.colMap[k] = this.wrap(k - r, ny);
+		}
+	}
+
+	/**
+	 * collects the neighbor offsets ordered by distance. Within each ring,
+	 * the horizontal and vertical neighbors come first.
+	 */
+	private List<int[]> ring(int shape)
+	{
+		List<int[]> res = new ArrayList<int[]>();
+		for (int dist = 1; dist <= this.d; dist++) {
+			// Note: For dist = 1, the order corresponds to the order used
+			// by former versions of RectangularSpace#getNeighborCells.
+			res.add(new int[] {-dist, 0});
+			res.add(new int[] {dist, 0});
+			res.add(new int[] {0, -dist});
+			res.add(new int[] {0, dist});
+			if (shape == CROSS)
+				continue;
+			for (int a = -dist; a <= dist; a++) {
+				for (int b = -dist; b <= dist; b++) {
+					if (a == 0 || b == 0)
+						continue;
+					int m;
+					if (shape == MOORE)
+						m = Math.max(Math.abs(a), Math.abs(b));
+					else if (shape == HEXAGONAL)
+						m = HexagonalSpace.distance(0, 0, a, b);
+					else
+						m = Math.abs(a) + Math.abs(b);
+					if (m == dist)
+						res.add(new int[] {a, b});
+				}
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * maps the index <tt>k</tt> to the range 0 .. <tt>n</tt> - 1 for cyclic
+	 * neighborhoods; else returns -1 for indices out of range.
+	 */
+	private int wrap(int k, int n)
+	{
+		if (k >= 0 && k < n)
+			return k;
+		if (!this.cyclic)
+			return -1;
+		return ((k % n) + n) % n;
+	}
+
+	/**
+	 * gets the maximum number of neighbors of a cell. Buffers passed to
+	 * {@link NeighborhoodTable#neighbors(int, int, int[])} must have at
+	 * least this length.
+	 *
+	 * @return Number of neighbors
+	 */
+	public int size() {
+		return this.offsets.length;
+	}
+
+	/**
+	 * gets the maximum row and column offset of the neighbors, i.e. the
+	 * width of the halo.
+	 *
+	 * @return Neighborhood range
+	 */
+	public int haloWidth() {
+		return this.d;
+	}
+
+	/**
+	 * checks if the neighborhood is cyclic (toroidal).
+	 *
+	 * @return <i>true</i> for cyclic neighborhoods
+	 */
+	public boolean isCyclic() {
+		return this.cyclic;
+	}
+
+	/**
+	 * provides the array index offsets of the neighbor cells. For inner
+	 * cells, the neighbors' indices are given by <tt>i * ny + j +
+	 * offsets[k]</tt>.
+	 *
+	 * @return Array of index offsets
+	 */
+	public int[] getOffsets() {
+		return this.offsets;
+	}
+
+	/**
+	 * provides the row offsets of the neighbor cells.
+	 *
+	 * @return Array of row offsets
+	 */
+	public int[] getRowOffsets() {
+		return this.di;
+	}
+
+	/**
+	 * provides the column offsets of the neighbor cells.
+	 *
+	 * @return Array of column offsets
+	 */
+	public int[] getColumnOffsets() {
+		return this.dj;
+	}
+
+	/**
+	 * provides the array index offsets of the neighbor cells inside a
+	 * padded grid, see {@link NeighborhoodTable#pad(double[], double[],
+	 * double)}. For all cells, the neighbors' indices are given by
+	 * <tt>paddedIndex(i, j) + paddedOffsets[k]</tt>.
+	 *
+	 * @return Array of index offsets
+	 */
+	public int[] getPaddedOffsets() {
+		return this.paddedOffsets;
+	}
+
+	/**
+	 * gets the array index of the cell (<tt>i</tt>, <tt>j</tt>) inside a
+	 * padded grid.
+	 *
+	 * @param i Row index
+	 * @param j Column index
+	 * @return Array index
+	 */
+	public int paddedIndex(int i, int j) {
+		return (i + d) * (ny + 2 * d) + j + d;
+	}
+
+	/**
+	 * gets the number of elements of a padded grid, i.e. <tt>(nx + 2 r) *
+	 * (ny + 2 r)</tt>.
+	 *
+	 * @return Array length
+	 */
+	public int paddedSize() {
+		return (nx + 2 * d) * (ny + 2 * d);
+	}
+
+	/**
+	 * checks if all neighbors of the cell (<tt>i</tt>, <tt>j</tt>) are
+	 * located inside the grid.
+	 *
+	 * @param i Row index
+	 * @param j Column index
+	 * @return <i>true</i> for inner cells
+	 */
+	public boolean isInner(int i, int j) {
+		return i >= d && i < nx - d && j >= d && j < ny - d;
+	}
+
+	/**
+	 * determines the array indices of the neighbors of the cell in row
+	 * <tt>i</tt> and column <tt>j</tt>. The indices will be written to the
+	 * given buffer <tt>res</tt>, which should be re-used for consecutive
+	 * queries.
+	 *
+	 * @param i Row index
+	 * @param j Column index
+	 * @param res Buffer receiving the neighbor indices
+	 * @return Number of neighbors
+	 */
+	public int neighbors(int i, int j, int[] res)
+	{
+		int idx = i * ny + j;
+
+		if (this.isInner(i, j)) {
+			for (int k = 0; k < offsets.length; k++) {
+				res[k] = idx + offsets[k];
+			}
+			return offsets.length;
+		}
+
+		// Edge cell (ghost cells are mapped by the halo lookup tables):
+		int n = 0;
+		for (int k = 0; k < offsets.length; k++) {
+			int
+				ii = rowMap[i + d + di[k]],
+				jj = colMap[j + d + dj[k]];
+			if ((ii | jj) < 0)
+				continue;
+			res[n++] = ii + jj;
+		}
+		return n;
+	}
+
+	/**
+	 * determines the array index of the <tt>k</tt>-th neighbor of the cell 
+	 * in row <tt>i</tt> and column <tt>j</tt>. In contrast to {@link 
+	 * NeighborhoodTable#neighbors(int, int, int[])}, neighbors outside the 
+	 * grid will not be skipped.
+	 *
+	 * @param i Row index
+	 * @param j Column index
+	 * @param k Neighbor number, 0 .. <tt>size()</tt> - 1
+	 * @return Array index or -1, if the neighbor is located outside the grid
+	 */
+	public int neighbor(int i, int j, int k)
+	{
+		if (this.isInner(i, j))
+			return i * ny + j + offsets[k];
+		int
+			ii = rowMap[i + d + di[k]],
+			jj = colMap[j + d + dj[k]];
+		if ((ii | jj) < 0)
+			return -1;
+		return ii + jj;
+	}
+
+	/**
+	 * gets the number of the neighbor that is located in the opposite 
+	 * direction of the <tt>k</tt>-th neighbor. All supported neighborhoods 
+	 * are symmetric, i.e. if cell b is the <tt>k</tt>-th neighbor of cell a,
+	 * then a is the <tt>opposite(k)</tt>-th neighbor of b.
+	 *
+	 * @param k Neighbor number, 0 .. <tt>size()</tt> - 1
+	 * @return Neighbor number
+	 */
+	public int opposite(int k)
+	{
+		for (int m = 0; m < di.length; m++) {
+			if (di[m] == -di[k] && dj[m] == -dj[k])
+				return m;
+		}
+		return -1; // should never happen
+	}
+
+	/**
+	 * copies a grid of cell values into a padded grid consisting of
+	 * <tt>nx + 2 r</tt> rows and <tt>ny + 2 r</tt> columns. The halo will
+	 * be filled by the wrapped-around values for cyclic neighborhoods, else
+	 * by the given fill value.
+	 *
+	 * @param src Cell values in row-major order
+	 * @param dst Padded grid or <i>null</i>
+	 * @param fill Value for ghost cells outside the grid
+	 * @return Padded grid
+	 */
+	public double[] pad(double[] src, double[] dst, double fill)
+	{
+		if (dst == null)
+			dst = new double[this.paddedSize()];
+		int pny = ny + 2 * d;
+		for (int k = 0; k < this.rowMap.length; k++) {
+			int p = k * pny, s = this.rowMap[k];
+			if (s < 0) {
+				Arrays.fill(dst, p, p + pny, fill);
+				continue;
+			}
+			System.arraycopy(src, s, dst, p + d, ny);
+			for (int j = 0; j < d; j++) {
+				int a = this.colMap[j], b = this.colMap[ny + d + j];
+				dst[p + j] = a < 0 ? fill : src[s + a];
+				dst[p + ny + d + j] = b < 0 ? fill : src[s + b];
+			}
+		}
+		return dst;
+	}
+
+	/**
+	 * copies a grid of state codes into a padded grid.
+	 *
+	 * @see NeighborhoodTable#pad(double[], double[], double)
+	 *
+	 * @param src State codes in row-major order
+	 * @param dst Padded grid or <i>null</i>
+	 * @param fill Code for ghost cells outside the grid
+	 * @return Padded grid
+	 */
+	public byte[] pad(byte[] src, byte[] dst, byte fill)
+	{
+		if (dst == null)
+			dst = new byte[this.paddedSize()];
+		int pny = ny + 2 * d;
+		for (int k = 0; k < this.rowMap.length; k++) {
+			int p = k * pny, s = this.rowMap[k];
+			if (s < 0) {
+				Arrays.fill(dst, p, p + pny, fill);
+				continue;
+			}
+			System.arraycopy(src, s, dst, p + d, ny);
+			for (int j = 0; j < d; j++) {
+				int a = this.colMap[j], b = this.colMap[ny + d + j];
+				dst[p + j] = a < 0 ? fill : src[s + a];
+				dst[p + ny + d + j] = b < 0 ? fill : src[s + b];
+			}
+		}
+		return dst;
+	}
+
+	public String toString()
+	{
+		StringBuffer s = new StringBuffer();
+
+		s.append("(");
+		s.append(this.getClass().getSimpleName());
+		s.append(": ");
+		s.append(this.nx);
+		s.append("x");
+		s.append(this.ny);
+		s.append(" ");
+		s.append(this.offsets.length);
+		s.append(" ");
+		s.append(this.d);
+		s.append(" ");
+		s.append(this.cyclic);
+		s.append(")");
+
+		return s.toString();
+	}
+}
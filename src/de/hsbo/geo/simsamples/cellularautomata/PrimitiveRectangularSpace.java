@@ -0,0 +1,125 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+/**
+ * Implementation of a rectangular cellular space that stores the cell states
+ * in a {@link StateGrid}, i.e. in flat arrays of primitive values, instead
+ * of {@link Cell} objects. This reduces the memory consumption for big
+ * grids by orders of magnitude. Note that only the states for two
+ * consecutive time steps are held. For {@link DiscreteStateSet}s, a
+ * {@link DiscreteStateGrid} will be used, else a {@link ContinuousStateGrid}.
+ * Optionally, states of two-valued state sets can be packed into bits, see
+ * {@link BinaryStateGrid}. The state grid will be (re-)created whenever the
+ * set of cell states is assigned. For a tiled storage layout, see {@link 
+ * TiledRectangularSpace}.
+ * <p>
+ * Cell-based access is supported by {@link GridCell} views, which will be
+ * created on demand. Transition functions implementing the interface
+ * {@link PrimitiveTransitionFunction} can operate on the state grid directly.
+ *
+ * @author Benno Schmidt
+ */
+public class PrimitiveRectangularSpace extends RectangularSpace
+{
+	private StateGrid grid = null;
+	private boolean packBinaryStates = false;
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 */
+	public PrimitiveRectangularSpace(int nx, int ny) {
+		super(nx, ny, false);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 * @param packBinaryStates <i>true</i> to use a {@link BinaryStateGrid}
+	 * for state sets consisting of two states
+	 */
+	public PrimitiveRectangularSpace(int nx, int ny, boolean packBinaryStates) 
+	{
+		super(nx, ny, false);
+		this.packBinaryStates = packBinaryStates;
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 * @param states Set of cell states
+	 */
+	public PrimitiveRectangularSpace(int nx, int ny, StateSet states) {
+		this(nx, ny);
+		this.setStateSet(states);
+	}
+
+	@Override
+	public void setStateSet(StateSet states)
+	{
+		super.setStateSet(states);
+		this.grid = this.createStateGrid(states);
+	}
+
+	/**
+	 * creates the state grid for the given set of cell states. This method 
+	 * can be overridden to provide alternative storage layouts.
+	 *
+	 * @param states Set of cell states
+	 * @return State grid
+	 */
+	protected StateGrid createStateGrid(StateSet states)
+	{
+		if (states instanceof DiscreteStateSet && this.packBinaryStates && 
+			((DiscreteStateSet) states).getAsSet().size() == 2) 
+		{
+			return new BinaryStateGrid(
+				this.numberOfRows(), this.numberOfColumns(),
+				(DiscreteStateSet) states);
+		} else if (states instanceof DiscreteStateSet) {
+			return new DiscreteStateGrid(
+				this.numberOfRows(), this.numberOfColumns(),
+				(DiscreteStateSet) states);
+		}
+		return new ContinuousStateGrid(
+			this.numberOfRows(), this.numberOfColumns());
+	}
+
+	/**
+	 * provides access to the primitive storage of the cell states.
+	 *
+	 * @return State grid
+	 */
+	public StateGrid getStateGrid() {
+		return this.grid;
+	}
+
+	@Override
+	protected Cell cell(int i, int j) {
+		return new GridCell(this, i, j);
+	}
+
+	/**
+	 * creates {@link GridCell} views for all cells of this cellular space.
+	 * Note that calling this method is expensive for big grids.
+	 *
+	 * @return Array of cell objects
+	 */
+	@Override
+	public Cell[][] getCellArray()
+	{
+		Cell[][] arr = new Cell[this.numberOfRows()][this.numberOfColumns()];
+		for (int i = 0; i < this.numberOfRows(); i++) {
+			for (int j = 0; j < this.numberOfColumns(); j++) {
+				arr[i][j] = this.cell(i, j);
+			}
+		}
+		return arr;
+	}
+}
@@ -0,0 +1,28 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+/**
+ * Interface for {@link TransitionFunction}s that are able to operate on the
+ * primitive state storage of a {@link PrimitiveRectangularSpace} directly.
+ * If a transition function implements this interface, {@link
+ * RectangularAutomaton}s will call {@link PrimitiveTransitionFunction#step(
+ * StateGrid, int, int, int)} instead of the cell-based method {@link
+ * TransitionFunction#step(Cell, int)}.
+ *
+ * @author Benno Schmidt
+ */
+public interface PrimitiveTransitionFunction
+{
+	/**
+	 * performs the transition from time step <tt>ti</tt> to <tt>ti + 1</tt>
+	 * for all cells inside the rows <tt>iMin</tt> (inclusive) to
+	 * <tt>iMax</tt> (exclusive) of the given state grid.
+	 *
+	 * @param grid State grid
+	 * @param ti Time stamp index
+	 * @param iMin First row index
+	 * @param iMax Last row index + 1
+	 * @throws Exception
+	 */
+	public void step(StateGrid grid, int ti, int iMin, int iMax)
+		throws Exception;
+}
@@ -0,0 +1,945 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact binary raster format for elevation models and snapshots of
+ * rectangular cellular spaces. Compared to ArcInfo ASCII grids, no number
+ * parsing is necessary; uncompressed raster files are accessed zero-copy
+ * through memory-mapped buffers, so that even huge grids can be loaded
+ * within a fraction of a second.
+ * <p>
+ * A raster file consists of a header, the payload and an optional NODATA
+ * mask. All numbers are given in little-endian byte order:
+ * <pre>
+ *  0  magic "SIMRAST1"
+ *  8  int     number of rows nx
+ * 12  int     number of columns ny
+ * 16  int     encoding (FLOAT64 or UINT8)
+ * 20  int     tile size (0 for uncompressed payload)
+ * 24  double  x-coordinate of the center of the lower left cell
+ * 32  double  y-coordinate of the center of the lower left cell
+ * 40  double  cell size
+ * 48  double  NODATA value of the source data
+ * 56  long    payload offset
+ * 64  long    NODATA mask offset (0, if there is no mask)
+ * 72  int     number of states (UINT8 encoding only)
+ * 76  int     reserved
+ * 80  state table: type character, UTF-8 length (short), UTF-8 string
+ * </pre>
+ * For the encoding FLOAT64, cell values are given as <tt>double</tt>s, for
+ * the encoding UINT8 as (unsigned) <tt>byte</tt> codes referring to the
+ * state table, which lists the elements of a {@link DiscreteStateSet}.
+ * Uncompressed payloads hold the cell values in row-major order, i.e. the
+ * cell in row <tt>i</tt> and column <tt>j</tt> has the index <tt>i * ny +
+ * j</tt>. Compressed payloads consist of square tiles compressed separately
+ * by the Deflate algorithm; the payload starts with <tt>numberOfTiles() +
+ * 1</tt> <tt>long</tt> offsets (relative to the payload offset) giving the
+ * tiles' positions. Inside a tile, the cell values are given row by row.
+ * The NODATA mask consists of <tt>(nx * ny + 63) / 64</tt> <tt>long</tt>
+ * words; the bit <tt>i * ny + j</tt> marks the cell in row <tt>i</tt> and
+ * column <tt>j</tt>.
+ *
+ * @see ElevationModelToolBox#readRasterFile(String)
+ * @see ElevationModelToolBox#writeRasterFile(ElevationModelToolBox.DEM,
+ * String, int)
+ *
+ * @author Benno Schmidt
+ */
+public class RasterFile
+{
+	/** Encoding for continuous cell values (<tt>double</tt>) */
+	static public final int FLOAT64 = 0;
+	/** Encoding for discrete cell states (<tt>byte</tt> codes) */
+	static public final int UINT8 = 1;
+
+	static private final byte[] MAGIC = new byte[] {
+		'S', 'I', 'M', 'R', 'A', 'S', 'T', '1'
+	};
+	static private final int FIXED_HEADER_SIZE = 80;
+	static private final long MAX_SEGMENT_SIZE = 1L << 30; // bytes
+	static private final int WRITE_BUFFER_SIZE = 1 << 20; // bytes
+
+	private String filename;
+	private int nx, ny, encoding, tileSize;
+	private double originX, originY, cellSize, noDataValue;
+	private Object[] states = null;
+	private BitSet noData = null;
+
+	private RandomAccessFile file;
+	private long payloadOffset;
+	private int rowsPerSegment;
+	private ByteBuffer[] seg; // uncompressed payload
+	private long[] tileOffsets; // compressed payload
+	private int cachedTileRow = -1;
+	private ByteBuffer[] cache; // decompressed tiles of a tile row
+
+
+	/**
+	 * Constructor. The raster file will be opened and memory-mapped.
+	 *
+	 * @param filename Name (incl. path) of the raster file
+	 * @throws Exception if the file is no valid raster file
+	 */
+	public RasterFile(String filename) throws Exception
+	{
+		this.filename = filename;
+		this.file = new RandomAccessFile(filename, "r");
+		try {
+			this.readHeader();
+		}
+		catch (Exception e) {
+			this.file.close();
+			throw e;
+		}
+	}
+
+	private void readHeader() throws Exception
+	{
+		FileChannel ch = this.file.getChannel();
+		ByteBuffer h = ByteBuffer.allocate(FIXED_HEADER_SIZE);
+		h.order(ByteOrder.LITTLE_ENDIAN);
+		if (ch.read(h, 0) < FIXED_HEADER_SIZE || !hasMagic(h)) {
+			throw new Exception(
+				"File \"" + this.filename + "\" is no raster file!");
+		}
+		this.nx = h.getInt(8);
+		this.ny = h.getInt(12);
+		this.encoding = h.getInt(16);
+		this.tileSize = h.getInt(20);
+		this.originX = h.getDouble(24);
+		this.originY = h.getDouble(32);
+		this.cellSize = h.getDouble(40);
+		this.noDataValue = h.getDouble(48);
+		this.payloadOffset = h.getLong(56);
+		long maskOffset = h.getLong(64);
+		int n = h.getInt(72);
+		if (this.encoding != FLOAT64 && this.encoding != UINT8) {
+			throw new Exception(
+				"Unsupported raster encoding " + this.encoding + "!");
+		}
+
+		if (this.encoding == UINT8) {
+			ByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY,
+				FIXED_HEADER_SIZE, this.payloadOffset - FIXED_HEADER_SIZE);
+			b.order(ByteOrder.LITTLE_ENDIAN);
+			this.states = new Object[n];
+			for (int k = 0; k < n; k++) {
+				char type = (char) b.get();
+				byte[] utf = new byte[b.getShort() & 0xffff];
+				b.get(utf);
+				this.states[k] = decodeState(type, new String(utf, "UTF-8"));
+			}
+		}
+
+		if (this.tileSize > 0) {
+			ByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY,
+				this.payloadOffset, 8L * (this.numberOfTiles() + 1));
+			b.order(ByteOrder.LITTLE_ENDIAN);
+			this.tileOffsets = new long[this.numberOfTiles() + 1];
+			b.asLongBuffer().get(this.tileOffsets);
+		}
+		else {
+			int es = this.elementSize();
+			this.rowsPerSegment = (int) Math.max(1L, Math.min(this.nx,
+				MAX_SEGMENT_SIZE / ((long) es * Math.max(this.ny, 1))));
+			int ns = (this.nx + this.rowsPerSegment - 1) / this.rowsPerSegment;
+			this.seg = new ByteBuffer[ns];
+			for (int k = 0; k < ns; k++) {
+				int rows = Math.min(
+					this.rowsPerSegment, this.nx - k * this.rowsPerSegment);
+				this.seg[k] = ch.map(FileChannel.MapMode.READ_ONLY,
+					this.payloadOffset +
+					(long) es * k * this.rowsPerSegment * this.ny,
+					(long) es * rows * this.ny);
+				this.seg[k].order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+
+		if (maskOffset > 0) {
+			long words = ((long) this.nx * this.ny + 63L) / 64L;
+			ByteBuffer b = ch.map(
+				FileChannel.MapMode.READ_ONLY, maskOffset, 8L * words);
+			b.order(ByteOrder.LITTLE_ENDIAN);
+			this.noData = new BitSet();
+			for (int k = 0; k < words; k++) {
+				long w = b.getLong(8 * k);
+				while (w != 0L) {
+					int bit = Long.numberOfTrailingZeros(w);
+					w &= w - 1L;
+					this.noData.set(64 * k + bit);
+				}
+			}
+		}
+	}
+
+	/**
+	 * checks if the given file is a raster file.
+	 *
+	 * @param filename Name (incl. path) of file
+	 * @return <i>true</i> for raster files
+	 */
+	static public boolean isRasterFile(String filename)
+	{
+		if (!new File(filename).isFile())
+			return false;
+		try {
+			RandomAccessFile f = new RandomAccessFile(filename, "r");
+			try {
+				ByteBuffer h = ByteBuffer.allocate(MAGIC.length);
+				f.getChannel().read(h, 0);
+				return hasMagic(h);
+			}
+			finally {
+				f.close();
+			}
+		}
+		catch (Exception e) {
+			return false;
+		}
+	}
+
+	static private boolean hasMagic(ByteBuffer h) {
+		for (int k = 0; k < MAGIC.length; k++) {
+			if (h.get(k) != MAGIC[k])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * returns the number of rows of the raster.
+	 */
+	public int numberOfRows() {
+		return this.nx;
+	}
+
+	/**
+	 * returns the number of columns of the raster.
+	 */
+	public int numberOfColumns() {
+		return this.ny;
+	}
+
+	/**
+	 * gets the encoding of the cell values.
+	 *
+	 * @return {@link RasterFile#FLOAT64} or {@link RasterFile#UINT8}
+	 */
+	public int getEncoding() {
+		return this.encoding;
+	}
+
+	/**
+	 * gets the elements of the discrete state set referred to by the cell
+	 * values, if the encoding is {@link RasterFile#UINT8}.
+	 *
+	 * @return Array holding the states or <i>null</i>
+	 */
+	public Object[] getStates() {
+		return this.states;
+	}
+
+	/**
+	 * gets the size of the compressed tiles.
+	 *
+	 * @return Tile size or 0 for uncompressed files
+	 */
+	public int getTileSize() {
+		return this.tileSize;
+	}
+
+	/**
+	 * gets the x-coordinate of the center of the grid's lower left cell.
+	 *
+	 * @return x-coordinate
+	 */
+	public double getOriginX() {
+		return this.originX;
+	}
+
+	/**
+	 * gets the y-coordinate of the center of the grid's lower left cell.
+	 *
+	 * @return y-coordinate
+	 */
+	public double getOriginY() {
+		return this.originY;
+	}
+
+	/**
+	 * gets the grid cell size.
+	 *
+	 * @return Cell size
+	 */
+	public double getCellSize() {
+		return this.cellSize;
+	}
+
+	/**
+	 * gets the NODATA value of the source data.
+	 *
+	 * @return NODATA value
+	 */
+	public double getNoDataValue() {
+		return this.noDataValue;
+	}
+
+	/**
+	 * gets the NODATA mask.
+	 *
+	 * @return NODATA mask or <i>null</i>, if all cells hold valid data
+	 */
+	public BitSet getNoDataMask() {
+		return this.noData;
+	}
+
+	private int elementSize() {
+		return this.encoding == FLOAT64 ? 8 : 1;
+	}
+
+	private int numberOfTiles() {
+		int ts = this.tileSize;
+		return ((this.nx + ts - 1) / ts) * ((this.ny + ts - 1) / ts);
+	}
+
+	/**
+	 * gets the value of the cell in row <tt>i</tt> and column <tt>j</tt> as
+	 * <tt>double</tt>. For the encoding {@link RasterFile#UINT8}, the
+	 * states have to be numbers.
+	 *
+	 * @param i Row index
+	 * @param j Column index
+	 * @return Cell value
+	 * @throws Exception
+	 */
+	public double getDouble(int i, int j) throws Exception
+	{
+		if (this.encoding == UINT8) {
+			Object s = this.getValue(i, j);
+			if (!(s instanceof Number)) {
+				throw new Exception("Non-numeric state \"" + s + "\"!");
+			}
+			return ((Number) s).doubleValue();
+		}
+		if (this.tileSize > 0) {
+			synchronized (this) {
+				return this.tile(i, j).getDouble(8 * this.tileOffset(i, j));
+			}
+		}
+		return this.seg[i / this.rowsPerSegment].getDouble(
+			8 * ((i % this.rowsPerSegment) * this.ny + j));
+	}
+
+	/**
+	 * gets the value of the cell in row <tt>i</tt> and column <tt>j</tt>.
+	 * For the encoding {@link RasterFile#FLOAT64}, a {@link Double} will be
+	 * returned, else an element of the state set.
+	 *
+	 * @param i Row index
+	 * @param j Column index
+	 * @return Cell value
+	 * @throws Exception
+	 */
+	public Object getValue(int i, int j) throws Exception
+	{
+		if (this.encoding == FLOAT64)
+			return this.getDouble(i, j);
+		byte code;
+		if (this.tileSize > 0) {
+			synchronized (this) {
+				code = this.tile(i, j).get(this.tileOffset(i, j));
+			}
+		} else {
+			code = this.seg[i / this.rowsPerSegment].get(
+				(i % this.rowsPerSegment) * this.ny + j);
+		}
+		return this.states[code & 0xff];
+	}
+
+	/**
+	 * copies the values of the grid row <tt>i</tt> into the given array.
+	 * The encoding has to be {@link RasterFile#FLOAT64}.
+	 *
+	 * @param i Row index
+	 * @param row Array receiving <tt>numberOfColumns()</tt> values
+	 * @throws Exception
+	 */
+	public void readRow(int i, double[] row) throws Exception
+	{
+		if (this.encoding != FLOAT64) {
+			throw new Exception("Raster encoding is not FLOAT64!");
+		}
+		ByteBuffer b = this.row(i);
+		if (b != null) {
+			b.asDoubleBuffer().get(row, 0, this.ny);
+			return;
+		}
+		synchronized (this) {
+			for (int j0 = 0; j0 < this.ny; j0 += this.tileSize) {
+				ByteBuffer t = this.tile(i, j0).duplicate();
+				t.order(ByteOrder.LITTLE_ENDIAN);
+				t.position(8 * this.tileOffset(i, j0));
+				t.asDoubleBuffer().get(
+					row, j0, Math.min(this.tileSize, this.ny - j0));
+			}
+		}
+	}
+
+	/**
+	 * copies the codes of the grid row <tt>i</tt> into the given array. The
+	 * code <tt>c</tt> refers to the state <tt>getStates()[c & 0xff]</tt>.
+	 * The encoding has to be {@link RasterFile#UINT8}.
+	 *
+	 * @param i Row index
+	 * @param row Array receiving <tt>numberOfColumns()</tt> values
+	 * @throws Exception
+	 */
+	public void readRow(int i, byte[] row) throws Exception
+	{
+		if (this.encoding != UINT8) {
+			throw new Exception("Raster encoding is not UINT8!");
+		}
+		ByteBuffer b = this.row(i);
+		if (b != null) {
+			b.get(row, 0, this.ny);
+			return;
+		}
+		synchronized (this) {
+			for (int j0 = 0; j0 < this.ny; j0 += this.tileSize) {
+				ByteBuffer t = this.tile(i, j0).duplicate();
+				t.position(this.tileOffset(i, j0));
+				t.get(row, j0, Math.min(this.tileSize, this.ny - j0));
+			}
+		}
+	}
+
+	/**
+	 * gets a view onto an uncompressed grid row.
+	 */
+	private ByteBuffer row(int i)
+	{
+		if (this.tileSize > 0)
+			return null;
+		ByteBuffer b = this.seg[i / this.rowsPerSegment].duplicate();
+		b.order(ByteOrder.LITTLE_ENDIAN);
+		b.position(this.elementSize() * (i % this.rowsPerSegment) * this.ny);
+		return b;
+	}
+
+	/**
+	 * gets the decompressed tile containing the given cell. The tiles of
+	 * the last accessed tile row will be cached, so that reading the raster
+	 * row by row decompresses each tile once.
+	 */
+	private ByteBuffer tile(int i, int j) throws Exception
+	{
+		int ts = this.tileSize, tc = (this.ny + ts - 1) / ts;
+		if (i / ts != this.cachedTileRow) {
+			if (this.cache == null) {
+				this.cache = new ByteBuffer[tc];
+			}
+			Arrays.fill(this.cache, null);
+			this.cachedTileRow = i / ts;
+		}
+		int c = j / ts, t = (i / ts) * tc + c;
+		if (this.cache[c] == null) {
+			int
+				rows = Math.min(ts, this.nx - (i / ts) * ts),
+				cols = Math.min(ts, this.ny - c * ts);
+			byte[] in = new byte[
+				(int) (this.tileOffsets[t + 1] - this.tileOffsets[t])];
+			this.file.getChannel().read(ByteBuffer.wrap(in),
+				this.payloadOffset + this.tileOffsets[t]);
+			byte[] out = new byte[this.elementSize() * rows * cols];
+			Inflater inf = new Inflater();
+			inf.setInput(in);
+			int n = 0;
+			while (n < out.length && !inf.finished()) {
+				n += inf.inflate(out, n, out.length - n);
+				if (inf.needsInput() && n < out.length) {
+					throw new Exception("Corrupt tile " + t + "!");
+				}
+			}
+			inf.end();
+			this.cache[c] = ByteBuffer.wrap(out);
+			this.cache[c].order(ByteOrder.LITTLE_ENDIAN);
+		}
+		return this.cache[c];
+	}
+
+	/**
+	 * gets the index of the given cell inside its tile.
+	 */
+	private int tileOffset(int i, int j) {
+		int ts = this.tileSize;
+		int cols = Math.min(ts, this.ny - (j / ts) * ts);
+		return (i % ts) * cols + j % ts;
+	}
+
+	/**
+	 * copies the raster values to the initial states of the cells of the
+	 * given cellular space. The cellular space's state set has to be
+	 * assigned already. The NODATA mask will be taken over, too.
+	 *
+	 * @param sp Rectangular cellular space
+	 * @throws Exception if the grid sizes differ
+	 */
+	public void copyTo(RectangularSpace sp) throws Exception
+	{
+		if (sp.numberOfRows() != this.nx || sp.numberOfColumns() != this.ny) {
+			throw new Exception("Cellular space size " +
+				sp.numberOfRows() + "x" + sp.numberOfColumns() +
+				" does not match raster size " + this.nx + "x" + this.ny + "!");
+		}
+		sp.setNoDataMask(this.noData);
+
+		StateGrid g = sp instanceof PrimitiveRectangularSpace ?
+			((PrimitiveRectangularSpace) sp).getStateGrid() : null;
+		if (this.encoding == FLOAT64) {
+			double[] row = new double[this.ny];
+			for (int i = 0; i < this.nx; i++) {
+				if (g instanceof ContinuousStateGrid) {
+					this.readRow(i, row);
+					System.arraycopy(row, 0,
+						((ContinuousStateGrid) g).writeBuffer(0),
+						g.index(i, 0), this.ny);
+				}
+				else if (g instanceof MappedStateGrid) {
+					this.readRow(i, row);
+					((MappedStateGrid) g).writeRow(0, i, row);
+				}
+				else if (g instanceof DoubleStateAccess) {
+					this.readRow(i, row);
+					for (int j = 0; j < this.ny; j++) {
+						((DoubleStateAccess) g).setDouble(0, i, j, row[j]);
+					}
+				}
+				else {
+					this.readRow(i, row);
+					for (int j = 0; j < this.ny; j++) {
+						sp.getCell(i, j).setInitialValue(row[j]);
+					}
+				}
+			}
+		}
+		else {
+			byte[] row = new byte[this.ny];
+			byte[] map = null;
+			if (g instanceof DiscreteStateGrid) {
+				// Translate file codes to grid codes:
+				map = new byte[this.states.length];
+				for (int k = 0; k < map.length; k++) {
+					map[k] = ((DiscreteStateGrid) g).code(this.states[k]);
+				}
+			}
+			for (int i = 0; i < this.nx; i++) {
+				this.readRow(i, row);
+				if (map != null) {
+					byte[] z = ((DiscreteStateGrid) g).writeBuffer(0);
+					int off = g.index(i, 0);
+					for (int j = 0; j < this.ny; j++) {
+						z[off + j] = map[row[j] & 0xff];
+					}
+				} else {
+					for (int j = 0; j < this.ny; j++) {
+						sp.getCell(i, j).setInitialValue(
+							this.states[row[j] & 0xff]);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * closes the raster file. Afterwards, the object must not be used
+	 * anymore.
+	 *
+	 * @throws Exception
+	 */
+	public void close() throws Exception {
+		this.file.close();
+	}
+
+	/**
+	 * writes an elevation model to a raster file. The encoding will be
+	 * {@link RasterFile#FLOAT64}.
+	 *
+	 * @param dem Elevation model
+	 * @param filename Name (incl. path) of the raster file
+	 * @param tileSize Size of compressed tiles or 0 for an uncompressed file
+	 * @throws Exception
+	 */
+	static public void write(
+		final ElevationModelToolBox.DEM dem, String filename, int tileSize)
+		throws Exception
+	{
+		RasterFile h = new RasterFile(
+			dem.numberOfRows(), dem.numberOfColumns(), FLOAT64, tileSize);
+		h.originX = dem.getOriginX();
+		h.originY = dem.getOriginY();
+		h.cellSize = dem.getCellSize();
+		h.noDataValue = dem.getNoDataValue();
+		h.noData = dem.getNoDataMask();
+		h.write(filename, new RowSource() {
+			public void row(int i, ByteBuffer dst) {
+				dst.asDoubleBuffer().put(dem.getRow(i));
+			}
+		});
+	}
+
+	/**
+	 * writes the cell states of a rectangular cellular space for the time
+	 * step <tt>ti</tt> to a raster file. For {@link DiscreteStateSet}s, the
+	 * encoding {@link RasterFile#UINT8} will be used, else {@link
+	 * RasterFile#FLOAT64}. The georeference of {@link MappedRectangularSpace}s
+	 * will be taken over.
+	 *
+	 * @param sp Rectangular cellular space
+	 * @param ti Time stamp index
+	 * @param filename Name (incl. path) of the raster file
+	 * @param tileSize Size of compressed tiles or 0 for an uncompressed file
+	 * @throws Exception
+	 */
+	static public void write(final RectangularSpace sp, final int ti,
+		String filename, int tileSize) throws Exception
+	{
+		final int ny = sp.numberOfColumns();
+		final StateGrid g = sp instanceof PrimitiveRectangularSpace ?
+			((PrimitiveRectangularSpace) sp).getStateGrid() : null;
+		RowSource src;
+		RasterFile h;
+
+		if (sp.getStateSet() instanceof DiscreteStateSet) {
+			final Object[] states =
+				((DiscreteStateSet) sp.getStateSet()).getAsSet().toArray();
+			if (states.length > 256) {
+				throw new Exception(
+					"State sets consisting of more than 256 states " +
+					"are not supported!");
+			}
+			h = new RasterFile(sp.numberOfRows(), ny, UINT8, tileSize);
+			h.states = states;
+			final Map<Object, Byte> codes = new HashMap<Object, Byte>();
+			for (int k = 0; k < states.length; k++) {
+				codes.put(states[k], (byte) k);
+			}
+			src = new RowSource() {
+				public void row(int i, ByteBuffer dst) throws Exception {
+					if (g instanceof DiscreteStateGrid) {
+						// Codes refer to the sorted state set, too:
+						dst.put(((DiscreteStateGrid) g).readBuffer(ti),
+							g.index(i, 0), ny);
+						return;
+					}
+					for (int j = 0; j < ny; j++) {
+						Object s = sp.getCell(i, j).getValue(ti);
+						Byte c = codes.get(s);
+						if (c == null) {
+							throw new Exception("State \"" + s +
+								"\" is not element of the state set!");
+						}
+						dst.put(c);
+					}
+				}
+			};
+		}
+		else {
+			h = new RasterFile(sp.numberOfRows(), ny, FLOAT64, tileSize);
+			final double[] row = new double[ny];
+			src = new RowSource() {
+				public void row(int i, ByteBuffer dst) throws Exception {
+					if (g instanceof ContinuousStateGrid) {
+						dst.asDoubleBuffer().put(
+							((ContinuousStateGrid) g).readBuffer(ti),
+							g.index(i, 0), ny);
+						return;
+					}
+					if (g instanceof MappedStateGrid) {
+						((MappedStateGrid) g).readRow(ti, i, row);
+					}
+					else if (g instanceof DoubleStateAccess) {
+						for (int j = 0; j < ny; j++) {
+							row[j] = ((DoubleStateAccess) g).getDouble(ti, i, j);
+						}
+					}
+					else {
+						for (int j = 0; j < ny; j++) {
+							Object z = sp.getCell(i, j).getValue(ti);
+							if (!(z instanceof Number)) {
+								throw new Exception(
+									"Non-numeric cell value \"" + z + "\"!");
+							}
+							row[j] = ((Number) z).doubleValue();
+						}
+					}
+					dst.asDoubleBuffer().put(row);
+				}
+			};
+		}
+		if (sp instanceof MappedRectangularSpace) {
+			MappedRectangularSpace m = (MappedRectangularSpace) sp;
+			h.originX = m.getOriginX();
+			h.originY = m.getOriginY();
+			h.cellSize = m.getCellSize();
+		}
+		h.noData = sp.getNoDataMask();
+		h.write(filename, src);
+	}
+
+	/**
+	 * writes a snapshot of a rectangular cellular space to a raster file.
+	 *
+	 * @param s Snapshot
+	 * @param filename Name (incl. path) of the raster file
+	 * @param tileSize Size of compressed tiles or 0 for an uncompressed file
+	 * @throws Exception
+	 */
+	static public void write(final Snapshot s, String filename, int tileSize)
+		throws Exception
+	{
+		final int ny = s.numberOfColumns();
+		RasterFile h = new RasterFile(
+			s.numberOfRows(), ny, s.getEncoding(), tileSize);
+		h.states = s.getStates();
+		h.originX = s.getOriginX();
+		h.originY = s.getOriginY();
+		h.cellSize = s.getCellSize();
+		h.noData = s.getNoDataMask();
+		h.write(filename, new RowSource() {
+			public void row(int i, ByteBuffer dst) {
+				if (s.getEncoding() == UINT8)
+					dst.put(s.codes(), i * ny, ny);
+				else
+					dst.asDoubleBuffer().put(s.doubles(), i * ny, ny);
+			}
+		});
+	}
+
+	/**
+	 * Source of the grid rows to be written. The method <tt>row()</tt> has
+	 * to put the <tt>ny</tt> values of the row <tt>i</tt> into <tt>dst</tt>,
+	 * starting at its current position. The position need not be advanced.
+	 */
+	private interface RowSource {
+		public void row(int i, ByteBuffer dst) throws Exception;
+	}
+
+	/**
+	 * Constructor for header objects used when writing raster files.
+	 */
+	private RasterFile(int nx, int ny, int encoding, int tileSize)
+	{
+		this.nx = nx;
+		this.ny = ny;
+		this.encoding = encoding;
+		this.tileSize = Math.max(tileSize, 0);
+		this.originX = 0.;
+		this.originY = 0.;
+		this.cellSize = 1.;
+		this.noDataValue = Double.NaN;
+	}
+
+	private void write(String filename, RowSource src) throws Exception
+	{
+		RandomAccessFile f = new RandomAccessFile(filename, "rw");
+		try {
+			f.setLength(0);
+			FileChannel ch = f.getChannel();
+			int es = this.elementSize();
+
+			// Header incl. state table:
+			ByteBuffer h = ByteBuffer.allocate(FIXED_HEADER_SIZE +
+				(this.states == null ? 0 : this.stateTableSize()) + 8);
+			h.order(ByteOrder.LITTLE_ENDIAN);
+			h.position(FIXED_HEADER_SIZE);
+			if (this.states != null) {
+				for (Object s : this.states) {
+					byte[] utf = s.toString().getBytes("UTF-8");
+					h.put((byte) stateType(s));
+					h.putShort((short) utf.length);
+					h.put(utf);
+				}
+			}
+			this.payloadOffset = (h.position() + 7) & ~7; // 8-byte alignment
+			long pos = this.payloadOffset;
+
+			ByteBuffer rows;
+			if (this.tileSize == 0) {
+				int n = Math.max(1, WRITE_BUFFER_SIZE / Math.max(es * this.ny, 1));
+				rows = ByteBuffer.allocate(es * this.ny * Math.min(n, this.nx));
+				rows.order(ByteOrder.LITTLE_ENDIAN);
+				for (int i = 0; i < this.nx; ) {
+					rows.clear();
+					int i1 = Math.min(this.nx, i + n);
+					for (; i < i1; i++) {
+						int p = rows.position();
+						src.row(i, rows);
+						rows.position(p + es * this.ny);
+					}
+					rows.flip();
+					pos += this.writeFully(ch, rows, pos);
+				}
+			}
+			else {
+				int ts = this.tileSize, tc = (this.ny + ts - 1) / ts;
+				long[] off = new long[this.numberOfTiles() + 1];
+				pos += 8L * off.length; // offset table will be written last
+				rows = ByteBuffer.allocate(es * this.ny * ts);
+				rows.order(ByteOrder.LITTLE_ENDIAN);
+				byte[] tile = new byte[es * ts * ts];
+				byte[] out = new byte[tile.length + tile.length / 100 + 64];
+				Deflater def = new Deflater(Deflater.BEST_SPEED);
+				int t = 0;
+				for (int i0 = 0; i0 < this.nx; i0 += ts) {
+					int nr = Math.min(ts, this.nx - i0);
+					rows.clear();
+					for (int i = i0; i < i0 + nr; i++) {
+						int p = rows.position();
+						src.row(i, rows);
+						rows.position(p + es * this.ny);
+					}
+					for (int c = 0; c < tc; c++, t++) {
+						int j0 = c * ts, nc = Math.min(ts, this.ny - j0);
+						for (int ii = 0; ii < nr; ii++) {
+							System.arraycopy(rows.array(),
+								es * (ii * this.ny + j0), tile, es * ii * nc,
+								es * nc);
+						}
+						def.reset();
+						def.setInput(tile, 0, es * nr * nc);
+						def.finish();
+						off[t] = pos - this.payloadOffset;
+						while (!def.finished()) {
+							int n = def.deflate(out);
+							pos += this.writeFully(
+								ch, ByteBuffer.wrap(out, 0, n), pos);
+						}
+					}
+				}
+				def.end();
+				off[t] = pos - this.payloadOffset;
+				ByteBuffer b = ByteBuffer.allocate(8 * off.length);
+				b.order(ByteOrder.LITTLE_ENDIAN);
+				b.asLongBuffer().put(off);
+				this.writeFully(ch, b, this.payloadOffset);
+			}
+
+			// NODATA mask:
+			long maskOffset = 0;
+			if (this.noData != null && !this.noData.isEmpty()) {
+				maskOffset = (pos + 7) & ~7L;
+				long[] words = new long[
+					(int) (((long) this.nx * this.ny + 63L) / 64L)];
+				for (int k = this.noData.nextSetBit(0);
+					k >= 0 && k < (long) this.nx * this.ny;
+					k = this.noData.nextSetBit(k + 1))
+				{
+					words[k >>> 6] |= 1L << k;
+				}
+				ByteBuffer b = ByteBuffer.allocate(8 * words.length);
+				b.order(ByteOrder.LITTLE_ENDIAN);
+				b.asLongBuffer().put(words);
+				this.writeFully(ch, b, maskOffset);
+			}
+
+			// Fixed header:
+			h.position(0);
+			h.put(MAGIC, 0, MAGIC.length);
+			h.putInt(8, this.nx);
+			h.putInt(12, this.ny);
+			h.putInt(16, this.encoding);
+			h.putInt(20, this.tileSize);
+			h.putDouble(24, this.originX);
+			h.putDouble(32, this.originY);
+			h.putDouble(40, this.cellSize);
+			h.putDouble(48, this.noDataValue);
+			h.putLong(56, this.payloadOffset);
+			h.putLong(64, maskOffset);
+			h.putInt(72, this.states == null ? 0 : this.states.length);
+			h.putInt(76, 0);
+			h.position(0);
+			h.limit((int) this.payloadOffset);
+			this.writeFully(ch, h, 0);
+		}
+		finally {
+			f.close();
+		}
+	}
+
+	private int writeFully(FileChannel ch, ByteBuffer b, long pos)
+		throws Exception
+	{
+		int n = b.remaining();
+		while (b.hasRemaining()) {
+			pos += ch.write(b, pos);
+		}
+		return n;
+	}
+
+	private int stateTableSize() throws Exception {
+		int n = 0;
+		for (Object s : this.states) {
+			n += 3 + s.toString().getBytes("UTF-8").length;
+		}
+		return n;
+	}
+
+	static char stateType(Object s) throws Exception
+	{
+		if (s instanceof Integer) return 'I';
+		if (s instanceof Long) return 'L';
+		if (s instanceof Double) return 'D';
+		if (s instanceof Boolean) return 'B';
+		if (s instanceof Character) return 'C';
+		if (s instanceof String) return 'S';
+		throw new Exception("Unsupported state type \"" +
+			s.getClass().getSimpleName() + "\"!");
+	}
+
+	static Object decodeState(char type, String s) throws Exception
+	{
+		switch (type) {
+			case 'I': return Integer.valueOf(s);
+			case 'L': return Long.valueOf(s);
+			case 'D': return Double.valueOf(s);
+			case 'B': return Boolean.valueOf(s);
+			case 'C': return Character.valueOf(s.charAt(0));
+			case 'S': return s;
+		}
+		throw new Exception("Unsupported state type '" + type + "'!");
+	}
+
+	public String toString()
+	{
+		StringBuffer s = new StringBuffer();
+
+		s.append("(");
+		s.append(this.getClass().getSimpleName());
+		s.append(": ");
+		s.append(this.nx);
+		s.append("x");
+		s.append(this.ny);
+		s.append(", ");
+		s.append(this.encoding == FLOAT64 ? "FLOAT64" : "UINT8");
+		if (this.tileSize > 0) {
+			s.append(", tiles ");
+			s.append(this.tileSize);
+			s.append("x");
+			s.append(this.tileSize);
+		}
+		s.append(")");
+
+		return s.toString();
+	}
+}
@@ -1,12 +1,36 @@
 package de.hsbo.geo.simsamples.cellularautomata;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import de.hsbo.geo.simsamples.common.FastRandom;
 import de.hsbo.geo.simsamples.common.RandomValueGenerator;
 
 /**
  * Implementation of a universal Cellular Automaton operating on rectangular 
- * cellular spaces.
+ * cellular spaces. For big grids, the automaton can operate on a {@link 
+ * PrimitiveRectangularSpace}, which holds the cell states in primitive 
+ * arrays instead of {@link Cell} objects. Optionally, the cells can be 
+ * processed by multiple threads, see {@link 
+ * RectangularAutomaton#enableParallelExecution(int)}. For transition 
+ * functions that support it, only the cells inside the neighborhood of 
+ * cells that changed during the previous time step need to be processed, 
+ * see {@link RectangularAutomaton#enableSparseExecution()}. Long simulation
+ * runs can be checkpointed periodically and resumed later, see {@link 
+ * RectangularAutomaton#enableCheckpoints(String, int, int)}. Besides 
+ * synchronous updating, the asynchronous update modes offered by {@link 
+ * CellularAutomaton#setUpdateMode(int)} are supported; for primitive 
+ * spaces, transition functions implementing the interface {@link 
+ * AsynchronousTransitionFunction} will update the state grid in place. 
+ * Colour-partitioned sweeps will be processed in parallel, if parallel 
+ * execution is enabled. Transition functions implementing the interface 
+ * {@link FluxTransitionFunction} will be executed by a {@link 
+ * FluxAccumulator}.
  * 
  * @author Benno Schmidt
  */
@@ -14,6 +38,23 @@ public class RectangularAutomaton extends CellularAutomaton
 {
 	private int nx, ny;
 	
+	private ExecutorService executor = null;
+	private boolean ownExecutor = false;
+	private int numberOfStripes = 1;
+
+	private boolean sparse = false;
+	private ActivityTracker tracker = null; // only set in sparse mode
+	private NeighborhoodIndex trackerNeigh = null;
+
+	private CheckpointWriter checkpoints = null;
+
+	private int[] perm = null; // cell order for RANDOM_PERMUTATION
+	private ColorPartition colors = null; // for COLORED
+	private NeighborhoodIndex colorsNeigh = null;
+
+	private FluxAccumulator flux = null; // for FluxTransitionFunctions
+	private NeighborhoodIndex fluxNeigh = null;
+	
 
 	/**
 	 * Constructor
@@ -50,9 +91,27 @@ public class RectangularAutomaton extends CellularAutomaton
 		int ny, 
 		TransitionFunction delta) 
 	{
-		this.cells = new RectangularSpace(nx, ny);
-		this.nx = nx;
-		this.ny = ny;
+		this(new RectangularSpace(nx, ny), delta);
+	}
+
+	/**
+	 * Constructor. The automaton will operate on the given rectangular 
+	 * space, e.g. a {@link PrimitiveRectangularSpace}. Note that the set of
+	 * cell states will be got from the given transition function 
+	 * <tt>delta</tt>.
+	 * 
+	 * @param sp Rectangular cellular space
+	 * @param delta Transition function
+	 * 
+	 * @see CellularAutomaton
+	 */
+	public RectangularAutomaton(
+		RectangularSpace sp, 
+		TransitionFunction delta) 
+	{
+		this.cells = sp;
+		this.nx = sp.numberOfRows();
+		this.ny = sp.numberOfColumns();
 		this.setDelta(delta); 
 	}
 
@@ -67,6 +126,7 @@ public class RectangularAutomaton extends CellularAutomaton
 		if (! this.initialized) {
 			this.initialize();
 		}
+		this.markAllActive();
 
 		// Then step through time:
 		for (int ti = 0; ti <= numberOfSteps; ti++) {
@@ -76,8 +136,18 @@ public class RectangularAutomaton extends CellularAutomaton
 				System.out.println("ti = " + ti + ":"); 
 				((RectangularSpace) this.getCellularSpace()).dump(this.ti); 
 			}
+			this.notifySinks(this.ti);
 			
 			this.ti++;
+
+			if (this.checkpoints != null && this.checkpoints.isDue(this.ti)) {
+				this.checkpoints.write(this);
+			}
+		}
+		this.notifySinks(this.ti);
+		this.flushSinks();
+		if (this.checkpoints != null) {
+			this.checkpoints.flush();
 		}
 		
 		this.afterExecute();
@@ -89,22 +159,681 @@ public class RectangularAutomaton extends CellularAutomaton
 	@Override
 	public void step() throws Exception 
 	{
+		if (this.updateMode != SYNCHRONOUS) {
+			this.stepAsynchronous();
+			return;
+		}
+
 		this.delta.beforeStep(this.ti); 
+		// Step for automaton, could be implemented as empty function!
+
+		if (this.delta instanceof FluxTransitionFunction) {
+			this.tracker = null; // all cells will be processed
+			this.stepFlux();
+			this.delta.step(this.ti); 
+			return;
+		}
+
+		this.tracker = this.activityTracker();
+		if (this.tracker != null) {
+			this.tracker.prepare();
+		}
+
+		if (this.executor != null && this.delta.isParallelizable()) {
+			this.stepParallel();
+		} else {
+			this.stepRows(0, this.nx);
+		}
+
+		this.delta.step(this.ti); 
+		// Step for automaton, could be implemented as empty function!
+	}
+
+	/**
+	 * executes the assigned transition function for all cells inside the 
+	 * rows <tt>iMin</tt> (inclusive) to <tt>iMax</tt> (exclusive).
+	 * 
+	 * @param iMin First row index
+	 * @param iMax Last row index + 1
+	 * @throws Exception
+	 */
+	protected void stepRows(int iMin, int iMax) throws Exception 
+	{
+		if (this.tracker != null) {
+			this.stepActiveCells(iMin, iMax);
+			return;
+		}
+
+		if (this.cells instanceof PrimitiveRectangularSpace) {
+			PrimitiveRectangularSpace sp = 
+				(PrimitiveRectangularSpace) this.cells;
+			if (this.delta instanceof PrimitiveTransitionFunction) {
+				((PrimitiveTransitionFunction) this.delta).step(
+					sp.getStateGrid(), this.ti, iMin, iMax);
+				return;
+			}
+			// else use cell views:
+			for (int i = iMin; i < iMax; i++) {
+				for (int j = 0; j < this.ny; j++) {
+					this.delta.step(new GridCell(sp, i, j), this.ti); 
+				}
+			}
+			return;
+		}
 
 		Cell[][] arr = ((RectangularSpace) this.cells).getCellArray();
-		for (int i = 0; i < this.nx; i++) {
+		for (int i = iMin; i < iMax; i++) {
 			for (int j = 0; j < this.ny; j++) {
 				this.delta.step(arr[i][j], this.ti); 
 				// Step for a cell, could be implemented as empty function!
 			}
 		}
+	}
+
+	/**
+	 * executes the assigned transition function for the active cells inside
+	 * the rows <tt>iMin</tt> (inclusive) to <tt>iMax</tt> (exclusive). All
+	 * other cells keep their states. Changed cells will be registered. 
+	 */
+	private void stepActiveCells(int iMin, int iMax) throws Exception 
+	{
+		ActivityTracker at = this.tracker;
+
+		if (this.cells instanceof PrimitiveRectangularSpace) {
+			PrimitiveRectangularSpace sp = 
+				(PrimitiveRectangularSpace) this.cells;
+			StateGrid g = sp.getStateGrid();
+			g.copyRows(this.ti, iMin, iMax);
+
+			if (this.delta instanceof PrimitiveTransitionFunction) {
+				// Process contiguous blocks of active rows:
+				int i = iMin;
+				while (i < iMax) {
+					if (!at.isRowActive(i)) {
+						i++;
+						continue;
+					}
+					int i1 = i + 1;
+					while (i1 < iMax && at.isRowActive(i1)) {
+						i1++;
+					}
+					((PrimitiveTransitionFunction) this.delta).step(
+						g, this.ti, i, i1);
+					i = i1;
+				}
+			} else {
+				for (int i = iMin; i < iMax; i++) {
+					if (!at.isRowActive(i)) 
+						continue;
+					for (int j = 0; j < this.ny; j++) {
+						if (at.isActive(i, j)) 
+							this.delta.step(new GridCell(sp, i, j), this.ti); 
+					}
+				}
+			}
+
+			// Register changes:
+			for (int i = iMin; i < iMax; i++) {
+				if (!at.isRowActive(i)) 
+					continue;
+				for (int j = 0; j < this.ny; j++) {
+					if (at.isActive(i, j) && 
+						g.hasChanged(this.ti, g.index(i, j))) 
+					{
+						at.setChanged(i, j);
+					}
+				}
+			}
+			return;
+		}
+
+		Cell[][] arr = ((RectangularSpace) this.cells).getCellArray();
+		for (int i = iMin; i < iMax; i++) {
+			boolean rowActive = at.isRowActive(i);
+			for (int j = 0; j < this.ny; j++) {
+				Cell c = arr[i][j];
+				Object val = c.getValue(this.ti);
+				if (rowActive && at.isActive(i, j)) {
+					this.delta.step(c, this.ti); 
+					if (!val.equals(c.getValue(this.ti + 1))) 
+						at.setChanged(i, j);
+				} else {
+					c.setValue(this.ti + 1, val);
+				}
+			}
+		}
+	}
+
+	/**
+	 * performs the transition for a {@link FluxTransitionFunction}. For 
+	 * {@link ContinuousStateGrid}s, the accumulator operates on the grid's 
+	 * buffers directly; other state grids and cell objects will be accessed
+	 * row by row.
+	 */
+	private void stepFlux() throws Exception 
+	{
+		final FluxAccumulator acc = this.fluxAccumulator();
+		StateGrid g = this.getStateGrid();
+		final int t = this.ti;
+
+		RowTask task;
+		if (g instanceof ContinuousStateGrid) {
+			final double[] 
+				src = ((ContinuousStateGrid) g).readBuffer(t),
+				dst = ((ContinuousStateGrid) g).writeBuffer(t + 1);
+			task = new RowTask() {
+				public void run(int iMin, int iMax) throws Exception {
+					acc.step(src, dst, iMin, iMax);
+				}
+			};
+		} else {
+			final DoubleStateAccess access = (g instanceof DoubleStateAccess)
+				? (DoubleStateAccess) g : this.cellAccess();
+			task = new RowTask() {
+				public void run(int iMin, int iMax) throws Exception {
+					acc.step(access, t, iMin, iMax);
+				}
+			};
+		}
+
+		if (this.executor != null && this.delta.isParallelizable()) {
+			this.runStripes(task);
+		} else {
+			task.run(0, this.nx);
+		}
+	}
+
+	/**
+	 * gets an accessor to the numerical values of the cell objects.
+	 */
+	private DoubleStateAccess cellAccess() 
+	{
+		return new DoubleStateAccess() {
+			public double getDouble(int t, int i, int j) throws Exception 
+			{
+				Object val = cellAt(i, j).getValue(t);
+				if (!(val instanceof Number)) {
+					throw new Exception(
+						"Flux-based transitions require numerical cell states!");
+				}
+				return ((Number) val).doubleValue();
+			}
+			public void setDouble(int t, int i, int j, double z) 
+				throws Exception 
+			{
+				cellAt(i, j).setValue(t, z);
+			}
+		};
+	}
+
+	private FluxAccumulator fluxAccumulator() throws Exception
+	{
+		FluxTransitionFunction f = (FluxTransitionFunction) this.delta;
+		NeighborhoodIndex neigh = f.getFluxNeighborhood();
+		if (this.flux == null || this.flux.getTransitionFunction() != f || 
+			!neigh.equals(this.fluxNeigh)) 
+		{
+			this.flux = new FluxAccumulator(this.nx, this.ny, 
+				((RectangularSpace) this.cells).getNeighborhoodTable(neigh), f);
+			this.fluxNeigh = neigh;
+		}
+		return this.flux;
+	}
+
+	private void stepParallel() throws Exception 
+	{
+		this.runStripes(new RowTask() {
+			public void run(int iMin, int iMax) throws Exception {
+				stepRows(iMin, iMax);
+			}
+		});
+	}
+
+	/**
+	 * Task processing a stripe of rows, see {@link 
+	 * RectangularAutomaton#runStripes(RowTask)}.
+	 */
+	private interface RowTask {
+		public void run(int iMin, int iMax) throws Exception;
+	}
+
+	/**
+	 * partitions the rows into stripes, processes the stripes in parallel 
+	 * and waits until all of them have been finished.
+	 */
+	private void runStripes(final RowTask task) throws Exception 
+	{
+		// Partition rows into stripes (aligned to tile rows, if possible):
+		int unit = 1;
+		if (this.getStateGrid() instanceof TiledStateGrid) {
+			TiledStateGrid g = (TiledStateGrid) this.getStateGrid();
+			unit = g.tileSize();
+			g.updateHalos(this.ti); // before the stripes read the tiles
+		}
+		int units = (this.nx + unit - 1) / unit;
+		int n = Math.min(this.numberOfStripes, units);
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int k = 0; k < n; k++) {
+			final int 
+				iMin = Math.min((int) ((long) k * units / n) * unit, this.nx),
+				iMax = Math.min(
+					(int) ((long) (k + 1) * units / n) * unit, this.nx);
+			tasks.add(new Callable<Object>() {
+				public Object call() throws Exception {
+					task.run(iMin, iMax);
+					return null;
+				}
+			});
+		}
+
+		// Process stripes and wait until all of them have been finished:
+		List<Future<Object>> res = this.executor.invokeAll(tasks);
+		for (Future<Object> f : res) {
+			Concurrency.get(f);
+		}
+	}
+
+	@Override
+	protected void stepAsynchronous() throws Exception 
+	{
+		this.delta.beforeStep(this.ti); 
+		this.tracker = null; // all cells will be active after the sweep
+
+		// Copy states, then update the cells in place for ti + 1:
+		StateGrid g = this.getStateGrid();
+		if (g != null) {
+			g.copyRows(this.ti, 0, this.nx);
+		} else {
+			Cell[][] arr = ((RectangularSpace) this.cells).getCellArray();
+			for (int i = 0; i < this.nx; i++) {
+				for (int j = 0; j < this.ny; j++) {
+					arr[i][j].setValue(this.ti + 1, arr[i][j].getValue(this.ti));
+				}
+			}
+		}
+
+		FastRandom rand = new FastRandom(RandomValueGenerator.nextSeed());
+		if (this.updateMode == COLORED) {
+			this.sweepColored(rand);
+		} else {
+			this.sweep(rand);
+		}
+
 		this.delta.step(this.ti); 
-		// Step for automaton, could be implemented as empty function!
+	}
+
+	/**
+	 * updates randomly chosen cells or all cells in random order.
+	 */
+	private void sweep(FastRandom rand) throws Exception 
+	{
+		int n = this.nx * this.ny, t = this.ti + 1;
+		boolean sequential = this.updateMode == RANDOM_SEQUENTIAL;
+		if (!sequential) {
+			// Note: Shuffling starts with the identity for each time step, 
+			// so that the permutation does not depend on earlier steps.
+			if (this.perm == null || this.perm.length != n) {
+				this.perm = new int[n];
+			}
+			for (int k = 0; k < n; k++) {
+				this.perm[k] = k;
+			}
+			rand.shuffle(this.perm);
+		}
+
+		StateGrid g = this.getStateGrid();
+		if (g != null && this.delta instanceof AsynchronousTransitionFunction) {
+			AsynchronousTransitionFunction f = 
+				(AsynchronousTransitionFunction) this.delta;
+			for (int k = 0; k < n; k++) {
+				int idx = sequential ? rand.nextInt(n) : this.perm[k];
+				f.update(g, t, idx / this.ny, idx % this.ny, rand);
+			}
+			return;
+		}
+		// else use cell objects:
+		for (int k = 0; k < n; k++) {
+			int idx = sequential ? rand.nextInt(n) : this.perm[k];
+			this.delta.update(
+				this.cellAt(idx / this.ny, idx % this.ny), t, rand);
+		}
+	}
+
+	private Cell cellAt(int i, int j) 
+	{
+		if (this.cells instanceof PrimitiveRectangularSpace) {
+			return new GridCell((PrimitiveRectangularSpace) this.cells, i, j);
+		}
+		return ((RectangularSpace) this.cells).cell(i, j);
+	}
+
+	/**
+	 * processes the colour classes in random order. The cells of a colour 
+	 * class will be updated row by row; each row uses its own random number
+	 * generator, so that the result does not depend on the number of 
+	 * threads. As for synchronous steps, the rows will be processed in 
+	 * parallel only if the transition function is parallelizable.
+	 */
+	private void sweepColored(FastRandom rand) throws Exception 
+	{
+		final ColorPartition cp = this.colorPartition();
+		int m = cp.numberOfColors();
+		int[] order = new int[m];
+		for (int c = 0; c < m; c++) {
+			order[c] = c;
+		}
+		rand.shuffle(order);
+
+		boolean parallel =
+			this.executor != null && this.delta.isParallelizable();
+		final long[] seeds = new long[this.nx];
+		for (int c : order) {
+			for (int i = 0; i < this.nx; i++) {
+				seeds[i] = rand.nextLong();
+			}
+			final int color = c;
+			RowTask task = new RowTask() {
+				public void run(int iMin, int iMax) throws Exception {
+					updateRows(cp, color, seeds, iMin, iMax);
+				}
+			};
+			if (parallel) {
+				this.runStripes(task);
+			} else {
+				task.run(0, this.nx);
+			}
+		}
+	}
+
+	private void updateRows(
+		ColorPartition cp, int color, long[] seeds, int iMin, int iMax) 
+		throws Exception
+	{
+		int t = this.ti + 1;
+		FastRandom r = new FastRandom(0L);
+		StateGrid g = this.getStateGrid();
+		AsynchronousTransitionFunction f = 
+			g != null && this.delta instanceof AsynchronousTransitionFunction ?
+			(AsynchronousTransitionFunction) this.delta : null;
+		for (int i = iMin; i < iMax; i++) {
+			r.setSeed(seeds[i]);
+			for (int j : cp.columns(i, color)) {
+				if (f != null)
+					f.update(g, t, i, j, r);
+				else
+					this.delta.update(this.cellAt(i, j), t, r);
+			}
+		}
+	}
+
+	private ColorPartition colorPartition() throws Exception
+	{
+		NeighborhoodIndex neigh = this.delta.getUpdateNeighborhood();
+		if (neigh == null) {
+			throw new Exception("Colour-partitioned updating requires a " +
+				"transition function providing its update neighborhood!");
+		}
+		if (this.colors == null || !neigh.equals(this.colorsNeigh)) {
+			this.colors = new ColorPartition(this.nx, this.ny, 
+				((RectangularSpace) this.cells).getNeighborhoodTable(neigh));
+			this.colorsNeigh = neigh;
+		}
+		return this.colors;
+	}
+
+	/**
+	 * enables multi-threaded execution using as many threads as processors
+	 * are available.
+	 * 
+	 * @see RectangularAutomaton#enableParallelExecution(int)
+	 */
+	public void enableParallelExecution() {
+		this.enableParallelExecution(
+			Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * enables multi-threaded execution. For each time step, the rows of the
+	 * cellular grid will be partitioned into stripes that will be processed
+	 * in parallel. The methods {@link TransitionFunction#beforeStep(int)} 
+	 * and {@link TransitionFunction#step(int)} will still be executed by the
+	 * calling thread. Note that parallel execution will only take place, if
+	 * the assigned transition function is parallelizable, see {@link 
+	 * TransitionFunction#isParallelizable()}.
+	 * 
+	 * @param numberOfThreads Number of threads
+	 */
+	public void enableParallelExecution(int numberOfThreads) 
+	{
+		this.disableParallelExecution();
+		ExecutorService ex = Executors.newFixedThreadPool(
+			numberOfThreads, Concurrency.daemonThreads());
+		this.setExecutor(ex, 4 * numberOfThreads);
+		this.ownExecutor = true;
+	}
+
+	/**
+	 * enables multi-threaded execution using the given executor. For each 
+	 * time step, the rows of the cellular grid will be partitioned into the 
+	 * given number of stripes. Note that the executor will not be shut down 
+	 * by the automaton.
+	 * 
+	 * @param executor Executor service
+	 * @param numberOfStripes Number of row stripes per time step 
+	 */
+	public void setExecutor(ExecutorService executor, int numberOfStripes) 
+	{
+		this.disableParallelExecution();
+		this.executor = executor;
+		this.numberOfStripes = Math.max(numberOfStripes, 1);
+	}
+
+	/**
+	 * disables multi-threaded execution.
+	 */
+	public void disableParallelExecution() 
+	{
+		if (this.executor != null && this.ownExecutor) {
+			this.executor.shutdown();
+		}
+		this.executor = null;
+		this.ownExecutor = false;
+	}
+
+	/**
+	 * enables sparse execution. Then, for each time step only the cells 
+	 * whose own states or whose neighbors' states changed during the 
+	 * previous time step will be processed; all other cells keep their 
+	 * states. The changed cells will be tracked by the automaton. Note that
+	 * sparse execution will only take place, if the assigned transition 
+	 * function supports it, see {@link 
+	 * TransitionFunction#getDependencyNeighborhood()}. Note that modifying 
+	 * cell states from outside the transition function requires a call of 
+	 * {@link RectangularAutomaton#markAllActive()}.
+	 */
+	public void enableSparseExecution() {
+		this.sparse = true;
+		this.markAllActive();
+	}
+
+	/**
+	 * disables sparse execution, i.e. all cells will be processed for each
+	 * time step.
+	 */
+	public void disableSparseExecution() {
+		this.sparse = false;
+		this.tracker = null;
+	}
+
+	/**
+	 * marks all cells as active, so that they will be processed during the 
+	 * next time step, even if sparse execution is enabled.
+	 */
+	public void markAllActive() {
+		if (this.tracker != null) {
+			this.tracker.markAll();
+		}
+	}
+
+	/**
+	 * gets the number of cells that have been processed during the recent 
+	 * time step.
+	 * 
+	 * @return Number of cells
+	 */
+	public int numberOfActiveCells() {
+		if (this.tracker != null) {
+			return this.tracker.numberOfActiveCells();
+		}
+		return this.nx * this.ny;
+	}
+
+	private ActivityTracker activityTracker() throws Exception
+	{
+		NeighborhoodIndex neigh = 
+			this.sparse ? this.delta.getDependencyNeighborhood() : null;
+		if (neigh == null) {
+			this.trackerNeigh = null;
+			return null;
+		}
+		if (this.tracker == null || !neigh.equals(this.trackerNeigh)) {
+			this.trackerNeigh = neigh;
+			return new ActivityTracker(this.nx, this.ny, 
+				((RectangularSpace) this.cells).getNeighborhoodTable(neigh));
+		}
+		return this.tracker;
+	}
+
+	/**
+	 * enables periodic checkpoints holding full copies of the current cell
+	 * states.
+	 * 
+	 * @param basename File name (incl. path) without extension
+	 * @param interval Number of time steps between two checkpoints
+	 * 
+	 * @see RectangularAutomaton#enableCheckpoints(String, int, int)
+	 */
+	public void enableCheckpoints(String basename, int interval) 
+		throws Exception 
+	{
+		this.enableCheckpoints(basename, interval, 1);
+	}
+
+	/**
+	 * enables periodic checkpoints. During simulation runs, every 
+	 * <tt>interval</tt> time steps the current cell states, the state of the 
+	 * pseudo random number generator and the transition function's 
+	 * parameters will be written to the file 
+	 * <tt>&lt;basename&gt;.&lt;ti&gt;.ckpt</tt>, see {@link Checkpoint}. 
+	 * Files will be written in the background. Every 
+	 * <tt>fullInterval</tt>-th checkpoint holds all cell states, the other 
+	 * ones only the cells that changed since the previous checkpoint. An 
+	 * interrupted simulation run can be continued using the method {@link 
+	 * RectangularAutomaton#resume(String, int)}.
+	 * 
+	 * @param basename File name (incl. path) without extension
+	 * @param interval Number of time steps between two checkpoints
+	 * @param fullInterval Number of checkpoints between two full checkpoints
+	 * @throws Exception
+	 */
+	public void enableCheckpoints(
+		String basename, int interval, int fullInterval) throws Exception 
+	{
+		this.disableCheckpoints();
+		this.checkpoints = 
+			new CheckpointWriter(basename, interval, fullInterval);
+	}
+
+	/**
+	 * disables periodic checkpoints. A pending checkpoint will be written 
+	 * completely before.
+	 * 
+	 * @throws Exception if writing the pending checkpoint failed
+	 */
+	public void disableCheckpoints() throws Exception 
+	{
+		if (this.checkpoints != null) {
+			CheckpointWriter w = this.checkpoints;
+			this.checkpoints = null;
+			w.close();
+		}
+	}
+
+	/**
+	 * gets the writer for periodic checkpoints.
+	 * 
+	 * @return Checkpoint writer or <i>null</i>, if checkpoints are disabled
+	 */
+	public CheckpointWriter getCheckpointWriter() {
+		return this.checkpoints;
+	}
+
+	/**
+	 * restores the cell states, the state of the pseudo random number 
+	 * generator and the transition function's parameters from a checkpoint
+	 * file. Afterwards, the automaton's current time step will be the 
+	 * checkpoint's time step.
+	 * 
+	 * @param filename Name (incl. path) of the checkpoint file
+	 * @throws Exception
+	 */
+	public void restoreCheckpoint(String filename) throws Exception {
+		Checkpoint.read(filename).restore(this);
+	}
+
+	/**
+	 * continues a simulation run from a checkpoint. The remaining time steps
+	 * of the run <tt>execute(numberOfSteps)</tt>, which has been started at
+	 * time step 0 and interrupted after the checkpoint had been written, 
+	 * will be executed. For deterministic transition functions (or when 
+	 * running single-threaded), the results will equal those of an 
+	 * uninterrupted run.
+	 * 
+	 * @param filename Name (incl. path) of the checkpoint file
+	 * @param numberOfSteps Number of time steps of the original run
+	 * @throws Exception
+	 */
+	public void resume(String filename, int numberOfSteps) throws Exception 
+	{
+		this.restoreCheckpoint(filename);
+		int remaining = numberOfSteps + 1 - this.ti;
+		if (remaining > 0) {
+			this.execute(remaining - 1);
+		}
+	}
+
+	/**
+	 * gets the primitive state storage, if the automaton operates on a 
+	 * {@link PrimitiveRectangularSpace}. 
+	 * 
+	 * @return State grid or <i>null</i> for object-based cellular spaces
+	 */
+	public StateGrid getStateGrid() {
+		if (this.cells instanceof PrimitiveRectangularSpace) {
+			return ((PrimitiveRectangularSpace) this.cells).getStateGrid();
+		}
+		return null;
 	}
 
 	@Override
 	public void initializeRandomly() throws Exception 
 	{
+		StateGrid g = this.getStateGrid();
+		if (g != null) {
+			if (this.stateSet instanceof DiscreteStateSet) {
+				Set<Object> states = 
+					((DiscreteStateSet) this.stateSet).getAsSet();
+				for (int k = 0; k < g.size(); k++) {
+					g.setValue(
+						0, k, RandomValueGenerator.chooseRandomly(states));
+				}
+			}
+			// TODO ContinuousStateSet
+			this.initialized = true;
+			this.markAllActive();
+			return;
+		}
+
 		Cell[][] arr = ((RectangularSpace) this.cells).getCellArray();
 		for (int i = 0; i < this.nx; i++) {
 			for (int j = 0; j < this.ny; j++) {
@@ -118,6 +847,7 @@ public class RectangularAutomaton extends CellularAutomaton
 			}
 		}
 		this.initialized = true;
+		this.markAllActive();
 	}
 
 	@Override
@@ -127,6 +857,15 @@ public class RectangularAutomaton extends CellularAutomaton
 			this.initializeWith(vals[0]);
 			return;
 		}
+		StateGrid g = this.getStateGrid();
+		if (g != null) {
+			for (int k = 0; k < g.size(); k++) {
+				g.setValue(0, k, RandomValueGenerator.chooseRandomly(vals));
+			}
+			this.initialized = true;
+			this.markAllActive();
+			return;
+		}
 		Cell[][] arr = ((RectangularSpace) this.cells).getCellArray();
 		for (int i = 0; i < this.nx; i++) {
 			for (int j = 0; j < this.ny; j++) {
@@ -135,11 +874,19 @@ public class RectangularAutomaton extends CellularAutomaton
 			}
 		}
 		this.initialized = true;
+		this.markAllActive();
 	}
 
 	@Override
 	public void initializeWith(Object val) throws Exception 
 	{
+		StateGrid g = this.getStateGrid();
+		if (g != null) {
+			g.fill(0, val);
+			this.initialized = true;
+			this.markAllActive();
+			return;
+		}
 		Cell[][] arr = ((RectangularSpace) this.cells).getCellArray();
 		for (int i = 0; i < this.nx; i++) {
 			for (int j = 0; j < this.ny; j++) {
@@ -147,5 +894,6 @@ public class RectangularAutomaton extends CellularAutomaton
 			}
 		}
 		this.initialized = true;
+		this.markAllActive();
 	}
 }
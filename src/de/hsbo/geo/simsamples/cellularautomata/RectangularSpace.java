@@ -1,7 +1,10 @@
 package de.hsbo.geo.simsamples.cellularautomata;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Implementation of a rectangular cellular space.
@@ -12,6 +15,10 @@ public class RectangularSpace extends CellularSpace
 {
 	private Cell[][] cells = null;
 	private int nx = 0, ny = 0;
+	private ConcurrentMap<NeighborhoodIndex, NeighborhoodTable> neighTables =
+		new ConcurrentHashMap<NeighborhoodIndex, NeighborhoodTable>();
+	private ThreadLocal<int[]> neighBuffer = new ThreadLocal<int[]>();
+	private BitSet noData = null; // NODATA mask (index i * ny + j)
 	
 
 	/**
@@ -21,18 +28,54 @@ public class RectangularSpace extends CellularSpace
 	 * @param ny Number of columns of the cellular grid
 	 */
 	public RectangularSpace(int nx, int ny) {
+		this(nx, ny, true);
+	}
+
+	/**
+	 * Constructor for sub-classes that do not hold {@link Cell} objects, but
+	 * store the cell states in a different way. These sub-classes have to
+	 * override the method {@link RectangularSpace#cell(int, int)}.
+	 * 
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 * @param createCells <i>true</i> to create {@link CellImpl} objects
+	 */
+	protected RectangularSpace(int nx, int ny, boolean createCells) {
 		super();
 		this.nx = nx;
 		this.ny = ny;
+		if (!createCells) 
+			return;
 		this.cells = new Cell[nx][ny];
 		for (int i = 0; i < nx; i++) {
 			for (int j = 0; j < ny; j++) {
-				this.cells[i][j] = 
-					new CellImpl(this, new RectangularCellLocation(i, j));
+				this.cells[i][j] = new CellImpl(this, this.location(i, j));
 			}
 		}
 	}
 
+	/**
+	 * creates the location information for the cell at a given position.
+	 * 
+	 * @param i Row index
+	 * @param j Column index
+	 * @return Cell location
+	 */
+	protected CellLocation location(int i, int j) {
+		return new RectangularCellLocation(i, j);
+	}
+
+	/**
+	 * gets the {@link Cell} at a given position without any range check.
+	 * 
+	 * @param i Row index
+	 * @param j Column index
+	 * @return Cell object
+	 */
+	protected Cell cell(int i, int j) {
+		return this.cells[i][j];
+	}
+
 	/**
 	 * gets all {@link Cell} objects of this cellular space. Note that for this
 	 * rectangular space the method {@link RectangularSpace#getCellArray()} is 
@@ -46,7 +89,7 @@ public class RectangularSpace extends CellularSpace
 		List<Cell> cells = new ArrayList<Cell>(); 
 		for (int i = 0; i < this.nx; i++) {
 			for (int j = 0; j < this.ny; j++) {
-				Cell c = this.cells[i][j];
+				Cell c = this.cell(i, j);
 				if (c != null) {
 					cells.add(c);
 				}
@@ -96,7 +139,7 @@ public class RectangularSpace extends CellularSpace
 			throw new Exception("Tried to access cell (" + i + ", " + j + 
 				") out of array bounds (0.." + nx + ", 0.." + ny + ")!");
 		}
-		return this.cells[i][j];
+		return this.cell(i, j);
 	}
 
 	/**
@@ -111,57 +154,145 @@ public class RectangularSpace extends CellularSpace
 		return this.getCell(pos.i, pos.j);
 	}
 
+	/**
+	 * assigns a NODATA mask to the cellular space, e.g. for cells outside 
+	 * the area covered by an elevation model. The bit <tt>i * 
+	 * numberOfColumns() + j</tt> marks the cell in row <tt>i</tt> and column
+	 * <tt>j</tt>. Transition functions can query the mask using the method
+	 * {@link RectangularSpace#isNoData(int, int)}.
+	 * 
+	 * @param mask NODATA mask or <i>null</i>, if all cells hold valid data
+	 */
+	public void setNoDataMask(BitSet mask) {
+		this.noData = mask;
+	}
+
+	/**
+	 * gets the NODATA mask of the cellular space.
+	 * 
+	 * @return NODATA mask or <i>null</i>, if all cells hold valid data
+	 */
+	public BitSet getNoDataMask() {
+		return this.noData;
+	}
+
+	/**
+	 * checks if the cell in row <tt>i</tt> and column <tt>j</tt> is marked
+	 * as NODATA cell.
+	 * 
+	 * @param i Row index
+	 * @param j Column index
+	 * @return <i>true</i> for NODATA cells
+	 */
+	public boolean isNoData(int i, int j) {
+		return this.noData != null && this.noData.get(i * this.ny + j);
+	}
+
+	/**
+	 * gets the precomputed neighborhood table for the given neighborhood 
+	 * definition. The table will be created once for each neighborhood 
+	 * definition and then be re-used. This method does not lock, thus 
+	 * different threads may query the tables concurrently.
+	 * 
+	 * @param neighDef Neighborhood definition
+	 * @return Neighborhood table
+	 * @throws Exception if the neighborhood definition is not supported
+	 */
+	public NeighborhoodTable getNeighborhoodTable(
+		NeighborhoodIndex neighDef) throws Exception
+	{
+		NeighborhoodTable t = this.neighTables.get(neighDef);
+		if (t == null) {
+			t = this.createNeighborhoodTable(neighDef);
+			NeighborhoodTable prev = this.neighTables.putIfAbsent(
+				new NeighborhoodIndex(
+					neighDef.getNumberNeighbors(), 
+					neighDef.getDistance(), 
+					neighDef.getCyclic()), 
+				t);
+			if (prev != null) 
+				t = prev; // created concurrently by another thread
+		}
+		return t;
+	}
+
+	/**
+	 * creates the neighborhood table for the given neighborhood definition.
+	 * This method can be overridden for cell geometries other than squares.
+	 * 
+	 * @param neighDef Neighborhood definition
+	 * @return Neighborhood table
+	 * @throws Exception if the neighborhood definition is not supported
+	 */
+	protected NeighborhoodTable createNeighborhoodTable(
+		NeighborhoodIndex neighDef) throws Exception
+	{
+		return new NeighborhoodTable(this.nx, this.ny, neighDef);
+	}
+
 	/**
 	 * gets a {@link Cell}s neighbor cells with respect to the given 
-	 * neighborhood definition. 
-	 * TODO The current implementation is limited to neighborhoods consisting 
-	 * of 4 or 8 neighbor cells. Moreover, cyclic neighborhoods have not been 
-	 * implemented yet. However, if needed this all would be easy to implement.
+	 * neighborhood definition. The neighbor indices will be determined by 
+	 * the cached neighborhood table using an index buffer that is re-used by
+	 * the calling thread. The supported neighborhood definitions are listed
+	 * in the description of the class {@link NeighborhoodIndex}.
+	 * <p>
+	 * Note that this method allocates a new list for each call. Transition
+	 * functions that query neighborhoods for each cell and time step should
+	 * use the allocation-free method {@link 
+	 * RectangularSpace#getNeighborCells(int, int, NeighborhoodTable, int[], 
+	 * Cell[])} instead, which is the intended hot path.
 	 * 
 	 * @param i Row index
 	 * @param j Column index
 	 * @param neighDef Neighborhood definition
-	 * @return List of cell objects
+	 * @return List of cell objects or <i>null</i>, if the cell has no 
+	 * neighbors
+	 * @throws Exception if the neighborhood definition is not supported
 	 */
 	public List<Cell> getNeighborCells(
-		int i, int j, NeighborhoodIndex neighDef)
+		int i, int j, NeighborhoodIndex neighDef) throws Exception
 	{
-		List<Cell> res = new ArrayList<Cell>(); 
-
-		if (i > 0) {
-			res.add(this.cells[i - 1][j]);
-		}
-		if (i < this.nx - 1) {
-			res.add(this.cells[i + 1][j]);
-		}
-		if (j > 0) {
-			res.add(this.cells[i][j - 1]);
-		}
-		if (j < this.ny - 1) {
-			res.add(this.cells[i][j + 1]);
+		NeighborhoodTable t = this.getNeighborhoodTable(neighDef);
+		int[] idx = this.neighBuffer.get();
+		if (idx == null || idx.length < t.size()) {
+			idx = new int[t.size()];
+			this.neighBuffer.set(idx);
 		}
+		int n = t.neighbors(i, j, idx);
+		if (n <= 0)
+			return null;
 
-		if (neighDef.getNumberNeighbors() == 8) 
-		{
-			if (i > 0 && j > 0) {
-				res.add(this.cells[i - 1][j - 1]);
-			}
-			if (i > 0 && j < this.ny - 1) {
-				res.add(this.cells[i - 1][j + 1]);
-			}
-			if (i < this.nx - 1 && j > 0) {
-				res.add(this.cells[i + 1][j - 1]);
-			}
-			if (i < this.nx - 1 && j < this.ny - 1) {
-				res.add(this.cells[i + 1][j + 1]);
-			}			
+		List<Cell> res = new ArrayList<Cell>(n); 
+		for (int k = 0; k < n; k++) {
+			res.add(this.cell(idx[k] / this.ny, idx[k] % this.ny));
 		}
-		
-		if (res.size() <= 0)
-			return null;
 		return res;
 	} 
 
+	/**
+	 * gets a {@link Cell}s neighbor cells with respect to the given 
+	 * neighborhood table without allocating any objects. 
+	 * 
+	 * @param i Row index
+	 * @param j Column index
+	 * @param t Neighborhood table, see {@link 
+	 * RectangularSpace#getNeighborhoodTable(NeighborhoodIndex)}
+	 * @param idx Index buffer having at least <tt>t.size()</tt> elements
+	 * @param res Array receiving the neighbor cells; it must have at least
+	 * <tt>t.size()</tt> elements
+	 * @return Number of neighbor cells
+	 */
+	public int getNeighborCells(
+		int i, int j, NeighborhoodTable t, int[] idx, Cell[] res)
+	{
+		int n = t.neighbors(i, j, idx);
+		for (int k = 0; k < n; k++) {
+			res[k] = this.cell(idx[k] / this.ny, idx[k] % this.ny);
+		}
+		return n;
+	}
+
 	/**
 	 * gets a {@link Cell}s neighbor cells in the given direction. The 
 	 * parameter <tt>direction</tt> specifies the direction by numbering 
@@ -177,21 +308,21 @@ public class RectangularSpace extends CellularSpace
 	{
 		switch (direction) {
 		case 0: // N
-			return i > 0 ? this.cells[i - 1][j] : null;
+			return i > 0 ? this.cell(i - 1, j) : null;
 		case 1: // NE
-			return i > 0 && j < ny - 1 ? this.cells[i - 1][j + 1] : null;
+			return i > 0 && j < ny - 1 ? this.cell(i - 1, j + 1) : null;
 		case 2: // E
-			return j < ny - 1 ? this.cells[i][j + 1] : null;
+			return j < ny - 1 ? this.cell(i, j + 1) : null;
 		case 3: // SE
-			return i < nx - 1 && j < ny - 1 ? this.cells[i + 1][j + 1] : null;
+			return i < nx - 1 && j < ny - 1 ? this.cell(i + 1, j + 1) : null;
 		case 4: // S
-			return i < nx - 1 ? this.cells[i + 1][j] : null;
+			return i < nx - 1 ? this.cell(i + 1, j) : null;
 		case 5: // SW
-			return i < nx - 1 && j > 0 ? this.cells[i + 1][j - 1] : null;
+			return i < nx - 1 && j > 0 ? this.cell(i + 1, j - 1) : null;
 		case 6: // W
-			return j > 0 ? this.cells[i][j - 1] : null;
+			return j > 0 ? this.cell(i, j - 1) : null;
 		case 7: // NW
-			return i > 0 && j > 0 ? this.cells[i - 1][j - 1] : null;
+			return i > 0 && j > 0 ? this.cell(i - 1, j - 1) : null;
 		}
 		System.out.println("Illegal direction in neighbor query:" + direction);
 		return null;
@@ -202,13 +333,15 @@ public class RectangularSpace extends CellularSpace
 	{
 		if (this.getStateSet() instanceof DiscreteStateSet) 
 		{
-			if (this.cells == null) return; // TODO
+			StringBuffer line = new StringBuffer();
 			for (int i = 0; i < this.nx; i++) {
+				line.setLength(0);
 				for (int j = 0; j < this.ny; j++) {
-					if (this.cells[i][j] == null) continue; // TODO
-					System.out.print(this.cells[i][j].getValue(ti));						
+					Cell c = this.cell(i, j);
+					if (c == null) continue; // TODO
+					line.append(c.getValue(ti));						
 				}
-				System.out.println();
+				System.out.println(line); // one call per row
 			}
 			return;
 		}
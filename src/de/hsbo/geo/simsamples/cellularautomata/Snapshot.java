@@ -0,0 +1,314 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable copy of the cell states of a {@link RectangularSpace} for a
+ * single time step. Since a snapshot does not refer to the cellular space
+ * anymore, it can be encoded and written by a background thread while the
+ * simulation proceeds, see {@link AsyncStateSink}.
+ * <p>
+ * Continuous cell states are held as <tt>double</tt>s, discrete cell states
+ * as <tt>byte</tt> codes referring to the (sorted) state set, see {@link
+ * Snapshot#getStates()}. The georeference of {@link MappedRectangularSpace}s
+ * will be taken over; for other cellular spaces, the origin (0, 0) and the
+ * cell size 1 will be assumed.
+ *
+ * @see SnapshotWriter
+ *
+ * @author Benno Schmidt
+ */
+public class Snapshot
+{
+	private int nx, ny, ti, encoding;
+	private Object[] states = null;
+	private double[] doubles = null; // FLOAT64 encoding
+	private byte[] codes = null; // UINT8 encoding
+	private BitSet noData = null;
+	private double originX = 0., originY = 0., cellSize = 1.;
+
+
+	private Snapshot() {
+	}
+
+	/**
+	 * copies the cell states of a rectangular cellular space for the time
+	 * step <tt>ti</tt>.
+	 *
+	 * @param sp Rectangular cellular space
+	 * @param ti Time stamp index
+	 * @return Snapshot
+	 * @throws Exception
+	 */
+	static public Snapshot capture(RectangularSpace sp, int ti)
+		throws Exception
+	{
+		Snapshot s = new Snapshot();
+		s.nx = sp.numberOfRows();
+		s.ny = sp.numberOfColumns();
+		s.ti = ti;
+		int n = s.nx * s.ny;
+		StateGrid g = sp instanceof PrimitiveRectangularSpace ?
+			((PrimitiveRectangularSpace) sp).getStateGrid() : null;
+
+		if (sp.getStateSet() instanceof DiscreteStateSet) {
+			s.encoding = RasterFile.UINT8;
+			s.states = ((DiscreteStateSet) sp.getStateSet()).getAsSet().toArray();
+			if (s.states.length > 256) {
+				throw new Exception(
+					"State sets consisting of more than 256 states " +
+					"are not supported!");
+			}
+			if (g instanceof DiscreteStateGrid) {
+				// Codes refer to the sorted state set, too:
+				s.codes = ((DiscreteStateGrid) g).readBuffer(ti).clone();
+			} else {
+				Map<Object, Byte> c = new HashMap<Object, Byte>();
+				for (int k = 0; k < s.states.length; k++) {
+					c.put(s.states[k], (byte) k);
+				}
+				s.codes = new byte[n];
+				for (int i = 0; i < s.nx; i++) {
+					for (int j = 0; j < s.ny; j++) {
+						Object val = g != null ?
+							g.getValue(ti, g.index(i, j)) :
+							sp.getCell(i, j).getValue(ti);
+						Byte code = c.get(val);
+						if (code == null) {
+							throw new Exception("State \"" + val +
+								"\" is not element of the state set!");
+						}
+						s.codes[i * s.ny + j] = code;
+					}
+				}
+			}
+		}
+		else {
+			s.encoding = RasterFile.FLOAT64;
+			if (g instanceof ContinuousStateGrid) {
+				s.doubles = ((ContinuousStateGrid) g).readBuffer(ti).clone();
+			}
+			else if (g instanceof TiledStateGrid) {
+				s.doubles = ((TiledStateGrid) g).toArray(ti);
+			}
+			else {
+				s.doubles = new double[n];
+				double[] row = new double[s.ny];
+				for (int i = 0; i < s.nx; i++) {
+					if (g instanceof MappedStateGrid) {
+						((MappedStateGrid) g).readRow(ti, i, row);
+					} else {
+						for (int j = 0; j < s.ny; j++) {
+							Object z = g instanceof DoubleStateAccess ?
+								((DoubleStateAccess) g).getDouble(ti, i, j) :
+								sp.getCell(i, j).getValue(ti);
+							if (!(z instanceof Number)) {
+								throw new Exception(
+									"Non-numeric cell value \"" + z + "\"!");
+							}
+							row[j] = ((Number) z).doubleValue();
+						}
+					}
+					System.arraycopy(row, 0, s.doubles, i * s.ny, s.ny);
+				}
+			}
+		}
+
+		if (sp.getNoDataMask() != null) {
+			s.noData = (BitSet) sp.getNoDataMask().clone();
+		}
+		if (sp instanceof MappedRectangularSpace) {
+			MappedRectangularSpace m = (MappedRectangularSpace) sp;
+			s.originX = m.getOriginX();
+			s.originY = m.getOriginY();
+			s.cellSize = m.getCellSize();
+		}
+		return s;
+	}
+
+	/**
+	 * gets the time stamp index of the snapshot.
+	 *
+	 * @return Time stamp index
+	 */
+	public int getTimeStamp() {
+		return this.ti;
+	}
+
+	/**
+	 * returns the number of rows of the cellular grid.
+	 */
+	public int numberOfRows() {
+		return this.nx;
+	}
+
+	/**
+	 * returns the number of columns of the cellular grid.
+	 */
+	public int numberOfColumns() {
+		return this.ny;
+	}
+
+	/**
+	 * gets the encoding of the cell states.
+	 *
+	 * @return {@link RasterFile#FLOAT64} or {@link RasterFile#UINT8}
+	 */
+	public int getEncoding() {
+		return this.encoding;
+	}
+
+	/**
+	 * gets the elements of the discrete state set in the order given by
+	 * the state codes.
+	 *
+	 * @return States or <i>null</i> for continuous cell states
+	 */
+	public Object[] getStates() {
+		return this.states == null ? null : this.states.clone();
+	}
+
+	/**
+	 * gets the number of discrete states.
+	 *
+	 * @return Number of states or 0 for continuous cell states
+	 */
+	public int numberOfStates() {
+		return this.states == null ? 0 : this.states.length;
+	}
+
+	/**
+	 * gets the x-coordinate of the center of the lower left cell.
+	 */
+	public double getOriginX() {
+		return this.originX;
+	}
+
+	/**
+	 * gets the y-coordinate of the center of the lower left cell.
+	 */
+	public double getOriginY() {
+		return this.originY;
+	}
+
+	/**
+	 * gets the cell size.
+	 */
+	public double getCellSize() {
+		return this.cellSize;
+	}
+
+	/**
+	 * gets the state of a cell as number. For discrete cell states, the
+	 * state code will be returned.
+	 *
+	 * @param i Row index
+	 * @param j Column index
+	 * @return Cell value
+	 */
+	public double getDouble(int i, int j) {
+		if (this.encoding == RasterFile.UINT8)
+			return this.codes[i * this.ny + j] & 0xff;
+		return this.doubles[i * this.ny + j];
+	}
+
+	/**
+	 * gets the code of a discrete cell state.
+	 *
+	 * @param i Row index
+	 * @param j Column index
+	 * @return Index of the state inside the array <tt>getStates()</tt>
+	 */
+	public int getCode(int i, int j) {
+		return this.codes[i * this.ny + j] & 0xff;
+	}
+
+	/**
+	 * gets the state of a cell.
+	 *
+	 * @param i Row index
+	 * @param j Column index
+	 * @return Cell state
+	 */
+	public Object getValue(int i, int j) {
+		if (this.encoding == RasterFile.UINT8)
+			return this.states[this.codes[i * this.ny + j] & 0xff];
+		return this.doubles[i * this.ny + j];
+	}
+
+	/**
+	 * checks if a cell is marked as NODATA cell.
+	 *
+	 * @param i Row index
+	 * @param j Column index
+	 * @return <i>true</i> for NODATA cells
+	 */
+	public boolean isNoData(int i, int j) {
+		return this.noData != null && this.noData.get(i * this.ny + j);
+	}
+
+	/**
+	 * gets the NODATA mask. The bit <tt>i * numberOfColumns() + j</tt>
+	 * marks the cell in row <tt>i</tt> and column <tt>j</tt>.
+	 *
+	 * @return NODATA mask or <i>null</i>
+	 */
+	public BitSet getNoDataMask() {
+		return this.noData == null ? null : (BitSet) this.noData.clone();
+	}
+
+	/**
+	 * gets the minimum and maximum cell value, ignoring NODATA cells.
+	 *
+	 * @return Array holding minimum and maximum or <i>null</i>, if all cells
+	 * are NODATA cells
+	 */
+	public double[] getRange()
+	{
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		for (int k = 0, n = this.nx * this.ny; k < n; k++) {
+			if (this.noData != null && this.noData.get(k))
+				continue;
+			double z = this.encoding == RasterFile.UINT8 ?
+				this.codes[k] & 0xff : this.doubles[k];
+			if (z < min) min = z;
+			if (z > max) max = z;
+		}
+		return min <= max ? new double[] {min, max} : null;
+	}
+
+	/**
+	 * gets the cell values in row-major order. The array must not be
+	 * modified.
+	 */
+	double[] doubles() {
+		return this.doubles;
+	}
+
+	/**
+	 * gets the state codes in row-major order. The array must not be
+	 * modified.
+	 */
+	byte[] codes() {
+		return this.codes;
+	}
+
+	public String toString()
+	{
+		StringBuffer s = new StringBuffer();
+
+		s.append("(");
+		s.append(this.getClass().getSimpleName());
+		s.append(": ti = ");
+		s.append(this.ti);
+		s.append(", ");
+		s.append(this.nx);
+		s.append("x");
+		s.append(this.ny);
+		s.append(")");
+
+		return s.toString();
+	}
+}
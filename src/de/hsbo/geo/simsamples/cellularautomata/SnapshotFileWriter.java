@@ -0,0 +1,222 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Writer for {@link Snapshot}s that creates one file per snapshot. The
+ * snapshot for the time step <tt>ti</tt> will be written to the file
+ * <tt>&lt;basename&gt;.&lt;ti&gt;.&lt;ext&gt;</tt>. The following formats
+ * are supported:
+ * <ul>
+ * <li>{@link SnapshotFileWriter#ASCII_GRID}: ArcInfo ASCII grid (extension
+ * <tt>asc</tt>); discrete cell states will be given by their codes, see
+ * {@link Snapshot#getCode(int, int)}</li>
+ * <li>{@link SnapshotFileWriter#RASTER}: binary {@link RasterFile} (extension
+ * <tt>ras</tt>)</li>
+ * <li>{@link SnapshotFileWriter#PNG}: grey-scale image (extension
+ * <tt>png</tt>) showing one pixel per cell; NODATA cells are
+ * transparent</li>
+ * <li>{@link SnapshotFileWriter#CSV}: comma-separated values (extension
+ * <tt>csv</tt>) consisting of the columns <tt>i</tt>, <tt>j</tt> and
+ * <tt>value</tt>, one line per cell</li>
+ * </ul>
+ * As for elevation models, the grid row 0 is regarded as the southernmost
+ * row, i.e. ASCII grids and images start with the row
+ * <tt>numberOfRows() - 1</tt>.
+ *
+ * @see AsyncStateSink
+ *
+ * @author Benno Schmidt
+ */
+public class SnapshotFileWriter implements SnapshotWriter
+{
+	/** ArcInfo ASCII grid format */
+	static public final int ASCII_GRID = 0;
+	/** Binary raster format, see {@link RasterFile} */
+	static public final int RASTER = 1;
+	/** PNG image format */
+	static public final int PNG = 2;
+	/** Comma-separated values */
+	static public final int CSV = 3;
+
+	static private final String[] EXTENSIONS = new String[] {
+		"asc", "ras", "png", "csv"
+	};
+	static private final double NODATA_VALUE = -9999.;
+
+	private String basename;
+	private int format;
+	private int tileSize = 0;
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param basename File name (incl. path) without extension
+	 * @param format Output format, e.g. {@link SnapshotFileWriter#PNG}
+	 * @throws Exception if the format is not supported
+	 */
+	public SnapshotFileWriter(String basename, int format) throws Exception
+	{
+		if (format < 0 || format >= EXTENSIONS.length) {
+			throw new Exception("Unsupported snapshot format " + format + "!");
+		}
+		this.basename = basename;
+		this.format = format;
+	}
+
+	/**
+	 * sets the tile size used for the format {@link SnapshotFileWriter#RASTER}.
+	 * By default, uncompressed raster files will be written.
+	 *
+	 * @param tileSize Size of compressed tiles or 0 for uncompressed files
+	 */
+	public void setTileSize(int tileSize) {
+		this.tileSize = Math.max(tileSize, 0);
+	}
+
+	/**
+	 * gets the name of the file for the time step <tt>ti</tt>.
+	 *
+	 * @param ti Time stamp index
+	 * @return File name (incl. path)
+	 */
+	public String getFilename(int ti) {
+		return this.basename + "." + ti + "." + EXTENSIONS[this.format];
+	}
+
+	public void write(Snapshot s) throws Exception
+	{
+		String filename = this.getFilename(s.getTimeStamp());
+		switch (this.format) {
+		case ASCII_GRID:
+			this.writeAsciiGrid(s, filename);
+			break;
+		case RASTER:
+			RasterFile.write(s, filename, this.tileSize);
+			break;
+		case PNG:
+			this.writePNG(s, filename);
+			break;
+		case CSV:
+			this.writeCSV(s, filename);
+			break;
+		}
+	}
+
+	private void writeAsciiGrid(Snapshot s, String filename) throws Exception
+	{
+		int nx = s.numberOfRows(), ny = s.numberOfColumns();
+		double cellSize = s.getCellSize();
+		BufferedWriter out = new BufferedWriter(new FileWriter(filename));
+		try {
+			out.write("ncols " + ny + "\n");
+			out.write("nrows " + nx + "\n");
+			out.write("xllcorner " + (s.getOriginX() - cellSize/2.) + "\n");
+			out.write("yllcorner " + (s.getOriginY() - cellSize/2.) + "\n");
+			out.write("cellsize " + cellSize + "\n");
+			out.write("NODATA_value " + NODATA_VALUE + "\n");
+			boolean discrete = s.getEncoding() == RasterFile.UINT8;
+			StringBuffer line = new StringBuffer();
+			for (int i = nx - 1; i >= 0; i--) {
+				line.setLength(0);
+				for (int j = 0; j < ny; j++) {
+					if (j > 0)
+						line.append(' ');
+					if (s.isNoData(i, j))
+						line.append(NODATA_VALUE);
+					else if (discrete)
+						line.append(s.getCode(i, j));
+					else
+						line.append(s.getDouble(i, j));
+				}
+				line.append('\n');
+				out.write(line.toString());
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	private void writePNG(Snapshot s, String filename) throws Exception
+	{
+		int nx = s.numberOfRows(), ny = s.numberOfColumns();
+		double[] range = s.getRange();
+		double zMin = 0., dz = 0.;
+		if (range != null) {
+			zMin = range[0];
+			dz = range[1] - range[0];
+		}
+		if (s.getEncoding() == RasterFile.UINT8) {
+			// Grey levels refer to the whole state set:
+			zMin = 0.;
+			dz = s.numberOfStates() - 1;
+		}
+
+		BufferedImage img =
+			new BufferedImage(ny, nx, BufferedImage.TYPE_INT_ARGB);
+		int[] rgb = new int[ny];
+		for (int i = 0; i < nx; i++) {
+			for (int j = 0; j < ny; j++) {
+				if (s.isNoData(i, j)) {
+					rgb[j] = 0;
+					continue;
+				}
+				int g = dz > 0. ?
+					(int) Math.round(255. * (s.getDouble(i, j) - zMin) / dz) : 0;
+				rgb[j] = 0xff000000 | (g << 16) | (g << 8) | g;
+			}
+			img.setRGB(0, nx - 1 - i, ny, 1, rgb, 0, ny);
+		}
+		if (!ImageIO.write(img, "png", new File(filename))) {
+			throw new Exception("Could not write image \"" + filename + "\"!");
+		}
+	}
+
+	private void writeCSV(Snapshot s, String filename) throws Exception
+	{
+		int nx = s.numberOfRows(), ny = s.numberOfColumns();
+		BufferedWriter out = new BufferedWriter(new FileWriter(filename));
+		try {
+			out.write("i,j,value\n");
+			StringBuffer line = new StringBuffer();
+			for (int i = 0; i < nx; i++) {
+				line.setLength(0);
+				for (int j = 0; j < ny; j++) {
+					line.append(i);
+					line.append(',');
+					line.append(j);
+					line.append(',');
+					if (!s.isNoData(i, j))
+						line.append(s.getValue(i, j));
+					line.append('\n');
+				}
+				out.write(line.toString());
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	public String toString()
+	{
+		StringBuffer s = new StringBuffer();
+
+		s.append("(");
+		s.append(this.getClass().getSimpleName());
+		s.append(": ");
+		s.append(this.basename);
+		s.append(".<ti>.");
+		s.append(EXTENSIONS[this.format]);
+		s.append(")");
+
+		return s.toString();
+	}
+}
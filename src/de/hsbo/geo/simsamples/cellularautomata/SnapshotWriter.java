@@ -0,0 +1,22 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+/**
+ * Interface for encoders that write {@link Snapshot}s of rectangular
+ * cellular spaces, e.g. to files. Snapshot writers are invoked by the
+ * background thread of an {@link AsyncStateSink}; a writer instance will
+ * not be invoked by multiple threads concurrently.
+ *
+ * @see SnapshotFileWriter
+ *
+ * @author Benno Schmidt
+ */
+public interface SnapshotWriter
+{
+	/**
+	 * writes a snapshot.
+	 *
+	 * @param s Snapshot
+	 * @throws Exception
+	 */
+	public void write(Snapshot s) throws Exception;
+}
@@ -0,0 +1,186 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+/**
+ * Base class for primitive state storages used by {@link
+ * PrimitiveRectangularSpace}s. Instead of holding a {@link Cell} object with
+ * a time series for each cell, a state grid keeps the cell states of two
+ * consecutive time steps in two flat arrays of primitive values (double
+ * buffering). The array element for the cell in row <tt>i</tt> and column
+ * <tt>j</tt> has the index <tt>i * numberOfColumns() + j</tt>. The buffer
+ * used for time step <tt>ti</tt> is given by the parity of <tt>ti</tt>, thus
+ * the buffers will be swapped implicitly after each time step. Note that
+ * transition functions usually read the states for <tt>ti</tt> and write
+ * the states for <tt>ti + 1</tt>, so older states will not be available
+ * anymore.
+ *
+ * @author Benno Schmidt
+ */
+abstract public class StateGrid
+{
+	protected int nx, ny;
+	private int[] slotTi = new int[] {0, -1}; // time steps held by buffers
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 */
+	public StateGrid(int nx, int ny) {
+		this.nx = nx;
+		this.ny = ny;
+	}
+
+	/**
+	 * returns the number of rows of the cellular grid.
+	 */
+	public int numberOfRows() {
+		return this.nx;
+	}
+
+	/**
+	 * returns the number of columns of the cellular grid.
+	 */
+	public int numberOfColumns() {
+		return this.ny;
+	}
+
+	/**
+	 * returns the number of cells of the cellular grid.
+	 */
+	public int size() {
+		return this.nx * this.ny;
+	}
+
+	/**
+	 * gets the array index of the cell in row <tt>i</tt> and column
+	 * <tt>j</tt>.
+	 *
+	 * @param i Row index
+	 * @param j Column index
+	 * @return Array index
+	 */
+	public int index(int i, int j) {
+		return i * this.ny + j;
+	}
+
+	/**
+	 * gets the number of the buffer that holds the states for the time step
+	 * <tt>ti</tt>. If the states for <tt>ti</tt> are not available (anymore),
+	 * an exception will be thrown.
+	 *
+	 * @param ti Time stamp index
+	 * @return Buffer number (0 or 1)
+	 * @throws Exception
+	 */
+	protected int slotForReading(int ti) throws Exception {
+		int s = ti & 1;
+		if (ti < 0 || this.slotTi[s] != ti) {
+			throw new Exception(
+				"Invalid time stamp query: Index " + ti +
+				" is not held by the state grid (available: " +
+				this.slotTi[1 - s] + ")");
+		}
+		return s;
+	}
+
+	/**
+	 * gets the number of the buffer that will receive the states for the
+	 * time step <tt>ti</tt>. Afterwards, the states that have been stored in
+	 * this buffer before will not be available anymore.
+	 *
+	 * @param ti Time stamp index
+	 * @return Buffer number (0 or 1)
+	 * @throws Exception
+	 */
+	protected int slotForWriting(int ti) throws Exception {
+		int s = ti & 1;
+		if (ti < 0 || ti < this.slotTi[s]) {
+			throw new Exception(
+				"Invalid time stamp access: Index " + ti +
+				" can not be written to the state grid anymore");
+		}
+		this.slotTi[s] = ti;
+		return s;
+	}
+
+	/**
+	 * gets the state of a cell as state object.
+	 *
+	 * @param ti Time stamp index
+	 * @param idx Array index of the cell
+	 * @return Value as state object
+	 * @throws Exception
+	 */
+	abstract public Object getValue(int ti, int idx) throws Exception;
+
+	/**
+	 * sets the state of a cell.
+	 *
+	 * @param ti Time stamp index
+	 * @param idx Array index of the cell
+	 * @param val Value as state object
+	 * @throws Exception
+	 */
+	abstract public void setValue(int ti, int idx, Object val)
+		throws Exception;
+
+	/**
+	 * assigns the value <tt>val</tt> to all cells for the time step
+	 * <tt>ti</tt>.
+	 *
+	 * @param ti Time stamp index
+	 * @param val Value as state object
+	 * @throws Exception
+	 */
+	abstract public void fill(int ti, Object val) throws Exception;
+
+	/**
+	 * copies the states of all cells from time step <tt>ti</tt> to time step
+	 * <tt>ti + 1</tt>.
+	 *
+	 * @param ti Time stamp index
+	 * @throws Exception
+	 */
+	abstract public void copy(int ti) throws Exception;
+
+	/**
+	 * copies the states of the cells inside the rows <tt>iMin</tt>
+	 * (inclusive) to <tt>iMax</tt> (exclusive) from time step <tt>ti</tt> to
+	 * time step <tt>ti + 1</tt>.
+	 *
+	 * @param ti Time stamp index
+	 * @param iMin First row index
+	 * @param iMax Last row index + 1
+	 * @throws Exception
+	 */
+	abstract public void copyRows(int ti, int iMin, int iMax)
+		throws Exception;
+
+	/**
+	 * checks if the state of a cell for the time step <tt>ti + 1</tt>
+	 * differs from its state for <tt>ti</tt>.
+	 *
+	 * @param ti Time stamp index
+	 * @param idx Array index of the cell
+	 * @return <i>true</i> if the state has changed
+	 * @throws Exception
+	 */
+	abstract public boolean hasChanged(int ti, int idx) throws Exception;
+
+	public String toString()
+	{
+		StringBuffer s = new StringBuffer();
+
+		s.append("(");
+		s.append(this.getClass().getSimpleName());
+		s.append(": ");
+		s.append(this.nx);
+		s.append("x");
+		s.append(this.ny);
+		s.append(")");
+
+		return s.toString();
+	}
+}
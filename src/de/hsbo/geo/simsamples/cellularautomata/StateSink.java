@@ -0,0 +1,25 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+/**
+ * Interface for sinks that receive the cell states of a {@link 
+ * CellularAutomaton} for consecutive time steps, e.g. to write simulation 
+ * results to files while the simulation is running. 
+ * 
+ * @see CellularAutomaton#addSink(StateSink)
+ * 
+ * @author Benno Schmidt
+ */
+public interface StateSink 
+{
+	/**
+	 * processes the cell states for the time step <tt>ti</tt>. The states  
+	 * can be queried from the given cellular space. Note that for bounded 
+	 * retention policies the states might not be available anymore after 
+	 * this method returned.
+	 * 
+	 * @param sp Cellular space
+	 * @param ti Time stamp index
+	 * @throws Exception
+	 */
+	public void write(CellularSpace sp, int ti) throws Exception;
+}
@@ -0,0 +1,66 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+/**
+ * Rectangular cellular space holding continuous cell states in a {@link 
+ * TiledStateGrid}, i.e. in square tiles surrounded by halo cells. For wide
+ * grids, this layout improves the cache locality of stencil computations.
+ * Transition functions implementing the interface {@link 
+ * PrimitiveTransitionFunction} should process the cells tile by tile (see 
+ * {@link de.hsbo.geo.simsamples.cellularautomata.instances.CellularWave} 
+ * for an example). For parallel execution, the {@link RectangularAutomaton}
+ * will align the row stripes to the tile rows. For discrete state sets, 
+ * the storage layout of {@link PrimitiveRectangularSpace} will be used.
+ *
+ * @author Benno Schmidt
+ */
+public class TiledRectangularSpace extends PrimitiveRectangularSpace
+{
+	/**
+	 * Default number of rows and columns of a tile
+	 */
+	public static final int DEFAULT_TILE_SIZE = 64;
+
+	private int tileSize;
+
+
+	/**
+	 * Constructor. The default tile size will be used.
+	 *
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 */
+	public TiledRectangularSpace(int nx, int ny) {
+		this(nx, ny, DEFAULT_TILE_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 * @param tileSize Number of rows and columns of a tile
+	 */
+	public TiledRectangularSpace(int nx, int ny, int tileSize) {
+		super(nx, ny);
+		this.tileSize = tileSize;
+	}
+
+	/**
+	 * gets the number of rows and columns of a tile.
+	 *
+	 * @return Tile size
+	 */
+	public int getTileSize() {
+		return this.tileSize;
+	}
+
+	@Override
+	protected StateGrid createStateGrid(StateSet states)
+	{
+		if (states instanceof DiscreteStateSet) {
+			return super.createStateGrid(states);
+		}
+		return new TiledStateGrid(
+			this.numberOfRows(), this.numberOfColumns(), this.tileSize);
+	}
+}
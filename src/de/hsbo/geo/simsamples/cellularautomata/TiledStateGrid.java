@@ -0,0 +1,407 @@
+package de.hsbo.geo.simsamples.cellularautomata;
+
+import java.util.Arrays;
+
+/**
+ * Primitive state storage for automata operating on a {@link
+ * ContinuousStateSet} that holds the cell states in square tiles. Each tile
+ * consists of <tt>tileSize</tt> x <tt>tileSize</tt> cells (tiles at the
+ * Southern and Eastern grid edges might be smaller) and is surrounded by a
+ * halo of one cell width, which holds copies of the states of the adjacent
+ * cells of the neighbor tiles. Thus, 8-neighbor stencils can be evaluated
+ * inside a tile's array without accessing other tiles, which improves the
+ * cache locality for wide grids. Tiles are the natural units of work for
+ * parallel processing.
+ * <p>
+ * Inside a tile's array, the cell with the tile-relative row index
+ * <tt>ii</tt> and column index <tt>jj</tt> (both starting with 0) has the
+ * index <tt>(ii + 1) * stride() + jj + 1</tt>. Halo cells outside the grid
+ * hold the value 0. Halos will be updated automatically when a tile is
+ * accessed via {@link TiledStateGrid#readTile(int, int)} after cell states
+ * have been modified. For parallel processing, the coordinating thread 
+ * should refresh the halos by {@link TiledStateGrid#updateHalos(int)} 
+ * before the tiles are handed over to the worker threads.
+ * <p>
+ * Note that the array indices used by the methods inherited from {@link
+ * StateGrid} refer to the flat row-major indexing scheme, i.e. they do not
+ * reflect the tiled memory layout.
+ *
+ * @see TiledRectangularSpace
+ *
+ * @author Benno Schmidt
+ */
+public class TiledStateGrid extends StateGrid 
+	implements DoubleStateAccess
+{
+	private int tileSize, stride;
+	private int tileRows, tileCols;
+	private double[][][] buf; // buffer, tile, cell
+	private volatile int validHalos = 0; // bit s set, if buffer s is valid
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 * @param tileSize Number of rows and columns of a tile
+	 */
+	public TiledStateGrid(int nx, int ny, int tileSize)
+	{
+		super(nx, ny);
+		if (tileSize < 1) {
+			throw new IllegalArgumentException(
+				"Illegal tile size: " + tileSize);
+		}
+		this.tileSize = tileSize;
+		this.stride = tileSize + 2;
+		this.tileRows = (nx + tileSize - 1) / tileSize;
+		this.tileCols = (ny + tileSize - 1) / tileSize;
+		this.buf = new double[2][this.tileRows * this.tileCols]
+			[this.stride * this.stride];
+	}
+
+	/**
+	 * gets the (maximum) number of rows and columns of a tile.
+	 *
+	 * @return Tile size
+	 */
+	public int tileSize() {
+		return this.tileSize;
+	}
+
+	/**
+	 * gets the row length of the tile arrays, i.e. the tile size plus the
+	 * halo cells.
+	 *
+	 * @return Row length
+	 */
+	public int stride() {
+		return this.stride;
+	}
+
+	/**
+	 * returns the number of tile rows.
+	 */
+	public int numberOfTileRows() {
+		return this.tileRows;
+	}
+
+	/**
+	 * returns the number of tile columns.
+	 */
+	public int numberOfTileColumns() {
+		return this.tileCols;
+	}
+
+	/**
+	 * returns the number of tiles. Tiles are numbered row by row.
+	 */
+	public int numberOfTiles() {
+		return this.tileRows * this.tileCols;
+	}
+
+	/**
+	 * gets the grid row index of the first row of the tile <tt>t</tt>.
+	 *
+	 * @param t Tile number
+	 * @return Row index
+	 */
+	public int firstRow(int t) {
+		return (t / this.tileCols) * this.tileSize;
+	}
+
+	/**
+	 * gets the grid column index of the first column of the tile
+	 * <tt>t</tt>.
+	 *
+	 * @param t Tile number
+	 * @return Column index
+	 */
+	public int firstColumn(int t) {
+		return (t % this.tileCols) * this.tileSize;
+	}
+
+	/**
+	 * gets the number of grid rows covered by the tile <tt>t</tt>.
+	 *
+	 * @param t Tile number
+	 * @return Number of rows
+	 */
+	public int rows(int t) {
+		return Math.min(this.tileSize, this.nx - this.firstRow(t));
+	}
+
+	/**
+	 * gets the number of grid columns covered by the tile <tt>t</tt>.
+	 *
+	 * @param t Tile number
+	 * @return Number of columns
+	 */
+	public int columns(int t) {
+		return Math.min(this.tileSize, this.ny - this.firstColumn(t));
+	}
+
+	/**
+	 * provides direct access to the cell states of the tile <tt>t</tt> for
+	 * the time step <tt>ti</tt>. The tile's halo cells will be up to date.
+	 *
+	 * @param ti Time stamp index
+	 * @param t Tile number
+	 * @return Array holding the cell states
+	 * @throws Exception
+	 */
+	public double[] readTile(int ti, int t) throws Exception {
+		int s = this.slotForReading(ti);
+		this.refreshHalos(s);
+		return this.buf[s][t];
+	}
+
+	/**
+	 * provides direct access to the array that will receive the states of
+	 * the tile <tt>t</tt> for the time step <tt>ti</tt>. Only the inner
+	 * (non-halo) cells should be written.
+	 *
+	 * @param ti Time stamp index
+	 * @param t Tile number
+	 * @return Array holding the cell states
+	 * @throws Exception
+	 */
+	public double[] writeTile(int ti, int t) throws Exception {
+		int s = this.slotForWriting(ti);
+		this.invalidateHalos(s);
+		return this.buf[s][t];
+	}
+
+	/**
+	 * refreshes the halos of all tiles for the time step <tt>ti</tt>, if
+	 * cell states have been modified. Calling this method before processing
+	 * the tiles in parallel avoids that one of the worker threads performs
+	 * the refresh while the others wait for it.
+	 *
+	 * @param ti Time stamp index
+	 * @throws Exception
+	 */
+	public void updateHalos(int ti) throws Exception {
+		this.refreshHalos(this.slotForReading(ti));
+	}
+
+	private boolean haloValid(int s) {
+		return (this.validHalos & (1 << s)) != 0;
+	}
+
+	private void invalidateHalos(int s) {
+		if (this.haloValid(s)) {
+			synchronized (this) {
+				this.validHalos &= ~(1 << s);
+			}
+		}
+	}
+
+	/**
+	 * copies the border cells of all tiles into the halos of their
+	 * neighbor tiles, if the buffer <tt>s</tt> has been modified.
+	 */
+	private void refreshHalos(int s)
+	{
+		if (this.haloValid(s)) {
+			return; // no locking required
+		}
+		synchronized (this) {
+			if (!this.haloValid(s)) {
+				this.copyHalos(s);
+				this.validHalos |= 1 << s;
+			}
+		}
+	}
+
+	private void copyHalos(int s)
+	{
+		double[][] tiles = this.buf[s];
+		int st = this.stride, ts = this.tileSize, tc = this.tileCols;
+		for (int t = 0; t < tiles.length; t++) 
+		{
+			double[] a = tiles[t];
+			int 
+				i0 = this.firstRow(t), j0 = this.firstColumn(t),
+				nr = this.rows(t), nc = this.columns(t);
+
+			// Northern and Southern halo rows:
+			if (i0 > 0) 
+				System.arraycopy(tiles[t - tc], ts * st + 1, a, 1, nc);
+			else 
+				Arrays.fill(a, 1, nc + 1, 0.);
+			if (i0 + nr < this.nx) 
+				System.arraycopy(
+					tiles[t + tc], st + 1, a, (nr + 1) * st + 1, nc);
+			else 
+				Arrays.fill(a, (nr + 1) * st + 1, (nr + 1) * st + nc + 1, 0.);
+
+			// Western and Eastern halo columns:
+			double[] w = j0 > 0 ? tiles[t - 1] : null;
+			double[] e = j0 + nc < this.ny ? tiles[t + 1] : null;
+			for (int l = st; l <= nr * st; l += st) {
+				a[l] = w != null ? w[l + ts] : 0.;
+				a[l + nc + 1] = e != null ? e[l + 1] : 0.;
+			}
+
+			// Corners:
+			a[0] = this.value(tiles, i0 - 1, j0 - 1);
+			a[nc + 1] = this.value(tiles, i0 - 1, j0 + nc);
+			a[(nr + 1) * st] = this.value(tiles, i0 + nr, j0 - 1);
+			a[(nr + 1) * st + nc + 1] = this.value(tiles, i0 + nr, j0 + nc);
+		}
+	}
+
+	private double value(double[][] tiles, int i, int j) {
+		if (i < 0 || i >= this.nx || j < 0 || j >= this.ny) 
+			return 0.;
+		return tiles[this.tile(i, j)][this.offset(i, j)];
+	}
+
+	private int tile(int i, int j) {
+		return (i / this.tileSize) * this.tileCols + j / this.tileSize;
+	}
+
+	private int offset(int i, int j) {
+		return (i % this.tileSize + 1) * this.stride + j % this.tileSize + 1;
+	}
+
+	/**
+	 * gets the state of the cell in row <tt>i</tt> and column <tt>j</tt>.
+	 *
+	 * @param ti Time stamp index
+	 * @param i Row index
+	 * @param j Column index
+	 * @return Cell value
+	 * @throws Exception
+	 */
+	public double getDouble(int ti, int i, int j) throws Exception {
+		return this.buf[this.slotForReading(ti)]
+			[this.tile(i, j)][this.offset(i, j)];
+	}
+
+	/**
+	 * sets the state of the cell in row <tt>i</tt> and column <tt>j</tt>.
+	 *
+	 * @param ti Time stamp index
+	 * @param i Row index
+	 * @param j Column index
+	 * @param z Cell value
+	 * @throws Exception
+	 */
+	public void setDouble(int ti, int i, int j, double z) throws Exception {
+		int s = this.slotForWriting(ti);
+		this.invalidateHalos(s);
+		this.buf[s][this.tile(i, j)][this.offset(i, j)] = z;
+	}
+
+	@Override
+	public Object getValue(int ti, int idx) throws Exception {
+		return this.getDouble(ti, idx / this.ny, idx % this.ny);
+	}
+
+	@Override
+	public void setValue(int ti, int idx, Object val) throws Exception {
+		if (!(val instanceof Number)) {
+			throw new Exception(
+				"Tried to assign non-numeric value \"" + val + "\"!");
+		}
+		this.setDouble(
+			ti, idx / this.ny, idx % this.ny, ((Number) val).doubleValue());
+	}
+
+	@Override
+	public void fill(int ti, Object val) throws Exception
+	{
+		if (!(val instanceof Number)) {
+			throw new Exception(
+				"Tried to assign non-numeric value \"" + val + "\"!");
+		}
+		double z = ((Number) val).doubleValue();
+		int s = this.slotForWriting(ti);
+		this.invalidateHalos(s);
+		for (int t = 0; t < this.buf[s].length; t++) {
+			Arrays.fill(this.buf[s][t], z);
+		}
+	}
+
+	@Override
+	public void copy(int ti) throws Exception
+	{
+		double[][] src = this.buf[this.slotForReading(ti)];
+		int s = this.slotForWriting(ti + 1);
+		for (int t = 0; t < src.length; t++) {
+			System.arraycopy(src[t], 0, this.buf[s][t], 0, src[t].length);
+		}
+		synchronized (this) {
+			if (this.haloValid(1 - s)) 
+				this.validHalos |= 1 << s;
+			else
+				this.validHalos &= ~(1 << s);
+		}
+	}
+
+	@Override
+	public void copyRows(int ti, int iMin, int iMax) throws Exception
+	{
+		double[][] src = this.buf[this.slotForReading(ti)];
+		int s = this.slotForWriting(ti + 1);
+		this.invalidateHalos(s);
+		for (int i = iMin; i < iMax; i++) {
+			int off = this.offset(i, 0);
+			for (int tc = 0; tc < this.tileCols; tc++) {
+				int t = (i / this.tileSize) * this.tileCols + tc;
+				System.arraycopy(src[t], off, this.buf[s][t], off,
+					this.columns(t));
+			}
+		}
+	}
+
+	@Override
+	public boolean hasChanged(int ti, int idx) throws Exception {
+		int i = idx / this.ny, j = idx % this.ny;
+		return this.getDouble(ti, i, j) != this.getDouble(ti + 1, i, j);
+	}
+
+	/**
+	 * copies the cell states for the time step <tt>ti</tt> into a flat
+	 * array using the row-major indexing scheme.
+	 *
+	 * @param ti Time stamp index
+	 * @return Array holding the cell states
+	 * @throws Exception
+	 */
+	public double[] toArray(int ti) throws Exception
+	{
+		double[][] src = this.buf[this.slotForReading(ti)];
+		double[] res = new double[this.size()];
+		for (int t = 0; t < src.length; t++) {
+			int i0 = this.firstRow(t), j0 = this.firstColumn(t);
+			for (int ii = 0; ii < this.rows(t); ii++) {
+				System.arraycopy(src[t], (ii + 1) * this.stride + 1,
+					res, (i0 + ii) * this.ny + j0, this.columns(t));
+			}
+		}
+		return res;
+	}
+
+	public String toString()
+	{
+		StringBuffer s = new StringBuffer();
+
+		s.append("(");
+		s.append(this.getClass().getSimpleName());
+		s.append(": ");
+		s.append(this.nx);
+		s.append("x");
+		s.append(this.ny);
+		s.append(", tiles ");
+		s.append(this.tileSize);
+		s.append("x");
+		s.append(this.tileSize);
+		s.append(")");
+
+		return s.toString();
+	}
+}
@@ -1,5 +1,11 @@
 package de.hsbo.geo.simsamples.cellularautomata;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import de.hsbo.geo.simsamples.common.FastRandom;
+
 /**
  * Base class for transition function implementations as part of automaton 
  * definitions.
@@ -77,6 +83,28 @@ abstract public class TransitionFunction
 		c.setValue(ti + 1, c.getValue(ti));
 	}
 
+	/**
+	 * updates the state of a {@link Cell} in place. This method will be 
+	 * called by automata operating in an asynchronous update mode (see 
+	 * {@link CellularAutomaton#setUpdateMode(int)}) instead of {@link 
+	 * TransitionFunction#step(Cell, int)}: The states for time step 
+	 * <tt>ti</tt> will be read, and the cell's new state will be written for
+	 * the same time step, so that it will be visible to subsequent updates 
+	 * immediately. Only the given cell's state must be modified. By default,
+	 * asynchronous updating is not supported, i.e. an exception will be 
+	 * thrown; transition functions supporting it should override this 
+	 * method.
+	 * 
+	 * @param c Cell object
+	 * @param ti Time stamp index
+	 * @param rand Random number generator to be used for stochastic rules
+	 * @throws Exception
+	 */
+	public void update(Cell c, int ti, FastRandom rand) throws Exception {
+		throw new Exception(
+			"Asynchronous updating is not supported by " + this + "!");
+	}
+
 	/**
 	 * defines actions that will take place before the <tt>step</tt> 
 	 * methods {@link TransitionFunction#step(Cell, int)} and {@link 
@@ -88,6 +116,104 @@ abstract public class TransitionFunction
 		// do nothing
 	}
 
+	/**
+	 * gets the precomputed neighborhood table for the given state grid. If 
+	 * possible, the table held by the automaton's cellular space will be 
+	 * re-used.
+	 * 
+	 * @param grid State grid
+	 * @param neighDef Neighborhood definition
+	 * @return Neighborhood table
+	 * @throws Exception if the neighborhood definition is not supported
+	 */
+	protected NeighborhoodTable getNeighborhoodTable(
+		StateGrid grid, NeighborhoodIndex neighDef) throws Exception
+	{
+		if (this.a != null && 
+			this.a.getCellularSpace() instanceof RectangularSpace) 
+		{
+			RectangularSpace sp = (RectangularSpace) this.a.getCellularSpace();
+			if (sp.numberOfRows() == grid.numberOfRows() && 
+				sp.numberOfColumns() == grid.numberOfColumns()) 
+			{
+				return sp.getNeighborhoodTable(neighDef);
+			}
+		}
+		return new NeighborhoodTable(
+			grid.numberOfRows(), grid.numberOfColumns(), neighDef);
+	}
+
+	/**
+	 * indicates whether the method {@link TransitionFunction#step(Cell, int)}
+	 * may be executed for different cells in parallel. This requires that 
+	 * the method reads the states for time step <tt>ti</tt> only and writes
+	 * the state for <tt>ti + 1</tt> to the given cell only. By default, 
+	 * <i>false</i> will be returned; transition functions that fulfill the 
+	 * requirements should override this method.
+	 * 
+	 * @return <i>true</i> if cells can be processed in parallel
+	 */
+	public boolean isParallelizable() {
+		return false;
+	}
+
+	/**
+	 * gets the neighborhood the transition of a cell depends on. Transition
+	 * functions returning a neighborhood here support sparse execution, see
+	 * {@link RectangularAutomaton#enableSparseExecution()}: Cells whose own 
+	 * states and whose neighbors' states did not change during the previous
+	 * time step will keep their states without being processed. This 
+	 * requires that the method {@link TransitionFunction#step(Cell, int)} 
+	 * is deterministic and that the next state of a cell depends on the 
+	 * current states of the cell and of its neighbors only. By default, 
+	 * <i>null</i> will be returned, i.e. all cells will be processed for 
+	 * each time step; this is necessary for stochastic transition functions.
+	 * 
+	 * @return Neighborhood definition or <i>null</i>
+	 */
+	public NeighborhoodIndex getDependencyNeighborhood() {
+		return null;
+	}
+
+	/**
+	 * gets the neighborhood that is read when a cell is updated in place, 
+	 * see {@link TransitionFunction#update(Cell, int, FastRandom)}. This 
+	 * neighborhood is required for colour-partitioned updating, see {@link
+	 * CellularAutomaton#COLORED}. By default, the neighborhood given by 
+	 * {@link TransitionFunction#getDependencyNeighborhood()} will be 
+	 * returned; stochastic transition functions supporting asynchronous 
+	 * updating should override this method.
+	 * 
+	 * @return Neighborhood definition or <i>null</i>
+	 */
+	public NeighborhoodIndex getUpdateNeighborhood() {
+		return this.getDependencyNeighborhood();
+	}
+
+	/**
+	 * writes the parameters of the transition function, e.g. into a 
+	 * {@link Checkpoint}. By default, nothing will be written. Transition
+	 * functions holding parameters should override this method together
+	 * with {@link TransitionFunction#readParameters(DataInput)}.
+	 * 
+	 * @param out Output
+	 * @throws IOException
+	 */
+	public void writeParameters(DataOutput out) throws IOException {
+		// do nothing
+	}
+
+	/**
+	 * reads the parameters of the transition function that have been 
+	 * written by {@link TransitionFunction#writeParameters(DataOutput)}.
+	 * 
+	 * @param in Input
+	 * @throws IOException
+	 */
+	public void readParameters(DataInput in) throws IOException {
+		// do nothing
+	}
+
 	public String toString() 
 	{ 
 		StringBuffer s = new StringBuffer();
@@ -0,0 +1,29 @@
+package de.hsbo.geo.simsamples.cellularautomata.instances;
+
+import de.hsbo.geo.simsamples.cellularautomata.BinaryStateGrid;
+import de.hsbo.geo.simsamples.cellularautomata.PrimitiveRectangularSpace;
+import de.hsbo.geo.simsamples.cellularautomata.RectangularAutomaton;
+
+/**
+ * Specialized automaton that runs the {@link GameOfLife} on a bit-packed 
+ * {@link BinaryStateGrid}. For each time step, the states of 64 cells are 
+ * computed at once by bit-parallel operations. The results are identical to 
+ * those of a {@link RectangularAutomaton} operating on {@link 
+ * de.hsbo.geo.simsamples.cellularautomata.Cell} objects, but the automaton 
+ * is much faster and requires just 2 bits per cell. Note that only the 
+ * states for the latest two time steps are held.
+ * 
+ * @author Benno Schmidt
+ */
+public class BitPackedLifeAutomaton extends RectangularAutomaton 
+{
+	/**
+	 * Constructor
+	 * 
+	 * @param nx Number of rows of the cellular grid
+	 * @param ny Number of columns of the cellular grid
+	 */
+	public BitPackedLifeAutomaton(int nx, int ny) {
+		super(new PrimitiveRectangularSpace(nx, ny, true), new GameOfLife());
+	}
+}
@@ -0,0 +1,74 @@
+package de.hsbo.geo.simsamples.cellularautomata.instances;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import de.hsbo.geo.simsamples.cellularautomata.ContinuousStateSet;
+
+/**
+ * Transition function modeling diffusion on a rectangular grid. For each
+ * cell, the automaton iterates the explicit scheme <tt>z(t + 1) = z(t) +
+ * d * (zN(t) + zE(t) + zS(t) + zW(t) - 4 * z(t))</tt>, where <tt>zN</tt>
+ * gives the value of the Northern neighbor cell, <tt>zE</tt> for the
+ * Eastern neighbor etc. At the grid's edges, only the existing neighbors
+ * will be taken into account (zero-flux boundary), so that the sum of all
+ * cell values remains constant. The scheme is stable for diffusion
+ * coefficients <tt>d</tt> &lt;= 0.25.
+ * <p>
+ * The neighbor values will be collected by the base class {@link
+ * FourNeighborStencil}.
+ *
+ * @author Benno Schmidt
+ */
+public class Diffusion extends FourNeighborStencil
+{
+	double d = 0.2; // Diffusion coefficient
+
+
+	/**
+	 * Constructor. The diffusion coefficient will be set to 0.2.
+	 */
+	public Diffusion() {
+		super();
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param d Diffusion coefficient (should not exceed 0.25)
+	 */
+	public Diffusion(double d) {
+		super();
+		this.d = d;
+	}
+
+	/**
+	 * gets the diffusion coefficient.
+	 *
+	 * @return Diffusion coefficient
+	 */
+	public double getDiffusionCoefficient() {
+		return this.d;
+	}
+
+	@Override
+	public void defineStates() {
+		this.states = new ContinuousStateSet();
+	}
+
+	@Override
+	protected double next(double z, double sum, int n, double mirrored) {
+		return z + d * (sum - n * z);
+	}
+
+	@Override
+	public void writeParameters(DataOutput out) throws IOException {
+		out.writeDouble(this.d);
+	}
+
+	@Override
+	public void readParameters(DataInput in) throws IOException {
+		this.d = in.readDouble();
+	}
+}
@@ -0,0 +1,247 @@
+package de.hsbo.geo.simsamples.cellularautomata.instances;
+
+import de.hsbo.geo.simsamples.cellularautomata.Cell;
+import de.hsbo.geo.simsamples.cellularautomata.ContinuousStateGrid;
+import de.hsbo.geo.simsamples.cellularautomata.DoubleStateAccess;
+import de.hsbo.geo.simsamples.cellularautomata.NeighborhoodIndex;
+import de.hsbo.geo.simsamples.cellularautomata.PrimitiveTransitionFunction;
+import de.hsbo.geo.simsamples.cellularautomata.RectangularCellLocation;
+import de.hsbo.geo.simsamples.cellularautomata.RectangularSpace;
+import de.hsbo.geo.simsamples.cellularautomata.StateGrid;
+import de.hsbo.geo.simsamples.cellularautomata.TiledStateGrid;
+import de.hsbo.geo.simsamples.cellularautomata.TransitionFunction;
+
+/**
+ * Base class for transition functions on rectangular grids holding
+ * <tt>double</tt> values, where the next state of a cell depends on its
+ * current state and on the states of its Northern, Southern, Western and
+ * Eastern neighbors. This class collects the neighbor values for all kinds
+ * of cellular spaces, i.e. for {@link Cell} objects, flat and tiled state
+ * grids and arbitrary {@link DoubleStateAccess} grids; concrete
+ * transition functions just have to define the formula by the method
+ * {@link FourNeighborStencil#next(double, double, int, double)}.
+ * <p>
+ * For {@link de.hsbo.geo.simsamples.cellularautomata.PrimitiveRectangularSpace}s,
+ * the formula will be applied to whole rows of <tt>double</tt> values; only
+ * the edge cells will be processed one by one. Tiled state grids will be
+ * processed tile by tile.
+ *
+ * @author Benno Schmidt
+ */
+abstract public class FourNeighborStencil extends TransitionFunction
+	implements PrimitiveTransitionFunction
+{
+	private static final NeighborhoodIndex NEIGH =
+		NeighborhoodIndex.NEIGH_4();
+
+
+	/**
+	 * computes the next state of a cell. For inner cells, <tt>n</tt> is 4
+	 * and <tt>mirrored</tt> is 0. For edge and corner cells, only the
+	 * existing neighbors are summed up; here <tt>mirrored</tt> gives the sum
+	 * of the values of the neighbors that are located opposite to the
+	 * missing ones, which allows to mirror the grid at its edges.
+	 *
+	 * @param z Current state of the cell
+	 * @param sum Sum of the states of the existing neighbors
+	 * @param n Number of existing neighbors (0 .. 4)
+	 * @param mirrored Sum of the states of the neighbors opposite to the
+	 * missing neighbors
+	 * @return Next state of the cell
+	 */
+	abstract protected double next(
+		double z, double sum, int n, double mirrored);
+
+	@Override
+	public void step(Cell c, int ti) throws Exception
+	{
+		RectangularSpace sp = (RectangularSpace) c.getCellularSpace();
+		RectangularCellLocation loc = (RectangularCellLocation) c.getLocation();
+
+		Cell
+			cN = sp.getNeighborCell(loc.i, loc.j, (short) 0),
+			cE = sp.getNeighborCell(loc.i, loc.j, (short) 2),
+			cS = sp.getNeighborCell(loc.i, loc.j, (short) 4),
+			cW = sp.getNeighborCell(loc.i, loc.j, (short) 6);
+		double
+			zN = cN != null ? (Double) cN.getValue(ti) : 0.,
+			zS = cS != null ? (Double) cS.getValue(ti) : 0.,
+			zW = cW != null ? (Double) cW.getValue(ti) : 0.,
+			zE = cE != null ? (Double) cE.getValue(ti) : 0.;
+
+		c.setValue(ti + 1, this.next((Double) c.getValue(ti),
+			zN, zS, zW, zE, cN != null, cE != null, cS != null, cW != null));
+	}
+
+	/**
+	 * applies the formula to a cell, including edge and corner situations.
+	 * Values of missing neighbors will be ignored.
+	 */
+	private double next(double z, double zN, double zS, double zW, double zE,
+		boolean hasN, boolean hasE, boolean hasS, boolean hasW)
+	{
+		double sum = 0., mirrored = 0.;
+		int n = 0;
+		if (hasN) { sum += zN; n++; } else if (hasS) mirrored += zS;
+		if (hasS) { sum += zS; n++; } else if (hasN) mirrored += zN;
+		if (hasW) { sum += zW; n++; } else if (hasE) mirrored += zE;
+		if (hasE) { sum += zE; n++; } else if (hasW) mirrored += zW;
+		return this.next(z, sum, n, mirrored);
+	}
+
+	/**
+	 * computes the next state of the cell held by <tt>src[l]</tt>, including
+	 * edge and corner situations. The neighbors are held by the same array;
+	 * <tt>st</tt> gives the offset between two rows.
+	 */
+	private double next(double[] src, int l, int st,
+		boolean hasN, boolean hasE, boolean hasS, boolean hasW)
+	{
+		return this.next(src[l],
+			hasN ? src[l - st] : 0., hasS ? src[l + st] : 0.,
+			hasW ? src[l - 1] : 0., hasE ? src[l + 1] : 0.,
+			hasN, hasE, hasS, hasW);
+	}
+
+	@Override
+	public void step(StateGrid grid, int ti, int iMin, int iMax)
+		throws Exception
+	{
+		if (grid instanceof TiledStateGrid) {
+			this.step((TiledStateGrid) grid, ti, iMin, iMax);
+			return;
+		}
+		if (!(grid instanceof ContinuousStateGrid)) {
+			this.step((DoubleStateAccess) grid, ti, iMin, iMax);
+			return;
+		}
+
+		ContinuousStateGrid g = (ContinuousStateGrid) grid;
+		double[] src = g.readBuffer(ti), dst = g.writeBuffer(ti + 1);
+		int nx = g.numberOfRows(), ny = g.numberOfColumns();
+
+		for (int i = iMin; i < iMax; i++) {
+			if (i == 0 || i == nx - 1 || ny < 3) {
+				for (int j = 0; j < ny; j++) {
+					this.stepEdgeCell(src, dst, nx, ny, i, j);
+				}
+				continue;
+			}
+			this.stepEdgeCell(src, dst, nx, ny, i, 0);
+			this.stepInnerCells(src, dst, i * ny + 1, i * ny + ny - 1, ny);
+			this.stepEdgeCell(src, dst, nx, ny, i, ny - 1);
+		}
+	}
+
+	/**
+	 * performs the transition for the cells <tt>l0 .. l1 - 1</tt>, which
+	 * must not be located at the grid's edges. The loop body consists of
+	 * arithmetic on array elements with constant offsets.
+	 */
+	private void stepInnerCells(
+		double[] src, double[] dst, int l0, int l1, int st)
+	{
+		for (int l = l0; l < l1; l++) {
+			double sum = src[l - st] + src[l + st] + src[l - 1] + src[l + 1];
+			dst[l] = this.next(src[l], sum, 4, 0.);
+		}
+	}
+
+	/**
+	 * performs the transition for a single cell, including edge and corner
+	 * situations.
+	 */
+	private void stepEdgeCell(
+		double[] src, double[] dst, int nx, int ny, int i, int j)
+	{
+		int l = i * ny + j;
+		dst[l] = this.next(src, l, ny, i > 0, j < ny - 1, i < nx - 1, j > 0);
+	}
+
+	/**
+	 * performs the transition for arbitrary state grids holding
+	 * <tt>double</tt> values, e.g. memory-mapped grids.
+	 */
+	private void step(DoubleStateAccess g, int ti, int iMin, int iMax)
+		throws Exception
+	{
+		int
+			nx = ((StateGrid) g).numberOfRows(),
+			ny = ((StateGrid) g).numberOfColumns();
+
+		for (int i = iMin; i < iMax; i++) {
+			for (int j = 0; j < ny; j++)
+			{
+				boolean
+					hasN = i > 0, hasE = j < ny - 1,
+					hasS = i < nx - 1, hasW = j > 0;
+				double
+					zN = hasN ? g.getDouble(ti, i - 1, j) : 0.,
+					zS = hasS ? g.getDouble(ti, i + 1, j) : 0.,
+					zW = hasW ? g.getDouble(ti, i, j - 1) : 0.,
+					zE = hasE ? g.getDouble(ti, i, j + 1) : 0.;
+
+				g.setDouble(ti + 1, i, j, this.next(g.getDouble(ti, i, j),
+					zN, zS, zW, zE, hasN, hasE, hasS, hasW));
+			}
+		}
+	}
+
+	/**
+	 * performs the transition for a tiled state grid. The cells will be
+	 * processed tile by tile; neighbor values will be taken from the tile's
+	 * halo.
+	 */
+	private void step(TiledStateGrid g, int ti, int iMin, int iMax)
+		throws Exception
+	{
+		int
+			nx = g.numberOfRows(), ny = g.numberOfColumns(),
+			st = g.stride(), ts = g.tileSize();
+
+		for (int tr = iMin / ts; tr * ts < iMax; tr++) {
+			for (int tc = 0; tc < g.numberOfTileColumns(); tc++)
+			{
+				int t = tr * g.numberOfTileColumns() + tc;
+				int
+					i0 = g.firstRow(t), j0 = g.firstColumn(t),
+					iiMin = Math.max(iMin - i0, 0),
+					iiMax = Math.min(iMax - i0, g.rows(t)),
+					nc = g.columns(t);
+				double[]
+					src = g.readTile(ti, t),
+					dst = g.writeTile(ti + 1, t);
+
+				if (i0 > 0 && j0 > 0 &&
+					i0 + g.rows(t) < nx && j0 + nc < ny)
+				{
+					// Inner tile, no edge situations:
+					for (int ii = iiMin; ii < iiMax; ii++) {
+						int l0 = (ii + 1) * st + 1;
+						this.stepInnerCells(src, dst, l0, l0 + nc, st);
+					}
+					continue;
+				}
+
+				for (int ii = iiMin; ii < iiMax; ii++) {
+					int i = i0 + ii;
+					for (int jj = 0; jj < nc; jj++) {
+						int l = (ii + 1) * st + jj + 1, j = j0 + jj;
+						dst[l] = this.next(src, l, st,
+							i > 0, j < ny - 1, i < nx - 1, j > 0);
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public boolean isParallelizable() {
+		return true;
+	}
+
+	@Override
+	public NeighborhoodIndex getDependencyNeighborhood() {
+		return NEIGH;
+	}
+}
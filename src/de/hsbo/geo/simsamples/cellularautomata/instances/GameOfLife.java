@@ -2,19 +2,30 @@ package de.hsbo.geo.simsamples.cellularautomata.instances;
 
 import java.util.List;
 
+import de.hsbo.geo.simsamples.cellularautomata.BinaryStateGrid;
 import de.hsbo.geo.simsamples.cellularautomata.Cell;
+import de.hsbo.geo.simsamples.cellularautomata.DiscreteStateGrid;
 import de.hsbo.geo.simsamples.cellularautomata.DiscreteStateSet;
 import de.hsbo.geo.simsamples.cellularautomata.NeighborhoodIndex;
+import de.hsbo.geo.simsamples.cellularautomata.NeighborhoodTable;
+import de.hsbo.geo.simsamples.cellularautomata.PrimitiveTransitionFunction;
+import de.hsbo.geo.simsamples.cellularautomata.StateGrid;
 import de.hsbo.geo.simsamples.cellularautomata.TransitionFunction;
 
 /**
  * Implementation of a cellular automaton that realizes John Conway's popular 
- * "Game of Life".
+ * "Game of Life". The transition function can operate on {@link Cell} 
+ * objects as well as on primitive state grids, including bit-packed 
+ * {@link BinaryStateGrid}s (see {@link BitPackedLifeAutomaton}). 
  * 
  * @author Benno Schmidt
  */
 public class GameOfLife extends TransitionFunction 
+	implements PrimitiveTransitionFunction
 {
+	private static final NeighborhoodIndex NEIGH = 
+		NeighborhoodIndex.NEIGH_8();
+
 	@Override
 	public void defineStates() {
 		this.states = new DiscreteStateSet(".", "X"); 
@@ -24,7 +35,7 @@ public class GameOfLife extends TransitionFunction
 	public void step(Cell c, int ti) throws Exception 
 	{	
 		// First, count living neighbors of c:
-		List<Cell> neighs = c.getNeighbors(NeighborhoodIndex.NEIGH_8());
+		List<Cell> neighs = c.getNeighbors(NEIGH);
 		int livingNeighs = 0;
 		for (Cell n : neighs) {
 			String valS = (String)(n.getValue(ti));
@@ -50,4 +61,123 @@ public class GameOfLife extends TransitionFunction
 		// else:
 		c.setValue(ti + 1, "."); 			
 	}
+
+	@Override
+	public void step(StateGrid grid, int ti, int iMin, int iMax) 
+		throws Exception 
+	{
+		if (grid instanceof BinaryStateGrid) {
+			this.step((BinaryStateGrid) grid, ti, iMin, iMax);
+			return;
+		}
+
+		DiscreteStateGrid g = (DiscreteStateGrid) grid;
+		byte dead = g.code("."), alive = g.code("X");
+		byte[] src = g.readBuffer(ti), dst = g.writeBuffer(ti + 1);
+		int ny = g.numberOfColumns();
+		NeighborhoodTable nt = this.getNeighborhoodTable(g, NEIGH);
+		int[] neighs = new int[nt.size()];
+
+		for (int i = iMin; i < iMax; i++) {
+			for (int j = 0; j < ny; j++) 
+			{
+				// First, count living neighbors of cell (i, j):
+				int n = nt.neighbors(i, j, neighs);
+				int livingNeighs = 0;
+				for (int l = 0; l < n; l++) {
+					if (src[neighs[l]] == alive) 
+						livingNeighs++;
+				}
+
+				// Then apply the game's rules:
+				int k = i * ny + j;
+				if (livingNeighs == 3 || (livingNeighs == 2 && src[k] == alive))
+					dst[k] = alive;
+				else 
+					dst[k] = dead;
+			}
+		}
+	}
+
+	/**
+	 * performs the transition for a bit-packed state grid. For each 64 
+	 * cells of a row, the numbers of living neighbors are determined at 
+	 * once by bit-parallel adders (SWAR technique).
+	 */
+	private void step(BinaryStateGrid g, int ti, int iMin, int iMax) 
+		throws Exception 
+	{
+		if (g.code("X") != 1) {
+			throw new Exception("Unexpected state encoding!");
+		}
+		long[] src = g.readBuffer(ti), dst = g.writeBuffer(ti + 1);
+		int nx = g.numberOfRows(), nw = g.wordsPerRow();
+		long lastMask = g.lastWordMask();
+
+		for (int i = iMin; i < iMax; i++) {
+			int 
+				rN = (i - 1) * nw, // row above (if i > 0)
+				rC = i * nw, 
+				rS = (i + 1) * nw; // row below (if i < nx - 1)
+			for (int w = 0; w < nw; w++) 
+			{
+				long 
+					c = src[rC + w],
+					cW = w > 0 ? src[rC + w - 1] : 0L,
+					cE = w < nw - 1 ? src[rC + w + 1] : 0L,
+					n = 0L, nW = 0L, nE = 0L, 
+					s = 0L, sW = 0L, sE = 0L;
+				if (i > 0) {
+					n = src[rN + w];
+					nW = w > 0 ? src[rN + w - 1] : 0L;
+					nE = w < nw - 1 ? src[rN + w + 1] : 0L;
+				}
+				if (i < nx - 1) {
+					s = src[rS + w];
+					sW = w > 0 ? src[rS + w - 1] : 0L;
+					sE = w < nw - 1 ? src[rS + w + 1] : 0L;
+				}
+
+				// The 8 neighbor bit-boards (bit k refers to column 
+				// 64 * w + k; Western neighbor is column - 1):
+				long 
+					x0 = (n << 1) | (nW >>> 63), 
+					x1 = n, 
+					x2 = (n >>> 1) | (nE << 63),
+					x3 = (c << 1) | (cW >>> 63), 
+					x4 = (c >>> 1) | (cE << 63),
+					x5 = (s << 1) | (sW >>> 63), 
+					x6 = s, 
+					x7 = (s >>> 1) | (sE << 63);
+
+				// Add up the neighbor bits using full and half adders:
+				long s1 = x0 ^ x1 ^ x2, c1 = (x0 & x1) | (x2 & (x0 ^ x1));
+				long s2 = x3 ^ x4 ^ x5, c2 = (x3 & x4) | (x5 & (x3 ^ x4));
+				long s3 = x6 ^ x7, c3 = x6 & x7;
+				long ones = s1 ^ s2 ^ s3, c4 = (s1 & s2) | (s3 & (s1 ^ s2));
+				// c1, c2, c3, c4 have weight 2:
+				long t = c1 ^ c2 ^ c3, c5 = (c1 & c2) | (c3 & (c1 ^ c2));
+				long twos = t ^ c4, c6 = t & c4;
+				long foursOrMore = c5 | c6;
+
+				// Cell lives, if it has 3 living neighbors, or if it lives
+				// and has 2 living neighbors:
+				long next = twos & ~foursOrMore & (ones | c);
+				if (w == nw - 1) {
+					next &= lastMask;
+				}
+				dst[rC + w] = next;
+			}
+		}
+	}
+
+	@Override
+	public boolean isParallelizable() {
+		return true;
+	}
+
+	@Override
+	public NeighborhoodIndex getDependencyNeighborhood() {
+		return NEIGH;
+	}
 }
@@ -0,0 +1,595 @@
+package de.hsbo.geo.simsamples.cellularautomata.instances;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.hsbo.geo.simsamples.cellularautomata.DiscreteStateSet;
+import de.hsbo.geo.simsamples.cellularautomata.NeighborhoodIndex;
+import de.hsbo.geo.simsamples.cellularautomata.PrimitiveRectangularSpace;
+import de.hsbo.geo.simsamples.cellularautomata.RectangularSpace;
+import de.hsbo.geo.simsamples.cellularautomata.StateGrid;
+import de.hsbo.geo.simsamples.common.Simulator;
+
+/**
+ * Simulator for Life-like automata on an unbounded plane based on Bill
+ * Gosper's "Hashlife" algorithm. The universe is represented by a quadtree;
+ * identical sub-trees are shared (hash-consing), and for each tree node the
+ * evolution of its center is memoized. Thus, huge sparse or repetitive
+ * patterns can be simulated over astronomical numbers of generations, since
+ * the simulation can jump by 2<sup>k</sup> generations at once.
+ * <p>
+ * Any two-state {@link TotalisticRule} referring to the Moore neighborhood
+ * can be used, e.g. <tt>"B3/S23"</tt> for the Game of Life. State 0 (i.e.
+ * the first element of the sorted state set) is regarded as "dead". Rules
+ * that let dead cells with dead neighbors come alive (B0) are not
+ * supported. Note that, in contrast to {@link RectangularSpace}s, the
+ * universe has no boundaries. Cells are addressed by <tt>long</tt> row and
+ * column indices, which may be negative. To inspect the simulation result
+ * (or to use the existing output facilities), arbitrary windows of the
+ * current generation can be exported as {@link RectangularSpace}s, see
+ * {@link HashLife#getWindow(long, long, int, int)}. Note that {@link 
+ * HashLife#execute(int)} counts generations differently than rectangular 
+ * automata do.
+ * <p>
+ * Note that the tree nodes created during the simulation will be kept in
+ * memory until {@link HashLife#clearCache()} is called.
+ *
+ * @author Benno Schmidt
+ */
+public class HashLife extends Simulator
+{
+	static private final int MAX_LEVEL = 62; // root width 2^62 at most
+
+	private TotalisticRule rule;
+	private int[] baseTable; // 4x4 bit pattern -> 2x2 bit pattern
+	private Map<Node, Node> nodes = new HashMap<Node, Node>();
+	private List<Node> empty = new ArrayList<Node>(); // by level
+	private Node dead, alive; // leaves
+	private Node root;
+	private long i0 = 0, j0 = 0; // row and column of root's upper left cell
+	private long generation = 0;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param rule Two-state transition rule
+	 * @throws Exception if the rule is not supported
+	 */
+	public HashLife(TotalisticRule rule) throws Exception
+	{
+		if (rule.numberOfStates() != 2) {
+			throw new Exception(
+				"Hashlife requires a transition rule with 2 states!");
+		}
+		if (!rule.getNeighborhood().equals(NeighborhoodIndex.NEIGH_8())) {
+			throw new Exception(
+				"Hashlife requires a rule referring to the Moore neighborhood!");
+		}
+		if (rule.next(0, 0) != 0) {
+			throw new Exception(
+				"Rules letting empty space come alive are not supported!");
+		}
+		this.rule = rule;
+		this.compileBaseTable();
+
+		this.dead = new Node(0);
+		this.alive = new Node(1);
+		this.empty.add(this.dead);
+		this.root = this.empty(3);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param rule Rule string in B/S notation, e.g. <tt>"B3/S23"</tt>
+	 * @param states Dead and living state, e.g. <tt>".", "X"</tt>
+	 * @throws Exception if the rule is not supported
+	 */
+	public HashLife(String rule, Object... states) throws Exception {
+		this(TotalisticRule.parse(rule, states));
+	}
+
+	/**
+	 * gets the transition rule.
+	 *
+	 * @return Transition rule
+	 */
+	public TotalisticRule getRule() {
+		return this.rule;
+	}
+
+	/**
+	 * gets the number of generations simulated so far.
+	 *
+	 * @return Generation number
+	 */
+	public long getGeneration() {
+		return this.generation;
+	}
+
+	/**
+	 * gets the number of living cells of the current generation.
+	 *
+	 * @return Number of living cells
+	 */
+	public long getPopulation() {
+		return this.root.population;
+	}
+
+	/**
+	 * gets the number of quadtree nodes that are currently held in memory.
+	 *
+	 * @return Number of nodes
+	 */
+	public int numberOfNodes() {
+		return this.nodes.size();
+	}
+
+	/**
+	 * sets the state of a cell of the current generation.
+	 *
+	 * @param i Row index
+	 * @param j Column index
+	 * @param state Cell state
+	 * @throws Exception if <tt>state</tt> is not element of the state set
+	 */
+	public void setValue(long i, long j, Object state) throws Exception
+	{
+		boolean isAlive = this.code(state) == 1;
+		while (!this.inRoot(i, j)) {
+			this.expandRoot();
+		}
+		this.root = this.set(this.root, i - this.i0, j - this.j0, isAlive);
+	}
+
+	/**
+	 * gets the state of a cell of the current generation.
+	 *
+	 * @param i Row index
+	 * @param j Column index
+	 * @return Cell state
+	 */
+	public Object getValue(long i, long j)
+	{
+		if (!this.inRoot(i, j)) {
+			return this.rule.state(0);
+		}
+		Node n = this.root;
+		long di = i - this.i0, dj = j - this.j0;
+		while (n.level > 0) {
+			long half = 1L << (n.level - 1);
+			n = this.child(n, di >= half, dj >= half);
+			di &= half - 1;
+			dj &= half - 1;
+		}
+		return this.rule.state(n == this.alive ? 1 : 0);
+	}
+
+	/**
+	 * copies the cell states of a rectangular cellular space into the
+	 * universe. The cell <tt>(0, 0)</tt> of the space will be put to row
+	 * <tt>i0</tt> and column <tt>j0</tt>.
+	 *
+	 * @param sp Cellular space
+	 * @param ti Time stamp index of the cell states to be copied
+	 * @param i0 Row index
+	 * @param j0 Column index
+	 * @throws Exception
+	 */
+	public void setWindow(RectangularSpace sp, int ti, long i0, long j0)
+		throws Exception
+	{
+		for (int i = 0; i < sp.numberOfRows(); i++) {
+			for (int j = 0; j < sp.numberOfColumns(); j++) {
+				this.setValue(i0 + i, j0 + j, sp.getCell(i, j).getValue(ti));
+			}
+		}
+	}
+
+	/**
+	 * exports a window of the current generation as rectangular cellular
+	 * space. The cell states will be available for the time stamp index 0.
+	 * Thus, the result can be dumped or written to files as usual.
+	 *
+	 * @param i0 Row index of the window's upper left cell
+	 * @param j0 Column index of the window's upper left cell
+	 * @param nx Number of rows of the window
+	 * @param ny Number of columns of the window
+	 * @return Cellular space
+	 * @throws Exception
+	 */
+	public RectangularSpace getWindow(long i0, long j0, int nx, int ny)
+		throws Exception
+	{
+		PrimitiveRectangularSpace sp = new PrimitiveRectangularSpace(
+			nx, ny,
+			new DiscreteStateSet(this.rule.state(0), this.rule.state(1)));
+		StateGrid g = sp.getStateGrid();
+		g.fill(0, this.rule.state(0));
+		this.export(
+			this.root, this.i0 - i0, this.j0 - j0, g, this.rule.state(1));
+		return sp;
+	}
+
+	private void export(Node n, long di, long dj, StateGrid g, Object val)
+		throws Exception
+	{
+		long size = 1L << n.level;
+		if (n.population == 0 ||
+			di >= g.numberOfRows() || dj >= g.numberOfColumns() ||
+			di + size <= 0 || dj + size <= 0)
+		{
+			return;
+		}
+		if (n.level == 0) {
+			g.setValue(0, g.index((int) di, (int) dj), val);
+			return;
+		}
+		long half = size >>> 1;
+		this.export(n.nw, di, dj, g, val);
+		this.export(n.ne, di, dj + half, g, val);
+		this.export(n.sw, di + half, dj, g, val);
+		this.export(n.se, di + half, dj + half, g, val);
+	}
+
+	/**
+	 * advances the universe by exactly the given number of generations. 
+	 * Internally, the number of generations will be decomposed into powers 
+	 * of 2. Note that this differs from {@link 
+	 * de.hsbo.geo.simsamples.cellularautomata.RectangularAutomaton#execute(
+	 * int)}, which performs the transitions for the time steps <tt>0 .. 
+	 * numberOfSteps</tt>, i.e. <tt>numberOfSteps + 1</tt> generations. Thus,
+	 * <tt>execute(n + 1)</tt> gives the same generation as a rectangular 
+	 * automaton executed for <tt>n</tt> time steps.
+	 *
+	 * @param numberOfSteps Number of generations
+	 */
+	@Override
+	public void execute(int numberOfSteps) throws Exception
+	{
+		this.numberOfSteps = numberOfSteps;
+		this.beforeExecute();
+		for (int k = 0; k < 31; k++) {
+			if ((numberOfSteps & (1 << k)) != 0) {
+				this.jump(k);
+			}
+		}
+		this.afterExecute();
+	}
+
+	/**
+	 * advances the universe by 2<sup>k</sup> generations. Since cells are
+	 * addressed by <tt>long</tt> indices, the universe's width is limited to
+	 * 2<sup>62</sup> cells, i.e. <tt>k</tt> must not exceed 59.
+	 *
+	 * @param k Exponent
+	 * @throws Exception if <tt>k</tt> is out of range or if the pattern
+	 * would grow beyond the maximum universe size
+	 */
+	public void jump(int k) throws Exception
+	{
+		if (k < 0 || k > MAX_LEVEL - 3) {
+			throw new Exception("Illegal jump exponent: " + k + "!");
+		}
+
+		// Make sure that the pattern cannot grow beyond the result:
+		while (this.root.level < k + 3 ||
+			this.root.population != this.innerPopulation(this.root))
+		{
+			this.expandRoot();
+		}
+
+		long quarter = 1L << (this.root.level - 2);
+		this.root = this.successor(this.root, k);
+		this.i0 += quarter;
+		this.j0 += quarter;
+		this.generation += 1L << k;
+
+		if (this.consoleDump) {
+			System.out.println("Generation " + this.generation +
+				": population = " + this.root.population);
+		}
+	}
+
+	/**
+	 * removes all memoized tree nodes that are not part of the current
+	 * generation.
+	 */
+	public void clearCache()
+	{
+		this.nodes.clear();
+		this.empty.clear();
+		this.empty.add(this.dead);
+		this.root = this.rebuild(this.root, new IdentityHashMap<Node, Node>());
+	}
+
+	private Node rebuild(Node n, Map<Node, Node> done)
+	{
+		if (n.level == 0) {
+			return n;
+		}
+		if (n.population == 0) {
+			return this.empty(n.level);
+		}
+		Node res = done.get(n);
+		if (res == null) {
+			res = this.join(
+				this.rebuild(n.nw, done), this.rebuild(n.ne, done),
+				this.rebuild(n.sw, done), this.rebuild(n.se, done));
+			done.put(n, res);
+		}
+		return res;
+	}
+
+	private int code(Object state) throws Exception
+	{
+		for (int k = 0; k < 2; k++) {
+			if (this.rule.state(k).equals(state)) {
+				return k;
+			}
+		}
+		throw new Exception(
+			"Tried to assign state \"" + state + "\" which is not element " +
+			"of the state set!");
+	}
+
+	private boolean inRoot(long i, long j) {
+		long size = 1L << this.root.level, di = i - this.i0, dj = j - this.j0;
+		// Note: Negative differences indicate an overflow.
+		return i >= this.i0 && di >= 0 && di < size &&
+			j >= this.j0 && dj >= 0 && dj < size;
+	}
+
+	/**
+	 * computes the transitions for all 4x4 patterns. The pattern bit
+	 * <tt>4 * r + c</tt> refers to the cell in row <tt>r</tt> and column
+	 * <tt>c</tt>, the result bit <tt>2 * r + c</tt> to the inner cell in row
+	 * <tt>r + 1</tt> and column <tt>c + 1</tt>.
+	 */
+	private void compileBaseTable()
+	{
+		this.baseTable = new int[1 << 16];
+		for (int p = 0; p < (1 << 16); p++) {
+			int res = 0;
+			for (int r = 1; r <= 2; r++) {
+				for (int c = 1; c <= 2; c++) {
+					int sum = 0;
+					for (int dr = -1; dr <= 1; dr++) {
+						for (int dc = -1; dc <= 1; dc++) {
+							if (dr != 0 || dc != 0) {
+								int b = (p >>> (4 * (r + dr) + c + dc)) & 1;
+								sum += this.rule.weight(b);
+							}
+						}
+					}
+					int state = (p >>> (4 * r + c)) & 1;
+					if (this.rule.next(state, sum) == 1) {
+						res |= 1 << (2 * (r - 1) + c - 1);
+					}
+				}
+			}
+			this.baseTable[p] = res;
+		}
+	}
+
+	private Node join(Node nw, Node ne, Node sw, Node se)
+	{
+		Node n = new Node(nw, ne, sw, se);
+		Node res = this.nodes.get(n);
+		if (res == null) {
+			this.nodes.put(n, n);
+			res = n;
+		}
+		return res;
+	}
+
+	private Node empty(int level)
+	{
+		while (this.empty.size() <= level) {
+			Node e = this.empty.get(this.empty.size() - 1);
+			this.empty.add(this.join(e, e, e, e));
+		}
+		return this.empty.get(level);
+	}
+
+	private Node child(Node n, boolean south, boolean east) {
+		if (south)
+			return east ? n.se : n.sw;
+		return east ? n.ne : n.nw;
+	}
+
+	private Node set(Node n, long di, long dj, boolean isAlive)
+	{
+		if (n.level == 0) {
+			return isAlive ? this.alive : this.dead;
+		}
+		long half = 1L << (n.level - 1);
+		boolean south = di >= half, east = dj >= half;
+		di &= half - 1;
+		dj &= half - 1;
+		return this.join(
+			!south && !east ? this.set(n.nw, di, dj, isAlive) : n.nw,
+			!south && east ? this.set(n.ne, di, dj, isAlive) : n.ne,
+			south && !east ? this.set(n.sw, di, dj, isAlive) : n.sw,
+			south && east ? this.set(n.se, di, dj, isAlive) : n.se);
+	}
+
+	/**
+	 * doubles the root's size keeping the current pattern centered.
+	 */
+	private void expandRoot() throws Exception
+	{
+		if (this.root.level >= MAX_LEVEL) {
+			throw new Exception(
+				"Pattern exceeds the maximum universe width of 2^" +
+				MAX_LEVEL + " cells!");
+		}
+		Node r = this.root;
+		Node e = this.empty(r.level - 1);
+		this.root = this.join(
+			this.join(e, e, e, r.nw), this.join(e, e, r.ne, e),
+			this.join(e, r.sw, e, e), this.join(r.se, e, e, e));
+		long quarter = 1L << (r.level - 1);
+		this.i0 -= quarter;
+		this.j0 -= quarter;
+	}
+
+	/**
+	 * gets the population of the node's inner region, which has a quarter
+	 * of the node's width.
+	 */
+	private long innerPopulation(Node n) {
+		return n.nw.se.se.population + n.ne.sw.sw.population +
+			n.sw.ne.ne.population + n.se.nw.nw.population;
+	}
+
+	private Node center(Node n) {
+		return this.join(n.nw.se, n.ne.sw, n.sw.ne, n.se.nw);
+	}
+
+	/**
+	 * computes the center of the given node (having half of the node's
+	 * width) after 2<sup>k</sup> generations. Note that <tt>k</tt> must not
+	 * exceed the node's level - 2.
+	 */
+	private Node successor(Node n, int k)
+	{
+		if (n.population == 0) {
+			return this.empty(n.level - 1);
+		}
+		if (n.level == 2) {
+			return this.base(n);
+		}
+		boolean full = (k == n.level - 2);
+		if (full && n.result != null) {
+			return n.result;
+		}
+		if (!full && n.next != null && n.nextK == k) {
+			return n.next;
+		}
+
+		// 9 overlapping sub-nodes having half of the node's width:
+		Node[] c = new Node[] {
+			n.nw,
+			this.join(n.nw.ne, n.ne.nw, n.nw.se, n.ne.sw),
+			n.ne,
+			this.join(n.nw.sw, n.nw.se, n.sw.nw, n.sw.ne),
+			this.join(n.nw.se, n.ne.sw, n.sw.ne, n.se.nw),
+			this.join(n.ne.sw, n.ne.se, n.se.nw, n.se.ne),
+			n.sw,
+			this.join(n.sw.ne, n.se.nw, n.sw.se, n.se.sw),
+			n.se
+		};
+
+		// Their centers, advanced by 2^(k - 1) generations for full steps:
+		for (int l = 0; l < 9; l++) {
+			c[l] = full ? this.successor(c[l], k - 1) : this.center(c[l]);
+		}
+		int k2 = full ? k - 1 : k;
+		Node res = this.join(
+			this.successor(this.join(c[0], c[1], c[3], c[4]), k2),
+			this.successor(this.join(c[1], c[2], c[4], c[5]), k2),
+			this.successor(this.join(c[3], c[4], c[6], c[7]), k2),
+			this.successor(this.join(c[4], c[5], c[7], c[8]), k2));
+
+		if (full) {
+			n.result = res;
+		} else {
+			n.next = res;
+			n.nextK = k;
+		}
+		return res;
+	}
+
+	private Node base(Node n)
+	{
+		Node[] q = new Node[] {n.nw, n.ne, n.sw, n.se};
+		int p = 0;
+		for (int r = 0; r < 4; r++) {
+			for (int c = 0; c < 4; c++) {
+				Node sub = q[2 * (r >>> 1) + (c >>> 1)];
+				Node leaf = this.child(sub, (r & 1) != 0, (c & 1) != 0);
+				if (leaf == this.alive) {
+					p |= 1 << (4 * r + c);
+				}
+			}
+		}
+		int res = this.baseTable[p];
+		Node[] l = new Node[4];
+		for (int b = 0; b < 4; b++) {
+			l[b] = ((res >>> b) & 1) != 0 ? this.alive : this.dead;
+		}
+		return this.join(l[0], l[1], l[2], l[3]);
+	}
+
+	public String toString()
+	{
+		StringBuffer buf = new StringBuffer();
+		buf.append("HashLife[rule = ");
+		buf.append(this.rule);
+		buf.append(", generation = ");
+		buf.append(this.generation);
+		buf.append(", population = ");
+		buf.append(this.root.population);
+		buf.append(", nodes = ");
+		buf.append(this.nodes.size());
+		buf.append("]");
+		return buf.toString();
+	}
+
+	/**
+	 * Quadtree node. Since nodes are canonical, i.e. there are no two
+	 * distinct nodes representing the same pattern, children can be
+	 * compared by reference.
+	 */
+	private static class Node
+	{
+		final int level; // width is 2^level
+		final Node nw, ne, sw, se;
+		final long population;
+		final int hash;
+		Node result; // center after 2^(level - 2) generations
+		Node next; // center after 2^nextK generations
+		int nextK;
+
+		Node(int population) {
+			this.level = 0;
+			this.nw = this.ne = this.sw = this.se = null;
+			this.population = population;
+			this.hash = population;
+		}
+
+		Node(Node nw, Node ne, Node sw, Node se) {
+			this.level = nw.level + 1;
+			this.nw = nw;
+			this.ne = ne;
+			this.sw = sw;
+			this.se = se;
+			this.population =
+				nw.population + ne.population + sw.population + se.population;
+			int h = System.identityHashCode(nw);
+			h = 31 * h + System.identityHashCode(ne);
+			h = 31 * h + System.identityHashCode(sw);
+			this.hash = 31 * h + System.identityHashCode(se);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Node))
+				return false;
+			Node n = (Node) o;
+			return this.level == n.level && this.nw == n.nw &&
+				this.ne == n.ne && this.sw == n.sw && this.se == n.se &&
+				(this.level > 0 || this.population == n.population);
+		}
+	}
+}
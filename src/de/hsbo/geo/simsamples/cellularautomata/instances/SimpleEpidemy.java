@@ -1,8 +1,13 @@
 package de.hsbo.geo.simsamples.cellularautomata.instances;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import de.hsbo.geo.simsamples.cellularautomata.Cell;
 import de.hsbo.geo.simsamples.cellularautomata.DiscreteStateSet;
 import de.hsbo.geo.simsamples.cellularautomata.TransitionFunction;
+import de.hsbo.geo.simsamples.common.RandomValueGenerator;
 
 /**
  * Simple transition function for a Cellular Automaton. This automaton 
@@ -10,6 +15,11 @@ import de.hsbo.geo.simsamples.cellularautomata.TransitionFunction;
  * infection levels, where the initial value " " represents lowest and "#" 
  * the highest value. For every time step, with a probability given by
  * <tt>this.p</tt>, a cell's level will increase.
+ * <p>
+ * Since the random numbers are drawn from the common generator of the 
+ * {@link RandomValueGenerator}, the transition function is not 
+ * parallelizable; otherwise, seeded simulation runs would not be 
+ * reproducible.
  * 
  * @author Benno Schmidt
  */
@@ -30,7 +40,7 @@ public class SimpleEpidemy extends TransitionFunction
 		Object valNew = val;
 		
 		String s = (String) val;
-		if (Math.random() > (1. - p)) {
+		if (RandomValueGenerator.number(0., 1.) > (1. - p)) {
 			if (s.equals(" ")) valNew = ".";
 			if (s.equals(".")) valNew = ":";
 			if (s.equals(":")) valNew = ";";
@@ -38,4 +48,14 @@ public class SimpleEpidemy extends TransitionFunction
 		}
 		c.setValue(ti + 1, valNew); 		
 	}
+
+	@Override
+	public void writeParameters(DataOutput out) throws IOException {
+		out.writeDouble(this.p);
+	}
+
+	@Override
+	public void readParameters(DataInput in) throws IOException {
+		this.p = in.readDouble();
+	}
 }
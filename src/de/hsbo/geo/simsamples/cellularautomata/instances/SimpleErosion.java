@@ -1,58 +1,96 @@
 package de.hsbo.geo.simsamples.cellularautomata.instances;
 
-import java.util.List;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 import de.hsbo.geo.simsamples.cellularautomata.Cell;
 import de.hsbo.geo.simsamples.cellularautomata.ContinuousStateSet;
+import de.hsbo.geo.simsamples.cellularautomata.FluxAccumulator;
+import de.hsbo.geo.simsamples.cellularautomata.FluxTransitionFunction;
 import de.hsbo.geo.simsamples.cellularautomata.NeighborhoodIndex;
+import de.hsbo.geo.simsamples.cellularautomata.RectangularCellLocation;
 import de.hsbo.geo.simsamples.cellularautomata.RectangularSpace;
 import de.hsbo.geo.simsamples.cellularautomata.TransitionFunction;
 
 /**
- * Very rudimentary erosion model operating on cellular elevation grids. It 
- * might be interesting to do experiment with this.
- * 
+ * Very rudimentary erosion model operating on cellular elevation grids. It
+ * might be interesting to do experiment with this. For each time step,
+ * every cell passes the portion <tt>p</tt> of its elevation difference to
+ * the lowest of its 8 neighbor cells to this neighbor. Since the mass
+ * exchange is specified by fluxes (see {@link FluxTransitionFunction}),
+ * the total mass will be preserved, and the transition function can be
+ * executed in parallel.
+ *
  * @author Benno Schmidt
  */
-public class SimpleErosion extends TransitionFunction 
+public class SimpleErosion extends TransitionFunction
+	implements FluxTransitionFunction
 {
+	private static final NeighborhoodIndex NEIGH =
+		NeighborhoodIndex.NEIGH_8();
+
 	double p = 0.2;
-	
+
+	private FluxAccumulator acc = null; // for cell-based processing
+	private RectangularSpace accSpace = null;
+
 	@Override
 	public void defineStates() {
-		this.states = new ContinuousStateSet(); 
+		this.states = new ContinuousStateSet();
 	}
 
-	@Override
-	public void beforeStep(int ti) throws Exception 
+	public NeighborhoodIndex getFluxNeighborhood() {
+		return NEIGH;
+	}
+
+	public void emit(double z, double[] zN, double[] flux)
 	{
-        RectangularSpace sp = 
-        	(RectangularSpace) this.getAutomaton().getCellularSpace();
+		// Determine neighbor with lowest elevation:
+		double zMin = z;
+		int kMin = -1;
+		for (int k = 0; k < zN.length; k++) {
+			flux[k] = 0.;
+			if (zN[k] < zMin) {
+				zMin = zN[k]; kMin = k;
+			}
+		}
 
-        for (Cell c : sp.getCells()) {
-    		c.setValue(ti + 1, c.getValue(ti));        	
-        }
+		// Then just move some mass from the current cell to this neighbor:
+		if (kMin >= 0) {
+			flux[kMin] = p * (z - zMin);
+		}
 	}
-	
+
 	@Override
-	public void step(Cell c, int ti) throws Exception 
+	public void step(Cell c, int ti) throws Exception
 	{
-		Double z = (Double) c.getValue(ti);
+		RectangularSpace sp = (RectangularSpace) c.getCellularSpace();
+		RectangularCellLocation loc = (RectangularCellLocation) c.getLocation();
 
-		// Determine neighbor with lowest elevation:
-		List<Cell> neighs = c.getNeighbors(NeighborhoodIndex.NEIGH_8());
-		Double zMin = z;
-		Cell cMin = c;
-		for (Cell n : neighs) {
-			Double zN = (Double) n.getValue(ti);
-			if (zN < zMin) {
-				zMin = zN; cMin = c;
-			}
+		FluxAccumulator a = this.acc;
+		if (a == null || this.accSpace != sp) {
+			a = new FluxAccumulator(
+				sp.numberOfRows(), sp.numberOfColumns(),
+				sp.getNeighborhoodTable(NEIGH), this);
+			this.acc = a;
+			this.accSpace = sp;
 		}
-		
-		// Then just move some mass from the current cell to this neighbor:
-		double exchange = p * (z - zMin);
-		cMin.setValue(ti + 1, zMin + exchange);
-		c.setValue(ti + 1, z - exchange);
+		c.setValue(ti + 1, a.transition(sp, loc.i, loc.j, ti));
+	}
+
+	@Override
+	public boolean isParallelizable() {
+		return true;
+	}
+
+	@Override
+	public void writeParameters(DataOutput out) throws IOException {
+		out.writeDouble(this.p);
+	}
+
+	@Override
+	public void readParameters(DataInput in) throws IOException {
+		this.p = in.readDouble();
 	}
 }
@@ -2,11 +2,17 @@ package de.hsbo.geo.simsamples.cellularautomata.instances;
 
 import java.util.List;
 
+import de.hsbo.geo.simsamples.cellularautomata.AsynchronousTransitionFunction;
 import de.hsbo.geo.simsamples.cellularautomata.Cell;
+import de.hsbo.geo.simsamples.cellularautomata.CellularAutomaton;
+import de.hsbo.geo.simsamples.cellularautomata.DiscreteStateGrid;
 import de.hsbo.geo.simsamples.cellularautomata.DiscreteStateSet;
 import de.hsbo.geo.simsamples.cellularautomata.NeighborhoodIndex;
+import de.hsbo.geo.simsamples.cellularautomata.NeighborhoodTable;
 import de.hsbo.geo.simsamples.cellularautomata.RectangularSpace;
+import de.hsbo.geo.simsamples.cellularautomata.StateGrid;
 import de.hsbo.geo.simsamples.cellularautomata.TransitionFunction;
+import de.hsbo.geo.simsamples.common.FastRandom;
 import de.hsbo.geo.simsamples.common.RandomValueGenerator;
 
 /**
@@ -24,11 +30,25 @@ import de.hsbo.geo.simsamples.common.RandomValueGenerator;
  * "fox": The fox will survive if there is at least one rabbit (that will not 
  * be eaten) in the neighborhood, otherwise the fox will die and there will 
  * grow grass on the field. 
+ * <p>
+ * In the synchronous update mode, a single cell will be chosen per time 
+ * step. For the asynchronous update modes (see {@link 
+ * CellularAutomaton#setUpdateMode(int)}), each time step consists of as 
+ * many updates as there are cells, e.g. randomly chosen cells for {@link 
+ * CellularAutomaton#RANDOM_SEQUENTIAL}, which is much faster.
  * 
  * @author Benno Schmidt
  */
 public class StruggleGame extends TransitionFunction 
+	implements AsynchronousTransitionFunction
 {
+	private static final NeighborhoodIndex NEIGH = 
+		NeighborhoodIndex.NEIGH_8();
+
+	private NeighborhoodTable updateTable = null; // for in-place updates
+	private byte grass, rabbit, fox;
+	private volatile StateGrid updateGrid = null;
+
 	@Override
 	public void defineStates() {
 		this.states = new DiscreteStateSet(".", "R", "F"); 
@@ -37,39 +57,108 @@ public class StruggleGame extends TransitionFunction
 	@Override
 	public void step(int ti) throws Exception 
 	{
-        RectangularSpace sp = 
-            	(RectangularSpace) this.getAutomaton().getCellularSpace();
+		if (this.getAutomaton().getUpdateMode() != 
+			CellularAutomaton.SYNCHRONOUS) 
+		{
+			return; // cells will be processed by update()
+		}
+
+		RectangularSpace sp = 
+			(RectangularSpace) this.getAutomaton().getCellularSpace();
 
 		int i = RandomValueGenerator.number(0, sp.numberOfRows() - 1);
 		int j = RandomValueGenerator.number(0, sp.numberOfColumns() - 1);
 		
-        Cell c = sp.getCell(i, j);
-        String val = (String) c.getValue(ti);
-        
-    	List<Cell> neighs = c.getNeighbors(NeighborhoodIndex.NEIGH_8());
-    	boolean neiR = false, neiF = false, neiG = false;
-    	for (Cell n : neighs) {
-    		if (((String) n.getValue(ti)).equalsIgnoreCase("R")) neiR = true;
-    		if (((String) n.getValue(ti)).equalsIgnoreCase("F")) neiF = true;
-    		if (((String) n.getValue(ti)).equalsIgnoreCase("G")) neiG = true;
-    	}
-    	
-        String newVal = val;
-        if (val.equalsIgnoreCase(".")) {
-        	if (neiR) newVal = "R";
-        }
-        if (val.equalsIgnoreCase("R")) {
-        	if (neiF) newVal = "F";
-        	else {
-            	if (neiG) newVal = "R";
-            	else newVal = ".";            		
-        	}
-        }
-        if (val.equalsIgnoreCase("F")) {
-            newVal = ".";
-        	if (neiR) newVal = "F";
-        }
+		Cell c = sp.getCell(i, j);
+		c.setValue(ti + 1, this.next(c, ti));
+	}
+
+	@Override
+	public void update(Cell c, int ti, FastRandom rand) throws Exception {
+		c.setValue(ti, this.next(c, ti));
+	}
 
-		c.setValue(ti + 1, newVal);
- 	}
+	private String next(Cell c, int ti) throws Exception
+	{
+		String val = (String) c.getValue(ti);
+		
+		List<Cell> neighs = c.getNeighbors(NEIGH);
+		boolean neiR = false, neiF = false, neiG = false;
+		for (Cell n : neighs) {
+			if (((String) n.getValue(ti)).equalsIgnoreCase("R")) neiR = true;
+			if (((String) n.getValue(ti)).equalsIgnoreCase("F")) neiF = true;
+			if (((String) n.getValue(ti)).equalsIgnoreCase(".")) neiG = true;
+		}
+		
+		String newVal = val;
+		if (val.equalsIgnoreCase(".")) {
+			if (neiR) newVal = "R";
+		}
+		if (val.equalsIgnoreCase("R")) {
+			if (neiF) newVal = "F";
+			else {
+				if (neiG) newVal = "R";
+				else newVal = ".";
+			}
+		}
+		if (val.equalsIgnoreCase("F")) {
+			newVal = ".";
+			if (neiR) newVal = "F";
+		}
+		return newVal;
+	}
+
+	public void update(StateGrid grid, int ti, int i, int j, FastRandom rand)
+		throws Exception
+	{
+		DiscreteStateGrid g = (DiscreteStateGrid) grid;
+		byte[] buf = g.writeBuffer(ti);
+		NeighborhoodTable nt;
+		if (this.updateGrid == grid) {
+			nt = this.updateTable;
+		} else {
+			nt = this.getNeighborhoodTable(g, NEIGH);
+			this.grass = g.code(".");
+			this.rabbit = g.code("R");
+			this.fox = g.code("F");
+			this.updateTable = nt;
+			this.updateGrid = grid;
+		}
+
+		int k = i * g.numberOfColumns() + j;
+		boolean neiR = false, neiF = false, neiG = false;
+		if (nt.isInner(i, j)) {
+			for (int o : nt.getOffsets()) {
+				byte s = buf[k + o];
+				neiR |= s == this.rabbit;
+				neiF |= s == this.fox;
+				neiG |= s == this.grass;
+			}
+		} else {
+			// Allocation-free, since edge cells are updated one by one:
+			for (int l = 0; l < nt.size(); l++) {
+				int idx = nt.neighbor(i, j, l);
+				if (idx < 0) 
+					continue;
+				byte s = buf[idx];
+				neiR |= s == this.rabbit;
+				neiF |= s == this.fox;
+				neiG |= s == this.grass;
+			}
+		}
+
+		byte val = buf[k];
+		if (val == this.grass) {
+			if (neiR) buf[k] = this.rabbit;
+		} else if (val == this.rabbit) {
+			buf[k] = neiF ? this.fox : (neiG ? this.rabbit : this.grass);
+		} else if (val == this.fox) {
+			buf[k] = neiR ? this.fox : this.grass;
+		}
+	}
+
+	@Override
+	public NeighborhoodIndex getUpdateNeighborhood() {
+		return NEIGH;
+	}
 }
@@ -0,0 +1,436 @@
+package de.hsbo.geo.simsamples.cellularautomata.instances;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+import de.hsbo.geo.simsamples.cellularautomata.AsynchronousTransitionFunction;
+import de.hsbo.geo.simsamples.cellularautomata.Cell;
+import de.hsbo.geo.simsamples.cellularautomata.DiscreteStateGrid;
+import de.hsbo.geo.simsamples.cellularautomata.DiscreteStateSet;
+import de.hsbo.geo.simsamples.cellularautomata.NeighborhoodIndex;
+import de.hsbo.geo.simsamples.cellularautomata.NeighborhoodTable;
+import de.hsbo.geo.simsamples.cellularautomata.PrimitiveTransitionFunction;
+import de.hsbo.geo.simsamples.cellularautomata.StateGrid;
+import de.hsbo.geo.simsamples.cellularautomata.TransitionFunction;
+import de.hsbo.geo.simsamples.common.FastRandom;
+
+/**
+ * Generic transition function for outer-totalistic rules. Each cell state is
+ * given a weight; for each cell the weights of its neighbors' states are
+ * summed up, and the cell's next state is determined by its current state
+ * and this sum. The rule will be compiled into a lookup table, so that no
+ * branching is necessary during the simulation run. Inside the rule, the
+ * states are referred to by their position inside the (sorted) state set,
+ * i.e. by the codes used by {@link DiscreteStateGrid}s.
+ * <p>
+ * Rules can be defined by rule strings, see {@link
+ * TotalisticRule#parse(String, Object...)}. The following notations are
+ * supported:
+ * <ul>
+ * <li>Life-like rules in B/S notation, e.g. <tt>"B3/S23"</tt> for the Game
+ * of Life,</li>
+ * <li>Generations rules in B/S/C notation, e.g. <tt>"B2/S/C3"</tt> for
+ * "Brian's Brain", where the third part gives the number of states,</li>
+ * <li>weighted totalistic rules, e.g. <tt>"W0,1,2;0:3-4>1;1:2,3>1;1:*>2"</tt>.
+ * Here the first part gives the (non-negative) weights of the states 0,
+ * 1, 2, and each following part a transition <tt>state:sums>next 
+ * state</tt>, where sums can be given as comma-separated list of numbers 
+ * or ranges, or as
+ * <tt>*</tt> for all sums. If more than one transition matches, the first
+ * one will be applied.</li>
+ * </ul>
+ * For all (state, sum) combinations not covered by the rule, the next state
+ * will be state 0. By default, the Moore neighborhood will be used. The 
+ * rule can also be applied in the asynchronous update modes, see {@link 
+ * de.hsbo.geo.simsamples.cellularautomata.CellularAutomaton#setUpdateMode(
+ * int)}.
+ *
+ * @author Benno Schmidt
+ */
+public class TotalisticRule extends TransitionFunction
+	implements PrimitiveTransitionFunction, AsynchronousTransitionFunction
+{
+	private String rule;
+	private NeighborhoodIndex neigh;
+	private int[] weights; // weights for state codes
+	private int maxSum;
+	private byte[] table; // next state for code * (maxSum + 1) + sum
+	private Object[] stateObjs;
+	private Map<Object, Integer> codes = new HashMap<Object, Integer>();
+	private NeighborhoodTable updateTable = null; // for in-place updates
+	private volatile StateGrid updateGrid = null;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param rule Rule string (used for output purposes only)
+	 * @param states Set of cell states
+	 * @param neigh Neighborhood definition
+	 * @param weights Weights for the state codes (non-negative)
+	 * @param next Next state codes for all states <tt>s</tt> and neighbor
+	 * sums <tt>n</tt> given by <tt>next[s][n]</tt>; missing entries refer
+	 * to state 0
+	 * @throws IllegalArgumentException if the weights do not match the 
+	 * state set or if a weight is negative
+	 */
+	public TotalisticRule(
+		String rule,
+		DiscreteStateSet states,
+		NeighborhoodIndex neigh,
+		int[] weights,
+		int[][] next)
+	{
+		this.rule = rule;
+		this.states = states;
+		this.neigh = neigh;
+		this.weights = weights;
+		this.stateObjs = states.getAsSet().toArray();
+		if (this.stateObjs.length > 256 ||
+			weights.length != this.stateObjs.length)
+		{
+			throw new IllegalArgumentException(
+				"Weights do not match the set of cell states!");
+		}
+		for (int w : weights) {
+			if (w < 0) {
+				throw new IllegalArgumentException(
+					"Negative weight " + w + " in rule \"" + rule + "\"!");
+			}
+		}
+		for (int k = 0; k < this.stateObjs.length; k++) {
+			this.codes.put(this.stateObjs[k], k);
+		}
+
+		// Compile lookup table:
+		int maxWeight = 0;
+		for (int w : weights) {
+			maxWeight = Math.max(maxWeight, w);
+		}
+		int numberNeighs = neigh.getNumberNeighbors();
+		this.maxSum = maxWeight * numberNeighs;
+		this.table = new byte[this.stateObjs.length * (this.maxSum + 1)];
+		for (int s = 0; s < this.stateObjs.length && s < next.length; s++) {
+			for (int n = 0; n <= this.maxSum && n < next[s].length; n++) {
+				this.table[s * (this.maxSum + 1) + n] = (byte) next[s][n];
+			}
+		}
+	}
+
+	/**
+	 * creates a transition function from a rule string. If no state objects
+	 * are given, the {@link Integer} objects 0, 1, ... will be used. Note
+	 * that state objects will be sorted, e.g. for the Game of Life
+	 * <tt>parse("B3/S23", ".", "X")</tt> will define "." as state 0 (dead)
+	 * and "X" as state 1 (alive).
+	 *
+	 * @param rule Rule string
+	 * @param states State objects (optional)
+	 * @return Transition function
+	 * @throws Exception if the rule string could not be parsed
+	 */
+	public static TotalisticRule parse(String rule, Object... states)
+		throws Exception
+	{
+		return parse(rule, NeighborhoodIndex.MOORE(), states);
+	}
+
+	/**
+	 * creates a transition function from a rule string.
+	 *
+	 * @see TotalisticRule#parse(String, Object...)
+	 *
+	 * @param rule Rule string
+	 * @param neigh Neighborhood definition
+	 * @param states State objects (optional)
+	 * @return Transition function
+	 * @throws Exception if the rule string could not be parsed
+	 */
+	public static TotalisticRule parse(
+		String rule, NeighborhoodIndex neigh, Object... states)
+		throws Exception
+	{
+		String r = rule.trim().toUpperCase();
+		int numberNeighs = neigh.getNumberNeighbors();
+
+		if (r.startsWith("W"))
+		{
+			// Weighted totalistic rule:
+			String[] parts = r.substring(1).split(";");
+			String[] ws = parts[0].split(",");
+			int[] weights = new int[ws.length];
+			int maxWeight = 0;
+			for (int k = 0; k < ws.length; k++) {
+				weights[k] = Integer.parseInt(ws[k].trim());
+				if (weights[k] < 0) {
+					throw new Exception(
+						"Negative weight " + weights[k] + " in rule \"" + 
+						rule + "\"!");
+				}
+				maxWeight = Math.max(maxWeight, weights[k]);
+			}
+			int maxSum = maxWeight * numberNeighs;
+			int[][] next = new int[weights.length][maxSum + 1];
+			boolean[][] set = new boolean[weights.length][maxSum + 1];
+			for (int p = 1; p < parts.length; p++) {
+				String part = parts[p].trim();
+				int colon = part.indexOf(':'), arrow = part.indexOf('>');
+				if (colon < 0 || arrow < colon) {
+					throw new Exception(
+						"Invalid transition \"" + part + "\" in rule!");
+				}
+				int s = Integer.parseInt(part.substring(0, colon).trim());
+				int t = Integer.parseInt(part.substring(arrow + 1).trim());
+				if (s >= weights.length || t >= weights.length) {
+					throw new Exception(
+						"Invalid state in transition \"" + part + "\"!");
+				}
+				boolean[] sums = parseSums(
+					part.substring(colon + 1, arrow), maxSum);
+				for (int n = 0; n <= maxSum; n++) {
+					if (sums[n] && !set[s][n]) {
+						next[s][n] = t;
+						set[s][n] = true;
+					}
+				}
+			}
+			return new TotalisticRule(
+				rule, stateSet(weights.length, states), neigh, weights, next);
+		}
+
+		// B/S or B/S/C notation:
+		String b = null, s = null;
+		int c = 2;
+		StringTokenizer st = new StringTokenizer(r, "/");
+		while (st.hasMoreTokens()) {
+			String tok = st.nextToken().trim();
+			if (tok.startsWith("B"))
+				b = tok.substring(1);
+			else if (tok.startsWith("S"))
+				s = tok.substring(1);
+			else if (tok.startsWith("C") || tok.startsWith("G"))
+				c = Integer.parseInt(tok.substring(1));
+			else
+				c = Integer.parseInt(tok);
+		}
+		if (b == null || s == null || c < 2) {
+			throw new Exception("Invalid rule string \"" + rule + "\"!");
+		}
+		int[] weights = new int[c];
+		weights[1] = 1; // only state 1 ("alive") counts
+		int[][] next = new int[c][numberNeighs + 1];
+		for (int n = 0; n <= numberNeighs; n++) {
+			next[0][n] = contains(b, n) ? 1 : 0;
+			next[1][n] = contains(s, n) ? 1 : (c > 2 ? 2 : 0);
+			for (int k = 2; k < c; k++) {
+				next[k][n] = k + 1 < c ? k + 1 : 0; // dying cells
+			}
+		}
+		return new TotalisticRule(
+			rule, stateSet(c, states), neigh, weights, next);
+	}
+
+	private static boolean contains(String digits, int n) {
+		return n < 10 && digits.indexOf((char) ('0' + n)) >= 0;
+	}
+
+	private static boolean[] parseSums(String spec, int maxSum)
+		throws Exception
+	{
+		boolean[] res = new boolean[maxSum + 1];
+		for (String tok : spec.split(",")) {
+			tok = tok.trim();
+			if (tok.equals("*")) {
+				for (int n = 0; n <= maxSum; n++) res[n] = true;
+				continue;
+			}
+			int dash = tok.indexOf('-');
+			int from = Integer.parseInt(
+				dash < 0 ? tok : tok.substring(0, dash).trim());
+			int to = dash < 0 ? from :
+				Integer.parseInt(tok.substring(dash + 1).trim());
+			if (from < 0 || to > maxSum || from > to) {
+				throw new Exception("Invalid neighbor sum \"" + tok + "\"!");
+			}
+			for (int n = from; n <= to; n++) res[n] = true;
+		}
+		return res;
+	}
+
+	private static DiscreteStateSet stateSet(int n, Object... states)
+		throws Exception
+	{
+		if (states == null || states.length == 0) {
+			return new DiscreteStateSet(0, n - 1);
+		}
+		DiscreteStateSet res = new DiscreteStateSet(states);
+		if (res.getAsSet().size() != n) {
+			throw new Exception(
+				"The rule requires " + n + " distinct state objects!");
+		}
+		return res;
+	}
+
+	@Override
+	public void defineStates() {
+		// States will be set by the constructor.
+	}
+
+	/**
+	 * gets the number of cell states.
+	 * 
+	 * @return Number of states
+	 */
+	public int numberOfStates() {
+		return this.stateObjs.length;
+	}
+
+	/**
+	 * gets the state object for a given state code.
+	 * 
+	 * @param code State code
+	 * @return State object
+	 */
+	public Object state(int code) {
+		return this.stateObjs[code];
+	}
+
+	/**
+	 * gets the weight of a given state code.
+	 * 
+	 * @param code State code
+	 * @return Weight
+	 */
+	public int weight(int code) {
+		return this.weights[code];
+	}
+
+	/**
+	 * gets the neighborhood definition the rule refers to.
+	 * 
+	 * @return Neighborhood definition
+	 */
+	public NeighborhoodIndex getNeighborhood() {
+		return this.neigh;
+	}
+
+	/**
+	 * gets the next state code for a given state code and neighbor sum.
+	 *
+	 * @param code State code
+	 * @param sum Weighted sum of the neighbors' states
+	 * @return Next state code
+	 */
+	public int next(int code, int sum) {
+		return this.table[code * (this.maxSum + 1) + sum] & 0xff;
+	}
+
+	@Override
+	public void step(Cell c, int ti) throws Exception
+	{
+		int sum = 0;
+		List<Cell> neighs = c.getNeighbors(this.neigh);
+		if (neighs != null) {
+			for (Cell n : neighs) {
+				sum += this.weights[this.codes.get(n.getValue(ti))];
+			}
+		}
+		int code = this.codes.get(c.getValue(ti));
+		c.setValue(ti + 1, this.stateObjs[this.next(code, sum)]);
+	}
+
+	@Override
+	public void step(StateGrid grid, int ti, int iMin, int iMax)
+		throws Exception
+	{
+		DiscreteStateGrid g = (DiscreteStateGrid) grid;
+		byte[] src = g.readBuffer(ti), dst = g.writeBuffer(ti + 1);
+		int ny = g.numberOfColumns(), stride = this.maxSum + 1;
+		int[] w = this.weights;
+		byte[] tab = this.table;
+		NeighborhoodTable nt = this.getNeighborhoodTable(g, this.neigh);
+		int[] neighs = new int[nt.size()];
+
+		for (int i = iMin; i < iMax; i++) {
+			for (int j = 0; j < ny; j++) {
+				int n = nt.neighbors(i, j, neighs);
+				int sum = 0;
+				for (int l = 0; l < n; l++) {
+					sum += w[src[neighs[l]] & 0xff];
+				}
+				int k = i * ny + j;
+				dst[k] = tab[(src[k] & 0xff) * stride + sum];
+			}
+		}
+	}
+
+	@Override
+	public void update(Cell c, int ti, FastRandom rand) throws Exception
+	{
+		int sum = 0;
+		List<Cell> neighs = c.getNeighbors(this.neigh);
+		if (neighs != null) {
+			for (Cell n : neighs) {
+				sum += this.weights[this.codes.get(n.getValue(ti))];
+			}
+		}
+		int code = this.codes.get(c.getValue(ti));
+		c.setValue(ti, this.stateObjs[this.next(code, sum)]);
+	}
+
+	public void update(StateGrid grid, int ti, int i, int j, FastRandom rand)
+		throws Exception
+	{
+		DiscreteStateGrid g = (DiscreteStateGrid) grid;
+		byte[] buf = g.writeBuffer(ti);
+		int[] w = this.weights;
+		NeighborhoodTable nt;
+		if (this.updateGrid == grid) {
+			nt = this.updateTable;
+		} else {
+			nt = this.getNeighborhoodTable(g, this.neigh);
+			this.updateTable = nt;
+			this.updateGrid = grid;
+		}
+
+		int k = i * g.numberOfColumns() + j, sum = 0;
+		if (nt.isInner(i, j)) {
+			for (int o : nt.getOffsets()) {
+				sum += w[buf[k + o] & 0xff];
+			}
+		} else {
+			// Allocation-free, since edge cells are updated one by one:
+			for (int l = 0; l < nt.size(); l++) {
+				int idx = nt.neighbor(i, j, l);
+				if (idx >= 0) 
+					sum += w[buf[idx] & 0xff];
+			}
+		}
+		buf[k] = this.table[(buf[k] & 0xff) * (this.maxSum + 1) + sum];
+	}
+
+	@Override
+	public boolean isParallelizable() {
+		return true;
+	}
+
+	@Override
+	public NeighborhoodIndex getDependencyNeighborhood() {
+		return this.neigh;
+	}
+
+	public String toString()
+	{
+		StringBuffer s = new StringBuffer();
+
+		s.append("(");
+		s.append(this.getClass().getSimpleName());
+		s.append(": ");
+		s.append(this.rule);
+		s.append(")");
+
+		return s.toString();
+	}
+}
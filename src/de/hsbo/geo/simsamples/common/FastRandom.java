@@ -0,0 +1,138 @@
+package de.hsbo.geo.simsamples.common;
+
+/**
+ * Fast splittable pseudo random number generator based on the SplitMix64
+ * algorithm. In contrast to <tt>java.util.Random</tt>, the generator is not
+ * synchronized and needs only a few arithmetic operations per random 
+ * number, which makes it suitable for simulations drawing millions of 
+ * random numbers per second. Note that a generator instance must not be 
+ * used by multiple threads concurrently; instead, independent generators 
+ * can be derived by {@link FastRandom#split()}, e.g. one for each thread or
+ * each row of a cellular grid.
+ * <p>
+ * To obtain reproducible results, generators can be seeded by {@link 
+ * RandomValueGenerator#nextSeed()}.
+ * 
+ * @author Benno Schmidt
+ */
+public class FastRandom 
+{
+	static private final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	
+	private long seed, gamma;
+	
+
+	/**
+	 * Constructor
+	 * 
+	 * @param seed Seed value
+	 */
+	public FastRandom(long seed) {
+		this(seed, GOLDEN_GAMMA);
+	}
+
+	private FastRandom(long seed, long gamma) {
+		this.seed = seed;
+		this.gamma = gamma;
+	}
+
+	/**
+	 * re-initializes the generator using the given seed.
+	 * 
+	 * @param seed Seed value
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * creates a new generator that produces a sequence of random numbers 
+	 * independent from this generator's sequence. The new generator's seed
+	 * will be taken from this generator, thus splitting is reproducible.
+	 * 
+	 * @return Generator
+	 */
+	public FastRandom split() {
+		return new FastRandom(this.nextLong(), mixGamma(this.nextLong()));
+	}
+
+	/**
+	 * returns a random 64 bit value.
+	 * 
+	 * @return Random number
+	 */
+	public long nextLong() {
+		return mix64(this.seed += this.gamma);
+	}
+
+	/**
+	 * returns a random integer number in the range from <tt>0..n-1</tt>.
+	 * 
+	 * @param n Number of values (must be positive)
+	 * @return Random number 
+	 */
+	public int nextInt(int n) {
+		return (int) (((this.nextLong() >>> 32) * n) >>> 32);
+	}
+
+	/**
+	 * returns a random double number greater or equal than 0 and less 
+	 * than 1.
+	 * 
+	 * @return Random number 
+	 */
+	public double nextDouble() {
+		return (this.nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * returns a random boolean value.
+	 * 
+	 * @return Random value 
+	 */
+	public boolean nextBoolean() {
+		return this.nextLong() < 0;
+	}
+
+	/**
+	 * shuffles the given array randomly (Fisher-Yates shuffle).
+	 * 
+	 * @param a Array of integers
+	 */
+	public void shuffle(int[] a) 
+	{
+		for (int k = a.length - 1; k > 0; k--) {
+			int l = this.nextInt(k + 1), tmp = a[k];
+			a[k] = a[l];
+			a[l] = tmp;
+		}
+	}
+
+	static private long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	static private long mixGamma(long z) 
+	{
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L; // gamma must be odd
+		if (Long.bitCount(z ^ (z >>> 1)) < 24) {
+			z ^= 0xaaaaaaaaaaaaaaaaL; // avoid weak gammas
+		}
+		return z;
+	}
+
+	public String toString() 
+	{
+		StringBuffer s = new StringBuffer();
+	
+		s.append("(");
+		s.append(this.getClass().getSimpleName());
+		s.append(")");
+		
+		return s.toString();
+	}
+}
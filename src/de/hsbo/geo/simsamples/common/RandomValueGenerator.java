@@ -1,5 +1,9 @@
 package de.hsbo.geo.simsamples.common;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Random;
 import java.util.Set;
 
@@ -9,7 +13,10 @@ import de.hsbo.geo.simsamples.cellularautomata.RectangularCellLocation;
 import de.hsbo.geo.simsamples.cellularautomata.RectangularSpace;
 
 /**
- * Random value generation methods.
+ * Random value generation methods. All methods use a common pseudo random 
+ * number generator, which can be seeded to obtain reproducible results. 
+ * The generator's state can be saved and restored, e.g. for simulation 
+ * checkpoints.
  * 
  * @author Benno Schmidt
  */
@@ -18,6 +25,57 @@ public class RandomValueGenerator
 	static private Random rand = new Random();
 	
 	
+	/**
+	 * re-initializes the pseudo random number generator using the given 
+	 * seed.
+	 * 
+	 * @param seed Seed value
+	 */
+	static public void setSeed(long seed) {
+		rand.setSeed(seed);
+	}
+
+	/**
+	 * gets the current state of the pseudo random number generator.
+	 * 
+	 * @return Serialized generator state
+	 * @throws Exception
+	 */
+	static public byte[] getState() throws Exception
+	{
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(b);
+		out.writeObject(rand);
+		out.close();
+		return b.toByteArray();
+	}
+
+	/**
+	 * restores a state of the pseudo random number generator that has been
+	 * queried by {@link RandomValueGenerator#getState()} before.
+	 * 
+	 * @param state Serialized generator state
+	 * @throws Exception
+	 */
+	static public void setState(byte[] state) throws Exception
+	{
+		ObjectInputStream in = 
+			new ObjectInputStream(new ByteArrayInputStream(state));
+		rand = (Random) in.readObject();
+		in.close();
+	}
+	
+	/**
+	 * returns a random 64 bit value that can be used to seed other 
+	 * generators, e.g. {@link FastRandom}s. Thus, these generators will 
+	 * produce reproducible results if this generator has been seeded.
+	 * 
+	 * @return Seed value
+	 */
+	static public long nextSeed() {
+		return rand.nextLong();
+	}
+
 	/**
 	 * returns a random integer number in the range from <tt>min..max</tt>. The
 	 * result will be an integer value greater or equal than <tt>min</tt> and 
@@ -27,7 +85,7 @@ public class RandomValueGenerator
 	 * @return Random number 
 	 */
 	static public int number(int min, int max) {
-		return (int)((max - min + 1) * Math.random() + min);
+		return (int)((max - min + 1) * rand.nextDouble() + min);
 	}
 
 	/**
@@ -38,7 +96,7 @@ public class RandomValueGenerator
 	 * @return Random number 
 	 */
 	static public double number(double min, double max) {
-		return (max - min) * Math.random() + min;
+		return (max - min) * rand.nextDouble() + min;
 	}
 
 	/**
@@ -104,8 +162,8 @@ public class RandomValueGenerator
 	 */
 	static public RectangularCellLocation randomLocation(RectangularSpace sp) {
 		return new RectangularCellLocation(
-			(int)(Math.random() * (double) sp.numberOfRows()),
-			(int)(Math.random() * (double) sp.numberOfRows()));
+			(int)(rand.nextDouble() * (double) sp.numberOfRows()),
+			(int)(rand.nextDouble() * (double) sp.numberOfRows()));
 	}
 
 	/**
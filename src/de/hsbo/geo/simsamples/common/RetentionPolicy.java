@@ -0,0 +1,117 @@
+package de.hsbo.geo.simsamples.common;
+
+/**
+ * Retention policy for {@link TimeSeries}. A retention policy defines which
+ * entries of a series will be kept in memory. Bounded policies keep a window
+ * of the latest <tt>window</tt> entries (ring buffer) and, optionally, every
+ * <tt>interval</tt>-th entry as a snapshot. Thus, the memory consumption of
+ * a series does not grow with the number of time steps (or grows by the
+ * factor <tt>1/interval</tt> only). Queries for entries that have been
+ * discarded will lead to an exception.
+ *
+ * @author Benno Schmidt
+ */
+public class RetentionPolicy
+{
+	private int window = 0; // 0 = unbounded
+	private int interval = 0; // 0 = no snapshots
+
+
+	/**
+	 * Constructor. Since transitions from <tt>ti</tt> to <tt>ti + 1</tt> 
+	 * require two entries, bounded windows will keep at least two entries.
+	 *
+	 * @param window Number of latest entries to be kept (0 = all entries)
+	 * @param interval Snapshot interval (0 = no snapshots)
+	 */
+	public RetentionPolicy(int window, int interval) {
+		this.window = window <= 0 ? 0 : Math.max(window, 2);
+		this.interval = interval < 0 ? 0 : interval;
+	}
+
+	/**
+	 * defines a policy that keeps all entries. This is the default behavior.
+	 *
+	 * @return Retention policy object
+	 */
+	public static RetentionPolicy ALL() {
+		return new RetentionPolicy(0, 0);
+	}
+
+	/**
+	 * defines a policy that keeps the latest <tt>k</tt> entries only. At 
+	 * least two entries will be kept, see {@link RetentionPolicy#NONE()}.
+	 *
+	 * @param k Number of entries, e.g. 2
+	 * @return Retention policy object
+	 */
+	public static RetentionPolicy LAST(int k) {
+		return new RetentionPolicy(Math.max(k, 2), 0);
+	}
+
+	/**
+	 * defines a policy that keeps every <tt>n</tt>-th entry (i.e. the entries
+	 * for <tt>ti = 0, n, 2n, ...</tt>) and additionally the latest two
+	 * entries.
+	 *
+	 * @param n Snapshot interval
+	 * @return Retention policy object
+	 */
+	public static RetentionPolicy EVERY(int n) {
+		return new RetentionPolicy(2, Math.max(n, 1));
+	}
+
+	/**
+	 * defines a policy that keeps only the latest two entries, which is the
+	 * minimum required to process transitions from <tt>ti</tt> to <tt>ti +
+	 * 1</tt>. This policy is useful if results are streamed out during the
+	 * simulation run.
+	 *
+	 * @return Retention policy object
+	 */
+	public static RetentionPolicy NONE() {
+		return RetentionPolicy.LAST(2);
+	}
+
+	/**
+	 * gets the number of latest entries that will be kept.
+	 *
+	 * @return Number of entries (0 for unbounded series)
+	 */
+	public int getWindow() {
+		return this.window;
+	}
+
+	/**
+	 * gets the snapshot interval.
+	 *
+	 * @return Interval (0 if no snapshots will be kept)
+	 */
+	public int getInterval() {
+		return this.interval;
+	}
+
+	/**
+	 * checks if the policy keeps all entries.
+	 *
+	 * @return <i>true</i> for unbounded series
+	 */
+	public boolean isUnbounded() {
+		return this.window == 0;
+	}
+
+	public String toString()
+	{
+		StringBuffer s = new StringBuffer();
+
+		s.append("(");
+		s.append(this.getClass().getSimpleName());
+		s.append(": ");
+		s.append(this.window);
+		s.append(" ");
+		s.append(this.interval);
+		s.append(")");
+
+		return s.toString();
+	}
+}
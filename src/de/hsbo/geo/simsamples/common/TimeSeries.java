@@ -3,7 +3,9 @@ package de.hsbo.geo.simsamples.common;
 import java.util.ArrayList;
 
 /**
- * Series of object values over time.
+ * Series of object values over time. By default, all values will be kept in
+ * memory. Alternatively, a bounded {@link RetentionPolicy} can be assigned; 
+ * then only the latest values (and optionally some snapshots) will be kept. 
  * 
  * @author Benno Schmidt
  */
@@ -11,6 +13,11 @@ public class TimeSeries
 {
 	private ArrayList<Object> entries = new ArrayList<Object>(); 
 	
+	private RetentionPolicy policy = null; // null = keep all values
+	private Object[] ring; // latest values (bounded series only)
+	private ArrayList<Object> snapshots; // snapshots (bounded series only)
+	private int length = 0; // number of time stamps (bounded series only)
+	
 	private Double min, max;
 	private boolean updateMinMaxNecessary = true;
 	
@@ -21,17 +28,108 @@ public class TimeSeries
 	 * @param val Value
 	 */
 	public void add(Object val) {
-		entries.add(val);
+		if (this.policy == null) {
+			entries.add(val);
+		} else {
+			this.store(this.length, val);
+			this.length++;
+		}
 		updateMinMaxNecessary = true;
 	}
 	
 	/**
-	 * gets the number of values stores in the series.
+	 * gets the number of values stores in the series. For bounded series, 
+	 * this is the number of time stamps the series refers to, i.e. the last 
+	 * time stamp number + 1, even if some of the values have been discarded.
 	 * 
 	 * @return Number >= 0
 	 */
 	public int size() {
-		return entries.size();
+		return this.numberOfEntries();
+	}
+
+	// Note: Subclasses may override size(), so this method will be used 
+	// internally.
+	private int numberOfEntries() {
+		if (this.policy == null) {
+			return entries.size();
+		}
+		return this.length;
+	}
+
+	/**
+	 * gets the retention policy of the series.
+	 * 
+	 * @return Retention policy
+	 */
+	public RetentionPolicy getRetentionPolicy() {
+		if (this.policy == null) {
+			return RetentionPolicy.ALL();
+		}
+		return this.policy;
+	}
+
+	/**
+	 * assigns a retention policy to the series. Values that are already 
+	 * stored in the series will be kept, if the given policy allows it.
+	 * 
+	 * @param policy Retention policy
+	 * @throws Exception
+	 */
+	public void setRetentionPolicy(RetentionPolicy policy) throws Exception 
+	{
+		int n = this.size();
+		Object[] vals = new Object[n];
+		for (int ti = 0; ti < n; ti++) {
+			vals[ti] = this.isAvailable(ti) 
+				? this.getValue(ti) : NullValue.getInstance();
+		}
+
+		this.entries = new ArrayList<Object>();
+		this.length = 0;
+		if (policy == null || policy.isUnbounded()) {
+			this.policy = null;
+			this.ring = null;
+			this.snapshots = null;
+		} else {
+			this.policy = policy;
+			this.ring = new Object[policy.getWindow()];
+			this.snapshots = new ArrayList<Object>();
+		}
+		for (Object val : vals) {
+			this.add(val);
+		}
+	}
+
+	/**
+	 * checks if the <tt>ti</tt>-th entry of the series is held in memory.
+	 * For bounded series, older entries might have been discarded.
+	 * 
+	 * @param ti Time stamp number
+	 * @return <i>true</i> if the value can be queried
+	 */
+	public boolean isAvailable(int ti) 
+	{
+		if (ti < 0 || ti >= this.numberOfEntries()) 
+			return false;
+		if (this.policy == null) 
+			return true;
+		if (ti >= this.length - this.policy.getWindow()) 
+			return true;
+		int n = this.policy.getInterval();
+		return n > 0 && ti % n == 0;
+	}
+
+	private void store(int ti, Object val) 
+	{
+		this.ring[ti % this.ring.length] = val;
+		int n = this.policy.getInterval();
+		if (n > 0 && ti % n == 0) {
+			if (ti / n < this.snapshots.size()) 
+				this.snapshots.set(ti / n, val);
+			else
+				this.snapshots.add(val);
+		}
 	}
 	
 	/**
@@ -49,14 +147,28 @@ public class TimeSeries
 					"Invalid time stamp access: " + 
 					"Index " + ti + " out of bounds 0.." +  (this.size() - 1));
 		}
-		int last = this.size() - 1;
+		int last = this.numberOfEntries() - 1;
 		if (last < ti) {
 			// Fill up entries:
 			for (int i = last + 1; i <= ti; i++) {
 				this.add(NullValue.getInstance());
 			}
 		}
-		entries.set(ti,  val);
+		if (this.policy == null) {
+			entries.set(ti,  val);
+		} 
+		else {
+			if (!this.isAvailable(ti)) {
+				throw new Exception(
+					"Invalid time stamp access: " + 
+					"Index " + ti + " has already been discarded");
+			}
+			if (ti >= this.length - this.policy.getWindow()) {
+				this.store(ti, val);
+			} else {
+				this.snapshots.set(ti / this.policy.getInterval(), val);
+			}
+		}
 		updateMinMaxNecessary = true;
 	}
 	
@@ -68,12 +180,24 @@ public class TimeSeries
 	 * @return Value 
 	 */
 	public Object getValue(int ti) throws Exception {
-		if (ti < 0 || ti >= this.size()) {
+		if (ti < 0 || ti >= this.numberOfEntries()) {
+			throw new Exception(
+				"Invalid time stamp query: " + 
+				"Index " + ti + " out of bounds 0.." +  
+				(this.numberOfEntries() - 1));
+		}
+		if (this.policy == null) {
+			return entries.get(ti);
+		}
+		if (ti >= this.length - this.policy.getWindow()) {
+			return this.ring[ti % this.ring.length];
+		}
+		if (!this.isAvailable(ti)) {
 			throw new Exception(
 				"Invalid time stamp query: " + 
-				"Index " + ti + " out of bounds 0.." +  (this.size() - 1));
+				"Index " + ti + " has already been discarded");
 		}
-		return entries.get(ti);
+		return this.snapshots.get(ti / this.policy.getInterval());
 	}
 	
 	/**
@@ -106,7 +230,16 @@ public class TimeSeries
 		// lazy evaluation
 		boolean set = false;
 		double min = 42., max = 42.; // dummies as init vals
-		for (Object e : entries) {
+		for (int ti = 0; ti < this.size(); ti++) {
+			if (!this.isAvailable(ti)) 
+				continue;
+			Object e;
+			try {
+				e = this.getValue(ti);
+			} 
+			catch (Exception ex) {
+				continue;
+			}
 			if (e instanceof java.lang.Number) {
 				double val = Double.parseDouble(e.toString());
 				if (!set) {
@@ -0,0 +1,320 @@
+package de.hsbo.geo.simsamples.diffequations;
+
+/**
+ * Implicit integrator used by {@link DESimulation} to perform the backward
+ * differentiation formulas (BDF) of order 1 (backward Euler) to 5. For a
+ * constant time step width <tt>h</tt>, the formula of order <tt>k</tt> gives
+ * <tt>y(n + 1) = sum(a[j] * y(n - j)) + beta * h * f(t(n + 1), y(n + 1))</tt>
+ * with <tt>j = 0 .. k - 1</tt>. Since the previous <tt>k</tt> states are
+ * required, the first time steps will be performed by the formulas of lower
+ * order. Note that the error introduced by these start-up steps is of order
+ * <tt>h^2</tt>; for stiff models, which are the main application of the BDF
+ * methods, this error decays rapidly.
+ * <p>
+ * The implicit equation will be solved by a simplified Newton iteration.
+ * The Jacobian of the rates is taken from {@link DEModel#jacobian(double,
+ * double[], double[][])} or approximated by finite differences; the
+ * Jacobian and the LU decomposition of the iteration matrix <tt>I - beta * h
+ * * J</tt> will be re-used for subsequent time steps, as long as the
+ * iteration converges. Otherwise, the Jacobian will be re-computed; if the
+ * iteration still fails, the full Newton iteration will be performed.
+ *
+ * @author Benno Schmidt
+ */
+class BDFIntegrator
+{
+	static private final int MAX_ITERATIONS = 7;
+
+	static private final double[][] A = {
+		{ 1. },
+		{ 4./3., -1./3. },
+		{ 18./11., -9./11., 2./11. },
+		{ 48./25., -36./25., 16./25., -3./25. },
+		{ 300./137., -300./137., 200./137., -75./137., 12./137. }
+	};
+	static private final double[] BETA = {
+		1., 2./3., 6./11., 12./25., 60./137.
+	};
+
+	private IntegrationMethod method;
+	private int order, n;
+
+	private double[][] hist; // hist[j] holds y(n - j)
+	private int numberOfStates = 0; // valid entries in hist
+
+	private double[][] jac, lu;
+	private int[] piv;
+	private boolean jacCurrent = false; // Jacobian computed for this step
+	private double luFactor = Double.NaN; // beta * h used for lu
+	private int numberOfJacobians = 0;
+
+	private double[] psi, f, f0, res, yd, yNew;
+
+
+	private BDFIntegrator(IntegrationMethod method, int order, int n)
+	{
+		this.method = method;
+		this.order = order;
+		this.n = n;
+		this.hist = new double[order][n];
+		this.jac = new double[n][n];
+		this.lu = new double[n][n];
+		this.piv = new int[n];
+		this.psi = new double[n];
+		this.f = new double[n];
+		this.f0 = new double[n];
+		this.res = new double[n];
+		this.yd = new double[n];
+		this.yNew = new double[n];
+	}
+
+	/**
+	 * creates an implicit integrator for a model consisting of <tt>n</tt>
+	 * levels.
+	 *
+	 * @param method Integration method
+	 * @param n Number of levels
+	 * @return Integrator or <i>null</i>, if the integration method is not an
+	 * implicit one
+	 */
+	static BDFIntegrator create(IntegrationMethod method, int n)
+	{
+		switch (method) {
+		case BACKWARD_EULER:
+			return new BDFIntegrator(method, 1, n);
+		case BDF2:
+			return new BDFIntegrator(method, 2, n);
+		case BDF3:
+			return new BDFIntegrator(method, 3, n);
+		case BDF4:
+			return new BDFIntegrator(method, 4, n);
+		case BDF5:
+			return new BDFIntegrator(method, 5, n);
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * discards the previous states, e.g. after the level values have been
+	 * modified directly. Then, the next time steps will be performed by the
+	 * formulas of lower order again.
+	 */
+	void restart() {
+		this.numberOfStates = 0;
+	}
+
+	/**
+	 * gets the number of Jacobian evaluations.
+	 *
+	 * @return Number of evaluations
+	 */
+	int numberOfJacobians() {
+		return this.numberOfJacobians;
+	}
+
+	/**
+	 * performs a time step of width <tt>h</tt> starting at the state
+	 * <tt>y</tt> at time <tt>t</tt>. Afterwards, the solution can be queried
+	 * by {@link BDFIntegrator#solution()}.
+	 *
+	 * @param m Model
+	 * @param t Time
+	 * @param h Step width
+	 * @param y Level values for the time <tt>t</tt>
+	 * @param relTol Relative tolerance for the Newton iteration
+	 * @param absTol Absolute tolerance for the Newton iteration
+	 * @throws Exception if the Newton iteration does not converge
+	 */
+	void step(DEModel m, double t, double h, double[] y,
+		double relTol, double absTol) throws Exception
+	{
+		// Shift the previous states:
+		double[] x = hist[order - 1];
+		for (int j = order - 1; j > 0; j--) {
+			hist[j] = hist[j - 1];
+		}
+		hist[0] = x;
+		System.arraycopy(y, 0, hist[0], 0, n);
+		this.numberOfStates = Math.min(this.numberOfStates + 1, order);
+
+		int k = this.numberOfStates;
+		double[] a = A[k - 1];
+		double bh = BETA[k - 1] * h;
+		for (int l = 0; l < n; l++) {
+			double sum = 0.;
+			for (int j = 0; j < k; j++) {
+				sum += a[j] * hist[j][l];
+			}
+			psi[l] = sum;
+		}
+
+		// Try the simplified Newton iteration with the recent Jacobian first,
+		// then with a Jacobian computed for y, and finally the full Newton
+		// iteration:
+		this.jacCurrent = false;
+		if (this.numberOfJacobians == 0) {
+			this.jacobian(m, t, y);
+		}
+		if (this.luFactor != bh) {
+			this.factorize(bh);
+		}
+		if (this.iterate(m, t + h, bh, y, relTol, absTol, false))
+			return;
+		if (!this.jacCurrent) {
+			this.jacobian(m, t, y);
+			this.factorize(bh);
+			if (this.iterate(m, t + h, bh, y, relTol, absTol, false))
+				return;
+		}
+		if (this.iterate(m, t + h, bh, y, relTol, absTol, true))
+			return;
+		throw new Exception(
+			"Newton iteration did not converge at time " + (t + h) + "!");
+	}
+
+	/**
+	 * performs the Newton iteration starting at <tt>y</tt>. For the full 
+	 * Newton iteration, the Jacobian will be re-computed for every iterate.
+	 */
+	private boolean iterate(DEModel m, double t1, double bh, double[] y,
+		double relTol, double absTol, boolean full) throws Exception
+	{
+		System.arraycopy(y, 0, yNew, 0, n);
+
+		int maxIterations = full ? 4 * MAX_ITERATIONS : MAX_ITERATIONS;
+		double normPrev = Double.POSITIVE_INFINITY;
+		for (int it = 0; it < maxIterations; it++) {
+			if (full) {
+				this.jacobian(m, t1, yNew);
+				this.factorize(bh);
+			}
+			m.rates(t1, yNew, f);
+			for (int l = 0; l < n; l++) {
+				res[l] = -(yNew[l] - psi[l] - bh * f[l]);
+			}
+			this.solve(res);
+
+			double sum = 0.;
+			for (int l = 0; l < n; l++) {
+				yNew[l] += res[l];
+				double sc = absTol + relTol * Math.abs(yNew[l]);
+				double q = res[l] / sc;
+				sum += q * q;
+			}
+			double norm = n > 0 ? Math.sqrt(sum / n) : 0.;
+			if (norm <= 1.)
+				return true;
+			if (Double.isNaN(norm) || (!full && norm > 2. * normPrev))
+				return false; // diverging
+			normPrev = norm;
+		}
+		return false;
+	}
+
+	/**
+	 * computes the Jacobian of the rates for the state <tt>y</tt>.
+	 */
+	private void jacobian(DEModel m, double t, double[] y) throws Exception
+	{
+		this.numberOfJacobians++;
+		this.jacCurrent = true;
+		this.luFactor = Double.NaN;
+
+		if (m.jacobian(t, y, jac))
+			return;
+
+		// Finite-difference approximation:
+		System.arraycopy(y, 0, yd, 0, n);
+		m.rates(t, y, f0);
+		for (int j = 0; j < n; j++) {
+			double d = 1.e-8 * Math.max(Math.abs(y[j]), 1.);
+			yd[j] = y[j] + d;
+			d = yd[j] - y[j]; // exactly representable increment
+			m.rates(t, yd, f);
+			for (int i = 0; i < n; i++) {
+				jac[i][j] = (f[i] - f0[i]) / d;
+			}
+			yd[j] = y[j];
+		}
+	}
+
+	/**
+	 * computes the LU decomposition of <tt>I - bh * J</tt> with partial
+	 * pivoting.
+	 */
+	private void factorize(double bh) throws Exception
+	{
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				lu[i][j] = (i == j ? 1. : 0.) - bh * jac[i][j];
+			}
+		}
+		for (int c = 0; c < n; c++) {
+			int p = c;
+			for (int i = c + 1; i < n; i++) {
+				if (Math.abs(lu[i][c]) > Math.abs(lu[p][c]))
+					p = i;
+			}
+			if (lu[p][c] == 0.) {
+				throw new Exception("Singular iteration matrix!");
+			}
+			double[] r = lu[p]; lu[p] = lu[c]; lu[c] = r;
+			piv[c] = p;
+			for (int i = c + 1; i < n; i++) {
+				double fac = lu[i][c] /= lu[c][c];
+				for (int j = c + 1; j < n; j++) {
+					lu[i][j] -= fac * lu[c][j];
+				}
+			}
+		}
+		this.luFactor = bh;
+	}
+
+	/**
+	 * solves the linear system given by the recent LU decomposition; the
+	 * right-hand side will be replaced by the solution.
+	 */
+	private void solve(double[] b)
+	{
+		for (int c = 0; c < n; c++) {
+			double x = b[piv[c]]; b[piv[c]] = b[c]; b[c] = x;
+		}
+		for (int c = 0; c < n; c++) {
+			for (int i = c + 1; i < n; i++) {
+				b[i] -= lu[i][c] * b[c];
+			}
+		}
+		for (int i = n - 1; i >= 0; i--) {
+			double sum = b[i];
+			for (int j = i + 1; j < n; j++) {
+				sum -= lu[i][j] * b[j];
+			}
+			b[i] = sum / lu[i][i];
+		}
+	}
+
+	/**
+	 * gets the solution computed by the recent time step.
+	 *
+	 * @return Level values
+	 */
+	double[] solution() {
+		return this.yNew;
+	}
+
+	public String toString()
+	{
+		StringBuffer s = new StringBuffer();
+
+		s.append("(");
+		s.append(this.getClass().getSimpleName());
+		s.append(": ");
+		s.append(this.method);
+		s.append(", order ");
+		s.append(this.order);
+		s.append(")");
+
+		return s.toString();
+	}
+}
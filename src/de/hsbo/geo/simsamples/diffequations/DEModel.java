@@ -1,13 +1,47 @@
 package de.hsbo.geo.simsamples.diffequations;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import de.hsbo.geo.simsamples.common.Parameter;
 
 /**
  * Abstract base class for all simulation models that will be implemented
  * on the basis of the <tt>de.hsbo.bogeosim.diffequations</tt> package.
+ * <p>
+ * Levels and parameters are numbered in the order of their definition. 
+ * While a simulation is running, the model is held in a compiled form: The 
+ * level values for the current time step <tt>ti</tt> and the next time step
+ * <tt>ti + 1</tt> as well as the parameter values are kept in primitive 
+ * arrays. Thus, for large models it is recommended to resolve the level and
+ * parameter names once (see {@link DEModel#levelIndex(String)} and {@link 
+ * DEModel#parameterIndex(String)}) and to access the values by the methods
+ * {@link DEModel#L(int, int)}, {@link DEModel#P(int)}, {@link 
+ * DEModel#setL(int, int, double)} and {@link DEModel#integrate(int, int, 
+ * double)}. The name-based methods remain available for convenience.
+ * <p>
+ * For the adaptive integration methods (see {@link 
+ * IntegrationMethod#DORMAND_PRINCE}), the method {@link DEModel#step(int)} 
+ * will be evaluated several times per time step for intermediate states; 
+ * here, the calls of {@link DEModel#integrate(int, int, double)} just 
+ * deliver the rates. After a time step has been accepted, the method will
+ * be called once more to apply direct level assignments for the time step 
+ * <tt>ti + 1</tt>, e.g. to limit level values. Time-dependent models should
+ * query the (intermediate) simulation time by {@link DEModel#time()} 
+ * instead of deriving it from the time step number <tt>ti</tt>. The same 
+ * holds for the implicit integration methods (see {@link 
+ * IntegrationMethod#BACKWARD_EULER}), which evaluate the rates during a 
+ * Newton iteration.
+ * <p>
+ * Alternatively, a model's dynamic behavior can be defined by the method 
+ * {@link DEModel#rhs(double, double[], double[])}, which computes the rates
+ * of all levels for a given state vector. Then, the integration methods 
+ * operate on primitive arrays only. For models defined by {@link 
+ * DEModel#step(int)}, the method {@link DEModel#rhs(double, double[], 
+ * double[])} serves as an adapter.
  *    
  * @author Benno Schmidt
  */
@@ -16,8 +50,23 @@ abstract public class DEModel
 	protected List<Level> levels = new ArrayList<Level>();
 	protected List<Parameter> params = new ArrayList<Parameter>();
 	
+	private Map<String, Integer> levelIndices = new HashMap<String, Integer>();
+	private Map<String, Integer> paramIndices = new HashMap<String, Integer>();
+
 	private DESimulation sim;
 	
+	// Compiled state (only valid while a simulation is running):
+	private boolean compiled = false;
+	private int tiCur = 0;
+	private double[] y, yNext, yTmp; // level values for ti, ti + 1, temp.
+	private double[] p; // parameter values
+	private double tCur = 0.; // simulation time
+	private double[] capture = null; // receives rates, if not null
+	private boolean assigning = false; // integrate() without effect
+	private long evaluations = 0;
+	private boolean rhsDefined = false;
+	private double[] f; // rates
+	
 	
 	protected DESimulation getSimulation() {
 		return this.sim;
@@ -37,7 +86,7 @@ abstract public class DEModel
 	 */
 	public void defineLevels(String... identifiers) {
 		for (String s : identifiers) {
-			this.levels.add(new Level(s));
+			this.defineLevel(new Level(s));
 		}
 	}
 
@@ -47,6 +96,10 @@ abstract public class DEModel
 	 * @param level Level object
 	 */
 	public void defineLevel(Level level) {
+		level.bind(this, levels.size());
+		if (!levelIndices.containsKey(level.getName())) {
+			levelIndices.put(level.getName(), levels.size());
+		}
 		levels.add(level);
 	} 
 
@@ -62,17 +115,32 @@ abstract public class DEModel
 	 */
 	public Level level(String identifier) 
 	{
-		int i = 0;
-		while (i < levels.size()) {
-			Level lev = levels.get(i);
-			if (lev.getName().equals(identifier)) {
-				return lev;
-			}
-			i++;
-		}			
-		return null;
+		int k = this.levelIndex(identifier);
+		return k < 0 ? null : levels.get(k);
 	}
 	
+	/**
+	 * gets the number of a level, which can be used to access the level's
+	 * values efficiently, e.g. by {@link DEModel#L(int, int)}.
+	 * 
+	 * @param identifier Level name
+	 * @return Level number or -1, if the level has not been declared
+	 */
+	public int levelIndex(String identifier) 
+	{
+		Integer k = levelIndices.get(identifier);
+		return k == null ? -1 : k.intValue();
+	}
+
+	/**
+	 * gets the number of levels.
+	 * 
+	 * @return Number of levels
+	 */
+	public int numberOfLevels() {
+		return levels.size();
+	}
+
 	/**
 	 * gets a level's floating-point value.
 	 * 
@@ -83,13 +151,70 @@ abstract public class DEModel
 	 */
 	public double L(int ti, String identifier) throws Exception 
 	{
-		Level l = this.level(identifier);
-		if (l != null && l.getValue(ti) instanceof Double) {
-			return ((Double) l.getValue(ti)).doubleValue();
+		int k = this.levelIndex(identifier);
+		return k < 0 ? 0. : this.L(ti, k);
+	}
+
+	/**
+	 * gets a level's floating-point value. While the simulation is 
+	 * running, the values for the current and the next time step will be 
+	 * taken from the model's state vectors.
+	 * 
+	 * @param ti Time step number
+	 * @param k Level number, see {@link DEModel#levelIndex(String)}
+	 * @return Value (will be 0. for non-{@link Double}-valued levels)
+	 * @throws Exception
+	 */
+	public double L(int ti, int k) throws Exception 
+	{
+		if (this.compiled) {
+			if (ti == this.tiCur) 
+				return this.y[k];
+			if (ti == this.tiCur + 1) 
+				return this.yNext[k];
+		}
+		ResultStore res = this.results();
+		if (res != null && res.contains(ti)) 
+			return res.get(ti, k);
+		Object val = levels.get(k).getValue(ti);
+		if (val instanceof Double) {
+			return ((Double) val).doubleValue();
 		}
 		return 0.;
 	}
 
+	/**
+	 * sets a level's floating-point value. While the simulation is running,
+	 * usually the value for the next time step <tt>ti + 1</tt> will be set 
+	 * here.
+	 * 
+	 * @param ti Time step number
+	 * @param k Level number, see {@link DEModel#levelIndex(String)}
+	 * @param val Value
+	 * @throws Exception
+	 */
+	public void setL(int ti, int k, double val) throws Exception 
+	{
+		if (this.holds(ti)) {
+			this.values(ti)[k] = val;
+			if (ti == this.tiCur) 
+				levels.get(k).store(ti, val);
+			return;
+		}
+		levels.get(k).setValue(ti, val);
+	}
+
+	/**
+	 * gets the simulation time the model is evaluated for. While the 
+	 * simulation is running, this will be the time of the current time step
+	 * or of an intermediate state processed by the integration method.
+	 * 
+	 * @return Time (given in seconds)
+	 */
+	public double time() {
+		return this.tCur;
+	}
+
 	/**
 	 * defines the constant parameters that can be used inside the simulation 
 	 * model by giving unique parameter identifiers. Note that parameter names
@@ -100,7 +225,7 @@ abstract public class DEModel
 	 */
 	public void defineParameters(String... identifiers) {
 		for (String s : identifiers) {
-			this.params.add(new Parameter(s));
+			this.defineParameter(new Parameter(s));
 		}
 	}
 
@@ -110,6 +235,9 @@ abstract public class DEModel
 	 * @param param Parameter object
 	 */
 	public void defineParameter(Parameter param) {
+		if (!paramIndices.containsKey(param.getName())) {
+			paramIndices.put(param.getName(), params.size());
+		}
 		params.add(param);
 	} 
 
@@ -121,7 +249,7 @@ abstract public class DEModel
 	 * @param val Default-value
 	 */
 	public void defineParameter(String identifier, double val) {
-		params.add(new Parameter(identifier, val));
+		this.defineParameter(new Parameter(identifier, val));
 	} 
 
 	/**
@@ -132,7 +260,7 @@ abstract public class DEModel
 	 * @param val Default-value
 	 */
 	public void defineParameter(String identifier, Object val) {
-		params.add(new Parameter(identifier, val));
+		this.defineParameter(new Parameter(identifier, val));
 	} 
 
 	/**
@@ -142,15 +270,21 @@ abstract public class DEModel
 	 * @return Parameter object or <i>null</i>, if parameter not declared
 	 */
 	public Parameter parameter(String identifier) {
-		int i = 0;
-		while (i < params.size()) {
-			Parameter param = params.get(i);
-			if (param.getName().equals(identifier)) {
-				return param;
-			}
-			i++;
-		}			
-		return null;
+		int k = this.parameterIndex(identifier);
+		return k < 0 ? null : params.get(k);
+	}
+
+	/**
+	 * gets the number of a parameter, which can be used to access the 
+	 * parameter's value efficiently, see {@link DEModel#P(int)}.
+	 * 
+	 * @param identifier Parameter name
+	 * @return Parameter number or -1, if the parameter has not been declared
+	 */
+	public int parameterIndex(String identifier) 
+	{
+		Integer k = paramIndices.get(identifier);
+		return k == null ? -1 : k.intValue();
 	}
 
 	/**
@@ -162,9 +296,26 @@ abstract public class DEModel
 	 */
 	public double P(String identifier) throws Exception 
 	{
-		Parameter p = this.parameter(identifier);
-		if (p != null && p.getValue() instanceof Double) {
-			return p.getDoubleValue();
+		int k = this.parameterIndex(identifier);
+		return k < 0 ? 0. : this.P(k);
+	}
+
+	/**
+	 * gets a parameters's floating-point value. Note that while the 
+	 * simulation is running, the parameter values given at the start of the
+	 * simulation run will be used.
+	 * 
+	 * @param k Parameter number, see {@link DEModel#parameterIndex(String)}
+	 * @return Value (will be 0. for non-{@link Double}-valued parameters)
+	 * @throws Exception
+	 */
+	public double P(int k) throws Exception 
+	{
+		if (this.compiled) 
+			return this.p[k];
+		Parameter param = params.get(k);
+		if (param.getValue() instanceof Double) {
+			return param.getDoubleValue();
 		}
 		return 0.;
 	}
@@ -179,14 +330,75 @@ abstract public class DEModel
 
 	/**
 	 * Definition of a model's dynamic behavior. This method must be 
-	 * implemented by all model instances. Usually, the differential 
+	 * implemented by all model instances that do not implement {@link 
+	 * DEModel#rhs(double, double[], double[])}. Usually, the differential 
 	 * equations that describe the model's behavior <tt>x(ti + 1) = x(ti) 
-	 * + dt * f(ti, ...)</tt> will be specified here.
+	 * + dt * f(ti, ...)</tt> will be specified here. By default, the levels
+	 * will be integrated using the rates computed by {@link 
+	 * DEModel#rhs(double, double[], double[])}.
 	 * 
 	 * @param ti Time stamp
 	 * @throws Exception
 	 */
-	abstract public void step(int ti) throws Exception;
+	public void step(int ti) throws Exception 
+	{
+		if (!this.definesRhs()) {
+			throw new Exception(
+				"Model must implement the method step() or rhs()!");
+		}
+		if (!this.compiled || ti != this.tiCur) {
+			throw new Exception(
+				"Integration is possible for the current time step only!");
+		}
+		this.rhs(this.tCur, this.y, this.f);
+		for (int k = 0; k < this.f.length; k++) {
+			this.integrate(k, ti, this.f[k]);
+		}
+	}
+
+	/**
+	 * Definition of a model's dynamic behavior as right-hand side of the 
+	 * differential equations <tt>dy/dt = f(t, y)</tt>. Here, the rates 
+	 * <tt>f</tt> will be computed for arbitrary level values <tt>y</tt>, which
+	 * are ordered by level number (see {@link DEModel#levelIndex(String)}), 
+	 * without accessing any {@link Level} objects; thus, the integration 
+	 * methods can evaluate intermediate states efficiently. The parameter 
+	 * values can be queried by {@link DEModel#P(int)}.
+	 * <p>
+	 * Models implementing this method do not need to implement {@link 
+	 * DEModel#step(int)}. For all other models, this method evaluates 
+	 * {@link DEModel#step(int)} for the given state, where the calls of 
+	 * {@link DEModel#integrate(int, int, double)} deliver the rates. Levels 
+	 * that will not be integrated get the rate 0. Since direct level 
+	 * assignments will not be taken into account here, the method must be 
+	 * called while the simulation is running only.
+	 * 
+	 * @param t Time
+	 * @param y Level values
+	 * @param dydt Array receiving the rates
+	 * @throws Exception
+	 */
+	public void rhs(double t, double[] y, double[] dydt) throws Exception 
+	{
+		if (!this.compiled) {
+			throw new Exception(
+				"Rates are available while the simulation is running only!");
+		}
+		double[] y0 = this.y;
+		double t0 = this.tCur;
+		Arrays.fill(dydt, 0.);
+		this.y = y;
+		this.tCur = t;
+		this.capture = dydt;
+		try {
+			this.step(this.tiCur);
+		}
+		finally {
+			this.y = y0;
+			this.tCur = t0;
+			this.capture = null;
+		}
+	}
 
 	/**
 	 * General integration implementation. The level <tt>x</tt> will be 
@@ -205,33 +417,302 @@ abstract public class DEModel
 	{
 		if (level == null) 
 			return;
+		if (level.getModel() != this) {
+			throw new Exception("Level \"" + level.getName() + 
+				"\" has not been declared for this model!");
+		}
+		this.integrate(level.getIndex(), ti, val);
+	}
+
+	/**
+	 * General integration implementation for the level with the given 
+	 * number, see {@link DEModel#integrate(Level, int, double)}. This 
+	 * method must be called while the simulation is running only.
+	 * 
+	 * @param k Level number, see {@link DEModel#levelIndex(String)}
+	 * @param ti Time stamp
+	 * @param val Rate
+	 * @throws Exception
+	 */
+	public void integrate(int k, int ti, double val) throws Exception 
+	{
+		if (!this.compiled || ti != this.tiCur) {
+			throw new Exception(
+				"Integration is possible for the current time step only!");
+		}
+		if (this.capture != null) {
+			this.capture[k] = val;
+			return;
+		}
+		if (this.assigning) 
+			return;
+		double dt = this.sim.getDeltaT();
 		
-		double levelOld = (Double) level.getValue(ti);
-		double levelNew = levelOld;
-		
-		switch (this.getSimulation().getIntegrationMethod()) {
+		switch (this.sim.getIntegrationMethod()) {
 		case FORWARD_EULER:
-			levelNew = levelOld + val * this.sim.getDeltaT();
-			level.setValue(ti + 1, levelNew);
+			this.yNext[k] = this.y[k] + val * dt;
 			break;
 		case RUNGE_KUTTA:
 			// First perform integration for dt/2, then integrate 
 			// will be called for a 2nd time (RUNGE_KUTTA_TEMP, see 
-			// DESimulation#execute), while the tempValue-field is used to 
+			// DESimulation#execute), while the temporary vector is used to 
 			// store intermediate integration results.
-			double levelMid = levelOld + val * 0.5 * this.sim.getDeltaT();
-			level.setTempValue(levelMid);			
+			this.yTmp[k] = this.y[k] + val * 0.5 * dt;
 			break;
 		case RUNGE_KUTTA_TEMP:
-			double levelTemp = (Double) level.getTempValue();
-			levelNew = levelTemp + val * this.sim.getDeltaT();
-			level.setValue(ti + 1, levelNew);
+			this.yNext[k] = this.yTmp[k] + val * dt;
 			break;
 		case BACKWARD_EULER:
+		case BDF2:
+		case BDF3:
+		case BDF4:
+		case BDF5:
+		case DORMAND_PRINCE:
+		case CASH_KARP:
 			throw new Exception("Called unsupported integration method!");
 		}
 	}
 
+	/**
+	 * computes the Jacobian of the rates, i.e. <tt>jac[i][j] = d f_i / d 
+	 * y_j</tt>, where <tt>f_i</tt> denotes the rate of the level number 
+	 * <tt>i</tt> and <tt>y_j</tt> the value of level number <tt>j</tt>. The 
+	 * Jacobian is required by the implicit integration methods (see {@link 
+	 * IntegrationMethod#BACKWARD_EULER}). By default, this method returns 
+	 * <i>false</i>, and the Jacobian will be approximated by finite 
+	 * differences. For stiff models, it is recommended to override this 
+	 * method.
+	 * 
+	 * @param t Time
+	 * @param y Level values
+	 * @param jac Array receiving the Jacobian
+	 * @return <i>true</i>, if the Jacobian has been computed
+	 * @throws Exception
+	 */
+	public boolean jacobian(double t, double[] y, double[][] jac) 
+		throws Exception 
+	{
+		return false;
+	}
+
+	/**
+	 * compiles the model for a simulation run starting at the time step 
+	 * <tt>ti</tt> (time <tt>t</tt>), i.e. the level values for this time 
+	 * step and the parameter values will be copied into primitive arrays.
+	 */
+	void compile(int ti, double t) throws Exception 
+	{
+		int n = levels.size(), m = params.size();
+		this.levelIndices.clear();
+		for (int k = n - 1; k >= 0; k--) {
+			levels.get(k).bind(this, k);
+			this.levelIndices.put(levels.get(k).getName(), k);
+		}
+		this.paramIndices.clear();
+		for (int k = m - 1; k >= 0; k--) {
+			this.paramIndices.put(params.get(k).getName(), k);
+		}
+
+		this.compiled = false;
+		this.y = new double[n];
+		this.yNext = new double[n];
+		this.yTmp = new double[n];
+		for (int k = 0; k < n; k++) {
+			this.y[k] = this.L(ti, k);
+		}
+		this.p = new double[m];
+		for (int k = 0; k < m; k++) {
+			this.p[k] = this.P(k);
+		}
+		this.f = new double[n];
+		this.rhsDefined = this.definesRhs();
+		this.tiCur = ti;
+		this.tCur = t;
+		this.evaluations = 0;
+		this.compiled = true;
+	}
+
+	/**
+	 * prepares the transition from time step <tt>ti</tt> to <tt>ti + 
+	 * 1</tt>. Levels that will not be modified keep their values.
+	 */
+	void beginStep() 
+	{
+		System.arraycopy(this.y, 0, this.yNext, 0, this.y.length);
+		System.arraycopy(this.y, 0, this.yTmp, 0, this.y.length);
+	}
+
+	/**
+	 * sets the simulation time the model will be evaluated for.
+	 */
+	void setTime(double t) {
+		this.tCur = t;
+	}
+
+	/**
+	 * evaluates the model's dynamic behavior for the current time step, see
+	 * {@link DEModel#step(int)}.
+	 */
+	void evaluate() throws Exception 
+	{
+		this.evaluations++;
+		this.step(this.tiCur);
+	}
+
+	/**
+	 * computes the rates of all levels for the intermediate state 
+	 * <tt>yStage</tt> at time <tt>t</tt>, see {@link DEModel#rhs(double, 
+	 * double[], double[])}. The model's state remains unchanged.
+	 */
+	void rates(double t, double[] yStage, double[] rates) throws Exception 
+	{
+		this.evaluations++;
+		this.rhs(t, yStage, rates);
+	}
+
+	/**
+	 * checks if the model implements the method {@link DEModel#rhs(double, 
+	 * double[], double[])}.
+	 */
+	boolean definesRhs() 
+	{
+		if (this.compiled) 
+			return this.rhsDefined;
+		try {
+			return this.getClass().getMethod(
+				"rhs", double.class, double[].class, double[].class)
+				.getDeclaringClass() != DEModel.class;
+		} 
+		catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * performs the transition from the current time step <tt>ti</tt> (time 
+	 * <tt>t</tt>) to <tt>ti + 1</tt> by the forward Euler method or the
+	 * Runge-Kutta (midpoint) method for models implementing {@link 
+	 * DEModel#rhs(double, double[], double[])}.
+	 */
+	void integrateRhs(boolean midpoint, double t, double dt) throws Exception 
+	{
+		int n = this.y.length;
+		this.rates(t, this.y, this.f);
+		if (midpoint) {
+			for (int k = 0; k < n; k++) {
+				this.yTmp[k] = this.y[k] + this.f[k] * 0.5 * dt;
+			}
+			this.rates(t + 0.5 * dt, this.yTmp, this.f);
+		}
+		for (int k = 0; k < n; k++) {
+			this.yNext[k] = this.y[k] + this.f[k] * dt;
+		}
+	}
+
+	/**
+	 * sets the level values for the time step <tt>ti + 1</tt> as computed by
+	 * an adaptive or implicit integration method. Then, for models not 
+	 * implementing {@link DEModel#rhs(double, double[], double[])}, the 
+	 * model's dynamic behavior will be evaluated without integrating, so that
+	 * direct level assignments for <tt>ti + 1</tt> take effect.
+	 */
+	void assign(double[] yNew) throws Exception 
+	{
+		System.arraycopy(yNew, 0, this.yNext, 0, yNew.length);
+		if (this.rhsDefined) 
+			return;
+		this.assigning = true;
+		try {
+			this.evaluate();
+		}
+		finally {
+			this.assigning = false;
+		}
+	}
+
+	/**
+	 * exchanges the level values for the current time step and the 
+	 * temporary values. This is required for the second pass of the 
+	 * Runge-Kutta method.
+	 */
+	void swapTemp() 
+	{
+		double[] x = this.y;
+		this.y = this.yTmp;
+		this.yTmp = x;
+	}
+
+	/**
+	 * proceeds to the time step <tt>ti + 1</tt>. 
+	 */
+	void endStep() 
+	{
+		double[] x = this.y;
+		this.y = this.yNext;
+		this.yNext = x;
+		this.tiCur++;
+	}
+
+	/**
+	 * gets the level values for the current time step.
+	 */
+	double[] state() {
+		return this.y;
+	}
+
+	/**
+	 * gets the level values for the next time step.
+	 */
+	double[] nextState() {
+		return this.yNext;
+	}
+
+	/**
+	 * gets the number of model evaluations since the model has been 
+	 * compiled.
+	 */
+	long evaluations() {
+		return this.evaluations;
+	}
+
+	/**
+	 * gets the store holding the results of the recent simulation run.
+	 * 
+	 * @return Result store or <i>null</i>
+	 */
+	ResultStore results() 
+	{
+		if (this.sim == null) 
+			return null;
+		ResultStore res = this.sim.getResultStore();
+		if (res.numberOfLevels() != levels.size()) 
+			return null;
+		return res;
+	}
+
+	/**
+	 * releases the compiled state after a simulation run.
+	 */
+	void release() {
+		this.compiled = false;
+	}
+
+	/**
+	 * checks if the level values for the time step <tt>ti</tt> are held in
+	 * the compiled state.
+	 */
+	boolean holds(int ti) {
+		return this.compiled && (ti == this.tiCur || ti == this.tiCur + 1);
+	}
+
+	/**
+	 * gets the state vector for the time step <tt>ti</tt>, see {@link 
+	 * DEModel#holds(int)}.
+	 */
+	double[] values(int ti) {
+		return ti == this.tiCur ? this.y : this.yNext;
+	}
+
 	public String toString() 
 	{
 		StringBuffer s = new StringBuffer();
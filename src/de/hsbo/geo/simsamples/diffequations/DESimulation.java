@@ -1,5 +1,6 @@
 package de.hsbo.geo.simsamples.diffequations;
 
+import java.util.Arrays;
 import java.util.List;
 
 import de.hsbo.geo.simsamples.common.OutputFormat;
@@ -8,6 +9,24 @@ import de.hsbo.geo.simsamples.common.Simulator;
 /**
  * Simulator to run difference equation based models. Note that this 
  * simulator allows to process simple System-Dynamics-like descriptions. 
+ * The simulation results will be held in a {@link ResultStore}, which 
+ * allows to record every n-th time step only and to spill the results to a
+ * memory-mapped file. 
+ * <p>
+ * Besides the fixed-step integration methods, the adaptive methods {@link 
+ * IntegrationMethod#DORMAND_PRINCE} and {@link IntegrationMethod#CASH_KARP}
+ * are supported. Here, the time step width will be controlled so that the 
+ * estimated local error remains below the given tolerances (see {@link 
+ * DESimulation#setTolerances(double, double)}); the simulation time of each
+ * time step will be held in the result store. If the model modifies level 
+ * values directly (events, e.g. the collision of a bouncing ball), the time
+ * step will be shortened by bisection to locate the event, see {@link 
+ * DESimulation#setEventTolerance(double)}.
+ * <p>
+ * For stiff models, the implicit methods {@link 
+ * IntegrationMethod#BACKWARD_EULER} and {@link IntegrationMethod#BDF2} to
+ * {@link IntegrationMethod#BDF5} should be used, which remain stable for
+ * large time step widths.
  * 
  * @author Benno Schmidt
  */
@@ -16,6 +35,10 @@ public class DESimulation extends Simulator
 	private DEModel model;
 	private double tStart = 0., tEnd = 10., deltaT = 1.;
 	private IntegrationMethod methIntegr = IntegrationMethod.FORWARD_EULER;
+	private ResultStore results = new ResultStore();
+	private double relTol = 1.e-6, absTol = 1.e-6;
+	private double maxDeltaT = Double.POSITIVE_INFINITY;
+	private double eventTol = 1.e-6;
 	
 	
 	public DESimulation(DEModel model) {
@@ -59,9 +82,9 @@ public class DESimulation extends Simulator
 
 	/**
 	 * sets the time step width for the simulation. The time has to be given in 
-	 * seconds. By default, a time step width if 1 sec will be used. Note that 
-	 * currently only constant time steps are supported. 
-	 * TODO: Support variable time steps in the future
+	 * seconds. By default, a time step width if 1 sec will be used. For the 
+	 * adaptive integration methods, the given time step width will be used 
+	 * for the first time step only. 
 	 * 
 	 * @param deltaT Time step width (given in seconds)
 	 */
@@ -69,47 +92,372 @@ public class DESimulation extends Simulator
 		this.deltaT = deltaT;
 	}
 
-	public void execute() throws Exception {
+	/**
+	 * sets the tolerances for the adaptive integration methods. For each 
+	 * level value <tt>y</tt>, the estimated local error per time step should
+	 * not exceed <tt>absTol + relTol * |y|</tt>. For the implicit 
+	 * integration methods, the tolerances control the termination of the 
+	 * Newton iteration. By default, both tolerances are set to 1e-6.
+	 * 
+	 * @param relTol Relative tolerance
+	 * @param absTol Absolute tolerance
+	 */
+	public void setTolerances(double relTol, double absTol) {
+		this.relTol = relTol;
+		this.absTol = absTol;
+	}
+
+	/**
+	 * sets the maximum time step width for the adaptive integration methods.
+	 * This might be necessary to detect events that occur for a short time 
+	 * only, i.e. that are not noticeable at the end of a time step anymore.
+	 * By default, the time step width is not limited.
+	 * 
+	 * @param maxDeltaT Maximum time step width (given in seconds)
+	 */
+	public void setMaxDeltaT(double maxDeltaT) {
+		this.maxDeltaT = maxDeltaT;
+	}
+
+	/**
+	 * sets the time tolerance for locating events with the adaptive 
+	 * integration methods. An event occurs, if the model modifies the level
+	 * values for the time step <tt>ti + 1</tt> directly, e.g. to limit a 
+	 * position. Then, the time step will be repeated with bisected widths,
+	 * until it does not exceed the tolerance. By default, the tolerance is 
+	 * set to 1e-6 sec.
+	 * 
+	 * @param eventTol Tolerance (given in seconds)
+	 */
+	public void setEventTolerance(double eventTol) {
+		this.eventTol = eventTol;
+	}
+
+	/**
+	 * gets the number of model evaluations performed by the recent 
+	 * simulation run, i.e. the number of calls of {@link DEModel#step(int)}.
+	 * 
+	 * @return Number of evaluations
+	 */
+	public long getNumberOfEvaluations() {
+		return this.model.evaluations();
+	}
+
+	/**
+	 * gets the store holding the simulation results.
+	 * 
+	 * @return Result store
+	 */
+	public ResultStore getResultStore() {
+		return this.results;
+	}
+
+	/**
+	 * sets the store that will receive the simulation results, e.g. a store
+	 * spilling the results to a memory-mapped file. By default, the results
+	 * will be kept in memory.
+	 * 
+	 * @param results Result store
+	 */
+	public void setResultStore(ResultStore results) {
+		this.results = results;
+	}
+
+	/**
+	 * sets the number of time steps between two recorded results, see 
+	 * {@link ResultStore#setDecimation(int)}. Note that the level values for 
+	 * time steps that have not been recorded can not be queried after the 
+	 * simulation run.
+	 * 
+	 * @param decimation Number of time steps (default: 1)
+	 */
+	public void setDecimation(int decimation) {
+		this.results.setDecimation(decimation);
+	}
+
+	/**
+	 * gets the simulation time for the time step <tt>ti</tt>. For the 
+	 * adaptive integration methods, the time will be taken from the result 
+	 * store; since the time step widths vary, the time is unknown for time 
+	 * steps that have not been recorded.
+	 * 
+	 * @param ti Time step number
+	 * @return Time (given in seconds) or <tt>Double.NaN</tt>, if the time of
+	 * an adaptive time step has not been recorded
+	 */
+	public double getTime(int ti) 
+	{
+		if (this.isAdaptive()) {
+			int row = this.results.row(ti);
+			return row >= 0 ? this.results.time(row) : Double.NaN;
+		}
+		return this.tStart + ti * this.getDeltaT();
+	}
+
+	private boolean isAdaptive() {
+		return 
+			this.methIntegr == IntegrationMethod.DORMAND_PRINCE || 
+			this.methIntegr == IntegrationMethod.CASH_KARP;
+	}
+
+	private boolean isImplicit() {
+		switch (this.methIntegr) {
+		case BACKWARD_EULER:
+		case BDF2:
+		case BDF3:
+		case BDF4:
+		case BDF5:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	public void execute() throws Exception 
+	{
+		if (this.isAdaptive()) {
+			this.executeAdaptive(this.tEnd);
+			return;
+		}
 		int numberOfSteps = (int) Math.ceil(
 			(this.tEnd - this.tStart) / this.getDeltaT());
 		this.execute(numberOfSteps);
 	}
 
+	/**
+	 * executes the simulation for the given number of time steps. For the 
+	 * adaptive integration methods, the simulation will be executed up to 
+	 * the time <tt>tStart + numberOfSteps * deltaT</tt> instead.
+	 * 
+	 * @param numberOfSteps Number of time steps
+	 * @throws Exception
+	 */
 	@Override
 	public void execute(int numberOfSteps) throws Exception 
 	{
+		if (this.isAdaptive()) {
+			this.executeAdaptive(
+				this.tStart + numberOfSteps * this.getDeltaT());
+			return;
+		}
+		if (this.isImplicit()) {
+			this.executeImplicit(numberOfSteps);
+			return;
+		}
 		this.numberOfSteps = numberOfSteps;
 		this.beforeExecute();
 		
 		this.dumpNames("ti", "t", this.model.getLevels());
 		
-		for (int ti = 0; ti < numberOfSteps; ti++) {
-			this.model.step(ti);
-
-			if (this.getIntegrationMethod() == IntegrationMethod.RUNGE_KUTTA) {
-				// Swap tempValue and value(ti):
-				for (Level l : this.model.getLevels()) {
-					Object x = l.getValue(ti);
-					l.setValue(ti, l.getTempValue());
-					l.setTempValue(x);
+		this.model.compile(0, this.getTime(0));
+		try {
+			ResultStore res = this.results;
+			res.reset(this.model.numberOfLevels());
+			res.record(0, this.getTime(0), this.model.state());
+
+			for (int ti = 0; ti < numberOfSteps; ti++) {
+				this.model.setTime(this.getTime(ti));
+				if (this.model.definesRhs()) {
+					// Evaluate the rates directly for the state vectors:
+					this.model.integrateRhs(
+						this.getIntegrationMethod() == IntegrationMethod.RUNGE_KUTTA,
+						this.getTime(ti), this.getDeltaT());
 				}
-				// Perform second integration half-step (for impl. details, see
-				// method DEModel#integrate):
-				this.methIntegr = IntegrationMethod.RUNGE_KUTTA_TEMP;
-				this.model.step(ti);
-				// Copy tempValue to value(ti):
-				for (Level l : this.model.getLevels()) {
-					l.setValue(ti, l.getTempValue());
+				else {
+					this.stepModel(ti);
 				}
+				this.dumpValues(ti, this.getTime(ti), this.model.getLevels());
+
+				this.model.endStep();
+				res.record(ti + 1, this.getTime(ti + 1), this.model.state());
+			}
+			res.recordLast(
+				numberOfSteps, this.getTime(numberOfSteps), this.model.state());
+		
+			this.dumpValues(
+				numberOfSteps, this.getTime(numberOfSteps), 
+				this.model.getLevels());
+		}
+		finally {
+			this.model.release();
+		}
+		
+		this.afterExecute();
+	}
+
+	/**
+	 * performs the transition from time step <tt>ti</tt> to <tt>ti + 1</tt>
+	 * by evaluating the model's {@link DEModel#step(int)} definition.
+	 */
+	private void stepModel(int ti) throws Exception 
+	{
+		this.model.beginStep();
+		this.model.evaluate();
+
+		if (this.getIntegrationMethod() == IntegrationMethod.RUNGE_KUTTA) {
+			// Swap temporary values and values(ti):
+			this.model.swapTemp();
+			// Perform second integration half-step (for impl. details, 
+			// see method DEModel#integrate):
+			this.methIntegr = IntegrationMethod.RUNGE_KUTTA_TEMP;
+			this.model.setTime(this.getTime(ti) + 0.5 * this.getDeltaT());
+			try {
+				this.model.evaluate();
+			}
+			finally {
 				this.methIntegr = IntegrationMethod.RUNGE_KUTTA;
+				this.model.swapTemp();
+			}
+		}
+	}
+
+	/**
+	 * executes the simulation up to the time <tt>tEndRun</tt> using an 
+	 * adaptive integration method.
+	 */
+	private void executeAdaptive(double tEndRun) throws Exception 
+	{
+		this.beforeExecute();
+		
+		this.dumpNames("ti", "t", this.model.getLevels());
+
+		EmbeddedRungeKutta rk = EmbeddedRungeKutta.create(
+			this.methIntegr, this.model.numberOfLevels());
+		double q = 1. / rk.getOrder();
+
+		double t = this.tStart;
+		double h = Math.min(this.getDeltaT(), this.maxDeltaT);
+		int ti = 0;
+		
+		this.model.compile(0, t);
+		try {
+			ResultStore res = this.results;
+			res.reset(this.model.numberOfLevels());
+			res.record(0, t, this.model.state());
+
+			double tEvent = Double.POSITIVE_INFINITY; // event inside (t, tEvent]
+			double hEvent = h; // step width before the event
+			while (t < tEndRun) {
+				// Approach a detected event by bisection:
+				if (tEvent - t <= this.eventTol) 
+					h = tEvent - t;
+				else if (tEvent < Double.POSITIVE_INFINITY) 
+					h = Math.min(h, 0.5 * (tEvent - t));
+
+				// Reduce the step width until the error is acceptable:
+				boolean last, rejected = false;
+				double err;
+				for (;;) {
+					last = t + h >= tEndRun;
+					if (last) 
+						h = tEndRun - t;
+					err = rk.attempt(
+						this.model, t, h, this.model.state(), 
+						this.relTol, this.absTol);
+					if (err <= 1.) 
+						break;
+					rejected = true;
+					h *= Double.isNaN(err) 
+						? 0.2 : Math.max(0.2, 0.9 * Math.pow(err, -q));
+					if (t + h == t) {
+						throw new Exception(
+							"Step size underflow at time " + t + "!");
+					}
+				}
+
+				// Apply direct level assignments. If these modify the 
+				// solution, an event (e.g. a collision) occurred inside the 
+				// step; then, the step will be repeated with smaller widths 
+				// until the event has been located within the tolerance:
+				this.model.assign(rk.solution());
+				boolean unchanged = 
+					Arrays.equals(this.model.nextState(), rk.solution());
+				if (!unchanged && h > this.eventTol) {
+					if (tEvent == Double.POSITIVE_INFINITY) 
+						hEvent = h;
+					tEvent = t + h;
+					continue;
+				}
+
+				// Accept the step:
+				rk.accept(unchanged);
+				this.dumpValues(ti, t, this.model.getLevels());
+
+				this.model.endStep();
+				t = last ? tEndRun : t + h;
+				ti++;
+				this.model.setTime(t);
+				res.record(ti, t, this.model.state());
+
+				if (!unchanged || t >= tEvent) {
+					// Event handled, continue with the former step width:
+					tEvent = Double.POSITIVE_INFINITY;
+					h = Math.min(hEvent, this.maxDeltaT);
+					continue;
+				}
+				double fac = err > 0. ? 0.9 * Math.pow(err, -q) : 5.;
+				h *= Math.max(0.2, Math.min(rejected ? 1. : 5., fac));
+				h = Math.min(h, this.maxDeltaT);
 			}
+			this.numberOfSteps = ti;
+			res.recordLast(ti, t, this.model.state());
 			
-			this.dumpValues(ti, ti * this.getDeltaT(), this.model.getLevels());
+			this.dumpValues(ti, t, this.model.getLevels());
+		}
+		finally {
+			this.model.release();
 		}
 		
-		this.dumpValues(
-			numberOfSteps, numberOfSteps * this.getDeltaT(), 
-			this.model.getLevels());
+		this.afterExecute();
+	}
+
+	/**
+	 * executes the simulation for the given number of time steps using an 
+	 * implicit integration method.
+	 */
+	private void executeImplicit(int numberOfSteps) throws Exception 
+	{
+		this.numberOfSteps = numberOfSteps;
+		this.beforeExecute();
+		
+		this.dumpNames("ti", "t", this.model.getLevels());
+
+		BDFIntegrator bdf = BDFIntegrator.create(
+			this.methIntegr, this.model.numberOfLevels());
+
+		this.model.compile(0, this.getTime(0));
+		try {
+			ResultStore res = this.results;
+			res.reset(this.model.numberOfLevels());
+			res.record(0, this.getTime(0), this.model.state());
+
+			for (int ti = 0; ti < numberOfSteps; ti++) {
+				bdf.step(
+					this.model, this.getTime(ti), this.getDeltaT(), 
+					this.model.state(), this.relTol, this.absTol);
+
+				// Apply direct level assignments; if these modify the 
+				// solution, the previous states must not be used anymore:
+				this.model.assign(bdf.solution());
+				if (!Arrays.equals(this.model.nextState(), bdf.solution())) {
+					bdf.restart();
+				}
+				this.dumpValues(ti, this.getTime(ti), this.model.getLevels());
+
+				this.model.endStep();
+				this.model.setTime(this.getTime(ti + 1));
+				res.record(ti + 1, this.getTime(ti + 1), this.model.state());
+			}
+			res.recordLast(
+				numberOfSteps, this.getTime(numberOfSteps), this.model.state());
+		
+			this.dumpValues(
+				numberOfSteps, this.getTime(numberOfSteps), 
+				this.model.getLevels());
+		}
+		finally {
+			this.model.release();
+		}
 		
 		this.afterExecute();
 	}
@@ -123,7 +471,7 @@ public class DESimulation extends Simulator
 	{
 		if (method == IntegrationMethod.RUNGE_KUTTA_TEMP) {
 			throw new Exception(
-				"Integration method must be FORWARD_EULER or RUNGE_KUTTA!");
+				"Integration method RUNGE_KUTTA_TEMP is used internally only!");
 		}
 		this.methIntegr = method;
 	}
@@ -0,0 +1,222 @@
+package de.hsbo.geo.simsamples.diffequations;
+
+/**
+ * Embedded Runge-Kutta pair used by {@link DESimulation} to perform the
+ * adaptive integration methods. For each step, the pair delivers a solution
+ * of order <tt>p</tt> and an error estimate given by the difference to an
+ * embedded solution of order <tt>p - 1</tt>; both solutions are computed
+ * from the same stages. The rates will be computed by the model's {@link
+ * DEModel#rhs(double, double[], double[])} definition.
+ * <p>
+ * For pairs having the "first same as last" property (Dormand-Prince), the
+ * last stage of an accepted step will be re-used as first stage of the
+ * next step.
+ *
+ * @author Benno Schmidt
+ */
+class EmbeddedRungeKutta
+{
+	private IntegrationMethod method;
+	private int order; // order of the propagated solution
+	private double[] c; // nodes
+	private double[][] a; // Runge-Kutta matrix
+	private double[] b; // weights of the propagated solution
+	private double[] e; // weights of the error estimate
+	private boolean fsal;
+
+	private double[][] k; // stages
+	private double[] yStage, yNew;
+	private boolean firstStage = false; // k[0] holds the rates for y(t)
+
+
+	private EmbeddedRungeKutta(IntegrationMethod method, int order,
+		double[] c, double[][] a, double[] b, double[] bHat, int n)
+	{
+		this.method = method;
+		this.order = order;
+		this.c = c;
+		this.a = a;
+		this.b = b;
+		this.e = new double[b.length];
+		for (int i = 0; i < b.length; i++) {
+			this.e[i] = b[i] - bHat[i];
+		}
+		this.fsal = true;
+		double[] aLast = a[a.length - 1];
+		for (int i = 0; i < b.length; i++) {
+			if ((i < aLast.length ? aLast[i] : 0.) != b[i])
+				this.fsal = false;
+		}
+
+		this.k = new double[c.length][n];
+		this.yStage = new double[n];
+		this.yNew = new double[n];
+	}
+
+	/**
+	 * creates an embedded Runge-Kutta pair for a model consisting of
+	 * <tt>n</tt> levels.
+	 *
+	 * @param method Integration method
+	 * @param n Number of levels
+	 * @return Embedded Runge-Kutta pair or <i>null</i>, if the integration
+	 * method is not an adaptive one
+	 */
+	static EmbeddedRungeKutta create(IntegrationMethod method, int n)
+	{
+		switch (method) {
+		case DORMAND_PRINCE:
+			return new EmbeddedRungeKutta(method, 5,
+				new double[] { 0., 1./5., 3./10., 4./5., 8./9., 1., 1. },
+				new double[][] {
+					{},
+					{ 1./5. },
+					{ 3./40., 9./40. },
+					{ 44./45., -56./15., 32./9. },
+					{ 19372./6561., -25360./2187., 64448./6561., -212./729. },
+					{ 9017./3168., -355./33., 46732./5247., 49./176.,
+						-5103./18656. },
+					{ 35./384., 0., 500./1113., 125./192., -2187./6784.,
+						11./84. }
+				},
+				new double[] { 35./384., 0., 500./1113., 125./192.,
+					-2187./6784., 11./84., 0. },
+				new double[] { 5179./57600., 0., 7571./16695., 393./640.,
+					-92097./339200., 187./2100., 1./40. },
+				n);
+		case CASH_KARP:
+			return new EmbeddedRungeKutta(method, 5,
+				new double[] { 0., 1./5., 3./10., 3./5., 1., 7./8. },
+				new double[][] {
+					{},
+					{ 1./5. },
+					{ 3./40., 9./40. },
+					{ 3./10., -9./10., 6./5. },
+					{ -11./54., 5./2., -70./27., 35./27. },
+					{ 1631./55296., 175./512., 575./13824., 44275./110592.,
+						253./4096. }
+				},
+				new double[] { 37./378., 0., 250./621., 125./594., 0.,
+					512./1771. },
+				new double[] { 2825./27648., 0., 18575./48384.,
+					13525./55296., 277./14336., 1./4. },
+				n);
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * gets the order of the propagated solution.
+	 *
+	 * @return Order
+	 */
+	int getOrder() {
+		return this.order;
+	}
+
+	/**
+	 * attempts a step of width <tt>h</tt> starting at the state <tt>y</tt>
+	 * at time <tt>t</tt>. Afterwards, the solution can be queried by {@link
+	 * EmbeddedRungeKutta#solution()}.
+	 *
+	 * @param m Model
+	 * @param t Time
+	 * @param h Step width
+	 * @param y Level values for the time <tt>t</tt>
+	 * @param relTol Relative tolerance
+	 * @param absTol Absolute tolerance
+	 * @return Error estimate relative to the given tolerances (root mean
+	 * square norm), i.e. the step is acceptable for values &lt;= 1
+	 * @throws Exception
+	 */
+	double attempt(DEModel m, double t, double h, double[] y,
+		double relTol, double absTol) throws Exception
+	{
+		int n = y.length, s = c.length;
+
+		if (!this.firstStage) {
+			m.rates(t, y, k[0]);
+			this.firstStage = true;
+		}
+		for (int i = 1; i < s; i++) {
+			this.combine(y, h, a[i], this.yStage);
+			m.rates(t + c[i] * h, this.yStage, k[i]);
+		}
+		this.combine(y, h, b, this.yNew);
+
+		double sum = 0.;
+		for (int l = 0; l < n; l++) {
+			double err = 0.;
+			for (int i = 0; i < s; i++) {
+				if (e[i] != 0.)
+					err += e[i] * k[i][l];
+			}
+			double sc = absTol +
+				relTol * Math.max(Math.abs(y[l]), Math.abs(yNew[l]));
+			double q = h * err / sc;
+			sum += q * q;
+		}
+		return n > 0 ? Math.sqrt(sum / n) : 0.;
+	}
+
+	/**
+	 * computes <tt>res = y + h * sum(w[i] * k[i])</tt>.
+	 */
+	private void combine(double[] y, double h, double[] w, double[] res)
+	{
+		for (int l = 0; l < y.length; l++) {
+			double sum = 0.;
+			for (int i = 0; i < w.length; i++) {
+				if (w[i] != 0.)
+					sum += w[i] * k[i][l];
+			}
+			res[l] = y[l] + h * sum;
+		}
+	}
+
+	/**
+	 * gets the solution computed by the recent attempt.
+	 *
+	 * @return Level values
+	 */
+	double[] solution() {
+		return this.yNew;
+	}
+
+	/**
+	 * notifies the pair that the recent attempt has been accepted.
+	 *
+	 * @param unchanged <i>true</i>, if the model continues with the computed
+	 * solution, <i>false</i> if level values have been modified
+	 */
+	void accept(boolean unchanged)
+	{
+		if (this.fsal && unchanged) {
+			double[] x = k[0];
+			k[0] = k[c.length - 1];
+			k[c.length - 1] = x;
+			return;
+		}
+		this.firstStage = false;
+	}
+
+	public String toString()
+	{
+		StringBuffer s = new StringBuffer();
+
+		s.append("(");
+		s.append(this.getClass().getSimpleName());
+		s.append(": ");
+		s.append(this.method);
+		s.append(", ");
+		s.append(this.c.length);
+		s.append(" stages");
+		if (this.fsal) {
+			s.append(", FSAL");
+		}
+		s.append(")");
+
+		return s.toString();
+	}
+}
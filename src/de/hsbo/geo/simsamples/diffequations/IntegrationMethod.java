@@ -3,7 +3,12 @@ package de.hsbo.geo.simsamples.diffequations;
 /**
  * Identifiers for different numerical integration methods used inside the
  * <tt>de.hsbo.bogeosim.diffequations</tt> package. Note that the identifier
- * <tt>RUNGE_KUTTA_TEMP</tt> is used internally only.
+ * <tt>RUNGE_KUTTA_TEMP</tt> is used internally only. <tt>DORMAND_PRINCE</tt> 
+ * (Dormand-Prince 5(4)) and <tt>CASH_KARP</tt> (Cash-Karp 5(4)) denote 
+ * embedded Runge-Kutta methods with adaptive time step control. 
+ * <tt>BACKWARD_EULER</tt> and <tt>BDF2</tt> to <tt>BDF5</tt> denote the 
+ * implicit backward differentiation formulas of order 1 to 5, which are 
+ * suitable for stiff models.
  * 
  * @author Benno Schmidt
  */
@@ -12,5 +17,11 @@ public enum IntegrationMethod
 	FORWARD_EULER, 
 	RUNGE_KUTTA, 
 	RUNGE_KUTTA_TEMP, 
-	BACKWARD_EULER
+	BACKWARD_EULER, 
+	DORMAND_PRINCE, 
+	CASH_KARP, 
+	BDF2, 
+	BDF3, 
+	BDF4, 
+	BDF5
 }
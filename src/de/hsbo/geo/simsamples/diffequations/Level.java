@@ -4,14 +4,19 @@ import de.hsbo.geo.simsamples.common.TimeSeries;
 
 /**
  * Level definition. A level consists of a name and a series of values over
- * time. Note that level names should be unique!
+ * time. Note that level names should be unique! While a simulation is 
+ * running, the values for the current and the next time step are held by 
+ * the {@link DEModel}'s state vectors; the simulation results are held by 
+ * the simulation's {@link ResultStore}. Nonetheless, these values can be 
+ * accessed through the level object.
  * 
  * @author Benno Schmidt
  */
 public class Level extends TimeSeries
 {
 	private String name;
-	private Object tmpVal; // required for impl. of Runge-Kutta method
+	private DEModel model = null;
+	private int index = -1; // level number inside the model
 	
 	
 	/**
@@ -42,11 +47,129 @@ public class Level extends TimeSeries
 		}
 	}
 
-	protected Object getTempValue() {
-		return this.tmpVal;
+	/**
+	 * gets the model the level has been declared for.
+	 * 
+	 * @return Model or <i>null</i>
+	 */
+	public DEModel getModel() {
+		return this.model;
+	}
+
+	/**
+	 * gets the level number inside the model, see {@link 
+	 * DEModel#levelIndex(String)}.
+	 * 
+	 * @return Level number or -1, if the level has not been declared
+	 */
+	public int getIndex() {
+		return this.index;
+	}
+
+	void bind(DEModel model, int index) {
+		this.model = model;
+		this.index = index;
+	}
+
+	private ResultStore results() {
+		return this.model != null ? this.model.results() : null;
 	}
 
-	protected void setTempValue(Object val) {
-		this.tmpVal = val;
+	/**
+	 * stores a value inside the result store or the time series, bypassing 
+	 * the model's state vectors.
+	 */
+	void store(int ti, double val) throws Exception 
+	{
+		ResultStore res = this.results();
+		if (res != null && ti >= 0 && ti < res.size()) {
+			res.set(ti, this.index, val);
+			return;
+		}
+		super.setValue(ti, val);
+	}
+
+	@Override
+	public int size() 
+	{
+		ResultStore res = this.results();
+		if (res != null) {
+			return Math.max(super.size(), res.size());
+		}
+		return super.size();
+	}
+
+	@Override
+	public Double minNumericValue() 
+	{
+		ResultStore res = this.results();
+		if (res != null && res.numberOfRows() > 0) {
+			double min = res.value(0, this.index);
+			for (int row = 1; row < res.numberOfRows(); row++) {
+				min = Math.min(min, res.value(row, this.index));
+			}
+			return min;
+		}
+		return super.minNumericValue();
+	}
+
+	@Override
+	public Double maxNumericValue() 
+	{
+		ResultStore res = this.results();
+		if (res != null && res.numberOfRows() > 0) {
+			double max = res.value(0, this.index);
+			for (int row = 1; row < res.numberOfRows(); row++) {
+				max = Math.max(max, res.value(row, this.index));
+			}
+			return max;
+		}
+		return super.maxNumericValue();
+	}
+
+	@Override
+	public boolean isAvailable(int ti) 
+	{
+		ResultStore res = this.results();
+		if (res != null && ti < res.size()) {
+			return res.contains(ti);
+		}
+		return super.isAvailable(ti);
+	}
+
+	@Override
+	public Object getValue(int ti) throws Exception 
+	{
+		if (this.model != null && this.model.holds(ti)) {
+			return this.model.values(ti)[this.index];
+		}
+		ResultStore res = this.results();
+		if (res != null && ti >= 0 && ti < res.size()) {
+			return res.get(ti, this.index);
+		}
+		return super.getValue(ti);
+	}
+
+	@Override
+	public void setValue(int ti, Object val) throws Exception 
+	{
+		if (this.model != null && this.model.holds(ti)) {
+			if (!(val instanceof Number)) {
+				throw new Exception("Tried to assign non-numerical value " +
+					"to level \"" + this.name + "\"!");
+			}
+			this.model.setL(ti, this.index, ((Number) val).doubleValue());
+			return;
+		}
+		ResultStore res = this.results();
+		if (res != null && ti >= 0 && ti < res.size()) {
+			if (!(val instanceof Number)) {
+				throw new Exception("Tried to assign non-numerical value " +
+					"to level \"" + this.name + "\"!");
+			}
+			res.set(ti, this.index, ((Number) val).doubleValue());
+			return;
+		}
+		super.setValue(ti, val);
 	}
 }
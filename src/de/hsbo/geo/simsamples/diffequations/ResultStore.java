@@ -0,0 +1,375 @@
+package de.hsbo.geo.simsamples.diffequations;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Columnar storage for the results of a {@link DESimulation} run. For each
+ * recorded time step, a row consisting of the simulation time and the
+ * values of all levels will be held as primitive <tt>double</tt>s; thus, a
+ * run of <tt>N</tt> time steps for a model consisting of <tt>n</tt> levels
+ * requires <tt>8 * N * (n + 1)</tt> bytes. To reduce the amount of data,
+ * only every <tt>decimation</tt>-th time step can be recorded; the first
+ * and the last time step will be recorded in any case.
+ * <p>
+ * By default, the rows are kept on the Java heap. For very long simulation
+ * runs, the rows can be spilled to a memory-mapped file instead. The file
+ * starts with a header of 16 bytes holding the number of recorded rows and
+ * the number of <tt>double</tt>s per row as little-endian <tt>long</tt>s;
+ * the rows follow as little-endian <tt>double</tt>s. Since the file is
+ * mapped in blocks, it might be longer than required; the header will be
+ * updated when the store is closed. Note that the file will not be deleted
+ * by the result store.
+ *
+ * @see DESimulation#setResultStore(ResultStore)
+ *
+ * @author Benno Schmidt
+ */
+public class ResultStore implements Closeable
+{
+	static private final int BLOCK_SIZE = 1 << 16; // doubles per block
+	static private final int HEADER_SIZE = 16; // bytes
+
+	private int decimation = 1;
+	private String filename = null;
+	private RandomAccessFile file = null;
+
+	private int width = 1; // doubles per row
+	private int rowsPerBlock = BLOCK_SIZE;
+	private List<DoubleBuffer> blocks = new ArrayList<DoubleBuffer>();
+	private int numberOfRows = 0;
+	private int lastTi = -1; // last time step recorded
+	private boolean lastIsExtra = false; // last row not regularly recorded
+
+
+	/**
+	 * Constructor. The results will be kept in memory.
+	 */
+	public ResultStore() {
+	}
+
+	/**
+	 * Constructor. The results will be written to a memory-mapped file. If
+	 * the file exists, it will be overwritten.
+	 *
+	 * @param filename Name (incl. path) of the file
+	 */
+	public ResultStore(String filename) {
+		this.filename = filename;
+	}
+
+	/**
+	 * sets the number of time steps between two recorded rows. This method
+	 * should be called before the simulation is run.
+	 *
+	 * @param decimation Number of time steps (default: 1)
+	 */
+	public void setDecimation(int decimation) {
+		this.decimation = Math.max(decimation, 1);
+	}
+
+	/**
+	 * gets the number of time steps between two recorded rows.
+	 *
+	 * @return Number of time steps
+	 */
+	public int getDecimation() {
+		return this.decimation;
+	}
+
+	/**
+	 * removes all rows. Afterwards, rows consisting of the simulation time
+	 * and <tt>numberOfLevels</tt> values can be recorded.
+	 *
+	 * @param numberOfLevels Number of levels
+	 * @throws IOException
+	 */
+	public void reset(int numberOfLevels) throws IOException
+	{
+		this.width = numberOfLevels + 1;
+		this.rowsPerBlock = Math.max(1, BLOCK_SIZE / this.width);
+		this.blocks.clear();
+		this.numberOfRows = 0;
+		this.lastTi = -1;
+		this.lastIsExtra = false;
+
+		if (this.filename != null) {
+			if (this.file == null) {
+				this.file = new RandomAccessFile(this.filename, "rw");
+			}
+			// Note: The file must not be shrunk, since blocks of a previous
+			// run might still be mapped. They will be re-mapped on demand.
+			this.writeHeader();
+		}
+	}
+
+	/**
+	 * writes the number of rows and the row width to the file's header.
+	 */
+	private void writeHeader() throws IOException
+	{
+		ByteBuffer h =
+			ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		h.putLong(0, this.numberOfRows);
+		h.putLong(8, this.width);
+		FileChannel ch = this.file.getChannel();
+		while (h.hasRemaining()) {
+			ch.write(h, h.position());
+		}
+	}
+
+	/**
+	 * records the level values for the time step <tt>ti</tt>, if
+	 * <tt>ti</tt> is a multiple of the decimation interval. Time steps must
+	 * be recorded in ascending order.
+	 *
+	 * @param ti Time step number
+	 * @param t Simulation time
+	 * @param y Level values
+	 * @throws IOException
+	 */
+	public void record(int ti, double t, double[] y) throws IOException
+	{
+		if (ti % this.decimation == 0) {
+			this.append(ti, t, y, false);
+		}
+	}
+
+	/**
+	 * records the level values for the last time step of a simulation run,
+	 * if it has not been recorded yet.
+	 *
+	 * @param ti Time step number
+	 * @param t Simulation time
+	 * @param y Level values
+	 * @throws IOException
+	 */
+	public void recordLast(int ti, double t, double[] y) throws IOException
+	{
+		if (ti != this.lastTi) {
+			this.append(ti, t, y, ti % this.decimation != 0);
+		}
+	}
+
+	private void append(int ti, double t, double[] y, boolean extra)
+		throws IOException
+	{
+		if (this.lastIsExtra) {
+			// Replace the row that has not been recorded regularly:
+			this.numberOfRows--;
+		}
+		int row = this.numberOfRows;
+		DoubleBuffer b = this.block(row / this.rowsPerBlock);
+		int pos = (row % this.rowsPerBlock) * this.width;
+		b.put(pos, t);
+		for (int k = 0; k < this.width - 1; k++) {
+			b.put(pos + 1 + k, y[k]);
+		}
+		this.numberOfRows++;
+		this.lastTi = ti;
+		this.lastIsExtra = extra;
+	}
+
+	private DoubleBuffer block(int i) throws IOException
+	{
+		while (this.blocks.size() <= i) {
+			int n = this.rowsPerBlock * this.width;
+			if (this.file == null) {
+				this.blocks.add(DoubleBuffer.wrap(new double[n]));
+			} else {
+				long pos = HEADER_SIZE + 8L * n * this.blocks.size();
+				this.blocks.add(this.file.getChannel()
+					.map(FileChannel.MapMode.READ_WRITE, pos, 8L * n)
+					.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer());
+			}
+		}
+		return this.blocks.get(i);
+	}
+
+	/**
+	 * gets the number of recorded rows.
+	 *
+	 * @return Number of rows
+	 */
+	public int numberOfRows() {
+		return this.numberOfRows;
+	}
+
+	/**
+	 * gets the number of levels.
+	 *
+	 * @return Number of levels
+	 */
+	public int numberOfLevels() {
+		return this.width - 1;
+	}
+
+	/**
+	 * gets the number of time steps the recorded rows refer to, i.e. the
+	 * last recorded time step number + 1.
+	 *
+	 * @return Number of time steps
+	 */
+	public int size() {
+		return this.lastTi + 1;
+	}
+
+	/**
+	 * gets the time step number of a recorded row.
+	 *
+	 * @param row Row number
+	 * @return Time step number
+	 */
+	public int timeStep(int row) {
+		if (row == this.numberOfRows - 1)
+			return this.lastTi;
+		return row * this.decimation;
+	}
+
+	/**
+	 * gets the simulation time of a recorded row.
+	 *
+	 * @param row Row number
+	 * @return Simulation time
+	 */
+	public double time(int row) {
+		return this.blocks.get(row / this.rowsPerBlock).get(
+			(row % this.rowsPerBlock) * this.width);
+	}
+
+	/**
+	 * gets a level value of a recorded row.
+	 *
+	 * @param row Row number
+	 * @param k Level number, see {@link DEModel#levelIndex(String)}
+	 * @return Level value
+	 */
+	public double value(int row, int k) {
+		return this.blocks.get(row / this.rowsPerBlock).get(
+			(row % this.rowsPerBlock) * this.width + 1 + k);
+	}
+
+	/**
+	 * gets the recorded values of a level.
+	 *
+	 * @param k Level number, see {@link DEModel#levelIndex(String)}
+	 * @return Array holding one value per row
+	 */
+	public double[] column(int k)
+	{
+		double[] res = new double[this.numberOfRows];
+		for (int row = 0; row < this.numberOfRows; row++) {
+			res[row] = this.value(row, k);
+		}
+		return res;
+	}
+
+	/**
+	 * gets the row number for the time step <tt>ti</tt>.
+	 *
+	 * @param ti Time step number
+	 * @return Row number or -1, if the time step has not been recorded
+	 */
+	public int row(int ti)
+	{
+		if (ti < 0 || ti > this.lastTi)
+			return -1;
+		if (ti == this.lastTi)
+			return this.numberOfRows - 1;
+		if (ti % this.decimation != 0)
+			return -1;
+		return ti / this.decimation;
+	}
+
+	/**
+	 * checks if the time step <tt>ti</tt> has been recorded.
+	 *
+	 * @param ti Time step number
+	 * @return <i>true</i> if the values can be queried
+	 */
+	public boolean contains(int ti) {
+		return this.row(ti) >= 0;
+	}
+
+	/**
+	 * gets a level value for the time step <tt>ti</tt>.
+	 *
+	 * @param ti Time step number
+	 * @param k Level number, see {@link DEModel#levelIndex(String)}
+	 * @return Level value
+	 * @throws Exception if the time step has not been recorded
+	 */
+	public double get(int ti, int k) throws Exception {
+		return this.value(this.checkedRow(ti), k);
+	}
+
+	/**
+	 * modifies a level value for the time step <tt>ti</tt>.
+	 *
+	 * @param ti Time step number
+	 * @param k Level number, see {@link DEModel#levelIndex(String)}
+	 * @param val Level value
+	 * @throws Exception if the time step has not been recorded
+	 */
+	public void set(int ti, int k, double val) throws Exception
+	{
+		int row = this.checkedRow(ti);
+		this.blocks.get(row / this.rowsPerBlock).put(
+			(row % this.rowsPerBlock) * this.width + 1 + k, val);
+	}
+
+	private int checkedRow(int ti) throws Exception
+	{
+		int row = this.row(ti);
+		if (row < 0) {
+			throw new Exception(
+				"Invalid time stamp query: Index " + ti +
+				" has not been recorded");
+		}
+		return row;
+	}
+
+	/**
+	 * closes the memory-mapped file, if there is any. Before, the number of
+	 * recorded rows will be written to the file's header. Afterwards, the
+	 * recorded rows can not be accessed anymore.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException
+	{
+		this.blocks.clear();
+		if (this.file != null) {
+			this.writeHeader();
+			this.file.close();
+			this.file = null;
+		}
+		this.numberOfRows = 0;
+		this.lastTi = -1;
+	}
+
+	public String toString()
+	{
+		StringBuffer s = new StringBuffer();
+
+		s.append("(");
+		s.append(this.getClass().getSimpleName());
+		s.append(": ");
+		s.append(this.numberOfRows);
+		s.append(" rows");
+		if (this.filename != null) {
+			s.append(", ");
+			s.append(this.filename);
+		}
+		s.append(")");
+
+		return s.toString();
+	}
+}
@@ -9,6 +9,8 @@ import de.hsbo.geo.simsamples.diffequations.Level;
  * integration method {@link DEModel#integrate(Level, int, double)}. 
  * Nonetheless it is useful to implement the model as {@link DEModel}, since 
  * this provides level and parameter definition and access functionality.
+ * Since the model consists of many levels, the level and parameter names 
+ * will be resolved to level and parameter numbers once.
  * 
  * @author Benno Schmidt
  */
@@ -16,14 +18,22 @@ public class DemographicModel extends DEModel
 {
 	public int maxAge = 120;
 	
+	private int[] pop, birth, mort; // level and parameter numbers
+	
 	
 	@Override
 	public void declarations() 
 	{
+		pop = new int[maxAge + 1];
+		birth = new int[maxAge + 1];
+		mort = new int[maxAge + 1];
 		for (int age = 0; age <= maxAge; age++) {
 			defineLevels(pop(age)); // Population value			
 			defineParameter(new Parameter(birth(age))); // Birth rates
 			defineParameter(new Parameter(mort(age))); // Mortality rates
+			pop[age] = levelIndex(pop(age));
+			birth[age] = parameterIndex(birth(age));
+			mort[age] = parameterIndex(mort(age));
 		}
 	}
 	
@@ -31,17 +41,16 @@ public class DemographicModel extends DEModel
 	public void step(int ti) throws Exception 
 	{
 		for (int age = 1; age <= maxAge; age++) {
-			Level lev = level(pop(age));
-			double M = P(mort(age - 1)) * L(ti, pop(age - 1));
-			double popNew = L(ti, pop(age - 1)) - M;
-			lev.setValue(ti + 1, popNew > 0 ? popNew : 0.);
+			double M = P(mort[age - 1]) * L(ti, pop[age - 1]);
+			double popNew = L(ti, pop[age - 1]) - M;
+			setL(ti + 1, pop[age], popNew > 0 ? popNew : 0.);
 		}
 
 		double B = 0.;
 		for (int age = 1; age <= maxAge; age++) {
-			B += P(birth(age)) * L(ti, pop(age));
+			B += P(birth[age]) * L(ti, pop[age]);
 		}
-		level(pop(0)).setValue(ti + 1, B);
+		setL(ti + 1, pop[0], B);
 	}
 	
 	public String pop(int age) { return "pop" + age; }
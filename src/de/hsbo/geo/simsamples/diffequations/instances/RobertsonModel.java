@@ -0,0 +1,75 @@
+package de.hsbo.geo.simsamples.diffequations.instances;
+
+import de.hsbo.geo.simsamples.common.Parameter;
+import de.hsbo.geo.simsamples.diffequations.DEModel;
+
+/**
+ * Robertson's chemical reaction system, a well-known stiff model. Three 
+ * species <tt>A</tt>, <tt>B</tt> and <tt>C</tt> react according to the 
+ * equations <tt>dA/dt = -k1 * A + k3 * B * C</tt>, <tt>dB/dt = k1 * A - k3
+ * * B * C - k2 * B^2</tt> and <tt>dC/dt = k2 * B^2</tt>. Since the reaction
+ * rates differ by many orders of magnitude, explicit integration methods
+ * require tiny time step widths; thus, the model should be integrated by an
+ * implicit method such as {@link 
+ * de.hsbo.geo.simsamples.diffequations.IntegrationMethod#BDF2}. The model 
+ * is defined by its right-hand side and provides the Jacobian of the rates.
+ * 
+ * @author Benno Schmidt
+ */
+public class RobertsonModel extends DEModel 
+{
+	private int a, b, c, k1, k2, k3;
+	
+	
+	@Override
+	public void declarations() 
+	{
+		defineLevels("A", "B", "C");
+		level("A").setInitialValue(1.); 
+		level("B").setInitialValue(0.); 
+		level("C").setInitialValue(0.); 
+
+		defineParameter(new Parameter("k1", 0.04)); 
+		defineParameter(new Parameter("k2", 3.e7)); 
+		defineParameter(new Parameter("k3", 1.e4)); 
+
+		a = levelIndex("A"); b = levelIndex("B"); c = levelIndex("C");
+		k1 = parameterIndex("k1"); 
+		k2 = parameterIndex("k2"); 
+		k3 = parameterIndex("k3");
+	}
+	
+	@Override
+	public void rhs(double t, double[] y, double[] dydt) throws Exception 
+	{
+		double 
+			r1 = P(k1) * y[a], 
+			r2 = P(k2) * y[b] * y[b], 
+			r3 = P(k3) * y[b] * y[c];
+
+		dydt[a] = -r1 + r3;
+		dydt[b] = r1 - r2 - r3;
+		dydt[c] = r2;
+	}
+
+	@Override
+	public boolean jacobian(double t, double[] y, double[][] jac) 
+		throws Exception 
+	{
+		double B = y[b], C = y[c];
+
+		jac[a][a] = -P(k1); 
+		jac[a][b] = P(k3) * C; 
+		jac[a][c] = P(k3) * B;
+
+		jac[b][a] = P(k1); 
+		jac[b][b] = -P(k3) * C - 2. * P(k2) * B; 
+		jac[b][c] = -P(k3) * B;
+
+		jac[c][a] = 0.; 
+		jac[c][b] = 2. * P(k2) * B; 
+		jac[c][c] = 0.;
+		
+		return true;
+	}
+}